@@ -0,0 +1,137 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.io.shp.internal.SHPDriver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the heap buffer and the memory mapped modes of {@link ReadBufferManager} when reading a shape file.
+ * Run with {@code mvn -P benchmark test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=org.h2gis.functions.io.utility.ReadBufferManagerBenchmark}
+ *
+ * @author Nicolas Fortin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ReadBufferManagerBenchmark {
+    private static final int ROW_COUNT = 50000;
+    private static final int RANDOM_READ_COUNT = 10000;
+
+    @Param({"false", "true"})
+    public boolean memoryMapped;
+
+    private File directory;
+    private SHPDriver shpDriver;
+    private int[] randomRows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        directory = Files.createTempDirectory("ReadBufferManagerBenchmark").toFile();
+        File shpFile = new File(directory, "polygons.shp");
+        try (Connection connection = H2GISDBFactory.createSpatialDataBase(
+                new File(directory, "db").getAbsolutePath(), true);
+             Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE POLYGONS AS SELECT X ID, 'label ' || X LABEL, " +
+                    "ST_BUFFER(ST_MAKEPOINT(RAND() * 100000, RAND() * 100000), 10 + RAND() * 50, 8) THE_GEOM " +
+                    "FROM SYSTEM_RANGE(1, " + ROW_COUNT + ")");
+            st.execute("CALL SHPWrite('" + shpFile.getAbsolutePath() + "', 'POLYGONS')");
+        }
+        shpDriver = new SHPDriver();
+        shpDriver.setMemoryMapped(memoryMapped);
+        shpDriver.initDriverFromFile(shpFile);
+        Random random = new Random(42);
+        randomRows = new int[RANDOM_READ_COUNT];
+        for (int i = 0; i < randomRows.length; i++) {
+            randomRows[i] = random.nextInt(ROW_COUNT);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        shpDriver.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+        Files.deleteIfExists(directory.toPath());
+    }
+
+    @Benchmark
+    public void fullScan(Blackhole blackhole) throws IOException {
+        int fieldCount = shpDriver.getFieldCount();
+        for (long rowId = 0; rowId < ROW_COUNT; rowId++) {
+            for (int column = 0; column < fieldCount; column++) {
+                blackhole.consume(shpDriver.getField(rowId, column));
+            }
+        }
+    }
+
+    @Benchmark
+    public void randomGetRow(Blackhole blackhole) throws IOException {
+        int fieldCount = shpDriver.getFieldCount();
+        for (int rowId : randomRows) {
+            for (int column = 0; column < fieldCount; column++) {
+                blackhole.consume(shpDriver.getField(rowId, column));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ReadBufferManagerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
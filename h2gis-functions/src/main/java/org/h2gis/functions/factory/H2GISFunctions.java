@@ -66,6 +66,7 @@ import org.h2gis.functions.spatial.earth.ST_GeometryShadow;
 import org.h2gis.functions.spatial.earth.ST_Isovist;
 import org.h2gis.functions.spatial.earth.ST_SunPosition;
 import org.h2gis.functions.spatial.earth.ST_Svf;
+import org.h2gis.functions.spatial.earth.ST_SvfTable;
 import org.h2gis.functions.spatial.edit.*;
 import org.h2gis.functions.spatial.generalize.*;
 import org.h2gis.functions.spatial.linear_referencing.ST_LineInterpolatePoint;
@@ -86,6 +87,7 @@ import org.h2gis.functions.spatial.split.ST_SubDivide;
 import org.h2gis.functions.spatial.topography.*;
 import org.h2gis.functions.spatial.topology.ST_Graph;
 import org.h2gis.functions.spatial.topology.ST_Node;
+import org.h2gis.functions.spatial.topology.ST_NodeTable;
 import org.h2gis.functions.spatial.topology.ST_Polygonize;
 import org.h2gis.functions.spatial.trigonometry.ST_Azimuth;
 import org.h2gis.functions.string.HexToVarBinary;
@@ -181,6 +183,7 @@ public class H2GISFunctions {
                 new ST_EnvelopesIntersect(),
                 new ST_Accum(),
                 new ST_Transform(),
+                new ST_TransformTable(),
                 new ST_SetSRID(),
                 new ST_CoordDim(),
                 new ST_GeometryTypeCode(),
@@ -307,8 +310,10 @@ public class H2GISFunctions {
                 new ST_MakeValid(),
                 new ST_Point(),
                 new ST_Node(),
+                new ST_NodeTable(),
                 new ST_Drape(),
                 new ST_Svf(),
+                new ST_SvfTable(),
                 new JsonWrite(),
                 new ST_ShortestLine(),
                 new ST_OrientedEnvelope(),
@@ -22,6 +22,8 @@ package org.h2gis.functions.io;
 
 import org.h2.util.StringUtils;
 import org.h2gis.api.*;
+import org.h2gis.functions.io.asc.AscDriverFunction;
+import org.h2gis.functions.io.asc.AscEngine;
 import org.h2gis.functions.io.dbf.DBFDriverFunction;
 import org.h2gis.functions.io.dbf.DBFEngine;
 import org.h2gis.functions.io.fgb.FGBDriverFunction;
@@ -51,16 +53,21 @@ public class DriverManager extends AbstractFunction implements ScalarFunction, D
     private static final DriverDef[] DRIVERS = new DriverDef[] {
             new DriverDef(DBFEngine.class.getName(),"dbf"),
             new DriverDef(SHPEngine.class.getName(),"shp"),
-            new DriverDef(FGBEngine.class.getName(), "fgb")};
+            new DriverDef(FGBEngine.class.getName(), "fgb"),
+            new DriverDef(AscEngine.class.getName(), "asc")};
     private static final int FORMAT = 0;
     private static final int DESCRIPTION = 1;
     private static final String[][] formatDescription = new String[][] {{"dbf", DBFDriverFunction.DESCRIPTION},
                                                                         {"shp", SHPDriverFunction.DESCRIPTION},
-                                                                        {"fgb", FGBDriverFunction.DESCRIPTION}};
+                                                                        {"fgb", FGBDriverFunction.DESCRIPTION},
+                                                                        {"asc", AscDriverFunction.DESCRIPTION}};
 
     public DriverManager() {
         addProperty(PROP_NAME, "FILE_TABLE");
-        addProperty(PROP_REMARKS, "Use the appropriate driver to open a specified file path.");
+        addProperty(PROP_REMARKS, "Use the appropriate driver to open a specified file path." +
+                "\n FILE_TABLE(path, tableName[, options])" +
+                "\n The SHP and DBF drivers accept an encoding or options as options, ex: 'encoding=utf-8 mmap=true'" +
+                "\n where mmap=true reads the file through memory mapped buffers");
     }
 
     @Override
@@ -91,15 +98,31 @@ public class DriverManager extends AbstractFunction implements ScalarFunction, D
      * @return The name of table formatted according the database rules
      */
     public static String[] openFile(Connection connection, String fileName, String tableName) throws SQLException {
+        return openFile(connection, fileName, tableName, null);
+    }
+
+    /**
+     * Create a new table
+     * @param connection Active connection, do not close this connection.
+     * @param fileName File path to write, if exists it may be replaced
+     * @param tableName [[catalog.]schema.]table reference
+     * @param options File encoding or driver options, ex: 'encoding=utf-8 mmap=true'. Used by the SHP and DBF drivers.
+     * @return The name of table formatted according the database rules
+     */
+    public static String[] openFile(Connection connection, String fileName, String tableName, String options) throws SQLException {
         String ext = fileName.substring(fileName.lastIndexOf('.') + 1);
         final DBTypes dbType = DBUtils.getDBType(connection);
         for(DriverDef driverDef : DRIVERS) {
             if(driverDef.getFileExt().equalsIgnoreCase(ext)) {
                 try (Statement st = connection.createStatement()) {
                     String tableName_ = TableLocation.parse(tableName, dbType).toString();
+                    String engineParams = StringUtils.quoteJavaString(fileName);
+                    if (options != null && !options.isEmpty()) {
+                        engineParams += ", " + StringUtils.quoteJavaString(options);
+                    }
                     st.execute(String.format("CREATE TABLE %s COMMENT %s ENGINE %s WITH %s",
                             tableName_,StringUtils.quoteStringSQL(fileName),
-                            StringUtils.quoteJavaString(driverDef.getClassName()),StringUtils.quoteJavaString(fileName)));
+                            StringUtils.quoteJavaString(driverDef.getClassName()),engineParams));
                      return new String[]{tableName_};
                 }
             }
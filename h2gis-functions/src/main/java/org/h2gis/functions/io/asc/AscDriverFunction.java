@@ -36,6 +36,8 @@ import java.sql.SQLException;
  */
 public class AscDriverFunction implements DriverFunction {
 
+    public static String DESCRIPTION = "ESRI ASCII Raster format";
+
     @Override
     public IMPORT_DRIVER_TYPE getImportDriverType() {
         return IMPORT_DRIVER_TYPE.COPY;
@@ -54,7 +56,7 @@ public class AscDriverFunction implements DriverFunction {
     @Override
     public String getFormatDescription(String format) {
         if (format.equalsIgnoreCase("asc")) {
-            return "ESRI ASCII Raster format";
+            return DESCRIPTION;
         } else {
             return "";
         }
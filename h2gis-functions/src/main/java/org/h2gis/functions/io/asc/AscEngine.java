@@ -0,0 +1,91 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.asc;
+
+import org.h2.command.ddl.CreateTableData;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.value.ExtTypeInfoGeometry;
+import org.h2.value.TypeInfo;
+import org.h2gis.functions.io.asc.fileTable.AscDriver;
+import org.h2gis.functions.io.asc.fileTable.AscSpatialIndex;
+import org.h2gis.functions.io.file_table.FileEngine;
+import org.h2gis.functions.io.file_table.H2MVTable;
+import org.h2gis.functions.io.utility.PRJUtil;
+import org.h2gis.utilities.GeometryTypeCodes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * ESRI ASCII grid engine for link with file instead of copy. The table contains one row by cell, the cells are
+ * read on demand and the {@code &&} conditions on the geometry read only the grid rows of the query window.
+ * The cell geometry is a POINTZ at the cell center, the optional second argument {@code 'polygon'} of the create
+ * table request gives a POLYGONZ cell geometry.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class AscEngine extends FileEngine<AscDriver> {
+
+    @Override
+    protected AscDriver createDriver(File filePath, List<String> args) throws IOException {
+        AscDriver driver = new AscDriver();
+        driver.initDriverFromFile(filePath);
+        if (args.size() > 1 && args.get(1).equalsIgnoreCase("polygon")) {
+            driver.setAs3DPoint(false);
+        }
+        String path = filePath.getAbsolutePath();
+        File prjFile = new File(path.substring(0, path.lastIndexOf('.')) + ".prj");
+        if (prjFile.exists()) {
+            driver.setSRID(PRJUtil.getSRID(prjFile));
+        }
+        return driver;
+    }
+
+    @Override
+    protected void feedCreateTableData(AscDriver driver, CreateTableData data) throws IOException {
+        int geomType = driver.isAs3DPoint() ? GeometryTypeCodes.POINTZ : GeometryTypeCodes.POLYGONZ;
+        TypeInfo typeInfo = TypeInfo.getTypeInfo(
+                TypeInfo.TYPE_GEOMETRY.getValueType(),
+                TypeInfo.TYPE_GEOMETRY.getPrecision(),
+                TypeInfo.TYPE_GEOMETRY.getScale(),
+                new ExtTypeInfoGeometry(geomType, driver.getSrid()));
+        data.columns.add(new Column("THE_GEOM", typeInfo));
+        data.columns.add(new Column("Z", TypeInfo.TYPE_DOUBLE));
+        data.columns.add(new Column("CELL_ROW", TypeInfo.TYPE_INTEGER));
+        data.columns.add(new Column("CELL_COL", TypeInfo.TYPE_INTEGER));
+    }
+
+    @Override
+    protected void addDriverIndexes(AscDriver driver, H2MVTable table, CreateTableData data) {
+        // First column is the primary key
+        Column geometryColumn = table.getColumn(AscDriver.GEOMETRY_FIELD + 1);
+        IndexColumn indexColumn = new IndexColumn(geometryColumn.getName());
+        indexColumn.column = geometryColumn;
+        indexColumn.sortType = SortOrder.ASCENDING;
+        table.addDriverIndex(new AscSpatialIndex(driver, table, table.getId(),
+                data.schema.getUniqueIndexName(data.session, table, data.tableName + "_" +
+                        geometryColumn.getName() + "_SPATIAL_INDEX_"), indexColumn));
+    }
+}
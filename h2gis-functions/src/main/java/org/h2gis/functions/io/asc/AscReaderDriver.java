@@ -21,6 +21,8 @@ package org.h2gis.functions.io.asc;
 
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.utility.AsciiTokenizer;
+import org.h2gis.functions.io.utility.BulkLoader;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.dbtypes.DBTypes;
@@ -29,9 +31,6 @@ import org.locationtech.jts.geom.*;
 
 import java.io.*;
 import java.sql.*;
-import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -60,7 +59,6 @@ import java.util.zip.GZIPInputStream;
  */
 public class AscReaderDriver {
 
-    private static final int BATCH_MAX_SIZE = 100;
     private static final int BUFFER_SIZE = 16384;
     private boolean as3DPoint = true;
     private Envelope extractEnvelope = null;
@@ -126,56 +124,56 @@ public class AscReaderDriver {
         this.downScale = downScale;
     }
 
-    private void readHeader(Scanner scanner) throws IOException {
+    private void readHeader(AsciiTokenizer tokenizer) throws IOException {
         // NCOLS
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!lastWord.equalsIgnoreCase("NCOLS")) {
             throw new IOException("Unexpected word " + lastWord);
         }
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         ncols = Integer.parseInt(lastWord);
         if (ncols <= 0) {
             throw new IOException("NCOLS <= 0");
         }
         // NROWS
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!lastWord.equalsIgnoreCase("NROWS")) {
             throw new IOException("Unexpected word " + lastWord);
         }
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         nrows = Integer.parseInt(lastWord);
         if (nrows <= 0) {
             throw new IOException("NROWS <= 0");
         }
         // XLLCENTER or XLLCORNER
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!(lastWord.equalsIgnoreCase("XLLCENTER") || lastWord.equalsIgnoreCase("XLLCORNER"))) {
             throw new IOException("Unexpected word " + lastWord);
         }
         boolean isXCenter = lastWord.equalsIgnoreCase("XLLCENTER");
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         xValue = Double.parseDouble(lastWord);
 
         // YLLCENTER or YLLCORNER
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!(lastWord.equalsIgnoreCase("YLLCENTER") || lastWord.equalsIgnoreCase("YLLCORNER"))) {
             throw new IOException("Unexpected word " + lastWord);
         }
         boolean isYCenter = lastWord.equalsIgnoreCase("YLLCENTER");
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         yValue = Double.parseDouble(lastWord);
 
         // CELLSIZE
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         if (!lastWord.equalsIgnoreCase("CELLSIZE")) {
             throw new IOException("Unexpected word " + lastWord);
         }
         // XXX
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         cellSize = Double.parseDouble(lastWord);
         // Compute offsets
         if (isXCenter) {
@@ -187,13 +185,13 @@ public class AscReaderDriver {
             yValue = yValue + cellSize * nrows;
         }
         // Optional NODATA_VALUE
-        lastWord = scanner.next();
+        lastWord = tokenizer.nextWord();
         readFirst = false;
         noData = -9999;
         if (lastWord.equalsIgnoreCase("NODATA_VALUE")) {
             readFirst = true;
             // XXX
-            lastWord = scanner.next();
+            lastWord = tokenizer.nextWord();
             noData = Double.parseDouble(lastWord);
 
         }
@@ -272,14 +270,12 @@ public class AscReaderDriver {
 
     private String readAsc(Connection connection, InputStream inputStream, ProgressVisitor progress, String outputTable,
             int srid) throws UnsupportedEncodingException, SQLException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream, BUFFER_SIZE), encoding));
+        AsciiTokenizer tokenizer = new AsciiTokenizer(new InputStreamReader(new BufferedInputStream(inputStream, BUFFER_SIZE), encoding));
         try {
-            Scanner scanner = new Scanner(reader);
             // Read HEADER
-            readHeader(scanner);
+            readHeader(tokenizer);
             // Read values
             Statement st = connection.createStatement();
-            PreparedStatement preparedStatement;
 
             int index=0;
             if (!JDBCUtilities.tableExists(connection,outputTable)) {
@@ -304,12 +300,8 @@ public class AscReaderDriver {
                     }
                 }
             }
-            preparedStatement = connection.prepareStatement("INSERT INTO " + outputTable
-                    + "(PK, the_geom, Z) VALUES (?, ?, ?)");
-
             // Read data
             GeometryFactory factory = new GeometryFactory(new PrecisionModel(),srid);
-            int batchSize = 0;
             int firstRow = 0;
             int firstCol = 0;
             int lastRow = nrows;
@@ -325,69 +317,97 @@ public class AscReaderDriver {
             if (progress != null) {
                 cellProgress = progress.subProcess(lastRow);
             }
-            for (int i = 0; i < nrows; i++) {
-                for (int j = 0; j < ncols; j++) {
+            CellProducer cellProducer = new CellProducer(tokenizer, factory, srid, index, cellProgress,
+                    firstRow, firstCol, lastRow, lastCol);
+            BulkLoader.load(connection, "INSERT INTO " + outputTable + "(PK, the_geom, Z) VALUES (?, ?, ?)",
+                    new int[]{Types.INTEGER, Types.OTHER, Types.DOUBLE}, cellProducer,
+                    progress == null ? new EmptyProgressVisitor() : progress);
+            return outputTable;
+        } catch (NumberFormatException | IOException | SQLException ex) {
+            throw new SQLException("Unexpected word " + tokenizer.getToken(), ex);
+        }
+    }
+
+    /**
+     * Read the cells of the grid in the file order, called by the reader thread of the {@link BulkLoader}
+     */
+    private class CellProducer implements BulkLoader.BatchProducer {
+        private final AsciiTokenizer tokenizer;
+        private final GeometryFactory factory;
+        private final int srid;
+        private final ProgressVisitor cellProgress;
+        // Extracted rows and columns
+        private final int firstRow;
+        private final int firstCol;
+        private final int lastRow;
+        private final int lastCol;
+        private int index;
+        private int i = 0;
+        private int j = 0;
+
+        CellProducer(AsciiTokenizer tokenizer, GeometryFactory factory, int srid, int index,
+                     ProgressVisitor cellProgress, int firstRow, int firstCol, int lastRow, int lastCol) {
+            this.tokenizer = tokenizer;
+            this.factory = factory;
+            this.srid = srid;
+            this.index = index;
+            this.cellProgress = cellProgress;
+            this.firstRow = firstRow;
+            this.firstCol = firstCol;
+            this.lastRow = lastRow;
+            this.lastCol = lastCol;
+        }
+
+        @Override
+        public boolean fill(BulkLoader.ColumnBatch batch) throws IOException {
+            for (; i < nrows; i++) {
+                for (; j < ncols; j++) {
+                    if (batch.isFull()) {
+                        return true;
+                    }
+                    boolean inside = (downScale == 1 || (i % downScale == 0 && j % downScale == 0))
+                            && (extractEnvelope == null || (i >= firstRow && i <= lastRow && j >= firstCol && j <= lastCol));
+                    double z = noData;
                     if (readFirst) {
-                        lastWord = scanner.next();
+                        if (inside) {
+                            z = tokenizer.nextDouble();
+                        } else {
+                            tokenizer.skipToken();
+                        }
                     } else {
+                        // The first value has been read with the header
                         readFirst = true;
+                        if (inside) {
+                            z = Double.parseDouble(lastWord);
+                        }
                     }
-
-                    if ((downScale == 1 || (i % downScale == 0 && j % downScale == 0)) && (extractEnvelope == null || (i >= firstRow && i <= lastRow && j >= firstCol && j <= lastCol))) {
-                        double z = Double.parseDouble(lastWord);
+                    if (inside) {
                         double x = xValue + j * cellSize;
                         double y = yValue - i * cellSize;
-                        if (as3DPoint) {
-                            //Set the PK
-                            preparedStatement.setObject(1, index++);
-                            Point cell = factory.createPoint(new Coordinate(x + cellSize / 2, y - cellSize / 2, z));
-                            cell.setSRID(srid);
-                            if (Math.abs(noData - z) != 0) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, z);
-                                preparedStatement.addBatch();
-                                batchSize++;
-                            } else if (importNodata) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, noData);
-                                preparedStatement.addBatch();
-                                batchSize++;
+                        //Set the PK
+                        int pk = index++;
+                        if (Math.abs(noData - z) != 0 || importNodata) {
+                            Geometry cell;
+                            if (as3DPoint) {
+                                cell = factory.createPoint(new Coordinate(x + cellSize / 2, y - cellSize / 2, z));
+                            } else {
+                                cell = factory.createPolygon(new Coordinate[]{new Coordinate(x, y, z), new Coordinate(x, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y, z), new Coordinate(x, y, z)});
                             }
-                        } else {
-                            //Set the PK
-                            preparedStatement.setObject(1, index++);
-                            Polygon cell = factory.createPolygon(new Coordinate[]{new Coordinate(x, y, z), new Coordinate(x, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y, z), new Coordinate(x, y, z)});
                             cell.setSRID(srid);
-                            if (Math.abs(noData - z) != 0) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, z);
-                                preparedStatement.addBatch();
-                                batchSize++;
-                            } else if (importNodata) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, noData);
-                                preparedStatement.addBatch();
-                                batchSize++;
-                            }
-                        }
-                        if (batchSize >= BATCH_MAX_SIZE) {
-                            preparedStatement.executeBatch();
-                            preparedStatement.clearBatch();
-                            batchSize = 0;
+                            batch.setInt(1, pk);
+                            batch.setObject(2, cell);
+                            batch.setDouble(3, z);
+                            batch.addRow();
                         }
                     }
                 }
+                j = 0;
                 cellProgress.endStep();
                 if (i > lastRow) {
-                    break;
+                    return false;
                 }
             }
-            if (batchSize > 0) {
-                preparedStatement.executeBatch();
-            }
-            return outputTable;
-        } catch (NoSuchElementException | NumberFormatException | IOException | SQLException ex) {
-            throw new SQLException("Unexpected word " + lastWord, ex);
+            return false;
         }
     }
 
@@ -0,0 +1,429 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.asc.fileTable;
+
+import org.h2.value.ValueDouble;
+import org.h2.value.ValueGeometry;
+import org.h2.value.ValueInteger;
+import org.h2gis.api.FileDriver;
+import org.h2gis.functions.io.utility.AsciiTokenizer;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read only driver of an ESRI ASCII grid linked as a table, one row by cell.
+ * The file is scanned once when the driver is opened in order to store the byte offset of each grid row. The
+ * values are then read on demand, one grid row at a time, so a query on a small window of a large grid only reads
+ * the grid rows of the window.
+ *
+ * The fields are the cell geometry (POINTZ at the cell center or POLYGONZ), the cell value, the grid row and the
+ * grid column of the cell. The first grid row is the north row, as in the file.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class AscDriver implements FileDriver {
+    /**
+     * Index of the cell geometry field
+     */
+    public static final int GEOMETRY_FIELD = 0;
+    /**
+     * Index of the cell value field
+     */
+    public static final int Z_FIELD = 1;
+    /**
+     * Index of the grid row field
+     */
+    public static final int ROW_FIELD = 2;
+    /**
+     * Index of the grid column field
+     */
+    public static final int COL_FIELD = 3;
+    private static final int FIELD_COUNT = 4;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private FileChannel fileChannel;
+    private int ncols;
+    private int nrows;
+    private double cellSize;
+    // x of the west border of the grid
+    private double xMin;
+    // y of the north border of the grid
+    private double yMax;
+    private double noData = -9999;
+    private boolean as3DPoint = true;
+    private int srid = 0;
+    private GeometryFactory factory;
+    /**
+     * Byte offset of the first value of each grid row, the last item is the file size
+     */
+    private long[] rowOffsets;
+    private int cachedRowIndex = -1;
+    private double[] cachedRow;
+
+    // Sequential read state used while indexing the file
+    private ByteBuffer readBuffer;
+    private long readBufferOffset;
+
+    /**
+     * Read the header of the file and index the grid rows
+     * @param ascFile ESRI ASCII grid file
+     */
+    public void initDriverFromFile(File ascFile) throws IOException {
+        fileChannel = FileChannel.open(ascFile.toPath(), StandardOpenOption.READ);
+        readBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+        readBuffer.flip();
+        readBufferOffset = 0;
+        try {
+            long firstValueOffset = readHeader();
+            indexRows(firstValueOffset);
+        } finally {
+            readBuffer = null;
+        }
+        factory = new GeometryFactory(new PrecisionModel(), srid);
+    }
+
+    /**
+     * @param as3DPoint If true the cell geometry is a POINTZ at the center of the cell, a POLYGONZ otherwise
+     */
+    public void setAs3DPoint(boolean as3DPoint) {
+        this.as3DPoint = as3DPoint;
+    }
+
+    /**
+     * @return If true the cell geometry is a POINTZ at the center of the cell, a POLYGONZ otherwise
+     */
+    public boolean isAs3DPoint() {
+        return as3DPoint;
+    }
+
+    /**
+     * @param srid SRID of the cell geometries
+     */
+    public void setSRID(int srid) {
+        this.srid = srid;
+        factory = new GeometryFactory(new PrecisionModel(), srid);
+    }
+
+    /**
+     * @return SRID of the cell geometries
+     */
+    public int getSrid() {
+        return srid;
+    }
+
+    /**
+     * @return Number of columns of the grid
+     */
+    public int getColumnCount() {
+        return ncols;
+    }
+
+    /**
+     * @return Number of rows of the grid
+     */
+    public int getGridRowCount() {
+        return nrows;
+    }
+
+    /**
+     * @return Size of a cell
+     */
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * @return Extent of the grid
+     */
+    public Envelope getExtent() {
+        return new Envelope(xMin, xMin + ncols * cellSize, yMax - nrows * cellSize, yMax);
+    }
+
+    @Override
+    public long getRowCount() {
+        return (long) nrows * ncols;
+    }
+
+    @Override
+    public int getEstimatedRowSize(long rowId) {
+        // Geometry, value, row and column
+        return (as3DPoint ? 40 : 120) + 8 + 4 + 4;
+    }
+
+    @Override
+    public int getFieldCount() {
+        return FIELD_COUNT;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (fileChannel != null) {
+            fileChannel.close();
+        }
+    }
+
+    @Override
+    public Object getField(long rowId, int columnId) throws IOException {
+        int row = (int) (rowId / ncols);
+        int col = (int) (rowId % ncols);
+        switch (columnId) {
+            case ROW_FIELD:
+                return ValueInteger.get(row);
+            case COL_FIELD:
+                return ValueInteger.get(col);
+            case Z_FIELD:
+                return ValueDouble.get(getValue(row, col));
+            case GEOMETRY_FIELD:
+                return ValueGeometry.getFromGeometry(getCellGeometry(row, col, getValue(row, col)));
+            default:
+                throw new IOException("Unknown field " + columnId);
+        }
+    }
+
+    @Override
+    public void insertRow(Object[] values) throws IOException {
+        throw new IOException("The ASC file table is read only");
+    }
+
+    /**
+     * @param row Grid row, the first row is the north row
+     * @param col Grid column
+     * @param z Cell value
+     * @return The cell geometry
+     */
+    private Geometry getCellGeometry(int row, int col, double z) {
+        double x = xMin + col * cellSize;
+        double y = yMax - row * cellSize;
+        if (as3DPoint) {
+            return factory.createPoint(new Coordinate(x + cellSize / 2, y - cellSize / 2, z));
+        } else {
+            return factory.createPolygon(new Coordinate[]{new Coordinate(x, y, z),
+                    new Coordinate(x, y - cellSize, z), new Coordinate(x + cellSize, y - cellSize, z),
+                    new Coordinate(x + cellSize, y, z), new Coordinate(x, y, z)});
+        }
+    }
+
+    /**
+     * @param row Grid row
+     * @param col Grid column
+     * @return The cell value, the no data cells have the NODATA_value of the file
+     */
+    public synchronized double getValue(int row, int col) throws IOException {
+        if (row != cachedRowIndex) {
+            cachedRow = readRow(row, cachedRow);
+            cachedRowIndex = row;
+        }
+        return cachedRow[col];
+    }
+
+    /**
+     * @return The value of the no data cells
+     */
+    public double getNoData() {
+        return noData;
+    }
+
+    /**
+     * Parse the values of a grid row
+     * @param row Grid row
+     * @param values Array to reuse, may be null
+     * @return The values of the grid row
+     */
+    private double[] readRow(int row, double[] values) throws IOException {
+        if (values == null) {
+            values = new double[ncols];
+        }
+        long start = rowOffsets[row];
+        ByteBuffer buffer = ByteBuffer.allocate((int) (rowOffsets[row + 1] - start));
+        while (buffer.hasRemaining()) {
+            if (fileChannel.read(buffer, start + buffer.position()) < 0) {
+                break;
+            }
+        }
+        byte[] bytes = buffer.array();
+        int length = buffer.position();
+        char[] token = new char[64];
+        int col = 0;
+        int i = 0;
+        while (col < ncols) {
+            while (i < length && bytes[i] <= ' ') {
+                i++;
+            }
+            if (i == length) {
+                throw new IOException("Missing values in the grid row " + row);
+            }
+            int tokenLength = 0;
+            while (i < length && bytes[i] > ' ') {
+                if (tokenLength == token.length) {
+                    char[] newToken = new char[token.length * 2];
+                    System.arraycopy(token, 0, newToken, 0, tokenLength);
+                    token = newToken;
+                }
+                token[tokenLength++] = (char) bytes[i++];
+            }
+            values[col++] = AsciiTokenizer.parseDouble(token, 0, tokenLength);
+        }
+        return values;
+    }
+
+    /**
+     * @return The next byte of the file, -1 at the end of the file
+     */
+    private int readByte() throws IOException {
+        if (!readBuffer.hasRemaining()) {
+            readBufferOffset += readBuffer.limit();
+            readBuffer.clear();
+            int read;
+            do {
+                read = fileChannel.read(readBuffer);
+            } while (read == 0);
+            readBuffer.flip();
+            if (read < 0) {
+                return -1;
+            }
+        }
+        return readBuffer.get() & 0xFF;
+    }
+
+    /**
+     * @return Offset of the byte returned by the last call to {@link #readByte()}
+     */
+    private long lastByteOffset() {
+        return readBufferOffset + readBuffer.position() - 1;
+    }
+
+    /**
+     * Skip the delimiters then read a word
+     * @param word Word content
+     * @return Offset of the word in the file
+     */
+    private long readWord(StringBuilder word) throws IOException {
+        word.setLength(0);
+        int c;
+        do {
+            c = readByte();
+        } while (c >= 0 && c <= ' ');
+        if (c < 0) {
+            throw new IOException("Unexpected end of file");
+        }
+        long offset = lastByteOffset();
+        while (c > ' ') {
+            word.append((char) c);
+            c = readByte();
+        }
+        return offset;
+    }
+
+    private String expectWord(StringBuilder word, String... expected) throws IOException {
+        readWord(word);
+        String value = word.toString();
+        for (String keyword : expected) {
+            if (value.equalsIgnoreCase(keyword)) {
+                return value;
+            }
+        }
+        throw new IOException("Unexpected word " + value);
+    }
+
+    /**
+     * Read the header keywords, in the order of the ASCReader driver
+     * @return Offset of the first value of the grid
+     */
+    private long readHeader() throws IOException {
+        StringBuilder word = new StringBuilder();
+        try {
+            expectWord(word, "NCOLS");
+            readWord(word);
+            ncols = Integer.parseInt(word.toString());
+            if (ncols <= 0) {
+                throw new IOException("NCOLS <= 0");
+            }
+            expectWord(word, "NROWS");
+            readWord(word);
+            nrows = Integer.parseInt(word.toString());
+            if (nrows <= 0) {
+                throw new IOException("NROWS <= 0");
+            }
+            boolean isXCenter = expectWord(word, "XLLCENTER", "XLLCORNER").equalsIgnoreCase("XLLCENTER");
+            readWord(word);
+            double xValue = Double.parseDouble(word.toString());
+            boolean isYCenter = expectWord(word, "YLLCENTER", "YLLCORNER").equalsIgnoreCase("YLLCENTER");
+            readWord(word);
+            double yValue = Double.parseDouble(word.toString());
+            expectWord(word, "CELLSIZE");
+            readWord(word);
+            cellSize = Double.parseDouble(word.toString());
+            xMin = isXCenter ? xValue - cellSize / 2 : xValue;
+            yMax = isYCenter ? yValue + cellSize * nrows - cellSize / 2 : yValue + cellSize * nrows;
+            // Optional NODATA_VALUE
+            long offset = readWord(word);
+            if (word.toString().equalsIgnoreCase("NODATA_VALUE")) {
+                readWord(word);
+                noData = Double.parseDouble(word.toString());
+                return -1;
+            }
+            return offset;
+        } catch (NumberFormatException ex) {
+            throw new IOException("Unexpected word " + word, ex);
+        }
+    }
+
+    /**
+     * Store the offset of the first value of each grid row
+     * @param firstValueOffset Offset of the first value if it has been read with the header, -1 otherwise
+     */
+    private void indexRows(long firstValueOffset) throws IOException {
+        rowOffsets = new long[nrows + 1];
+        long valueCount = 0;
+        long expected = (long) nrows * ncols;
+        if (firstValueOffset >= 0) {
+            rowOffsets[0] = firstValueOffset;
+            valueCount = 1;
+        }
+        boolean inWord = false;
+        int c;
+        while (valueCount < expected && (c = readByte()) >= 0) {
+            if (c <= ' ') {
+                inWord = false;
+            } else if (!inWord) {
+                inWord = true;
+                if (valueCount % ncols == 0) {
+                    rowOffsets[(int) (valueCount / ncols)] = lastByteOffset();
+                }
+                valueCount++;
+            }
+        }
+        if (valueCount < expected) {
+            throw new IOException("The grid contains " + valueCount + " values instead of " + expected);
+        }
+        rowOffsets[nrows] = fileChannel.size();
+    }
+}
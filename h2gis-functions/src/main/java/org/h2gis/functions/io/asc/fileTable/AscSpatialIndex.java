@@ -0,0 +1,165 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.asc.fileTable;
+
+import org.h2.engine.SessionLocal;
+import org.h2.index.Cursor;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2gis.functions.io.file_table.FileSpatialIndex;
+import org.h2gis.functions.io.file_table.H2TableIndex;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Spatial index of a linked ESRI ASCII grid. The cells are aligned on the grid so the rows and columns hit by a
+ * {@code &&} condition are computed from the envelope of the condition, only these grid rows are read from the file.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class AscSpatialIndex extends FileSpatialIndex {
+    private final AscDriver driver;
+
+    /**
+     * Constructor
+     * @param driver Linked file driver
+     * @param table Linked table
+     * @param id Index identifier
+     * @param indexName Unique index name
+     * @param indexColumn Geometry column
+     */
+    public AscSpatialIndex(AscDriver driver, Table table, int id, String indexName, IndexColumn indexColumn) {
+        super(table, id, indexName, indexColumn);
+        this.driver = driver;
+    }
+
+    /**
+     * @param envelope Query envelope
+     * @return First row, first column, last row and last column of the window, null if the window is empty
+     */
+    private int[] getWindow(Envelope envelope) {
+        Envelope extent = driver.getExtent();
+        if (!extent.intersects(envelope)) {
+            return null;
+        }
+        double cellSize = driver.getCellSize();
+        int lastRowIndex = driver.getGridRowCount() - 1;
+        int lastColIndex = driver.getColumnCount() - 1;
+        // Cells touching the envelope borders are kept, the && condition is checked again by H2
+        int firstCol = (int) Math.max(0, Math.ceil((envelope.getMinX() - extent.getMinX()) / cellSize) - 1);
+        int lastCol = (int) Math.min(lastColIndex, Math.floor((envelope.getMaxX() - extent.getMinX()) / cellSize));
+        int firstRow = (int) Math.max(0, Math.ceil((extent.getMaxY() - envelope.getMaxY()) / cellSize) - 1);
+        int lastRow = (int) Math.min(lastRowIndex, Math.floor((extent.getMaxY() - envelope.getMinY()) / cellSize));
+        if (firstCol > lastCol || firstRow > lastRow) {
+            return null;
+        }
+        return new int[]{firstRow, firstCol, lastRow, lastCol};
+    }
+
+    @Override
+    protected Cursor findByEnvelope(SessionLocal session, Envelope envelope) {
+        return new AscWindowCursor(driver, getWindow(envelope));
+    }
+
+    @Override
+    protected double getSpatialCost(Envelope queryEnvelope) {
+        double cellCount = driver.getRowCount() * 0.25;
+        if (queryEnvelope != null) {
+            int[] window = getWindow(queryEnvelope);
+            cellCount = window == null ? 0 : (double) (window[2] - window[0] + 1) * (window[3] - window[1] + 1);
+        }
+        return 10 * (2 + cellCount);
+    }
+
+    @Override
+    public long getRowCount(SessionLocal session) {
+        return driver.getRowCount();
+    }
+
+    @Override
+    public long getRowCountApproximation(SessionLocal session) {
+        return driver.getRowCount();
+    }
+
+    /**
+     * Iterate over the cells of a window, row by row
+     */
+    private static class AscWindowCursor implements Cursor {
+        private final AscDriver driver;
+        private final int[] window;
+        private int row;
+        private int col;
+        private Row currentRow;
+
+        AscWindowCursor(AscDriver driver, int[] window) {
+            this.driver = driver;
+            this.window = window;
+            if (window != null) {
+                row = window[0];
+                col = window[1] - 1;
+            }
+        }
+
+        @Override
+        public Row get() {
+            if (currentRow == null && window != null && row <= window[2]) {
+                // The primary key is the 1 based cell index, the fields are read on demand
+                currentRow = new H2TableIndex.DriverRow(driver, (long) row * driver.getColumnCount() + col + 1);
+            }
+            return currentRow;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return get();
+        }
+
+        @Override
+        public boolean next() {
+            currentRow = null;
+            if (window == null || row > window[2]) {
+                return false;
+            }
+            col++;
+            if (col > window[3]) {
+                col = window[1];
+                row++;
+            }
+            return row <= window[2];
+        }
+
+        @Override
+        public boolean previous() {
+            currentRow = null;
+            if (window == null || row < window[0]) {
+                return false;
+            }
+            col--;
+            if (col < window[1]) {
+                col = window[3];
+                row--;
+            }
+            return row >= window[0];
+        }
+    }
+}
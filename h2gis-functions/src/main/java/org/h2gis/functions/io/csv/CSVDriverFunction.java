@@ -24,6 +24,7 @@ import org.h2.tools.Csv;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.io.DriverManager;
+import org.h2gis.functions.io.utility.BulkLoader;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 
@@ -31,6 +32,7 @@ import java.io.*;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.sql.*;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.h2gis.utilities.FileUtilities;
@@ -46,8 +48,6 @@ import org.h2gis.utilities.dbtypes.DBUtils;
 public class CSVDriverFunction implements DriverFunction{
 
     public static String DESCRIPTION = "CSV file (Comma Separated Values)";
-    private static final int BATCH_MAX_SIZE = 100;
-    private static final int AVERAGE_NODE_SIZE = 500;
     
     @Override
     public IMPORT_DRIVER_TYPE getImportDriverType() {
@@ -191,10 +191,6 @@ public class CSVDriverFunction implements DriverFunction{
             FileInputStream fis = new FileInputStream(fileName);
             FileChannel fc = fis.getChannel();
             long fileSize = fc.size();
-            // Given the file size and an average node file size.
-            // Skip how many nodes in order to update progression at a step of 1%
-            long readFileSizeEachNode = Math.max(1, (fileSize / AVERAGE_NODE_SIZE) / 100);
-            int average_row_size = 0;
             Csv csv = new Csv();
             if (csvOptions != null && csvOptions.indexOf('=') >= 0) {
                 csv.setOptions(csvOptions);
@@ -223,42 +219,27 @@ public class CSVDriverFunction implements DriverFunction{
             try (Statement stmt = connection.createStatement()) {
                 stmt.execute(createTable.toString());
             }
+            int[] columnTypes = new int[columnCount];
+            Arrays.fill(columnTypes, Types.VARCHAR);
+            final ProgressVisitor readProgress = progress;
             connection.setAutoCommit(false);
-            PreparedStatement pst = connection.prepareStatement(insertTable.toString());
-            long batchSize = 0;
             try {
-                while (reader.next()) {
-                    if (progress.isCanceled()) {
-                        throw new SQLException("Canceled by user");
-                    }
-
-                    for (int i = 0; i < columnCount; i++) {
-                        pst.setString(i + 1, reader.getString(i + 1));
-                    }
-                    pst.addBatch();
-                    batchSize++;
-                    if (batchSize >= BATCH_MAX_SIZE) {
-                        pst.executeBatch();
-                        connection.commit();
-                        pst.clearBatch();
-                        batchSize = 0;
-                    }
-                    if (average_row_size++ % readFileSizeEachNode == 0) {
-                        // Update Progress
-                        try {
-                            progress.setStep((int) (((double) fc.position() / fileSize) * 100));
-                        } catch (IOException ex) {
-                            // Ignore
+                BulkLoader.load(connection, insertTable.toString(), columnTypes, batch -> {
+                    while (!batch.isFull()) {
+                        if (!reader.next()) {
+                            return false;
                         }
+                        for (int i = 0; i < columnCount; i++) {
+                            batch.setObject(i + 1, reader.getString(i + 1));
+                        }
+                        batch.addRow();
                     }
-                }
-                if (batchSize > 0) {
-                    pst.executeBatch();
-                    connection.commit();
-                    pst.clearBatch();
-                }
+                    // Update Progress
+                    readProgress.setStep((int) (((double) fc.position() / fileSize) * 100));
+                    return true;
+                }, progress);
             } finally {
-                pst.close();
+                reader.close();
                 connection.setAutoCommit(true);
             }
             return new String[]{outputTable};
@@ -23,6 +23,7 @@ package org.h2gis.functions.io.dbf;
 import org.h2.table.Column;
 import org.h2.util.JdbcUtils;
 import org.h2.value.TypeInfo;
+import org.h2.value.Value;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
@@ -32,6 +33,8 @@ import org.h2gis.functions.io.dbf.internal.DbaseFileException;
 import org.h2gis.functions.io.dbf.internal.DbaseFileHeader;
 import org.h2gis.functions.io.file_table.FileEngine;
 import org.h2gis.functions.io.file_table.H2TableIndex;
+import org.h2gis.functions.io.utility.FileImportOptions;
+import org.h2gis.functions.io.utility.ParallelRowReader;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 
@@ -231,8 +234,12 @@ public class DBFDriverFunction implements DriverFunction {
             }
             //Check if a cpg file exists
             //TODO:
+            final FileImportOptions importOptions = FileImportOptions.parse(options);
+            final String encoding = importOptions.getEncoding();
+            final int workers = importOptions.getWorkers();
             DBFDriver dbfDriver = new DBFDriver();
-            dbfDriver.initDriverFromFile(fileName, options);
+            dbfDriver.setMemoryMapped(importOptions.isMemoryMapped());
+            dbfDriver.initDriverFromFile(fileName, encoding);
             DbaseFileHeader dbfHeader = dbfDriver.getDbaseFileHeader();
             ProgressVisitor copyProgress = progress.subProcess((int) (dbfDriver.getRowCount() / BATCH_MAX_SIZE));
             if (dbfHeader.getNumFields() == 0) {
@@ -255,19 +262,45 @@ public class DBFDriverFunction implements DriverFunction {
                                         getQuestionMark(dbfHeader.getNumFields() + 1)))) {
                             JDBCUtilities.attachCancelResultSet(preparedStatement, progress);
                             long batchSize = 0;
-                            for (int rowId = 0; rowId < dbfDriver.getRowCount(); rowId++) {
-                                preparedStatement.setObject(1, rowId + 1);
-                                for (int columnId = 0; columnId < columnCount; columnId++) {
-                                    JdbcUtils.set(preparedStatement,columnId + 2, dbfDriver.getField(rowId, columnId), null);
+                            if (workers > 1) {
+                                // Fields are decoded by the workers, this thread only inserts the rows
+                                try (ParallelRowReader rowReader = new ParallelRowReader(() -> {
+                                    DBFDriver workerDriver = new DBFDriver();
+                                    workerDriver.setMemoryMapped(importOptions.isMemoryMapped());
+                                    workerDriver.initDriverFromFile(fileName, encoding);
+                                    return workerDriver;
+                                }, dbfDriver.getRowCount(), BATCH_MAX_SIZE, workers)) {
+                                    int rowId = 0;
+                                    Value[][] rows;
+                                    while ((rows = rowReader.nextPartition()) != null) {
+                                        for (Value[] row : rows) {
+                                            preparedStatement.setObject(1, ++rowId);
+                                            for (int columnId = 0; columnId < columnCount; columnId++) {
+                                                JdbcUtils.set(preparedStatement, columnId + 2, row[columnId], null);
+                                            }
+                                            preparedStatement.addBatch();
+                                        }
+                                        preparedStatement.executeBatch();
+                                        connection.commit();
+                                        preparedStatement.clearBatch();
+                                        copyProgress.endStep();
+                                    }
                                 }
-                                preparedStatement.addBatch();
-                                batchSize++;
-                                if (batchSize >= BATCH_MAX_SIZE) {
-                                    preparedStatement.executeBatch();
-                                    connection.commit();
-                                    preparedStatement.clearBatch();
-                                    batchSize = 0;
-                                    copyProgress.endStep();
+                            } else {
+                                for (int rowId = 0; rowId < dbfDriver.getRowCount(); rowId++) {
+                                    preparedStatement.setObject(1, rowId + 1);
+                                    for (int columnId = 0; columnId < columnCount; columnId++) {
+                                        JdbcUtils.set(preparedStatement, columnId + 2, dbfDriver.getField(rowId, columnId), null);
+                                    }
+                                    preparedStatement.addBatch();
+                                    batchSize++;
+                                    if (batchSize >= BATCH_MAX_SIZE) {
+                                        preparedStatement.executeBatch();
+                                        connection.commit();
+                                        preparedStatement.clearBatch();
+                                        batchSize = 0;
+                                        copyProgress.endStep();
+                                    }
                                 }
                             }
                             if (batchSize > 0) {
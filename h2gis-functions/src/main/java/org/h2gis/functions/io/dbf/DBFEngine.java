@@ -27,6 +27,7 @@ import org.h2.value.Value;
 import org.h2gis.functions.io.dbf.internal.DBFDriver;
 import org.h2gis.functions.io.dbf.internal.DbaseFileHeader;
 import org.h2gis.functions.io.file_table.FileEngine;
+import org.h2gis.functions.io.utility.FileImportOptions;
 
 import java.io.File;
 import java.io.IOException;
@@ -40,8 +41,10 @@ public class DBFEngine extends FileEngine<DBFDriver> {
 
     @Override
     protected DBFDriver createDriver(File filePath, List<String> args) throws IOException {
+        FileImportOptions options = FileImportOptions.parseEngineParams(args);
         DBFDriver driver = new DBFDriver();
-        driver.initDriverFromFile(filePath,  args.size() > 1 ? args.get(1) : null);
+        driver.setMemoryMapped(options.isMemoryMapped());
+        driver.initDriverFromFile(filePath, options.getEncoding());
         return driver;
     }
 
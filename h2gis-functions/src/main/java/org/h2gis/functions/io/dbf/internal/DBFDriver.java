@@ -36,6 +36,7 @@ public class DBFDriver implements FileDriver {
     private File dbfFile;
     protected DbaseFileReader dbaseFileReader;
     protected DbaseFileWriter dbaseFileWriter;
+    private boolean memoryMapped = false;
 
     /**
      * Init file header for DBF File
@@ -54,7 +55,22 @@ public class DBFDriver implements FileDriver {
         // Read columns from files metadata
         this.dbfFile = dbfFile;
         FileInputStream fis = new FileInputStream(dbfFile);
-        dbaseFileReader = new DbaseFileReader(fis.getChannel(), forceEncoding);
+        dbaseFileReader = new DbaseFileReader(fis.getChannel(), forceEncoding, memoryMapped);
+    }
+
+    /**
+     * @return True if the file is read through memory mapped buffers
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * @param memoryMapped True to read the file through memory mapped buffers, random access does not
+     *                     issue any system call. Must be set before initDriverFromFile.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
     }
 
     public void initDriver(File dbfFile, DbaseFileHeader dbaseHeader) throws IOException {
@@ -83,16 +83,29 @@ public class DbaseFileReader {
      */
     public DbaseFileReader(FileChannel channel, String forceEncoding)
             throws IOException {
+        this(channel, forceEncoding, false);
+    }
+
+    /**
+     * Creates a new instance of DBaseFileReader
+     *
+     * @param channel The readable channel to use.
+     * @param forceEncoding File encoding to use, null will use the file encoding provided in the file header
+     * @param memoryMapped True to read the file through memory mapped buffers
+     * @throws java.io.IOException If an error occurs while initializing.
+     */
+    public DbaseFileReader(FileChannel channel, String forceEncoding, boolean memoryMapped)
+            throws IOException {
         this.channel = channel;
 
         header = new DbaseFileHeader();
         header.readHeader(channel, forceEncoding);
 
-        init();
+        init(memoryMapped);
     }
 
-    private void init() throws IOException {
-        buffer = new ReadBufferManager(channel);
+    private void init(boolean memoryMapped) throws IOException {
+        buffer = new ReadBufferManager(channel, memoryMapped);
 
         // The entire file is in little endian
         buffer.order(ByteOrder.LITTLE_ENDIAN);
@@ -128,6 +141,9 @@ public class DbaseFileReader {
      * @throws java.io.IOException If an error occurs.
      */
     public void close() throws IOException {
+        if (buffer != null) {
+            buffer.release();
+        }
         if (channel != null && channel.isOpen()) {
             channel.close();
         }
@@ -22,13 +22,13 @@ package org.h2gis.functions.io.fgb;
 import org.h2.command.ddl.CreateTableData;
 import org.h2.table.Column;
 import org.h2.util.ParserUtil;
-import org.h2.util.StringUtils;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.io.DriverManager;
 import org.h2gis.functions.io.fgb.fileTable.FGBDriver;
 import org.h2gis.utilities.FileUtilities;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.KeyValueOptions;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
@@ -91,19 +91,16 @@ public class FGBDriverFunction implements DriverFunction {
     public String[] exportTable(Connection connection, String tableReference, File fileName, String options, boolean deleteFiles, ProgressVisitor progress) throws SQLException, IOException {
         progress  = DriverManager.check(connection, tableReference, fileName, progress);
         FGBWriteDriver fgbWriteDriver = new FGBWriteDriver(connection);
-        if(options != null) {
-            String[] keyValuePairs = StringUtils.arraySplit(options, ' ', false);
-            for (String pair : keyValuePairs) {
-                int index = pair.indexOf('=');
-                String key = StringUtils.trimSubstring(pair, 0, index);
-                String value = pair.substring(index + 1);
-                if (key.equalsIgnoreCase("createIndex")) {
-                    fgbWriteDriver.setCreateIndex(Boolean.parseBoolean(value));
-                } else if (key.equalsIgnoreCase("nodeSize")) {
-                    fgbWriteDriver.setPackedRTreeNodeSize(Short.parseShort(value.trim()));
-                }
-            }
+        KeyValueOptions exportOptions = KeyValueOptions.parse(options, "createIndex", "nodeSize", "spatialSort",
+                "sortMemory");
+        fgbWriteDriver.setCreateIndex(exportOptions.getBoolean("createIndex", fgbWriteDriver.isCreateIndex()));
+        int nodeSize = exportOptions.getPositiveInt("nodeSize", fgbWriteDriver.getPackedRTreeNodeSize());
+        if (nodeSize < 2 || nodeSize > Short.MAX_VALUE) {
+            throw new SQLException("The option nodeSize must be between 2 and " + Short.MAX_VALUE);
         }
+        fgbWriteDriver.setPackedRTreeNodeSize((short) nodeSize);
+        fgbWriteDriver.setSpatialSort(exportOptions.getBoolean("spatialSort", false));
+        fgbWriteDriver.setSortMemory(exportOptions.getLong("sortMemory", fgbWriteDriver.getSortMemory()));
         try {
             fgbWriteDriver.write(progress, tableReference, fileName, deleteFiles);
             return new String[]{fileName.getAbsolutePath()};
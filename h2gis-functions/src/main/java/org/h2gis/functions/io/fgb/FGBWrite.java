@@ -41,7 +41,9 @@ public class FGBWrite extends AbstractFunction implements ScalarFunction {
                 + "\n Supported arguments :"
                 + "\n path of the file, table name"
                 + "\n path of the file, table name, true to delete the file if exists"
-                + "\n path of the file, table name, true to delete the file if exists,options default 'createIndex=true nodeSize=16'");
+                + "\n path of the file, table name, true to delete the file if exists,options default 'createIndex=true nodeSize=16 spatialSort=false'."
+                + "\n spatialSort=true writes the features in the order of the Hilbert curve, sortMemory sets the bytes"
+                + " kept in memory by the sort before using temporary files");
     }
 
     @Override
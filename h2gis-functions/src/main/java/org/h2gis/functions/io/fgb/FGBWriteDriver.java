@@ -24,6 +24,7 @@ import com.google.flatbuffers.FlatBufferBuilder;
 import org.h2.util.JSR310Utils;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.io.fgb.fileTable.GeometryConversions;
+import org.h2gis.functions.io.utility.HilbertSorter;
 import org.h2gis.utilities.*;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
@@ -69,6 +70,10 @@ public class FGBWriteDriver {
 
     boolean createIndex = true;
 
+    boolean spatialSort = false;
+
+    long sortMemory = HilbertSorter.DEFAULT_MEMORY_BUDGET;
+
     private final Connection connection;
 
     public FGBWriteDriver(Connection connection) {
@@ -92,6 +97,28 @@ public class FGBWriteDriver {
         this.createIndex = createIndex;
     }
 
+    public boolean isSpatialSort() {
+        return spatialSort;
+    }
+
+    /**
+     * @param spatialSort true to write the features in the order of the Hilbert curve of their envelope center
+     */
+    public void setSpatialSort(boolean spatialSort) {
+        this.spatialSort = spatialSort;
+    }
+
+    public long getSortMemory() {
+        return sortMemory;
+    }
+
+    /**
+     * @param sortMemory Size in bytes of the features kept in memory by the spatial sort before using temporary files
+     */
+    public void setSortMemory(long sortMemory) {
+        this.sortMemory = sortMemory;
+    }
+
     /**
      * Write the spatial table to a FlatGeobuf file
      *
@@ -132,7 +159,8 @@ public class FGBWriteDriver {
                     }
                     rs.beforeFirst();
                     ProgressVisitor copyProgress = progress.subProcess(recordCount);
-                    doExport(progress, rs,  spatialFieldNameAndIndex.first(), recordCount, new FileOutputStream(fileName), null);
+                    doExport(progress, rs,  spatialFieldNameAndIndex.first(), recordCount, new FileOutputStream(fileName), null,
+                            HilbertSorter.extentOf(connection, tableName, spatialFieldNameAndIndex.first()));
                     copyProgress.endOfProgress();
                     return fileName.getAbsolutePath();
                 } else {
@@ -180,7 +208,8 @@ public class FGBWriteDriver {
                     Tuple<String, GeometryMetaData> geomMetadata = GeometryTableUtilities.getFirstColumnMetaData(connection, parse);
                     String geomCol = geomMetadata.first();
                     ResultSet rs = st.executeQuery(String.format("select * from %s", outputTable));
-                    doExport(progress, rs, geomCol, recordCount, outputStream, fileNameWithoutExt);
+                    doExport(progress, rs, geomCol, recordCount, outputStream, fileNameWithoutExt,
+                            HilbertSorter.extentOf(connection, outputTable, geomCol));
                 }
 
         } finally {
@@ -194,7 +223,8 @@ public class FGBWriteDriver {
         }
     }
 
-    private String doExport(ProgressVisitor progress, ResultSet rs, String geometryColumn,  int recordCount, FileOutputStream outputStream, String fileName) throws SQLException, IOException {
+    private String doExport(ProgressVisitor progress, ResultSet rs, String geometryColumn,  int recordCount, FileOutputStream outputStream, String fileName,
+                            HilbertSorter.ExtentProvider extentProvider) throws SQLException, IOException {
 
         FlatBufferBuilder bufferBuilder = new FlatBufferBuilder();
 
@@ -223,118 +253,128 @@ public class FGBWriteDriver {
         ByteBuffer bufferManager = ByteBuffer.allocate(BYTEBUFFER_CACHE);
         bufferManager.order(ByteOrder.LITTLE_ENDIAN);
         ProgressVisitor copyProgress = progress.subProcess(recordCount);
-        while (rs.next()) {
-            bufferManager.clear();
-            //Let's serialize the attributes
-            while (true) {
-                try {
-                    for (int i = 0; i < columnCount; i++) {
-                        ColumnMeta column = header.columns.get(i);
-                        Object value = rs.getObject(column.name);
-                        if (value == null) {
-                            continue;
-                        }
-                        bufferManager.putShort((short) i);
-                        byte type = column.type;
-                        switch (type) {
-                            case ColumnType.Bool:
-                                bufferManager.put((byte) ((boolean) value ? 1 : 0));
-                                break;
-                            case ColumnType.Byte:
-                                bufferManager.put((byte) value);
-                                break;
-                            case ColumnType.Short:
-                                bufferManager.putShort(((Integer) value).shortValue());
-                                break;
-                            case ColumnType.Int:
-                                bufferManager.putInt((int) value);
-                                break;
-                            case ColumnType.Float:
-                                if(value instanceof Float){
-                                    bufferManager.putFloat((Float) value);
-                                }
-                                else {
-                                    bufferManager.putFloat(((Double) value).floatValue());
-                                }
-                                break;
-                            case ColumnType.Double:
-                                if(value instanceof BigDecimal){
-                                    bufferManager.putDouble(((BigDecimal) value).doubleValue());
-                                }else {
-                                    bufferManager.putDouble((Double) value);
-                                }
-                                break;
-                            case ColumnType.Long:
-                                if (value instanceof BigInteger) {
-                                    bufferManager.putLong(((BigInteger) value).longValue());
-                                } else {
-                                    bufferManager.putLong((Long) value);
-                                }
-                                break;
-                            case ColumnType.String:
-                                writeString(value.toString(), bufferManager);
-                                break;
-                            case ColumnType.DateTime:
-                                if (value instanceof ZonedDateTime) {
-                                    writeString(JSR310Utils.zonedDateTimeToValue((ZonedDateTime) value).getISOString(), bufferManager);
-                                }else if(value instanceof Timestamp){
-                                    writeString(JSR310Utils.localDateTimeToValue(((Timestamp) value).toLocalDateTime()).getISOString(), bufferManager);
-                                }else if(value instanceof Date){
-                                    writeString(JSR310Utils.zonedDateTimeToValue(((Date) value).toLocalDate().atStartOfDay(ZoneId.systemDefault())).getISOString(), bufferManager);
-                                }
-                                else {
+        HilbertSorter sorter = spatialSort ? new HilbertSorter(sortMemory, extentProvider) : null;
+        try {
+            while (rs.next()) {
+                bufferManager.clear();
+                //Let's serialize the attributes
+                while (true) {
+                    try {
+                        for (int i = 0; i < columnCount; i++) {
+                            ColumnMeta column = header.columns.get(i);
+                            Object value = rs.getObject(column.name);
+                            if (value == null) {
+                                continue;
+                            }
+                            bufferManager.putShort((short) i);
+                            byte type = column.type;
+                            switch (type) {
+                                case ColumnType.Bool:
+                                    bufferManager.put((byte) ((boolean) value ? 1 : 0));
+                                    break;
+                                case ColumnType.Byte:
+                                    bufferManager.put((byte) value);
+                                    break;
+                                case ColumnType.Short:
+                                    bufferManager.putShort(((Integer) value).shortValue());
+                                    break;
+                                case ColumnType.Int:
+                                    bufferManager.putInt((int) value);
+                                    break;
+                                case ColumnType.Float:
+                                    if(value instanceof Float){
+                                        bufferManager.putFloat((Float) value);
+                                    }
+                                    else {
+                                        bufferManager.putFloat(((Double) value).floatValue());
+                                    }
+                                    break;
+                                case ColumnType.Double:
+                                    if(value instanceof BigDecimal){
+                                        bufferManager.putDouble(((BigDecimal) value).doubleValue());
+                                    }else {
+                                        bufferManager.putDouble((Double) value);
+                                    }
+                                    break;
+                                case ColumnType.Long:
+                                    if (value instanceof BigInteger) {
+                                        bufferManager.putLong(((BigInteger) value).longValue());
+                                    } else {
+                                        bufferManager.putLong((Long) value);
+                                    }
+                                    break;
+                                case ColumnType.String:
+                                    writeString(value.toString(), bufferManager);
+                                    break;
+                                case ColumnType.DateTime:
+                                    if (value instanceof ZonedDateTime) {
+                                        writeString(JSR310Utils.zonedDateTimeToValue((ZonedDateTime) value).getISOString(), bufferManager);
+                                    }else if(value instanceof Timestamp){
+                                        writeString(JSR310Utils.localDateTimeToValue(((Timestamp) value).toLocalDateTime()).getISOString(), bufferManager);
+                                    }else if(value instanceof Date){
+                                        writeString(JSR310Utils.zonedDateTimeToValue(((Date) value).toLocalDate().atStartOfDay(ZoneId.systemDefault())).getISOString(), bufferManager);
+                                    }
+                                    else {
+                                        throw new RuntimeException(
+                                                "Cannot handle type " + value.getClass().getName()+ " with "
+                                                        + ColumnType.names[column.type]);
+                                    }
+                                    break;
+                                default:
                                     throw new RuntimeException(
                                             "Cannot handle type " + value.getClass().getName()+ " with "
                                                     + ColumnType.names[column.type]);
-                                }
-                                break;
-                            default:
-                                throw new RuntimeException(
-                                        "Cannot handle type " + value.getClass().getName()+ " with "
-                                                + ColumnType.names[column.type]);
+                            }
                         }
+                        break;
+                    } catch (BufferOverflowException ex) {
+                        // Not enough cache, increase it
+                        bufferManager = ByteBuffer.allocate(bufferManager.capacity() * 2);
+                        bufferManager.order(ByteOrder.LITTLE_ENDIAN);
                     }
-                    break;
-                } catch (BufferOverflowException ex) {
-                    // Not enough cache, increase it
-                    bufferManager = ByteBuffer.allocate(bufferManager.capacity() * 2);
-                    bufferManager.order(ByteOrder.LITTLE_ENDIAN);
                 }
-            }
 
-            int propertiesOffset = 0;
-            if (bufferManager.position() > 0) {
-                bufferManager.flip();
-                propertiesOffset = Feature.createPropertiesVector(bufferBuilder, bufferManager);
-                bufferManager.clear();
-            }
+                int propertiesOffset = 0;
+                if (bufferManager.position() > 0) {
+                    bufferManager.flip();
+                    propertiesOffset = Feature.createPropertiesVector(bufferBuilder, bufferManager);
+                    bufferManager.clear();
+                }
 
-            //Let's serialize the geometry
-            int geometryOffset = 0;
-            Geometry geom = (Geometry) rs.getObject(geometryColumn);
-            if (geom != null) {
-                geometryOffset = GeometryConversions.serialize(bufferBuilder, geom, header.geometryType);
+                //Let's serialize the geometry
+                int geometryOffset = 0;
+                Geometry geom = (Geometry) rs.getObject(geometryColumn);
+                if (geom != null) {
+                    geometryOffset = GeometryConversions.serialize(bufferBuilder, geom, header.geometryType);
+                }
+                int featureOffset = Feature.createFeature(bufferBuilder, geometryOffset, propertiesOffset, 0);
+                bufferBuilder.finishSizePrefixed(featureOffset);
+                byte[] featureData = bufferBuilder.sizedByteArray();
+                bufferBuilder.clear();
+                Envelope geomEnvelope = geom != null && !geom.isEmpty() ? geom.getEnvelopeInternal() : null;
+                if (sorter != null) {
+                    // The features are written once all of them are sorted
+                    sorter.add(geomEnvelope, featureData);
+                } else {
+                    addIndexItem(envelopes, geomEnvelope, featureAddressPointer);
+                    featureAddressPointer += featureData.length;
+                    outputStream.write(featureData);
+                }
+                copyProgress.endStep();
             }
-            int featureOffset = Feature.createFeature(bufferBuilder, geometryOffset, propertiesOffset, 0);
-            if (envelopes != null) {
-                PackedRTree.FeatureItem featureItem = new PackedRTree.FeatureItem();
-                Envelope geomEnvelope;
-                if(geom != null && !geom.isEmpty()) {
-                    geomEnvelope = geom.getEnvelopeInternal();
-                }  else {
-                    geomEnvelope = new Envelope(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
-                            Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+            if (sorter != null) {
+                HilbertSorter.SortedRecords features = sorter.sort();
+                while (features.next()) {
+                    byte[] featureData = features.getPayload();
+                    addIndexItem(envelopes, features.getEnvelope(), featureAddressPointer);
+                    featureAddressPointer += featureData.length;
+                    outputStream.write(featureData);
                 }
-                featureItem.nodeItem = new NodeItem(geomEnvelope.getMinX(), geomEnvelope.getMinY(),
-                        geomEnvelope.getMaxX(), geomEnvelope.getMaxY(), featureAddressPointer);
-                envelopes.add(featureItem);
             }
-            bufferBuilder.finishSizePrefixed(featureOffset);
-            byte[] featureData = bufferBuilder.sizedByteArray();
-            featureAddressPointer += featureData.length;
-            outputStream.write(featureData);
-            bufferBuilder.clear();
-            copyProgress.endStep();
+        } finally {
+            if (sorter != null) {
+                sorter.close();
+            }
         }
         if(envelopes != null) {
             // Write spatial index after the header and before the first feature
@@ -350,6 +390,26 @@ public class FGBWriteDriver {
         return "";
     }
 
+    /**
+     * Add the spatial index item of a feature
+     * @param envelopes Spatial index items, null if the index is not created
+     * @param geomEnvelope Envelope of the feature, null if the feature has no geometry
+     * @param featureAddress Position of the feature after the spatial index
+     */
+    private static void addIndexItem(List<PackedRTree.Item> envelopes, Envelope geomEnvelope, long featureAddress) {
+        if (envelopes == null) {
+            return;
+        }
+        if (geomEnvelope == null) {
+            geomEnvelope = new Envelope(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY,
+                    Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+        PackedRTree.FeatureItem featureItem = new PackedRTree.FeatureItem();
+        featureItem.nodeItem = new NodeItem(geomEnvelope.getMinX(), geomEnvelope.getMinY(),
+                geomEnvelope.getMaxX(), geomEnvelope.getMaxY(), featureAddress);
+        envelopes.add(featureItem);
+    }
+
     /**
      * Write the header
      *
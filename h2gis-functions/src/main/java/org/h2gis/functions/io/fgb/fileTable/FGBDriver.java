@@ -41,9 +41,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.NavigableMap;
 import java.util.NoSuchElementException;
@@ -71,6 +75,16 @@ public class FGBDriver implements FileDriver {
      */
     private long featuresOffset;
 
+    /**
+     * Size in bytes of the packed R-tree, 0 if the file does not contain a spatial index
+     */
+    private long treeSize;
+
+    /**
+     * Read only memory mapping of the packed R-tree, lazily created on the first spatial query
+     */
+    private ByteBuffer treeBuffer;
+
     private NavigableMap<Integer, Long> rowIndexToFileLocation;
 
     /**
@@ -84,7 +98,7 @@ public class FGBDriver implements FileDriver {
         this.fileChannel = fis.getChannel();
         headerMeta = HeaderMeta.read(fis);
         fieldCount = headerMeta.columns.size() + 1;
-        long treeSize =
+        treeSize =
                 headerMeta.featuresCount > 0 && headerMeta.indexNodeSize > 0
                         ?
                         PackedRTree.calcSize(
@@ -134,16 +148,114 @@ public class FGBDriver implements FileDriver {
 
     @Override
     public void close() throws IOException {
+        releaseSpatialIndex();
         if (fis != null) fis.close();
     }
 
+    /**
+     * Release the mapping of the packed R-tree. The mapping is created again by the next spatial query.
+     */
+    public synchronized void releaseSpatialIndex() {
+        treeBuffer = null;
+    }
+
     public Cursor queryIndex(Envelope queryEnvelope) throws IOException {
-        fileChannel.position(headerMeta.offset);
-        PackedRTree.SearchResult searchResult = PackedRTree.search(fis, 0, (int)headerMeta.featuresCount,
-                headerMeta.indexNodeSize, queryEnvelope);
+        PackedRTree.SearchResult searchResult = new PackedRTree.SearchResult();
+        searchResult.hits = searchIndex(queryEnvelope);
         return new FGBDriverCursor(searchResult, this);
     }
 
+    /**
+     * @return True if the file contains a packed R-tree
+     */
+    public boolean hasSpatialIndex() {
+        return treeSize > 0;
+    }
+
+    /**
+     * @return The extent of the features stored in the file, read from the header or from the root node of the
+     * spatial index. Null if unknown.
+     */
+    public Envelope getExtent() throws IOException {
+        if(headerMeta.envelope != null && !headerMeta.envelope.isNull()) {
+            return headerMeta.envelope;
+        }
+        if(hasSpatialIndex()) {
+            ByteBuffer tree = getTreeBuffer();
+            if(tree != null) {
+                return new Envelope(tree.getDouble(0), tree.getDouble(16), tree.getDouble(8), tree.getDouble(24));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Query the packed R-tree of the file.
+     * If the tree is smaller than 2GB it is memory mapped and the search does not issue any read system call, else
+     * the tree is streamed from the file.
+     * @param queryEnvelope Search envelope
+     * @return Features whose envelope intersects the query envelope, sorted by feature address in order to read the
+     * features sequentially
+     */
+    public ArrayList<PackedRTree.SearchHit> searchIndex(Envelope queryEnvelope) throws IOException {
+        if(!hasSpatialIndex()) {
+            throw new IOException("The FlatGeobuf file does not contain a spatial index");
+        }
+        ArrayList<PackedRTree.SearchHit> hits;
+        ByteBuffer tree = getTreeBuffer();
+        if(tree != null) {
+            hits = PackedRTree.search(tree, 0, (int) headerMeta.featuresCount, headerMeta.indexNodeSize,
+                    queryEnvelope);
+        } else {
+            synchronized (this) {
+                fileChannel.position(headerMeta.offset);
+                hits = PackedRTree.search(fis, 0, (int) headerMeta.featuresCount, headerMeta.indexNodeSize,
+                        queryEnvelope).hits;
+            }
+        }
+        hits.sort(Comparator.comparingLong(hit -> hit.offset));
+        return hits;
+    }
+
+    /**
+     * @return Little endian view of the packed R-tree, null if the tree can not be mapped
+     */
+    private synchronized ByteBuffer getTreeBuffer() throws IOException {
+        if(treeBuffer == null && treeSize > 0 && treeSize <= Integer.MAX_VALUE) {
+            MappedByteBuffer mappedByteBuffer = fileChannel.map(FileChannel.MapMode.READ_ONLY, headerMeta.offset,
+                    treeSize);
+            treeBuffer = mappedByteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return treeBuffer == null ? null : treeBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Read a feature without moving the position of the file channel, this method can be called by concurrent
+     * threads.
+     * @param featureAddress Feature address in the file relative to the first feature
+     * @return values from the a flatgeobuffer feature
+     */
+    public Value[] readFeature(long featureAddress) throws IOException {
+        long position = featuresOffset + featureAddress;
+        ByteBuffer sizeBuffer = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(sizeBuffer, position);
+        int featureSize = sizeBuffer.getInt(0);
+        ByteBuffer bb = ByteBuffer.allocate(featureSize);
+        readFully(bb, position + Integer.BYTES);
+        bb.flip();
+        return getFieldsFromFeature(Feature.getRootAsFeature(bb), headerMeta, geometryFieldIndex);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of FlatGeobuf file");
+            }
+            position += read;
+        }
+    }
+
     /**
      * Using the Spatial index it is possible to quickly cache the file address of all features.
      * Using this function before doing a random access should reduce the access time.
@@ -170,7 +282,6 @@ public class FGBDriver implements FileDriver {
      */
     public static Value[] getFieldsFromFileLocation(FileChannel fileChannel, long featureAddress, long featuresOffset,
                                                     HeaderMeta headerMeta, int geometryFieldIndex) throws IOException {
-        Value[] values = new Value[headerMeta.columns.size()+1];
         fileChannel.position(featuresOffset + featureAddress);
         // Read the current row from the input stream
         LittleEndianDataInputStream data = new LittleEndianDataInputStream(Channels.newInputStream(fileChannel));
@@ -178,7 +289,16 @@ public class FGBDriver implements FileDriver {
         byte[] bytes = new byte[featureSize];
         data.readFully(bytes);
         ByteBuffer bb = ByteBuffer.wrap(bytes);
-        Feature feature = Feature.getRootAsFeature(bb);
+        return getFieldsFromFeature(Feature.getRootAsFeature(bb), headerMeta, geometryFieldIndex);
+    }
+
+    /**
+     * @param feature Flatgeobuffer feature
+     * @return values from the a flatgeobuffer feature
+     */
+    private static Value[] getFieldsFromFeature(Feature feature, HeaderMeta headerMeta,
+                                                int geometryFieldIndex) throws IOException {
+        Value[] values = new Value[headerMeta.columns.size()+1];
         Geometry geometry = feature.geometry();
         byte geometryType = headerMeta.geometryType;
         if (geometry != null) {
@@ -341,9 +461,7 @@ public class FGBDriver implements FileDriver {
 
         private boolean fetchRow() {
             try {
-                Value[] values = FGBDriver.getFieldsFromFileLocation(fgbDriver.fileChannel,
-                        searchResult.hits.get(position).offset, fgbDriver.getFeaturesOffset(), fgbDriver.getHeader(),
-                        fgbDriver.getGeometryFieldIndex());
+                Value[] values = fgbDriver.readFeature(searchResult.hits.get(position).offset);
                 currentRow = new DefaultRow(values);
             } catch (IOException ex) {
                 LOGGER.warn("Issue when fetching record", ex);
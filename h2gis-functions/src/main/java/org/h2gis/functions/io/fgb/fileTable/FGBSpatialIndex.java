@@ -0,0 +1,188 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.functions.io.fgb.fileTable;
+
+import org.h2.api.ErrorCode;
+import org.h2.engine.Constants;
+import org.h2.engine.SessionLocal;
+import org.h2.index.Cursor;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.value.Value;
+import org.h2.value.ValueBigint;
+import org.h2.value.ValueNull;
+import org.h2gis.functions.io.file_table.FileSpatialIndex;
+import org.locationtech.jts.geom.Envelope;
+import org.wololo.flatgeobuf.PackedRTree;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Spatial index of a linked FlatGeobuf table, backed by the packed R-tree stored in the file.
+ * H2 use this index when the query contains a {@code &&} condition on the geometry column, only the features
+ * hit by the R-tree are read from the file.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class FGBSpatialIndex extends FileSpatialIndex {
+    private final FGBDriver driver;
+
+    /**
+     * Constructor
+     * @param driver Linked file driver
+     * @param table Linked table
+     * @param id Index identifier
+     * @param indexName Unique index name
+     * @param indexColumn Geometry column
+     */
+    public FGBSpatialIndex(FGBDriver driver, Table table, int id, String indexName, IndexColumn indexColumn) {
+        super(table, id, indexName, indexColumn);
+        this.driver = driver;
+    }
+
+    @Override
+    public void close(SessionLocal session) {
+        driver.releaseSpatialIndex();
+    }
+
+    @Override
+    public void remove(SessionLocal session) {
+        driver.releaseSpatialIndex();
+    }
+
+    @Override
+    protected Cursor findByEnvelope(SessionLocal session, Envelope envelope) {
+        try {
+            return new FGBIndexCursor(driver, driver.searchIndex(envelope));
+        } catch (IOException ex) {
+            throw DbException.get(ErrorCode.IO_EXCEPTION_1, ex);
+        }
+    }
+
+    @Override
+    protected double getSpatialCost(Envelope queryEnvelope) {
+        long rowCount = driver.getRowCount() + Constants.COST_ROW_OFFSET;
+        double selectivity = queryEnvelope == null ? 0.25 : estimateSelectivity(queryEnvelope);
+        // Cost of the tree traversal plus the cost of reading the hit features
+        double treeDepth = Math.log(rowCount) / Math.log(Math.max(2, driver.getHeader().indexNodeSize));
+        return 10 * (2 + treeDepth + rowCount * selectivity);
+    }
+
+    /**
+     * @param queryEnvelope Query envelope
+     * @return Estimated fraction of the features hit by the query envelope
+     */
+    private double estimateSelectivity(Envelope queryEnvelope) {
+        Envelope extent;
+        try {
+            extent = driver.getExtent();
+        } catch (IOException ex) {
+            return 0.25;
+        }
+        if (extent == null) {
+            return 0.25;
+        }
+        if (!extent.intersects(queryEnvelope)) {
+            return 0;
+        }
+        Envelope intersection = extent.intersection(queryEnvelope);
+        double ratioX = extent.getWidth() > 0 ? intersection.getWidth() / extent.getWidth() : 1;
+        double ratioY = extent.getHeight() > 0 ? intersection.getHeight() / extent.getHeight() : 1;
+        return Math.max(ratioX * ratioY, 1.0 / Math.max(1, driver.getRowCount()));
+    }
+
+    @Override
+    public long getRowCount(SessionLocal session) {
+        return driver.getRowCount();
+    }
+
+    @Override
+    public long getRowCountApproximation(SessionLocal session) {
+        return driver.getRowCount();
+    }
+
+    /**
+     * Iterate over the features hit by the packed R-tree
+     */
+    private static class FGBIndexCursor implements Cursor {
+        private final FGBDriver driver;
+        private final List<PackedRTree.SearchHit> hits;
+        private int position = -1;
+        private Row currentRow;
+
+        FGBIndexCursor(FGBDriver driver, List<PackedRTree.SearchHit> hits) {
+            this.driver = driver;
+            this.hits = hits;
+        }
+
+        @Override
+        public Row get() {
+            if (currentRow == null && position >= 0 && position < hits.size()) {
+                PackedRTree.SearchHit hit = hits.get(position);
+                try {
+                    Value[] fields = driver.readFeature(hit.offset);
+                    Value[] values = new Value[fields.length + 1];
+                    // Primary key is the 1 based feature index
+                    values[0] = ValueBigint.get(hit.index + 1);
+                    for (int i = 0; i < fields.length; i++) {
+                        values[i + 1] = fields[i] == null ? ValueNull.INSTANCE : fields[i];
+                    }
+                    currentRow = Row.get(values, Row.MEMORY_CALCULATE);
+                    currentRow.setKey(hit.index + 1);
+                } catch (IOException ex) {
+                    throw DbException.get(ErrorCode.IO_EXCEPTION_1, ex);
+                }
+            }
+            return currentRow;
+        }
+
+        @Override
+        public SearchRow getSearchRow() {
+            return get();
+        }
+
+        @Override
+        public boolean next() {
+            currentRow = null;
+            if (position < hits.size() - 1) {
+                position++;
+                return true;
+            }
+            position = hits.size();
+            return false;
+        }
+
+        @Override
+        public boolean previous() {
+            currentRow = null;
+            if (position > 0) {
+                position--;
+                return true;
+            }
+            position = -1;
+            return false;
+        }
+    }
+}
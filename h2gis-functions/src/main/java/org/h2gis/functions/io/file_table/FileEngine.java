@@ -69,6 +69,7 @@ public abstract class FileEngine<Driver extends FileDriver> implements TableEngi
             }
             H2MVTable table = new H2MVTable(driver, data);
             table.init(data.session);
+            addDriverIndexes(driver, table, data);
             return table;
         } catch (IOException ex) {
             throw DbException.get(ErrorCode.IO_EXCEPTION_1,ex);
@@ -115,4 +116,14 @@ public abstract class FileEngine<Driver extends FileDriver> implements TableEngi
      * @param data Data to initialise
      */
     protected abstract void feedCreateTableData(Driver driver,CreateTableData data) throws IOException;
+
+    /**
+     * Add the indexes provided by the file format (ex: spatial index stored in the file) to the table.
+     * @param driver driver object
+     * @param table Linked table
+     * @param data Table creation data
+     */
+    protected void addDriverIndexes(Driver driver, H2MVTable table, CreateTableData data) throws IOException {
+        // No index stored in the file by default
+    }
 }
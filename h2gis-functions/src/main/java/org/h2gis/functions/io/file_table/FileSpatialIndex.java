@@ -0,0 +1,250 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.file_table;
+
+import org.h2.api.ErrorCode;
+import org.h2.command.query.AllColumnsForPlan;
+import org.h2.engine.SessionLocal;
+import org.h2.expression.Expression;
+import org.h2.expression.ExpressionColumn;
+import org.h2.expression.ExpressionVisitor;
+import org.h2.expression.condition.Comparison;
+import org.h2.expression.condition.ConditionAndOr;
+import org.h2.expression.condition.ConditionAndOrN;
+import org.h2.index.Cursor;
+import org.h2.index.Index;
+import org.h2.index.IndexCondition;
+import org.h2.index.IndexType;
+import org.h2.index.SpatialIndex;
+import org.h2.message.DbException;
+import org.h2.result.Row;
+import org.h2.result.SearchRow;
+import org.h2.result.SortOrder;
+import org.h2.table.Column;
+import org.h2.table.IndexColumn;
+import org.h2.table.Table;
+import org.h2.table.TableFilter;
+import org.h2.value.Value;
+import org.h2.value.ValueNull;
+import org.locationtech.jts.geom.Envelope;
+
+import java.lang.reflect.Field;
+import java.util.HashSet;
+
+/**
+ * Read only spatial index of a linked file. H2 use this index when the query contains a {@code &&} condition on
+ * the geometry column, the implementation reads only the rows that may intersect the envelope of the condition.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public abstract class FileSpatialIndex extends Index implements SpatialIndex {
+    /**
+     * Comparison type field, H2 does not expose it. Null if it can not be read, the default selectivity is then used.
+     */
+    private static final Field COMPARE_TYPE = getCompareTypeField();
+
+    /**
+     * Constructor
+     * @param table Linked table
+     * @param id Index identifier
+     * @param indexName Unique index name
+     * @param indexColumn Geometry column
+     */
+    protected FileSpatialIndex(Table table, int id, String indexName, IndexColumn indexColumn) {
+        super(table, id, indexName, new IndexColumn[]{indexColumn}, 0, IndexType.createNonUnique(true, false, true));
+    }
+
+    /**
+     * @param session Session
+     * @param envelope Envelope of the {@code &&} condition
+     * @return Cursor over the rows that may intersect the envelope
+     */
+    protected abstract Cursor findByEnvelope(SessionLocal session, Envelope envelope);
+
+    /**
+     * @param queryEnvelope Envelope of the {@code &&} condition, null if it can not be evaluated at planning time
+     * @return Estimated cost of the spatial query
+     */
+    protected abstract double getSpatialCost(Envelope queryEnvelope);
+
+    @Override
+    public void checkRename() {
+        // Nothing to check
+    }
+
+    @Override
+    public void close(SessionLocal session) {
+        // The driver is closed by the table
+    }
+
+    @Override
+    public void add(SessionLocal session, Row row) {
+        throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1, "add in file");
+    }
+
+    @Override
+    public void remove(SessionLocal session, Row row) {
+        throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1, "remove in file");
+    }
+
+    @Override
+    public Cursor find(SessionLocal session, SearchRow first, SearchRow last, boolean reverse) {
+        return table.getScanIndex(session).find(session, first, last, reverse);
+    }
+
+    @Override
+    public Cursor findByGeometry(SessionLocal session, SearchRow first, SearchRow last, boolean reverse,
+                                 SearchRow intersection) {
+        Envelope envelope = intersection == null ? null : getEnvelope(intersection.getValue(columnIds[0]));
+        if (envelope == null) {
+            return find(session, first, last, reverse);
+        }
+        return findByEnvelope(session, envelope);
+    }
+
+    @Override
+    public double getCost(SessionLocal session, int[] masks, TableFilter[] filters, int filter,
+                          SortOrder sortOrder, AllColumnsForPlan allColumnsSet, boolean isSelectCommand) {
+        // Never use spatial tree index without spatial filter
+        if (masks == null || (masks[columnIds[0]] & IndexCondition.SPATIAL_INTERSECTS) !=
+                IndexCondition.SPATIAL_INTERSECTS) {
+            return Long.MAX_VALUE;
+        }
+        Envelope queryEnvelope = null;
+        if (filters != null) {
+            queryEnvelope = getConstantQueryEnvelope(session, filters[filter]);
+        }
+        return getSpatialCost(queryEnvelope);
+    }
+
+    /**
+     * Evaluate the {@code &&} condition on the geometry column if it does not depend on any other column
+     * @param session Session
+     * @param tableFilter Table filter of this table
+     * @return Envelope of the condition or null if the condition can not be evaluated at planning time
+     */
+    private Envelope getConstantQueryEnvelope(SessionLocal session, TableFilter tableFilter) {
+        if (tableFilter == null || tableFilter.getSelect() == null) {
+            return null;
+        }
+        return findQueryEnvelope(session, tableFilter, tableFilter.getSelect().getCondition());
+    }
+
+    private Envelope findQueryEnvelope(SessionLocal session, TableFilter tableFilter, Expression condition) {
+        if (condition == null) {
+            return null;
+        }
+        if (condition instanceof ConditionAndOr || condition instanceof ConditionAndOrN) {
+            for (int i = 0; i < condition.getSubexpressionCount(); i++) {
+                Envelope envelope = findQueryEnvelope(session, tableFilter, condition.getSubexpression(i));
+                if (envelope != null) {
+                    return envelope;
+                }
+            }
+        } else if (condition instanceof Comparison && condition.getSubexpressionCount() == 2 &&
+                getCompareType((Comparison) condition) == Comparison.SPATIAL_INTERSECTS) {
+            for (int i = 0; i < 2; i++) {
+                Expression side = condition.getSubexpression(i);
+                if (side instanceof ExpressionColumn && ((ExpressionColumn) side).getTableFilter() == tableFilter &&
+                        columns[0].equals(((ExpressionColumn) side).getColumn())) {
+                    return evaluateEnvelope(session, condition.getSubexpression(1 - i));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Field getCompareTypeField() {
+        try {
+            Field field = Comparison.class.getDeclaredField("compareType");
+            field.setAccessible(true);
+            return field;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @param comparison Comparison condition
+     * @return Comparison type, one of the {@link Comparison} constants, -1 if unknown
+     */
+    private static int getCompareType(Comparison comparison) {
+        if (COMPARE_TYPE == null) {
+            return -1;
+        }
+        try {
+            return COMPARE_TYPE.getInt(comparison);
+        } catch (IllegalAccessException ex) {
+            return -1;
+        }
+    }
+
+    private static Envelope evaluateEnvelope(SessionLocal session, Expression expression) {
+        if (!expression.isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)) {
+            return null;
+        }
+        HashSet<Column> usedColumns = new HashSet<>();
+        expression.isEverything(ExpressionVisitor.getColumnsVisitor(usedColumns, null));
+        if (!usedColumns.isEmpty()) {
+            return null;
+        }
+        try {
+            return getEnvelope(expression.getValue(session));
+        } catch (DbException ex) {
+            // Unbound parameter or evaluation issue, fall back to the default selectivity
+            return null;
+        }
+    }
+
+    /**
+     * @param value Geometry value
+     * @return Envelope of the geometry, null if the value is null or empty
+     */
+    protected static Envelope getEnvelope(Value value) {
+        double[] env;
+        if (value == null || value == ValueNull.INSTANCE ||
+                (env = value.convertToGeometry(null).getEnvelopeNoCopy()) == null) {
+            return null;
+        }
+        return new Envelope(env[0], env[1], env[2], env[3]);
+    }
+
+    @Override
+    public void remove(SessionLocal session) {
+        // The index belongs to the file, nothing to remove
+    }
+
+    @Override
+    public void truncate(SessionLocal session) {
+        throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1, "truncate in file");
+    }
+
+    @Override
+    public boolean needRebuild() {
+        return false;
+    }
+
+    @Override
+    public long getDiskSpaceUsed(boolean approximate) {
+        return 0;
+    }
+}
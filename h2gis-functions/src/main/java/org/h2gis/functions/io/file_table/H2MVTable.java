@@ -60,6 +60,10 @@ public class H2MVTable extends MVTable {
     private FileDriver driver;
     private static final Logger LOG = LoggerFactory.getLogger(H2MVTable.class);
     private final ArrayList<Index> indexes = new ArrayList<>();
+    /**
+     * Number of indexes provided by the file itself (scan, primary key, file spatial index..)
+     */
+    private int driverIndexCount = 2;
     private Column rowIdColumn;
 
     public H2MVTable(FileDriver driver, CreateTableData data) {
@@ -82,6 +86,15 @@ public class H2MVTable extends MVTable {
         indexes.add(0, new H2TableIndex(driver,this,this.getId(), indexColumn));
     }
 
+    /**
+     * Add an index backed by the file structure. This index is not stored in the database schema and is kept when
+     * the user indexes are removed.
+     * @param index Index instance
+     */
+    public void addDriverIndex(Index index) {
+        indexes.add(driverIndexCount++, index);
+    }
+
     @Override
     public boolean lock(SessionLocal session, int lockType) {
         return false;
@@ -185,14 +198,19 @@ public class H2MVTable extends MVTable {
 
     @Override
     public void removeChildrenAndResources(SessionLocal session) {
-        while (indexes.size() > 2) {
-            Index index = indexes.get(2);
+        while (indexes.size() > driverIndexCount) {
+            Index index = indexes.get(driverIndexCount);
             index.remove(session);
             if (index.getName() != null) {
                 database.removeSchemaObject(session, index);
             }
             indexes.remove(index);
         }
+        for (Index index : indexes) {
+            if (index instanceof FileSpatialIndex) {
+                index.remove(session);
+            }
+        }
         super.removeChildrenAndResources(session);
     }
 
@@ -87,7 +87,7 @@ public class GJGeometryReader {
      * @param geometryType  geometry type
      * @return Geometry
      */
-    private Geometry parseGeometry(JsonParser jp, String geometryType) throws IOException, SQLException {
+    Geometry parseGeometry(JsonParser jp, String geometryType) throws IOException, SQLException {
         if (geometryType.equalsIgnoreCase(GeoJsonField.POINT)) {
             return parsePoint(jp);
         } else if (geometryType.equalsIgnoreCase(GeoJsonField.MULTIPOINT)) {
@@ -379,8 +379,13 @@ public class GJGeometryReader {
             coord = new Coordinate(x, y);
         } else {
             double z = jp.getDoubleValue();
-            jp.nextToken(); // exit array
-            coord = new Coordinate(x, y, z);
+            jp.nextToken(); // exit array or M value
+            if (jp.getCurrentToken() == JsonToken.END_ARRAY) {
+                coord = new Coordinate(x, y, z);
+            } else {
+                coord = new CoordinateXYZM(x, y, z, jp.getDoubleValue());
+                jp.nextToken(); // exit array
+            }
         }
         jp.nextToken();
         return coord;
@@ -28,6 +28,8 @@ import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import org.h2gis.functions.io.DriverManager;
+import org.h2gis.utilities.FileUtilities;
+import org.h2gis.utilities.KeyValueOptions;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
 
@@ -47,18 +49,22 @@ public class GeoJsonDriverFunction implements DriverFunction {
 
     @Override
     public String[] getImportFormats() {
-        return new String[]{"json", "geojson", "geojson.gz"};
+        return new String[]{"json", "geojson", "geojson.gz", "geojsonl", "geojsons"};
     }
 
     @Override
     public String[] getExportFormats() {
-        return new String[]{"json", "geojson", "geojson.gz"};
+        return new String[]{"json", "geojson", "geojson.gz", "geojsonl", "geojsons"};
     }
 
     @Override
     public String getFormatDescription(String format) {
         if (format.equalsIgnoreCase("geojson")) {
             return "GeoJSON 1.0";
+        } else if (format.equalsIgnoreCase("geojsonl")) {
+            return "Newline delimited GeoJSON";
+        } else if (format.equalsIgnoreCase("geojsons")) {
+            return "GeoJSON text sequence";
         } else {
             return "";
         }
@@ -66,7 +72,7 @@ public class GeoJsonDriverFunction implements DriverFunction {
 
     @Override
     public boolean isSpatialFormat(String extension) {
-        return extension.equals("geojson");
+        return extension.equals("geojson") || extension.equals("geojsonl") || extension.equals("geojsons");
     }
 
     @Override
@@ -83,6 +89,18 @@ public class GeoJsonDriverFunction implements DriverFunction {
     public String[] exportTable(Connection connection, String tableReference, File fileName, String encoding, boolean deleteFiles, ProgressVisitor progress) throws SQLException {
         progress  = DriverManager.check(connection, tableReference, fileName, progress);
         GeoJsonWriteDriver geoJsonDriver = new GeoJsonWriteDriver(connection);
+        // The options are the encoding or key=value pairs
+        if (KeyValueOptions.isKeyValue(encoding)) {
+            KeyValueOptions exportOptions = KeyValueOptions.parse(encoding, "encoding", "charset", "spatialSort",
+                    "sortMemory");
+            encoding = exportOptions.getString("encoding", exportOptions.getString("charset", null));
+            geoJsonDriver.setSpatialSort(exportOptions.getBoolean("spatialSort", false));
+            geoJsonDriver.setSortMemory(exportOptions.getLong("sortMemory", geoJsonDriver.getSortMemory()));
+            if (geoJsonDriver.isSpatialSort() && !FileUtilities.isExtensionWellFormated(fileName, "geojsonl")
+                    && !FileUtilities.isExtensionWellFormated(fileName, "geojsons")) {
+                throw new SQLException("The spatial sort is only supported by the .geojsonl and .geojsons files");
+            }
+        }
         try {
             geoJsonDriver.write(progress, tableReference, fileName, encoding, deleteFiles);
             return new String[]{fileName.getAbsolutePath()};
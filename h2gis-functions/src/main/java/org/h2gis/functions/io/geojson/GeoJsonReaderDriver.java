@@ -26,6 +26,9 @@ import com.fasterxml.jackson.core.JsonToken;
 import org.h2.util.geometry.JTSUtils;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.spatial.convert.ST_Force3D;
+import org.h2gis.functions.spatial.convert.ST_Force4D;
+import org.h2gis.utilities.GeometryMetaData;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.dbtypes.DBTypes;
@@ -36,8 +39,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
 import java.util.*;
+import java.util.stream.IntStream;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -45,10 +51,11 @@ import java.util.zip.GZIPInputStream;
  *
  * Supported geometries are POINT, LINESTRING, POLYGON and GEOMETRYCOLLECTION.
  *
- * The driver requires all Feature objects in a collection to have the same
- * schema of properties. To build the table schema the first feature of the
- * FeatureCollection is parsed. If the GeoJSON format does not contain any
- * properties, a default primary key is added.
+ * The table schema is built from the properties and the geometries of the
+ * features. A FeatureCollection is read in a single pass : the table is created
+ * from the first features, then a column is added or widened when a feature
+ * does not match the table. The geometry column accepts all the geometries when
+ * a new geometry type or dimension is found after the table creation.
  *
  * @author Erwan Bocher
  * @author Hai Trung Pham
@@ -76,11 +83,31 @@ public class GeoJsonReaderDriver {
     private LinkedHashMap<String, Integer> cachedColumnIndex;
     private static final int BATCH_MAX_SIZE = 100;
 
-    private Set finalGeometryTypes;
+    private Set<String> finalGeometryTypes;
     private JsonEncoding jsonEncoding;
 
     private int coordinateDimension = 2;
 
+    /**
+     * Number of features read to create the table in the single pass import
+     */
+    private static final int SAMPLE_SIZE = 1000;
+    /**
+     * Number of features parsed before their geometries are encoded and inserted in the single pass import
+     */
+    private static final int STREAM_BATCH_SIZE = 1000;
+    /**
+     * Minimal size in bytes of the ranges of a GeoJSON text sequence parsed in parallel
+     */
+    private static final long SEQ_CHUNK_SIZE = 1 << 23;
+    private boolean singlePass = true;
+    private boolean streaming = false;
+    // Columns of the table, used to alter the table in the single pass import
+    private Map<String, String> tableColumnTypes;
+    private String tableGeometryType;
+    private int tableDimension;
+    private boolean schemaChanged = false;
+
     /**
      * Driver to import a GeoJSON file into a spatial table.
      *
@@ -96,6 +123,17 @@ public class GeoJsonReaderDriver {
         this.deleteTable = deleteTable;
     }
 
+    /**
+     * Read a FeatureCollection in a single pass, the table is created from the first features and altered
+     * when a feature does not match it. Otherwise the file is read twice, the first time to collect the
+     * properties and geometry types of all the features.
+     *
+     * @param singlePass true (default) to read a FeatureCollection in a single pass
+     */
+    public void setSinglePass(boolean singlePass) {
+        this.singlePass = singlePass;
+    }
+
     /**
      * Read the GeoJSON file.
      *
@@ -117,7 +155,25 @@ public class GeoJsonReaderDriver {
                 stmt.close();
             }
             if (fileName.length() > 0) {
-                parseGeoJson(progress);
+                parseGeoJson(progress, false);
+                return tableLocation;
+            } else {
+                JDBCUtilities.createEmptyTable(connection, tableLocation);
+                return tableLocation;
+            }
+        } else if (fileName != null && (fileNameLower.endsWith(".geojsonl") || fileNameLower.endsWith(".geojsons"))) {
+            if (!fileName.exists()) {
+                throw new SQLException("The file " + fileName + " doesn't exist ");
+            }
+            this.dbType = DBUtils.getDBType(connection);
+            this.tableLocation = TableLocation.parse(tableReference, dbType).toString();
+            if (deleteTable) {
+                Statement stmt = connection.createStatement();
+                stmt.execute("DROP TABLE IF EXISTS " + tableLocation);
+                stmt.close();
+            }
+            if (fileName.length() > 0) {
+                parseGeoJsonSeq(progress);
                 return tableLocation;
             } else {
                 JDBCUtilities.createEmptyTable(connection, tableLocation);
@@ -137,25 +193,14 @@ public class GeoJsonReaderDriver {
             }
 
             if (fileName.length() > 0) {
-                this.progress = progress.subProcess(100);
-                init();
-                FileInputStream fis = new FileInputStream(fileName);
-                if (parseMetadata(new GZIPInputStream(fis))) {
-                    connection.setAutoCommit(false);
-                    GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
-                    fis = new FileInputStream(fileName);
-                    parseData(new GZIPInputStream(fis));
-                    connection.setAutoCommit(true);
-                    return tableLocation;
-                } else {
-                    throw new SQLException("Cannot create the table " + tableLocation + " to import the GeoJSON data");
-                }
+                parseGeoJson(progress, true);
+                return tableLocation;
             } else {
                 JDBCUtilities.createEmptyTable(connection, tableLocation);
                 return tableLocation;
             }
         } else {
-            throw new SQLException("The geojson read driver supports only geojson or gz extensions");
+            throw new SQLException("The geojson read driver supports only geojson, geojsonl, geojsons or gz extensions");
         }
     }
 
@@ -182,21 +227,446 @@ public class GeoJsonReaderDriver {
      * "features": [ ... ] }
      *
      *
+     * A FeatureCollection is read in a single pass when {@link #setSinglePass(boolean)} is true, the other
+     * documents are read twice : the first pass collects the metadata to create the table and the second one
+     * inserts the data.
+     *
      * @param progress Progress visitor following the execution.
+     * @param gzip true if the file is compressed
      */
-    private void parseGeoJson(ProgressVisitor progress) throws SQLException, IOException {
+    private void parseGeoJson(ProgressVisitor progress, boolean gzip) throws SQLException, IOException {
         this.progress = progress.subProcess(100);
         init();
-        if (parseMetadata(new FileInputStream(fileName))) {
+        if (singlePass) {
+            FileInputStream fis = new FileInputStream(fileName);
+            if (streamData(fis, gzip ? new GZIPInputStream(fis) : fis)) {
+                return;
+            }
+        }
+        if (parseMetadata(openStream(gzip))) {
             connection.setAutoCommit(false);
             GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
-            parseData(new FileInputStream(fileName));
+            parseData(openStream(gzip));
             connection.setAutoCommit(true);
         } else {
             throw new SQLException("Cannot create the table " + tableLocation + " to import the GeoJSON data");
         }
     }
 
+    /**
+     * Parses a GeoJSON text sequence (RFC 8142) or a newline delimited GeoJSON file and writes it to a table.
+     * In a text sequence each feature follows a record separator, in a newline delimited file each line contains
+     * one feature. The geometries have the SRID 4326 as the file has no crs member.
+     *
+     * The file is split at feature boundaries into ranges of {@link #SEQ_CHUNK_SIZE} bytes, the ranges are parsed
+     * in parallel then merged in the order of the file. The table is created and altered as in the single
+     * pass import of a FeatureCollection.
+     *
+     * @param progress Progress visitor following the execution.
+     */
+    private void parseGeoJsonSeq(ProgressVisitor progress) throws SQLException, IOException {
+        this.progress = progress.subProcess(100);
+        init();
+        if (jsonEncoding != JsonEncoding.UTF8) {
+            throw new SQLException("A GeoJSON text sequence must be encoded in UTF-8");
+        }
+        // A text sequence has no crs member, the coordinates are in WGS 84 (RFC 7946)
+        parsedSRID = 4326;
+        GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
+        final int srid = parsedSRID;
+        final byte delimiter = fileName.getName().toLowerCase().endsWith(".geojsons")
+                ? GeoJsonSeqChunk.RECORD_SEPARATOR : GeoJsonSeqChunk.LINE_FEED;
+        streaming = true;
+        cachedColumnNames = new LinkedHashMap<>();
+        cachedColumnIndex = new LinkedHashMap<>();
+        finalGeometryTypes = new HashSet<String>();
+        List<Object[]> rows = new ArrayList<>();
+        connection.setAutoCommit(false);
+        try (FileChannel channel = FileChannel.open(fileName.toPath(), StandardOpenOption.READ)) {
+            long[] bounds = GeoJsonSeqChunk.split(channel, SEQ_CHUNK_SIZE, delimiter);
+            int rangeCount = bounds.length - 1;
+            int waveSize = Runtime.getRuntime().availableProcessors();
+            for (int first = 0; first < rangeCount; first += waveSize) {
+                if (progress.isCanceled()) {
+                    throw new SQLException("Canceled by user");
+                }
+                GeoJsonSeqChunk[] chunks;
+                try {
+                    chunks = IntStream.range(first, Math.min(rangeCount, first + waveSize)).parallel()
+                            .mapToObj(i -> {
+                                try {
+                                    return GeoJsonSeqChunk.parse(channel, bounds[i], bounds[i + 1], delimiter,
+                                            jsFactory, dbType, srid);
+                                } catch (IOException ex) {
+                                    throw new UncheckedIOException(ex);
+                                } catch (SQLException ex) {
+                                    throw new IllegalStateException(ex);
+                                }
+                            }).toArray(GeoJsonSeqChunk[]::new);
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                } catch (IllegalStateException ex) {
+                    if (ex.getCause() instanceof SQLException) {
+                        throw (SQLException) ex.getCause();
+                    }
+                    throw ex;
+                }
+                for (int i = 0; i < chunks.length; i++) {
+                    List<Object[]> chunkRows = mergeChunk(chunks[i]);
+                    long position = bounds[first + i + 1];
+                    if (preparedStatement == null) {
+                        rows.addAll(chunkRows);
+                        if (rows.size() >= SAMPLE_SIZE) {
+                            createTable();
+                            insertRows(rows, position);
+                        }
+                    } else {
+                        if (schemaChanged) {
+                            // The pending rows match the current table
+                            insertRows(rows, position);
+                            alterTable();
+                        }
+                        rows.addAll(chunkRows);
+                        if (rows.size() >= STREAM_BATCH_SIZE) {
+                            insertRows(rows, position);
+                        }
+                    }
+                    featureCounter += chunkRows.size();
+                }
+            }
+            if (preparedStatement == null) {
+                createTable();
+            }
+            insertRows(rows, fileName.length());
+            preparedStatement.close();
+            log.debug(featureCounter - 1 + " geojson features have been imported.");
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Merges the metadata of a range of a text sequence with the collected metadata
+     *
+     * @param chunk parsed range
+     * @return the rows of the range, the values are indexed by {@link #cachedColumnIndex}
+     */
+    private List<Object[]> mergeChunk(GeoJsonSeqChunk chunk) {
+        int[] globalIndex = new int[chunk.columnTypes.size() + 1];
+        int localIndex = 1;
+        for (Map.Entry<String, Integer> column : chunk.columnTypes.entrySet()) {
+            String fieldName = column.getKey();
+            Integer index = cachedColumnIndex.get(fieldName);
+            if (index == null) {
+                index = cachedColumnIndex.size() + 1;
+                cachedColumnIndex.put(fieldName, index);
+            }
+            Integer dataType = cachedColumnNames.get(fieldName);
+            int columnType = dataType == null ? column.getValue() : mergeColumnTypes(dataType, column.getValue());
+            if (!Objects.equals(dataType, columnType)) {
+                cachedColumnNames.put(fieldName, columnType);
+                schemaChanged = true;
+            }
+            globalIndex[localIndex++] = index;
+        }
+        if (chunk.coordinateDimension > coordinateDimension) {
+            coordinateDimension = chunk.coordinateDimension;
+            schemaChanged = true;
+        }
+        if (finalGeometryTypes.addAll(chunk.geometryTypes)) {
+            schemaChanged = true;
+        }
+        hasGeometryField |= chunk.hasGeometryField;
+        int columnCount = cachedColumnIndex.size() + 1;
+        List<Object[]> rows = new ArrayList<>(chunk.rows.size());
+        for (Object[] localValues : chunk.rows) {
+            Object[] values = new Object[columnCount];
+            values[0] = localValues[0];
+            for (int i = 1; i < localValues.length; i++) {
+                values[globalIndex[i]] = localValues[i];
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    private InputStream openStream(boolean gzip) throws IOException {
+        FileInputStream fis = new FileInputStream(fileName);
+        return gzip ? new GZIPInputStream(fis) : fis;
+    }
+
+    /**
+     * Read the FeatureCollection in a single pass. The table is created from the first
+     * {@link #SAMPLE_SIZE} features, then it is altered when a new property, a wider property type, another
+     * geometry type or another coordinate dimension is found.
+     *
+     * @param fis file stream, used to follow the progression
+     * @param is  data stream
+     * @return false if the document is not a FeatureCollection, then nothing is imported
+     */
+    private boolean streamData(FileInputStream fis, InputStream is) throws IOException, SQLException {
+        try (JsonParser jp = jsFactory.createParser(new InputStreamReader(is, jsonEncoding.getJavaName()))) {
+            jp.nextToken();//START_OBJECT
+            jp.nextToken(); // field_name (type)
+            String dataType = jp.getText();
+            if (dataType.equalsIgnoreCase(GeoJsonField.TYPE)) {
+                jp.nextToken(); // value_string (FeatureCollection)
+                if (!jp.getText().equalsIgnoreCase(GeoJsonField.FEATURECOLLECTION)) {
+                    return false;
+                }
+                jp.nextToken(); // FIELD_NAME features
+            } else if (!dataType.equalsIgnoreCase(GeoJsonField.FEATURES)) {
+                throw new SQLException("Malformed GeoJSON file. Found '" + dataType + "'");
+            }
+            streamFeatures(jp, fis);
+            return true;
+        }
+    }
+
+    /**
+     * Parses and inserts the features of the featureCollection
+     *
+     * @param jp  {@link JsonParser}
+     * @param fis file stream, used to follow the progression
+     */
+    private void streamFeatures(JsonParser jp, FileInputStream fis) throws IOException, SQLException {
+        // Passes all the properties until "Feature" object is found
+        while (!jp.getText().equalsIgnoreCase(GeoJsonField.FEATURES)
+                && !jp.getText().equalsIgnoreCase(GeoJsonField.CRS)) {
+            jp.nextToken();
+            if (jp.getCurrentToken().equals(JsonToken.START_ARRAY) || jp.getCurrentToken().equals(JsonToken.START_OBJECT)) {
+                jp.skipChildren();
+            }
+            jp.nextToken();
+        }
+        if (jp.getText().equalsIgnoreCase(GeoJsonField.CRS)) {
+            parsedSRID = readCRS(jp);
+        }
+        if (!jp.getText().equalsIgnoreCase(GeoJsonField.FEATURES)) {
+            throw new SQLException("Malformed GeoJSON file. Expected 'features', found '" + jp.getText() + "'");
+        }
+        GF = new GeometryFactory(new PrecisionModel(), parsedSRID);
+        streaming = true;
+        cachedColumnNames = new LinkedHashMap<>();
+        cachedColumnIndex = new LinkedHashMap<>();
+        finalGeometryTypes = new HashSet<String>();
+        List<Object[]> rows = new ArrayList<>();
+        connection.setAutoCommit(false);
+        try {
+            jp.nextToken(); // START_ARRAY [
+            JsonToken token = jp.nextToken(); // START_OBJECT {
+            while (token != JsonToken.END_ARRAY) {
+                jp.nextToken(); // FIELD_NAME type
+                jp.nextToken(); // VALUE_STRING Feature
+                String geomType = jp.getText();
+                if (!geomType.equalsIgnoreCase(GeoJsonField.FEATURE)) {
+                    throw new SQLException("Malformed GeoJSON file. Expected 'Feature', found '" + geomType + "'");
+                }
+                if (progress.isCanceled()) {
+                    throw new SQLException("Canceled by user");
+                }
+                Object[] values = parseStreamedFeature(jp);
+                if (preparedStatement == null) {
+                    rows.add(values);
+                    if (rows.size() >= SAMPLE_SIZE) {
+                        createTable();
+                        insertRows(rows, fis.getChannel().position());
+                    }
+                } else {
+                    if (schemaChanged) {
+                        // The pending rows match the current table
+                        insertRows(rows, fis.getChannel().position());
+                        alterTable();
+                    }
+                    rows.add(values);
+                    if (rows.size() >= STREAM_BATCH_SIZE) {
+                        insertRows(rows, fis.getChannel().position());
+                    }
+                }
+                token = jp.nextToken(); //START_OBJECT new feature
+                if (token != JsonToken.START_OBJECT && token != JsonToken.END_ARRAY) {
+                    throw new SQLException("Malformed GeoJSON file. Expected 'Start Object or End array', found '" + token + "'");
+                }
+                featureCounter++;
+            }
+            //LOOP END_ARRAY ]
+            if (preparedStatement == null) {
+                createTable();
+            }
+            insertRows(rows, fis.getChannel().position());
+            preparedStatement.close();
+            log.debug(featureCounter - 1 + " geojson features have been imported.");
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Parses a feature of the single pass import and updates the metadata
+     *
+     * @param jp {@link JsonParser}
+     * @return the geometry and the property values indexed by {@link #cachedColumnIndex}, the array is shorter
+     * than the number of columns if the last properties are not in the feature
+     */
+    private Object[] parseStreamedFeature(JsonParser jp) throws IOException, SQLException {
+        Object[] values = new Object[cachedColumnIndex.size() + 1];
+        while (jp.nextToken() != JsonToken.END_OBJECT) {
+            String field = jp.getText();
+            //Avoid all token which are not 'id' 'properties', 'geometry', 'type'
+            if (!field.equalsIgnoreCase(GeoJsonField.FEATURE_ID)
+                    && !field.equalsIgnoreCase(GeoJsonField.GEOMETRY)
+                    && !field.equalsIgnoreCase(GeoJsonField.PROPERTIES)) {
+                JsonToken currentToken = jp.nextToken(); // get value
+                if (currentToken.equals(JsonToken.START_ARRAY) || currentToken.equals(JsonToken.START_OBJECT)) {
+                    jp.skipChildren();
+                }
+                continue;
+            }
+            if (field.equalsIgnoreCase(GeoJsonField.GEOMETRY)) {
+                hasGeometryField = true;
+                if (jp.nextToken() != JsonToken.VALUE_NULL) {//START_OBJECT { in case of null geometry
+                    jp.nextToken(); // FIELD_NAME type
+                    jp.nextToken(); //VALUE_STRING Point
+                    int dimension = coordinateDimension;
+                    Geometry geometry = parseGeometry(jp, jp.getText());
+                    if (addGeometryTypes(geometry, finalGeometryTypes) || dimension != coordinateDimension) {
+                        schemaChanged = true;
+                    }
+                    values[0] = geometry;
+                }
+            } else if (field.equalsIgnoreCase(GeoJsonField.PROPERTIES)) {
+                jp.nextToken();//START_OBJECT {
+                while (jp.nextToken() != JsonToken.END_OBJECT) {
+                    values = parseStreamedProperty(jp, values);
+                }
+            } else {
+                values = parseStreamedProperty(jp, values);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Collect the geometry types as {@link #parseGeometryMetadata(JsonParser, String)}
+     *
+     * @param geometry      parsed geometry
+     * @param geometryTypes geometry types
+     * @return true if a new geometry type is found
+     */
+    static boolean addGeometryTypes(Geometry geometry, Set<String> geometryTypes) {
+        String geometryType = geometry.getGeometryType().toLowerCase();
+        boolean added = geometryTypes.add(geometryType);
+        if (geometryType.equals(GeoJsonField.GEOMETRYCOLLECTION)) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                added |= addGeometryTypes(geometry.getGeometryN(i), geometryTypes);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Parses a property of the single pass import and updates the column type
+     *
+     * @param jp     {@link JsonParser}
+     * @param values values of the feature
+     * @return the values of the feature, extended if the property is a new column
+     */
+    private Object[] parseStreamedProperty(JsonParser jp, Object[] values) throws IOException {
+        String fieldName = TableLocation.capsIdentifier(jp.getText(), dbType); //FIELD_NAME columnName
+        fieldName = TableLocation.quoteIdentifier(fieldName, dbType);
+        JsonToken value = jp.nextToken();
+        Integer index = cachedColumnIndex.get(fieldName);
+        if (index == null) {
+            index = cachedColumnIndex.size() + 1;
+            cachedColumnIndex.put(fieldName, index);
+        }
+        if (index >= values.length) {
+            values = Arrays.copyOf(values, cachedColumnIndex.size() + 1);
+        }
+        Integer previousType = cachedColumnNames.get(fieldName);
+        updateColumnType(fieldName, value);
+        if (!Objects.equals(previousType, cachedColumnNames.get(fieldName))) {
+            schemaChanged = true;
+        }
+        values[index] = readValue(jp, value);
+        return values;
+    }
+
+    /**
+     * Inserts the rows of the single pass import. The geometries are encoded in parallel.
+     *
+     * @param rows     parsed features, the geometry is a JTS geometry or its EWKB. The list is cleared.
+     * @param position position in the file, used to follow the progression
+     */
+    private void insertRows(List<Object[]> rows, long position) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        final byte[][] geometries = new byte[rows.size()][];
+        final int dimension = tableDimension;
+        IntStream.range(0, rows.size()).parallel().forEach(i -> {
+            Object geometry = rows.get(i)[0];
+            if (geometry != null) {
+                byte[] ewkb = geometry instanceof Geometry ? JTSUtils.geometry2ewkb((Geometry) geometry)
+                        : (byte[]) geometry;
+                if (dimension > 2 && GeometryMetaData.getMetaData(ewkb).dimension < dimension) {
+                    // Geometry read before the first z or m value, the missing ordinates are set to 0
+                    Geometry geom = geometry instanceof Geometry ? (Geometry) geometry : JTSUtils.ewkb2geometry(ewkb);
+                    ewkb = JTSUtils.geometry2ewkb(dimension == 3 ? ST_Force3D.force3D(geom) : ST_Force4D.force4D(geom));
+                }
+                geometries[i] = ewkb;
+            }
+        });
+        int columnCount = tableColumnTypes.size();
+        for (int i = 0; i < geometries.length; i++) {
+            Object[] values = rows.get(i);
+            preparedStatement.setObject(1, geometries[i]);
+            for (int j = 1; j <= columnCount; j++) {
+                preparedStatement.setObject(j + 1, j < values.length ? values[j] : null);
+            }
+            preparedStatement.addBatch();
+        }
+        preparedStatement.executeBatch();
+        connection.commit();
+        preparedStatement.clearBatch();
+        rows.clear();
+        progress.setStep((int) (position * 100 / Math.max(1, fileName.length())));
+    }
+
+    /**
+     * Alters the table of the single pass import to match the collected metadata
+     */
+    private void alterTable() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (Map.Entry<String, Integer> column : cachedColumnNames.entrySet()) {
+                String columnType = getSQLTypeName(column.getValue());
+                String tableType = tableColumnTypes.put(column.getKey(), columnType);
+                if (tableType == null) {
+                    stmt.execute("ALTER TABLE " + tableLocation + " ADD COLUMN " + column.getKey() + " " + columnType);
+                } else if (!tableType.equals(columnType)) {
+                    stmt.execute(alterColumnType(column.getKey(), columnType));
+                }
+            }
+            if (!tableGeometryType.equalsIgnoreCase(GeoJsonField.GEOMETRY)
+                    && !tableGeometryType.equals(getGeometryColumnType())) {
+                // The geometries already inserted keep their type and dimension
+                tableGeometryType = GeoJsonField.GEOMETRY;
+                stmt.execute(alterColumnType("THE_GEOM", "GEOMETRY(GEOMETRY," + parsedSRID + ")"));
+            }
+        }
+        preparedStatement.close();
+        prepareInsert();
+        schemaChanged = false;
+    }
+
+    private String alterColumnType(String columnName, String columnType) {
+        String alter = "ALTER TABLE " + tableLocation + " ALTER COLUMN " + columnName + " SET DATA TYPE " + columnType;
+        if (dbType == DBTypes.POSTGIS || dbType == DBTypes.POSTGRESQL) {
+            alter += " USING " + columnName + "::" + columnType;
+        }
+        return alter;
+    }
+
     /**
      * Parses the all GeoJSON feature to create the PreparedStatement.
      *
@@ -269,62 +739,77 @@ public class GeoJsonReaderDriver {
                 throw new IOException(ex);
             }
         }
-        // Now we create the table if there is at least one geometry field.          
-        if (hasGeometryField) {
-            StringBuilder createTable = new StringBuilder();
-            createTable.append("CREATE TABLE ");
-            createTable.append(tableLocation);
-            createTable.append(" (");
-            //Add the geometry column
-            String finalGeometryType = GeoJsonField.GEOMETRY;
-            if (finalGeometryTypes.size() == 1) {
-                finalGeometryType = (String) finalGeometryTypes.iterator().next();
-                switch (coordinateDimension) {
-                    case 3:
-                        finalGeometryType+="Z";
-                        break;
-                    case 4:
-                        finalGeometryType+="ZM";
-                        break;
-                }
-                createTable.append("THE_GEOM GEOMETRY(").append(finalGeometryType).append(",").append(parsedSRID).append(")");
-            }
-            else{
-                createTable.append("THE_GEOM GEOMETRY(GEOMETRY,").append(parsedSRID).append(")");
-            }
-            cachedColumnIndex = new LinkedHashMap<>();
-            StringBuilder insertTable = new StringBuilder("INSERT INTO ");
-            insertTable.append(tableLocation).append(" VALUES(?");
-
-            int i = 1;
-            for (Map.Entry<String, Integer> columns : cachedColumnNames.entrySet()) {
-                String columnName = columns.getKey();
-                Integer columnType = columns.getValue();
-                cachedColumnIndex.put(columnName, i++);
-                createTable.append(",").append(columns.getKey()).append(" ").append(getSQLTypeName(columnType));
-                if(columnType==Types.ARRAY){
-                    if(dbType == DBTypes.H2 || dbType == DBTypes.H2GIS){
-                        insertTable.append(",").append(" ? FORMAT json");
-                    }else {
-                        insertTable.append(",").append("cast(? as json)");
-                    }
-                }else {
-                    insertTable.append(",").append("?");
-                }
-            }
-            createTable.append(")");
-            insertTable.append(")");
+        createTable();
+        return true;
+    }
 
-            try (Statement stmt = connection.createStatement()) {
-                stmt.execute(createTable.toString());
+    /**
+     * @return the geometry type of the geometry column
+     */
+    private String getGeometryColumnType() {
+        String finalGeometryType = GeoJsonField.GEOMETRY;
+        if (finalGeometryTypes.size() == 1) {
+            finalGeometryType = (String) finalGeometryTypes.iterator().next();
+            switch (coordinateDimension) {
+                case 3:
+                    finalGeometryType += "Z";
+                    break;
+                case 4:
+                    finalGeometryType += "ZM";
+                    break;
             }
-            preparedStatement = connection.prepareStatement(insertTable.toString());
-            return true;
+        }
+        return finalGeometryType;
+    }
 
-        } else {
+    /**
+     * Creates the table from the collected metadata if there is at least one geometry field.
+     */
+    private void createTable() throws SQLException {
+        if (!hasGeometryField) {
             throw new SQLException("The geojson file  does not contain any geometry.");
         }
+        StringBuilder createTable = new StringBuilder();
+        createTable.append("CREATE TABLE ");
+        createTable.append(tableLocation);
+        createTable.append(" (");
+        //Add the geometry column
+        tableGeometryType = getGeometryColumnType();
+        tableDimension = coordinateDimension;
+        createTable.append("THE_GEOM GEOMETRY(").append(tableGeometryType).append(",").append(parsedSRID).append(")");
+        cachedColumnIndex = new LinkedHashMap<>();
+        tableColumnTypes = new HashMap<>();
+        int i = 1;
+        for (Map.Entry<String, Integer> columns : cachedColumnNames.entrySet()) {
+            String columnType = getSQLTypeName(columns.getValue());
+            cachedColumnIndex.put(columns.getKey(), i++);
+            tableColumnTypes.put(columns.getKey(), columnType);
+            createTable.append(",").append(columns.getKey()).append(" ").append(columnType);
+        }
+        createTable.append(")");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(createTable.toString());
+        }
+        prepareInsert();
+        schemaChanged = false;
+    }
 
+    private void prepareInsert() throws SQLException {
+        StringBuilder insertTable = new StringBuilder("INSERT INTO ");
+        insertTable.append(tableLocation).append(" VALUES(?");
+        for (Integer columnType : cachedColumnNames.values()) {
+            if (columnType == Types.ARRAY) {
+                if (dbType == DBTypes.H2 || dbType == DBTypes.H2GIS) {
+                    insertTable.append(",").append(" ? FORMAT json");
+                } else {
+                    insertTable.append(",").append("cast(? as json)");
+                }
+            } else {
+                insertTable.append(",").append("?");
+            }
+        }
+        insertTable.append(")");
+        preparedStatement = connection.prepareStatement(insertTable.toString());
     }
 
     /**
@@ -709,65 +1194,77 @@ public class GeoJsonReaderDriver {
         String fieldName = TableLocation.capsIdentifier(jp.getText(), dbType); //FIELD_NAME columnName
         fieldName = TableLocation.quoteIdentifier(fieldName, dbType);
         JsonToken value = jp.nextToken();
-        if (null != value) {
+        updateColumnType(fieldName, value);
+        if (value == JsonToken.START_ARRAY) {
+            parseArrayMetadata(jp);
+        } else if (value == JsonToken.START_OBJECT) {
+            parseObjectMetadata(jp);
+        }
+    }
+
+    /**
+     * Updates the type of a column with the type of a value
+     *
+     * @param fieldName column name
+     * @param value     first token of the value
+     */
+    private void updateColumnType(String fieldName, JsonToken value) {
+        Integer valueType = getColumnType(value);
+        if (valueType != null) {
             Integer dataType = cachedColumnNames.get(fieldName);
-            boolean hasField = cachedColumnNames.containsKey(fieldName);
-            switch (value) {
-                case VALUE_STRING:
-                    cachedColumnNames.put(fieldName, Types.VARCHAR);
-                    break;
-                case VALUE_TRUE:
-                case VALUE_FALSE:
-                    if (!hasField || dataType == Types.NULL) {
-                        cachedColumnNames.put(fieldName, Types.BOOLEAN);
-                    } else if (hasField && dataType != Types.BOOLEAN) {
-                        cachedColumnNames.put(fieldName, Types.VARCHAR);
-                    }
-                    break;
-                case VALUE_NUMBER_FLOAT:
-                    if (!hasField || dataType == Types.NULL) {
-                        cachedColumnNames.put(fieldName, Types.DOUBLE);
-                    } else if (hasField) {
-                        if (dataType == Types.BIGINT) {
-                            cachedColumnNames.put(fieldName, Types.DOUBLE);
-                        } else if (dataType != Types.DOUBLE) {
-                            cachedColumnNames.put(fieldName, Types.VARCHAR);
-                        }
-                    }
-                    break;
-                case VALUE_NUMBER_INT:
-                    if (!hasField || dataType == Types.NULL) {
-                        cachedColumnNames.put(fieldName, Types.BIGINT);
-                    } else if (hasField && dataType != Types.BIGINT && dataType != Types.DOUBLE) {
-                        cachedColumnNames.put(fieldName, Types.VARCHAR);
-                    }
-                    break;
-                case START_ARRAY:
-                    if (!hasField || dataType == Types.NULL) {
-                        cachedColumnNames.put(fieldName, Types.ARRAY);
-                    } else if (hasField && dataType != Types.ARRAY) {
-                        cachedColumnNames.put(fieldName, Types.VARCHAR);
-                    }
-                    parseArrayMetadata(jp);
-                    break;
-                case START_OBJECT:
-                    if (!hasField || dataType == Types.NULL) {
-                        cachedColumnNames.put(fieldName, Types.ARRAY);
-                    } else if (hasField && dataType != Types.ARRAY) {
-                        cachedColumnNames.put(fieldName, Types.VARCHAR);
-                    }
-                    parseObjectMetadata(jp);
-                    break;
-                case VALUE_NULL:
-                    if (!hasField) {
-                        cachedColumnNames.put(fieldName, Types.NULL);
-                    }
-                    //ignore other value
-                default:
-                    break;
-            }
+            cachedColumnNames.put(fieldName, dataType == null ? valueType : mergeColumnTypes(dataType, valueType));
         }
     }
+
+    /**
+     * @param value first token of a property value
+     * @return the SQL type of the value, null if the token is not a value
+     */
+    static Integer getColumnType(JsonToken value) {
+        if (value == null) {
+            return null;
+        }
+        switch (value) {
+            case VALUE_STRING:
+                return Types.VARCHAR;
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return Types.BOOLEAN;
+            case VALUE_NUMBER_FLOAT:
+                return Types.DOUBLE;
+            case VALUE_NUMBER_INT:
+                return Types.BIGINT;
+            case START_ARRAY:
+            case START_OBJECT:
+                return Types.ARRAY;
+            case VALUE_NULL:
+                return Types.NULL;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Returns the type of a column that contains the values of two types. The integers are widened to double,
+     * the other mixed types to varchar.
+     *
+     * @param dataType  current type of the column
+     * @param valueType type of the new values
+     * @return the column type
+     */
+    static int mergeColumnTypes(int dataType, int valueType) {
+        if (dataType == valueType || valueType == Types.NULL) {
+            return dataType;
+        } else if (dataType == Types.NULL) {
+            return valueType;
+        } else if ((dataType == Types.BIGINT || dataType == Types.DOUBLE)
+                && (valueType == Types.BIGINT || valueType == Types.DOUBLE)) {
+            return Types.DOUBLE;
+        } else {
+            return Types.VARCHAR;
+        }
+    }
+
     /**
      * Parses the properties of a feature
      *
@@ -887,46 +1384,49 @@ public class GeoJsonReaderDriver {
         String fieldName = TableLocation.capsIdentifier(jp.getText(), dbType); //FIELD_NAME columnName
         fieldName = TableLocation.quoteIdentifier(fieldName, dbType);
         JsonToken value = jp.nextToken();
+        if (null != value) {
+            values[cachedColumnIndex.get(fieldName)] = readValue(jp, value);
+        }
+    }
+
+    /**
+     * Reads a property value
+     *
+     * @param jp    {@link JsonParser}
+     * @param value first token of the value
+     * @return the value, arrays and objects are returned as JSON strings
+     */
+    static Object readValue(JsonParser jp, JsonToken value) throws IOException {
         if (null == value) {
             //ignore other value
-        } else switch (value) {
+            return null;
+        }
+        switch (value) {
             case VALUE_STRING:
-                values[cachedColumnIndex.get(fieldName)] = jp.getText();
-                break;
+                return jp.getText();
             case VALUE_TRUE:
-                values[cachedColumnIndex.get(fieldName)] = jp.getValueAsBoolean();
-                break;
             case VALUE_FALSE:
-                values[cachedColumnIndex.get(fieldName)] = jp.getValueAsBoolean();
-                break;
+                return jp.getValueAsBoolean();
             case VALUE_NUMBER_FLOAT:
-                values[cachedColumnIndex.get(fieldName)] = jp.getValueAsDouble();
-                break;
+                return jp.getValueAsDouble();
             case VALUE_NUMBER_INT:
-                if(jp.getNumberType() == JsonParser.NumberType.INT) {
-                    values[cachedColumnIndex.get(fieldName)] = jp.getIntValue();
+                if (jp.getNumberType() == JsonParser.NumberType.INT) {
+                    return jp.getIntValue();
                 } else {
-                    values[cachedColumnIndex.get(fieldName)] = jp.getLongValue();
-                }   break;
-            case START_ARRAY:
-            {
+                    return jp.getLongValue();
+                }
+            case START_ARRAY: {
                 StringBuilder sb = new StringBuilder();
                 parseArray(jp, sb);
-                values[cachedColumnIndex.get(fieldName)] = sb.toString();
-                break;
+                return sb.toString();
             }
-            case START_OBJECT:
-            {
+            case START_OBJECT: {
                 StringBuilder sb = new StringBuilder();
                 parseObject(jp, sb);
-                values[cachedColumnIndex.get(fieldName)] = sb.toString();
-                break;
+                return sb.toString();
             }
-            case VALUE_NULL:
-                values[cachedColumnIndex.get(fieldName)] = null;
-                break;
             default:
-                break;
+                return null;
         }
     }
 
@@ -1296,6 +1796,10 @@ public class GeoJsonReaderDriver {
             coordinates.add(jp.getDoubleValue());
             jp.nextToken();
         }
+        if (streaming && coordinates.size() > coordinateDimension) {
+            // The dimension is not known before the coordinates are read in the single pass import
+            coordinateDimension = Math.min(4, coordinates.size());
+        }
         Coordinate coord;
         if(coordinateDimension == 4) {
             coord = new CoordinateXYZM(
@@ -1505,7 +2009,7 @@ public class GeoJsonReaderDriver {
      * @param jp the json parser
      * @return the array
      */
-    private void parseArray(JsonParser jp, StringBuilder sb) throws IOException {
+    private static void parseArray(JsonParser jp, StringBuilder sb) throws IOException {
         sb.append(jp.currentToken().asCharArray());
         JsonToken value = jp.nextToken();
         String sep = ",";
@@ -1540,7 +2044,7 @@ public class GeoJsonReaderDriver {
      * @param jp the json parser
      * @return the array
      */
-    private void parseObject(JsonParser jp, StringBuilder sb) throws IOException {
+    private static void parseObject(JsonParser jp, StringBuilder sb) throws IOException {
         sb.append(jp.currentToken().asCharArray());
         JsonToken value = jp.nextToken();
         String sep = ",";
@@ -0,0 +1,245 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; version 3.0 of
+ * the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.functions.io.geojson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.h2.util.geometry.JTSUtils;
+import org.h2gis.utilities.GeometryMetaData;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Features of a byte range of a GeoJSON text sequence (RFC 8142) or of a newline delimited GeoJSON file.
+ * In a text sequence each feature is prefixed by the record separator and may span several lines, in a
+ * newline delimited file each line contains one feature. The ranges are parsed independently, so the metadata
+ * collected here must be merged in the order of the file.
+ *
+ * @author Erwan Bocher, CNRS
+ * @author Nicolas Fortin, Univ Gustave Eiffel
+ */
+final class GeoJsonSeqChunk {
+
+    /**
+     * Delimiter of the features of a GeoJSON text sequence
+     */
+    static final byte RECORD_SEPARATOR = 0x1E;
+    /**
+     * Delimiter of the features of a newline delimited GeoJSON file
+     */
+    static final byte LINE_FEED = '\n';
+
+    /**
+     * SQL type of the properties, in the order they are found
+     */
+    final LinkedHashMap<String, Integer> columnTypes = new LinkedHashMap<>();
+    /**
+     * Features, the first value is the geometry EWKB then the properties in the order of {@link #columnTypes}
+     */
+    final List<Object[]> rows = new ArrayList<>();
+    final Set<String> geometryTypes = new HashSet<>();
+    int coordinateDimension = 2;
+    boolean hasGeometryField = false;
+
+    private final Map<String, Integer> columnIndex = new HashMap<>();
+    private final DBTypes dbType;
+    private final GJGeometryReader geometryReader;
+
+    private GeoJsonSeqChunk(DBTypes dbType, int srid) {
+        this.dbType = dbType;
+        this.geometryReader = new GJGeometryReader(new GeometryFactory(new PrecisionModel(), srid));
+    }
+
+    /**
+     * Find the bounds of the ranges of a file, each range ends after a delimiter
+     *
+     * @param channel   file
+     * @param rangeSize minimal size of a range
+     * @param delimiter {@link #RECORD_SEPARATOR} or {@link #LINE_FEED}
+     * @return the start of each range followed by the file size
+     */
+    static long[] split(FileChannel channel, long rangeSize, byte delimiter) throws IOException {
+        long size = channel.size();
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        long position = rangeSize;
+        while (position < size) {
+            long bound = -1;
+            while (bound < 0 && position < size) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read; i++) {
+                    if (buffer.get(i) == delimiter) {
+                        bound = position + i + 1;
+                        break;
+                    }
+                }
+                position += read;
+            }
+            if (bound < 0 || bound >= size) {
+                break;
+            }
+            bounds.add(bound);
+            position = bound + rangeSize;
+        }
+        bounds.add(size);
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Parse the features of a byte range
+     *
+     * @param channel   file, read with positional reads so it can be shared between threads
+     * @param start     first byte of the range
+     * @param end       end of the range, excluded
+     * @param delimiter {@link #RECORD_SEPARATOR} or {@link #LINE_FEED}
+     * @param jsFactory json factory
+     * @param dbType    database type, used to format the column names
+     * @param srid      srid of the geometries
+     * @return the parsed features
+     */
+    static GeoJsonSeqChunk parse(FileChannel channel, long start, long end, byte delimiter, JsonFactory jsFactory,
+                                 DBTypes dbType, int srid) throws IOException, SQLException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+        byte[] bytes = buffer.array();
+        GeoJsonSeqChunk chunk = new GeoJsonSeqChunk(dbType, srid);
+        int recordStart = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i == bytes.length || bytes[i] == delimiter) {
+                int from = recordStart;
+                int to = i;
+                while (from < to && Character.isWhitespace(bytes[from])) {
+                    from++;
+                }
+                while (to > from && Character.isWhitespace(bytes[to - 1])) {
+                    to--;
+                }
+                if (from < to) {
+                    try (JsonParser jp = jsFactory.createParser(bytes, from, to - from)) {
+                        chunk.parseFeature(jp);
+                    }
+                }
+                recordStart = i + 1;
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Parses a feature
+     *
+     * Syntax:
+     *
+     * { "type": "Feature", "geometry":{"type": "Point", "coordinates": [102.0,
+     * 0.5]}, "properties": {"prop0": "value0"} }
+     *
+     * @param jp {@link JsonParser}
+     */
+    private void parseFeature(JsonParser jp) throws IOException, SQLException {
+        if (jp.nextToken() != JsonToken.START_OBJECT) {
+            throw new SQLException("Malformed GeoJSON text sequence. Expected a feature, found '" + jp.getText() + "'");
+        }
+        List<Object> values = new ArrayList<>();
+        values.add(null);
+        while (jp.nextToken() != JsonToken.END_OBJECT) {
+            String field = jp.getText();
+            if (field.equalsIgnoreCase(GeoJsonField.TYPE)) {
+                jp.nextToken();
+                if (!jp.getText().equalsIgnoreCase(GeoJsonField.FEATURE)) {
+                    throw new SQLException("Malformed GeoJSON text sequence. Expected 'Feature', found '" + jp.getText() + "'");
+                }
+            } else if (field.equalsIgnoreCase(GeoJsonField.GEOMETRY)) {
+                hasGeometryField = true;
+                if (jp.nextToken() != JsonToken.VALUE_NULL) {//START_OBJECT { in case of null geometry
+                    jp.nextToken(); // FIELD_NAME type
+                    jp.nextToken(); //VALUE_STRING Point
+                    Geometry geometry = geometryReader.parseGeometry(jp, jp.getText());
+                    GeoJsonReaderDriver.addGeometryTypes(geometry, geometryTypes);
+                    byte[] ewkb = JTSUtils.geometry2ewkb(geometry);
+                    coordinateDimension = Math.max(coordinateDimension, GeometryMetaData.getMetaData(ewkb).dimension);
+                    values.set(0, ewkb);
+                }
+            } else if (field.equalsIgnoreCase(GeoJsonField.PROPERTIES)) {
+                if (jp.nextToken() == JsonToken.START_OBJECT) {
+                    while (jp.nextToken() != JsonToken.END_OBJECT) {
+                        parseProperty(jp, values);
+                    }
+                }
+            } else if (field.equalsIgnoreCase(GeoJsonField.FEATURE_ID)) {
+                parseProperty(jp, values);
+            } else {
+                JsonToken currentToken = jp.nextToken(); // get value
+                if (currentToken.equals(JsonToken.START_ARRAY) || currentToken.equals(JsonToken.START_OBJECT)) {
+                    jp.skipChildren();
+                }
+            }
+        }
+        rows.add(values.toArray());
+    }
+
+    private void parseProperty(JsonParser jp, List<Object> values) throws IOException {
+        String fieldName = TableLocation.capsIdentifier(jp.getText(), dbType); //FIELD_NAME columnName
+        fieldName = TableLocation.quoteIdentifier(fieldName, dbType);
+        JsonToken value = jp.nextToken();
+        Integer valueType = GeoJsonReaderDriver.getColumnType(value);
+        Integer index = columnIndex.get(fieldName);
+        if (index == null) {
+            index = columnIndex.size() + 1;
+            columnIndex.put(fieldName, index);
+            columnTypes.put(fieldName, valueType == null ? Types.NULL : valueType);
+        } else if (valueType != null) {
+            columnTypes.put(fieldName, GeoJsonReaderDriver.mergeColumnTypes(columnTypes.get(fieldName), valueType));
+        }
+        while (values.size() <= index) {
+            values.add(null);
+        }
+        values.set(index, GeoJsonReaderDriver.readValue(jp, value));
+    }
+}
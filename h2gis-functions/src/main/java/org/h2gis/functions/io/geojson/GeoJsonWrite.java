@@ -41,7 +41,10 @@ public class GeoJsonWrite extends AbstractFunction implements ScalarFunction {
                 + "\nGeoJsonWrite(..."
                 + "\n Supported arguments :"
                 + "\n path of the file, table name"
-                + "\n path of the file, table name, true to delete the file if exists");
+                + "\n path of the file, table name, true to delete the file if exists"
+                + "\n path of the file, table name, true to delete the file if exists, options"
+                + "\n 'encoding=UTF8 spatialSort=true sortMemory=67108864', the spatial sort writes the features of"
+                + " the .geojsonl and .geojsons files in the order of the Hilbert curve");
     }
 
     @Override
@@ -63,6 +66,21 @@ public class GeoJsonWrite extends AbstractFunction implements ScalarFunction {
         geoJsonDriver.exportTable(connection, tableReference, URIUtilities.fileFromString(fileName),  deleteFile, new EmptyProgressVisitor());
     }
 
+    /**
+     * Read a table and write it into a GEOJSON file.
+     *
+     * @param connection Active connection
+     * @param fileName GeoJSON file name or URI
+     * @param tableReference Table name or select query Note : The select query
+     * must be enclosed in parenthesis
+     * @param deleteFile true to delete output file
+     * @param options encoding or key=value options
+     */
+    public static void exportTable(Connection connection, String fileName, String tableReference, boolean deleteFile, String options) throws IOException, SQLException {
+        GeoJsonDriverFunction geoJsonDriver = new GeoJsonDriverFunction();
+        geoJsonDriver.exportTable(connection, tableReference, URIUtilities.fileFromString(fileName), options, deleteFile, new EmptyProgressVisitor());
+    }
+
     /**
      * Write the GeoJSON file.
      *
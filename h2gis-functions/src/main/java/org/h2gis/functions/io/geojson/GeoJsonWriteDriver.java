@@ -23,6 +23,7 @@ import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.utility.HilbertSorter;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.dbtypes.DBTypes;
@@ -36,6 +37,7 @@ import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -67,6 +69,13 @@ public class GeoJsonWriteDriver {
     private Map<String, String> cachedSpecificColumns;
     private LinkedHashMap<String, Integer> cachedColumnIndex;
     private int columnCountProperties = -1;
+    private boolean spatialSort = false;
+    private long sortMemory = HilbertSorter.DEFAULT_MEMORY_BUDGET;
+    /**
+     * Number of rows serialized in parallel when writing a GeoJSON text sequence
+     */
+    private static final int SEQ_BLOCK_SIZE = 1000;
+    private static final int RECORD_SEPARATOR = 0x1E;
 
     /**
      * A simple GeoJSON driver to write a spatial table to a GeoJSON file.
@@ -77,6 +86,30 @@ public class GeoJsonWriteDriver {
         this.connection = connection;
     }    
 
+    public boolean isSpatialSort() {
+        return spatialSort;
+    }
+
+    /**
+     * The spatial sort is available for the GeoJSON text sequences and the newline delimited GeoJSON files.
+     *
+     * @param spatialSort true to write the features in the order of the Hilbert curve of their envelope center
+     */
+    public void setSpatialSort(boolean spatialSort) {
+        this.spatialSort = spatialSort;
+    }
+
+    public long getSortMemory() {
+        return sortMemory;
+    }
+
+    /**
+     * @param sortMemory Size in bytes of the features kept in memory by the spatial sort before using temporary files
+     */
+    public void setSortMemory(long sortMemory) {
+        this.sortMemory = sortMemory;
+    }
+
     /**
      * Write a resulset to a geojson file
      *
@@ -87,7 +120,23 @@ public class GeoJsonWriteDriver {
      * @param deleteFile true to delete the file if exist
      */
     public void write(ProgressVisitor progress, ResultSet rs, File fileName, String encoding, boolean deleteFile) throws SQLException, IOException {
-        if (FileUtilities.isExtensionWellFormated(fileName, "geojson")|| FileUtilities.isExtensionWellFormated(fileName, "json")) {
+        if (FileUtilities.isExtensionWellFormated(fileName, "geojsonl") || FileUtilities.isExtensionWellFormated(fileName, "geojsons")) {
+            if (deleteFile) {
+                Files.deleteIfExists(fileName.toPath());
+            } else if (fileName.exists()) {
+                throw new IOException("The geojson file already exist.");
+            }
+            int rowCount = 0;
+            int type = rs.getType();
+            if (type == ResultSet.TYPE_SCROLL_INSENSITIVE || type == ResultSet.TYPE_SCROLL_SENSITIVE) {
+                rs.last();
+                rowCount = rs.getRow();
+                rs.beforeFirst();
+            }
+            // The rows cannot be read twice, the spatial sort computes the extent while reading them
+            geojsonSeqWriter(progress, rs, rowCount, new FileOutputStream(fileName), encoding,
+                    FileUtilities.isExtensionWellFormated(fileName, "geojsons"), null);
+        } else if (FileUtilities.isExtensionWellFormated(fileName, "geojson")|| FileUtilities.isExtensionWellFormated(fileName, "json")) {
             if (deleteFile) {
                 Files.deleteIfExists(fileName.toPath());
             } else if (fileName.exists()) {
@@ -135,7 +184,7 @@ public class GeoJsonWriteDriver {
                 }
             }
         } else {
-            throw new SQLException("Only .geojson , .gz or .zip extensions are supported");
+            throw new SQLException("Only .geojson , .geojsonl , .geojsons , .gz or .zip extensions are supported");
         }
     }
 
@@ -296,6 +345,185 @@ public class GeoJsonWriteDriver {
         }
     }
 
+    /**
+     * Write a table or a query to a GeoJSON text sequence (RFC 8142) or to a newline delimited GeoJSON file.
+     * Each feature is written on its own line, prefixed by the record separator for a text sequence.
+     *
+     * The rows are read by blocks, the features of a block are serialized in parallel with a
+     * {@link JsonGenerator} reused by each thread, then written in the order of the rows, or in the order of the
+     * Hilbert curve of the geometries if the spatial sort is enabled.
+     * The geometries must share the SRID 4326, or 0 if they are already in WGS 84.
+     *
+     * @param progress Progress visitor following the execution.
+     * @param rs rows to write, closed at the end
+     * @param rowCount number of rows, used to follow the progression
+     * @param fos {@link OutputStream}
+     * @param encoding file encoding, only UTF-8 is allowed
+     * @param recordSeparator true to write a text sequence
+     * @param extentProvider extent of the rows, fetched by the spatial sort when the rows do not fit in memory
+     */
+    private void geojsonSeqWriter(ProgressVisitor progress, ResultSet rs, int rowCount, OutputStream fos,
+                                  String encoding, boolean recordSeparator,
+                                  HilbertSorter.ExtentProvider extentProvider) throws SQLException, IOException {
+        HilbertSorter sorter = null;
+        try (OutputStream out = new BufferedOutputStream(fos)) {
+            if (encoding != null && !encoding.isEmpty() && !encoding.equalsIgnoreCase("UTF8")
+                    && !encoding.equalsIgnoreCase("UTF-8")) {
+                throw new SQLException("A GeoJSON text sequence must be encoded in UTF-8");
+            }
+            ResultSetMetaData resultSetMetaData = rs.getMetaData();
+            ProgressVisitor copyProgress = progress.subProcess(rowCount);
+            int geoFieldIndex = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(resultSetMetaData).second();
+            cacheMetadata(resultSetMetaData);
+            JsonFactory jsonFactory = new JsonFactory();
+            // The features are separated by a line feed instead of a space
+            jsonFactory.setRootValueSeparator(null);
+            ThreadLocal<FeatureBuffer> buffers = ThreadLocal.withInitial(() -> new FeatureBuffer(jsonFactory));
+            Object[][] block = new Object[SEQ_BLOCK_SIZE][];
+            boolean hasNext = true;
+            // SRID of the first non-null geometry
+            Integer srid = null;
+            sorter = spatialSort ? new HilbertSorter(sortMemory, extentProvider) : null;
+            while (hasNext) {
+                int blockSize = 0;
+                while (blockSize < SEQ_BLOCK_SIZE && (hasNext = rs.next())) {
+                    Object[] row = readProperties(rs);
+                    Geometry geom = (Geometry) rs.getObject(geoFieldIndex);
+                    if (geom != null) {
+                        int geomSRID = geom.getSRID();
+                        if (srid == null) {
+                            // A text sequence has no crs member, the coordinates are WGS 84 longitude and latitude
+                            if (geomSRID != 0 && geomSRID != 4326) {
+                                throw new SQLException("A GeoJSON text sequence must be in WGS 84 (EPSG:4326), " +
+                                        "use ST_Transform to reproject the geometries with the SRID " + geomSRID);
+                            }
+                            srid = geomSRID;
+                        } else if (geomSRID != srid) {
+                            throw new SQLException("Geojson file doesn't support mixed srid. \n"
+                                    + srid + " != " + geomSRID);
+                        }
+                    }
+                    row[0] = geom;
+                    block[blockSize++] = row;
+                }
+                final Object[][] rows = block;
+                byte[][] features;
+                try {
+                    features = IntStream.range(0, blockSize).parallel().mapToObj(i -> {
+                        try {
+                            return buffers.get().write(rows[i]);
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    }).toArray(byte[][]::new);
+                } catch (UncheckedIOException ex) {
+                    throw ex.getCause();
+                }
+                for (int i = 0; i < blockSize; i++) {
+                    if (sorter != null) {
+                        // The features are written once all of them are sorted
+                        Geometry geom = (Geometry) rows[i][0];
+                        sorter.add(geom == null ? null : geom.getEnvelopeInternal(), features[i]);
+                    } else {
+                        writeSeqFeature(out, features[i], recordSeparator);
+                    }
+                    copyProgress.endStep();
+                }
+            }
+            if (sorter != null) {
+                HilbertSorter.SortedRecords sortedFeatures = sorter.sort();
+                while (sortedFeatures.next()) {
+                    writeSeqFeature(out, sortedFeatures.getPayload(), recordSeparator);
+                }
+            }
+            copyProgress.endOfProgress();
+        } finally {
+            if (sorter != null) {
+                sorter.close();
+            }
+            rs.close();
+        }
+    }
+
+    private static void writeSeqFeature(OutputStream out, byte[] feature, boolean recordSeparator) throws IOException {
+        if (recordSeparator) {
+            out.write(RECORD_SEPARATOR);
+        }
+        out.write(feature);
+        out.write('\n');
+    }
+
+    /**
+     * Serialize the features of one thread, the generator and its buffer are reused for each feature
+     */
+    private final class FeatureBuffer {
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private final JsonGenerator jsonGenerator;
+
+        private FeatureBuffer(JsonFactory jsonFactory) {
+            try {
+                jsonGenerator = jsonFactory.createGenerator(buffer, JsonEncoding.UTF8);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        /**
+         * @param row geometry followed by the values indexed by the column index
+         * @return the UTF-8 encoded feature
+         */
+        private byte[] write(Object[] row) throws IOException {
+            buffer.reset();
+            jsonGenerator.writeStartObject();
+            jsonGenerator.writeStringField("type", "Feature");
+            writeGeometry((Geometry) row[0], jsonGenerator);
+            writeProperties(jsonGenerator, row);
+            jsonGenerator.writeEndObject();
+            jsonGenerator.flush();
+            return buffer.toByteArray();
+        }
+    }
+
+    /**
+     * Write a table or a query to a GeoJSON text sequence or to a newline delimited GeoJSON file.
+     *
+     * @param progress Progress visitor following the execution.
+     * @param tableName table name or query enclosed in parenthesis
+     * @param fileName output file
+     * @param encoding file encoding
+     * @param deleteFile true to delete the file if exist
+     */
+    private void geojsonSeqWriter(ProgressVisitor progress, String tableName, File fileName, String encoding,
+                                  boolean deleteFile) throws SQLException, IOException {
+        if (deleteFile) {
+            Files.deleteIfExists(fileName.toPath());
+        } else if (fileName.exists()) {
+            throw new IOException("The geojson file already exist.");
+        }
+        boolean recordSeparator = FileUtilities.isExtensionWellFormated(fileName, "geojsons");
+        if (tableName.startsWith("(") && tableName.endsWith(")")) {
+            try (PreparedStatement ps = connection.prepareStatement(tableName, ResultSet.TYPE_SCROLL_INSENSITIVE,
+                    ResultSet.CONCUR_READ_ONLY)) {
+                ResultSet rs = ps.executeQuery();
+                rs.last();
+                int rowCount = rs.getRow();
+                rs.beforeFirst();
+                String geometryColumn = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(rs).first();
+                geojsonSeqWriter(progress, rs, rowCount, new FileOutputStream(fileName), encoding, recordSeparator,
+                        HilbertSorter.extentOf(connection, tableName, geometryColumn));
+            }
+        } else {
+            final TableLocation parse = TableLocation.parse(tableName, DBUtils.getDBType(connection));
+            int rowCount = JDBCUtilities.getRowCount(connection, parse.toString());
+            String geometryColumn = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(connection, parse).first();
+            try (Statement st = connection.createStatement()) {
+                ResultSet rs = st.executeQuery(String.format("select * from %s", tableName));
+                geojsonSeqWriter(progress, rs, rowCount, new FileOutputStream(fileName), encoding, recordSeparator,
+                        HilbertSorter.extentOf(connection, tableName, geometryColumn));
+            }
+        }
+    }
+
     /**
      * Write the spatial table to GeoJSON format.
      *
@@ -309,7 +537,12 @@ public class GeoJsonWriteDriver {
         String regex = ".*(?i)\\b(select|from)\\b.*";
         Pattern pattern = Pattern.compile(regex);
         Matcher matcher = pattern.matcher(tableName);
-        if (matcher.find()) {
+        if (FileUtilities.isExtensionWellFormated(fileName, "geojsonl") || FileUtilities.isExtensionWellFormated(fileName, "geojsons")) {
+            if (matcher.find() && !(tableName.startsWith("(") && tableName.endsWith(")"))) {
+                throw new SQLException("The select query must be enclosed in parenthesis: '(SELECT * FROM ORDERS)'.");
+            }
+            geojsonSeqWriter(progress, tableName, fileName, encoding, deleteFile);
+        } else if (matcher.find()) {
             if (tableName.startsWith("(") && tableName.endsWith(")")) {
                 if (FileUtilities.isExtensionWellFormated(fileName, "geojson")|| FileUtilities.isExtensionWellFormated(fileName, "json")) {
                     if (deleteFile) {
@@ -366,7 +599,7 @@ public class GeoJsonWriteDriver {
                         }
                     }
                 } else {
-                    throw new SQLException("Only .geojson , .gz or .zip extensions are supported");
+                    throw new SQLException("Only .geojson , .geojsonl , .geojsons , .gz or .zip extensions are supported");
                 }
             } else {
                 throw new SQLException("The select query must be enclosed in parenthesis: '(SELECT * FROM ORDERS)'.");
@@ -421,7 +654,7 @@ public class GeoJsonWriteDriver {
                     }
                 }
             } else {
-                throw new SQLException("Only .geojson , .gz or .zip extensions are supported");
+                throw new SQLException("Only .geojson , .geojsonl , .geojsons , .gz or .zip extensions are supported");
             }
         }
     }
@@ -763,35 +996,64 @@ public class GeoJsonWriteDriver {
      * @param rs resulset
      */
     private void writeProperties(JsonGenerator jsonGenerator, ResultSet rs) throws IOException, SQLException {
+        if (columnCountProperties != -1) {
+            writeProperties(jsonGenerator, readProperties(rs));
+        }
+    }
+
+    /**
+     * Read the values of the properties of the current row, the JSON columns are read as text.
+     *
+     * @param rs resulset
+     * @return the values indexed by the column index
+     */
+    private Object[] readProperties(ResultSet rs) throws SQLException {
+        Object[] row = new Object[rs.getMetaData().getColumnCount() + 1];
+        for (Map.Entry<String, Integer> entry : cachedColumnIndex.entrySet()) {
+            Integer fieldId = entry.getValue();
+            if ("JSON".equalsIgnoreCase(cachedSpecificColumns.get(entry.getKey()))) {
+                row[fieldId] = rs.getString(fieldId);
+            } else {
+                row[fieldId] = rs.getObject(fieldId);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Write the GeoJSON properties.
+     *
+     * @param jsonGenerator json writer
+     * @param row values of the row indexed by the column index
+     */
+    private void writeProperties(JsonGenerator jsonGenerator, Object[] row) throws IOException {
         if (columnCountProperties != -1) {
             jsonGenerator.writeObjectFieldStart("properties");
             for (Map.Entry<String, Integer> entry : cachedColumnIndex.entrySet()) {
                 String columnName = entry.getKey();
-                Integer fieldId = entry.getValue();
+                Object value = row[entry.getValue()];
                 if(cachedSpecificColumns.containsKey(columnName)){
                     String specificType = cachedSpecificColumns.get(columnName);
                     if(specificType.equalsIgnoreCase("JSON")) {
                         jsonGenerator.writeFieldName(columnName);
-                        jsonGenerator.writeString(rs.getString(fieldId));
+                        jsonGenerator.writeString((String) value);
                     }
                     else if (specificType.equalsIgnoreCase("TIME")){
-                        Object obj = rs.getObject(fieldId);
-                        jsonGenerator.writeStringField(columnName, obj == null ? "null" : obj.toString());
+                        jsonGenerator.writeStringField(columnName, value == null ? "null" : value.toString());
                     }
                 }
-                else if (rs.getObject(fieldId) instanceof Object[]) {
-                    Object[] array = (Object[]) rs.getObject(fieldId);
+                else if (value instanceof Object[]) {
                     jsonGenerator.writeArrayFieldStart(columnName);
-                    writeArray(jsonGenerator, array, true);
+                    writeArray(jsonGenerator, (Object[]) value, true);
                     jsonGenerator.writeEndArray();
-                } else if (rs.getObject(fieldId) != null && rs.getObject(fieldId).equals("{}")) {
+                } else if (value != null && value.equals("{}")) {
                     jsonGenerator.writeObjectFieldStart(columnName);
                     jsonGenerator.writeEndObject();
-                } else if (rs.getObject(fieldId) == "null") {
+                } else if (value == "null") {
                     jsonGenerator.writeFieldName(columnName);
                     jsonGenerator.writeNull();
                 } else {
-                    jsonGenerator.writeObjectField(columnName, rs.getObject(fieldId));
+                    jsonGenerator.writeObjectField(columnName, value);
                 }
             }
             jsonGenerator.writeEndObject();
@@ -863,7 +1125,7 @@ public class GeoJsonWriteDriver {
      * @param array
      * @throw IOException
      */
-    private void writeArray(JsonGenerator jsonGenerator, Object[] array, boolean firstInHierarchy) throws IOException, SQLException {
+    private void writeArray(JsonGenerator jsonGenerator, Object[] array, boolean firstInHierarchy) throws IOException {
         if (!firstInHierarchy) {
             jsonGenerator.writeStartArray();
         }
@@ -0,0 +1,164 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.osm;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Map of OSM id to a long value, stored out of the java heap as sorted (id, value) pairs.
+ * The pairs are added first, then {@link #finish()} is called once before the lookups. The OSM files are sorted by id
+ * so the pairs are usually appended in order, otherwise they are sorted in place by {@link #finish()}.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+class MappedIdMap implements Closeable {
+    /** Returned value for an unknown id */
+    static final long MISSING = Long.MIN_VALUE;
+    private final MappedLongArray pairs;
+    private boolean sorted = true;
+    private long lastId = Long.MIN_VALUE;
+    private boolean finished = false;
+
+    /**
+     * @param prefix Temporary file name prefix
+     */
+    MappedIdMap(String prefix) throws IOException {
+        pairs = new MappedLongArray(prefix);
+    }
+
+    /**
+     * @return Number of ids
+     */
+    long size() {
+        return pairs.size() / 2;
+    }
+
+    /**
+     * Add an id, the ids should be added in ascending order
+     * @param id OSM id
+     * @param value Value of the id
+     * @throws IllegalStateException If {@link #finish()} has been called
+     */
+    void put(long id, long value) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("No id can be added after the lookups are started");
+        }
+        if (id <= lastId) {
+            sorted = false;
+        }
+        lastId = id;
+        pairs.add(id);
+        pairs.add(value);
+    }
+
+    /**
+     * End the additions, the pairs are sorted if they have not been added in order
+     */
+    void finish() {
+        if (finished) {
+            return;
+        }
+        if (!sorted) {
+            heapSort();
+            sorted = true;
+        }
+        finished = true;
+    }
+
+    /**
+     * @return True if {@link #finish()} has been called
+     */
+    boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @param id OSM id
+     * @return The value of the id or {@link #MISSING}
+     * @throws IllegalStateException If {@link #finish()} has not been called
+     */
+    long get(long id) {
+        if (!finished) {
+            throw new IllegalStateException("The additions must be finished before the lookups");
+        }
+        long low = 0;
+        long high = size() - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long middleId = pairs.get(middle * 2);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return pairs.get(middle * 2 + 1);
+            }
+        }
+        return MISSING;
+    }
+
+    /**
+     * Sort the pairs in place, without any additional memory
+     */
+    private void heapSort() {
+        long count = size();
+        for (long i = count / 2 - 1; i >= 0; i--) {
+            siftDown(i, count);
+        }
+        for (long end = count - 1; end > 0; end--) {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftDown(long root, long count) {
+        while (true) {
+            long child = root * 2 + 1;
+            if (child >= count) {
+                return;
+            }
+            if (child + 1 < count && pairs.get((child + 1) * 2) > pairs.get(child * 2)) {
+                child++;
+            }
+            if (pairs.get(root * 2) >= pairs.get(child * 2)) {
+                return;
+            }
+            swap(root, child);
+            root = child;
+        }
+    }
+
+    private void swap(long first, long second) {
+        long id = pairs.get(first * 2);
+        long value = pairs.get(first * 2 + 1);
+        pairs.set(first * 2, pairs.get(second * 2));
+        pairs.set(first * 2 + 1, pairs.get(second * 2 + 1));
+        pairs.set(second * 2, id);
+        pairs.set(second * 2 + 1, value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        pairs.close();
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.osm;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Growable array of long values stored in a memory mapped temporary file. The values are kept out of the java heap,
+ * the operating system writes the pages to the disk when the memory is needed.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+class MappedLongArray implements Closeable {
+    /** Number of long values in a mapped chunk (128 MB), the file grows chunk by chunk */
+    private static final int CHUNK_LENGTH = 1 << 24;
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> chunks = new ArrayList<>();
+    private long size = 0;
+
+    /**
+     * Create the temporary file
+     * @param prefix Temporary file name prefix
+     */
+    MappedLongArray(String prefix) throws IOException {
+        file = File.createTempFile(prefix, ".bin");
+        file.deleteOnExit();
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * @return Number of values
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Append a value at the end of the array
+     * @param value Value
+     */
+    void add(long value) throws IOException {
+        int chunkIndex = (int) (size / CHUNK_LENGTH);
+        if (chunkIndex == chunks.size()) {
+            // The mapping extends the file
+            chunks.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkIndex * CHUNK_LENGTH * Long.BYTES,
+                    (long) CHUNK_LENGTH * Long.BYTES));
+        }
+        chunks.get(chunkIndex).putLong((int) (size % CHUNK_LENGTH) * Long.BYTES, value);
+        size++;
+    }
+
+    /**
+     * @param index Value index
+     * @return The value
+     */
+    long get(long index) {
+        return chunks.get((int) (index / CHUNK_LENGTH)).getLong((int) (index % CHUNK_LENGTH) * Long.BYTES);
+    }
+
+    /**
+     * @param index Value index, lower than the size
+     * @param value New value
+     */
+    void set(long index, long value) {
+        chunks.get((int) (index / CHUNK_LENGTH)).putLong((int) (index % CHUNK_LENGTH) * Long.BYTES, value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        chunks.clear();
+        channel.close();
+        randomAccessFile.close();
+        // The mapped buffers are released by the garbage collector, the file is deleted on exit if still mapped
+        file.delete();
+    }
+}
@@ -39,6 +39,7 @@ public class OSMDriverFunction implements DriverFunction {
     public static String DESCRIPTION = "OSM file (0.6)";
     public static String DESCRIPTION_GZ = "OSM Gzipped file (0.6)";
     public static String DESCRIPTION_BZ2 = "OSM Bzipped file (0.6)";
+    public static String DESCRIPTION_PBF = "OSM Protocolbuffer Binary Format file (0.6)";
 
 
     @Override
@@ -59,6 +60,8 @@ public class OSMDriverFunction implements DriverFunction {
             return DESCRIPTION_GZ;
         } else  if (format.equalsIgnoreCase("bz2")) {
             return DESCRIPTION_BZ2;
+        } else  if (format.equalsIgnoreCase("pbf")) {
+            return DESCRIPTION_PBF;
         } else {
             return "";
         }
@@ -68,7 +71,8 @@ public class OSMDriverFunction implements DriverFunction {
     public boolean isSpatialFormat(String extension) {
         return extension.equalsIgnoreCase("osm") ||
                 extension.equalsIgnoreCase("gz") ||
-                extension.equalsIgnoreCase("bz2");
+                extension.equalsIgnoreCase("bz2") ||
+                extension.equalsIgnoreCase("pbf");
     }
 
     @Override
@@ -129,7 +133,7 @@ public class OSMDriverFunction implements DriverFunction {
 
     @Override
     public String[] getImportFormats() {
-        return new String[]{"osm","osm.gz","osm.bz2"};
+        return new String[]{"osm","osm.gz","osm.bz2","osm.pbf"};
     }
 
 }
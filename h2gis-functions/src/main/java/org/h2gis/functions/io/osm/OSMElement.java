@@ -34,8 +34,8 @@ import java.util.HashMap;
  */
 public class OSMElement {
 
-    private final SimpleDateFormat dataFormat1 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-    private final SimpleDateFormat dataFormat2 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+    private SimpleDateFormat dataFormat1;
+    private SimpleDateFormat dataFormat2;
     private final HashMap<String, String> tags;
     private long id, uid;
     private String user;
@@ -66,6 +66,15 @@ public class OSMElement {
         this.id = Long.valueOf(id);
     }
 
+    /**
+     * Set an id to the element
+     *
+     * @param id set id value
+     */
+    public void setId(long id) {
+        this.id = id;
+    }
+
     /**
      * The user
      *
@@ -89,6 +98,10 @@ public class OSMElement {
         }
     }
 
+    public void setUid(long uid) {
+        this.uid = uid;
+    }
+
     /**
      * @return The way name (extracted from tag)
      */
@@ -117,6 +130,10 @@ public class OSMElement {
         }
     }
 
+    public void setVisible(boolean visible) {
+        this.visible = visible;
+    }
+
     /**
      *
      * @return GPX version
@@ -129,6 +146,10 @@ public class OSMElement {
         this.version = version != null ? Integer.valueOf(version) : 0;
     }
 
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
     /**
      *
      * @return change set value
@@ -143,6 +164,10 @@ public class OSMElement {
         }
     }
 
+    public void setChangeset(int changeset) {
+        this.changeset = changeset;
+    }
+
     /**
      *
      * @return time stamp
@@ -154,6 +179,11 @@ public class OSMElement {
 
     public void setTimestamp(String OSMtime) throws SAXException {
         if(OSMtime!=null){
+        if (dataFormat1 == null) {
+            // Created on demand, the elements read from a PBF file do not parse dates
+            dataFormat1 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+            dataFormat2 = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        }
         try {
             timestamp = new Timestamp(dataFormat1.parse(OSMtime).getTime());
         } catch (ParseException ex) {
@@ -165,6 +195,10 @@ public class OSMElement {
         }}
     }
 
+    public void setTimestamp(Timestamp timestamp) {
+        this.timestamp = timestamp;
+    }
+
     /**
      *
      * @param key key value
@@ -0,0 +1,184 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.osm;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.operation.polygonize.Polygonizer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build the geometries of the ways and of the multipolygon relations while the file is parsed.
+ * The node locations are kept out of the java heap in a memory mapped file, the ways are read after the nodes
+ * in the OSM files so all the locations are known when a way is read. The locations are sorted once when the first
+ * way is read, a node read after a way has no location and the ways using it have no geometry. In the same way the
+ * way locations are sorted when the first relation is read, the ways read after a relation cannot be members of a
+ * multipolygon.
+ * The locations are stored as integer coordinates with a precision of 1e-7 degree, as in the OSM database.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+class OSMGeometryBuilder implements Closeable {
+    /** Closed ways with one of these keys are lines, unless they are tagged with area=yes */
+    private static final String[] LINEAR_KEYS = {"highway", "barrier", "railway", "waterway"};
+    private final MappedIdMap nodeLocations;
+    private final MappedIdMap wayOffsets;
+    private final MappedLongArray wayLocations;
+
+    /**
+     * @param storeWays True to keep the way locations, required to build the multipolygon relations
+     */
+    OSMGeometryBuilder(boolean storeWays) throws IOException {
+        nodeLocations = new MappedIdMap("h2gis_osm_nodes");
+        if (storeWays) {
+            wayOffsets = new MappedIdMap("h2gis_osm_ways");
+            wayLocations = new MappedLongArray("h2gis_osm_way_nodes");
+        } else {
+            wayOffsets = null;
+            wayLocations = null;
+        }
+    }
+
+    private static long toLocation(double latitude, double longitude) {
+        return (Math.round(latitude * 1e7) << 32) | (Math.round(longitude * 1e7) & 0xFFFFFFFFL);
+    }
+
+    private static Coordinate toCoordinate(long location) {
+        // Divided by 1e7 so the value is the nearest double of the decimal coordinate, as in the node table
+        return new Coordinate((int) location / 1e7, (int) (location >> 32) / 1e7);
+    }
+
+    /**
+     * Keep the location of a node
+     * @param node Node
+     */
+    void addNode(NodeOSMElement node) throws IOException {
+        if (nodeLocations.isFinished()) {
+            return;
+        }
+        nodeLocations.put(node.getID(), toLocation(node.getLatitude(), node.getLongitude()));
+    }
+
+    /**
+     * Build the geometry of a way. A closed way is a polygon, except when it is tagged with area=no or with a
+     * linear key.
+     * @param way Way
+     * @param gf Geometry factory
+     * @return LINESTRING or POLYGON, null if a node of the way is not in the file
+     */
+    Geometry buildWay(WayOSMElement way, GeometryFactory gf) throws IOException {
+        List<Long> refs = way.getNodesRef();
+        if (refs.size() < 2) {
+            return null;
+        }
+        nodeLocations.finish();
+        long[] locations = new long[refs.size()];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = nodeLocations.get(refs.get(i));
+            if (locations[i] == MappedIdMap.MISSING) {
+                return null;
+            }
+        }
+        if (wayOffsets != null && !wayOffsets.isFinished()) {
+            wayOffsets.put(way.getID(), wayLocations.size());
+            wayLocations.add(locations.length);
+            for (long location : locations) {
+                wayLocations.add(location);
+            }
+        }
+        Coordinate[] coordinates = new Coordinate[locations.length];
+        for (int i = 0; i < locations.length; i++) {
+            coordinates[i] = toCoordinate(locations[i]);
+        }
+        if (coordinates.length >= 4 && refs.get(0).equals(refs.get(refs.size() - 1)) && isArea(way.getTags())) {
+            return gf.createPolygon(coordinates);
+        }
+        return gf.createLineString(coordinates);
+    }
+
+    private static boolean isArea(Map<String, String> tags) {
+        String area = tags.get("area");
+        if (area != null) {
+            return !area.equalsIgnoreCase("no");
+        }
+        for (String key : LINEAR_KEYS) {
+            if (tags.containsKey(key)) {
+                return false;
+            }
+        }
+        return !"coastline".equals(tags.get("natural"));
+    }
+
+    /**
+     * @param tags Tags of a relation
+     * @return True if the relation is a multipolygon or a boundary
+     */
+    static boolean isMultipolygon(Map<String, String> tags) {
+        String type = tags.get("type");
+        return "multipolygon".equals(type) || "boundary".equals(type);
+    }
+
+    /**
+     * Build the polygons of a multipolygon relation. The rings are rebuilt from the member ways, the inner and
+     * outer roles are not used: the holes are found by the polygonizer.
+     * @param wayIds Way members of the relation
+     * @param gf Geometry factory
+     * @return POLYGON or MULTIPOLYGON, null if a member way is not in the file or if the rings are not closed
+     */
+    Geometry buildMultipolygon(long[] wayIds, GeometryFactory gf) {
+        if (wayOffsets == null || wayIds.length == 0) {
+            return null;
+        }
+        wayOffsets.finish();
+        Polygonizer polygonizer = new Polygonizer(true);
+        for (long wayId : wayIds) {
+            long offset = wayOffsets.get(wayId);
+            if (offset == MappedIdMap.MISSING) {
+                return null;
+            }
+            Coordinate[] coordinates = new Coordinate[(int) wayLocations.get(offset)];
+            for (int i = 0; i < coordinates.length; i++) {
+                coordinates[i] = toCoordinate(wayLocations.get(offset + 1 + i));
+            }
+            polygonizer.add(gf.createLineString(coordinates));
+        }
+        if (!polygonizer.getDangles().isEmpty() || !polygonizer.getCutEdges().isEmpty()) {
+            return null;
+        }
+        Geometry polygons = polygonizer.getGeometry();
+        return polygons.isEmpty() ? null : polygons;
+    }
+
+    @Override
+    public void close() throws IOException {
+        nodeLocations.close();
+        if (wayOffsets != null) {
+            wayOffsets.close();
+            wayLocations.close();
+        }
+    }
+}
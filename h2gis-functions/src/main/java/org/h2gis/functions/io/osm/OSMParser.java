@@ -24,9 +24,12 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.h2.api.ErrorCode;
 import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.api.ProgressVisitor;
+import org.h2gis.functions.io.utility.ParallelRowReader;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.KeyValueOptions;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.TableUtilities;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.PrecisionModel;
 import org.xml.sax.Attributes;
@@ -46,7 +49,9 @@ import java.sql.SQLException;
 import java.sql.Types;
 import java.text.ParseException;
 import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.zip.GZIPInputStream;
@@ -56,6 +61,10 @@ import org.h2gis.utilities.dbtypes.DBUtils;
 /**
  * Parse an OSM file and store the elements into a database. The database model
  * contains 10 tables.
+ * The XML files are read with a SAX parser, the PBF files are decoded by worker threads
+ * and the decoded elements are inserted with the same prepared statements.
+ * The geometries of the ways and of the multipolygon relations can be built during the import,
+ * the node locations are then kept in a memory mapped file.
  *
  *
  * @author Erwan Bocher
@@ -65,6 +74,11 @@ public class OSMParser extends DefaultHandler {
 
     private final File fileName;
     private final String encoding;
+    private final int workerCount;
+    private final boolean wayGeometry;
+    private final boolean multipolygonGeometry;
+    private OSMGeometryBuilder geometryBuilder;
+    private final List<Long> relationWayMembers = new ArrayList<>();
     private final boolean deleteTable;
     // Set the same batch size as OSMOSIS
     private static final int BATCH_SIZE = 8000;
@@ -105,11 +119,37 @@ public class OSMParser extends DefaultHandler {
     private static String TAG_DUPLICATE_EXCEPTION = String.valueOf(ErrorCode.DUPLICATE_KEY_1);
     private Connection connection;
 
-    public OSMParser(Connection connection, File fileName, String encoding, boolean deleteTable) {
+    /**
+     * @param connection Database connection
+     * @param fileName OSM file
+     * @param options Encoding of the XML files, or space separated options
+     *                {@code encoding=<charset> workers=<count> geometry=true multipolygon=true}.
+     *                The workers decode the blocks of the PBF files, geometry=true adds the LINESTRING or POLYGON
+     *                of the ways in the way table and multipolygon=true adds the polygons of the multipolygon
+     *                and boundary relations in the relation table.
+     * @param deleteTable True to delete the existing tables
+     */
+    public OSMParser(Connection connection, File fileName, String options, boolean deleteTable) throws SQLException {
         this.connection=connection;
         this.fileName=fileName;
-        this.encoding=encoding;
         this.deleteTable=deleteTable;
+        String encoding = options;
+        int workerCount = 1;
+        boolean wayGeometry = false;
+        boolean multipolygonGeometry = false;
+        if (KeyValueOptions.isKeyValue(options)) {
+            KeyValueOptions parsed = KeyValueOptions.parse(options, ParallelRowReader.ENCODING_OPTION, "charset",
+                    ParallelRowReader.WORKERS_OPTION, "geometry", "multipolygon");
+            encoding = parsed.getString(ParallelRowReader.ENCODING_OPTION, parsed.getString("charset", null));
+            workerCount = parsed.getPositiveInt(ParallelRowReader.WORKERS_OPTION, 1);
+            wayGeometry = parsed.getBoolean("geometry", false);
+            multipolygonGeometry = parsed.getBoolean("multipolygon", false);
+        }
+        this.encoding=encoding;
+        this.workerCount=workerCount;
+        // The multipolygons are built from the way geometries
+        this.wayGeometry=wayGeometry || multipolygonGeometry;
+        this.multipolygonGeometry=multipolygonGeometry;
     }
 
     /**
@@ -120,8 +160,9 @@ public class OSMParser extends DefaultHandler {
      * @return list of table names created
      */
     public String[] read(String tableName, ProgressVisitor progress) throws SQLException {
-        if(fileName == null || !(fileName.getName().endsWith(".osm") || fileName.getName().endsWith("osm.gz") || fileName.getName().endsWith("osm.bz2"))) {
-            throw new SQLException(new IllegalArgumentException("This driver handle only .osm, .osm.gz and .osm.bz2 files"));
+        if(fileName == null || !(fileName.getName().endsWith(".osm") || fileName.getName().endsWith("osm.gz")
+                || fileName.getName().endsWith("osm.bz2") || fileName.getName().endsWith(".pbf"))) {
+            throw new SQLException(new IllegalArgumentException("This driver handle only .osm, .osm.gz, .osm.bz2 and .osm.pbf files"));
         }
         this.progress = progress.subProcess(100);
         // Initialisation
@@ -134,8 +175,23 @@ public class OSMParser extends DefaultHandler {
         checkOSMTables(connection, dbType, requestedTable, osmTableName);
         connection.setAutoCommit(false);
         String[] outputOSMTableNames = createOSMDatabaseModel(connection, dbType, requestedTable, osmTableName);
+        if (wayGeometry) {
+            try {
+                geometryBuilder = new OSMGeometryBuilder(multipolygonGeometry);
+            } catch (IOException ex) {
+                closeResources();
+                throw new SQLException("Cannot create the node location store", ex);
+            }
+        }
 
-
+        if (fileName.getName().endsWith(".pbf")) {
+            try {
+                readPbf();
+                return outputOSMTableNames;
+            } finally {
+                closeResources();
+            }
+        }
         FileInputStream fs = null;
         try {
             fs = new FileInputStream(fileName);
@@ -186,6 +242,77 @@ public class OSMParser extends DefaultHandler {
             } catch (IOException ex) {
                 throw new SQLException("Cannot close the file " + fileName.getAbsolutePath(), ex);
             }
+            closeResources();
+        }
+        return null;
+    }
+
+    /**
+     * Read the PBF file, the blocks are decoded by the worker threads and inserted in the file order.
+     */
+    private void readPbf() throws SQLException {
+        try (OSMPbfReader reader = new OSMPbfReader(fileName, workerCount)) {
+            FileChannel channel = reader.getChannel();
+            long size = channel.size();
+            OSMPbfReader.PrimitiveBlock block;
+            while ((block = reader.next()) != null) {
+                if (progress.isCanceled()) {
+                    throw new SQLException("Canceled by user");
+                }
+                for (NodeOSMElement node : block.nodes) {
+                    insertNode(node);
+                    insertBatch();
+                }
+                for (WayOSMElement way : block.ways) {
+                    insertWay(way);
+                    insertBatch();
+                }
+                for (OSMPbfReader.RelationElement relation : block.relations) {
+                    relationWayMembers.clear();
+                    for (int i = 0; i < relation.memberIds.length; i++) {
+                        if (relation.isWayMember(i)) {
+                            relationWayMembers.add(relation.memberIds[i]);
+                        }
+                    }
+                    insertRelation(relation);
+                    for (int i = 0; i < relation.memberIds.length; i++) {
+                        PreparedStatement memberPreparedStmt;
+                        if (relation.isNodeMember(i)) {
+                            memberPreparedStmt = nodeMemberPreparedStmt;
+                            nodeMemberPreparedStmtBatchSize++;
+                        } else if (relation.isWayMember(i)) {
+                            memberPreparedStmt = wayMemberPreparedStmt;
+                            wayMemberPreparedStmtBatchSize++;
+                        } else if (relation.isRelationMember(i)) {
+                            memberPreparedStmt = relationMemberPreparedStmt;
+                            relationMemberPreparedStmtBatchSize++;
+                        } else {
+                            continue;
+                        }
+                        insertMember(memberPreparedStmt, relation.getID(), relation.memberIds[i],
+                                relation.memberRoles[i], i + 1);
+                    }
+                    insertBatch();
+                }
+                if (size > 0) {
+                    progress.setStep((int) (((double) channel.position() / size) * 100));
+                }
+            }
+            flushBatch();
+        } catch (IOException ex) {
+            throw new SQLException("Cannot parse the file " + fileName.getAbsolutePath(), ex);
+        }
+    }
+
+    /**
+     * Close the prepared statements and the node location store, then restore the auto commit
+     */
+    private void closeResources() throws SQLException {
+        try {
+            if (geometryBuilder != null) {
+                geometryBuilder.close();
+                geometryBuilder = null;
+            }
             // When the reading ends, close() method has to be called
             if (nodePreparedStmt != null) {
                 nodePreparedStmt.close();
@@ -217,9 +344,11 @@ public class OSMParser extends DefaultHandler {
             if (relationMemberPreparedStmt != null) {
                 relationMemberPreparedStmt.close();
             }
+        } catch (IOException ex) {
+            throw new SQLException("Cannot delete the node location store", ex);
+        } finally {
             connection.setAutoCommit(true);
         }
-        return null;
     }
 
     /**
@@ -258,13 +387,13 @@ public class OSMParser extends DefaultHandler {
         String nodeTagTableName = TableUtilities.caseIdentifier(requestedTable, osmTableName + OSMTablesFactory.NODE_TAG, dbType);
         nodeTagPreparedStmt = OSMTablesFactory.createNodeTagTable(connection, nodeTagTableName);
         String wayTableName = TableUtilities.caseIdentifier(requestedTable, osmTableName + OSMTablesFactory.WAY, dbType);
-        wayPreparedStmt = OSMTablesFactory.createWayTable(connection, wayTableName);
+        wayPreparedStmt = OSMTablesFactory.createWayTable(connection, wayTableName, wayGeometry);
         String wayTagTableName = TableUtilities.caseIdentifier(requestedTable, osmTableName + OSMTablesFactory.WAY_TAG, dbType);
         wayTagPreparedStmt = OSMTablesFactory.createWayTagTable(connection, wayTagTableName);
         String wayNodeTableName = TableUtilities.caseIdentifier(requestedTable, osmTableName + OSMTablesFactory.WAY_NODE, dbType);
         wayNodePreparedStmt = OSMTablesFactory.createWayNodeTable(connection, wayNodeTableName);
         String relationTableName = TableUtilities.caseIdentifier(requestedTable, osmTableName + OSMTablesFactory.RELATION, dbType);
-        relationPreparedStmt = OSMTablesFactory.createRelationTable(connection, relationTableName);
+        relationPreparedStmt = OSMTablesFactory.createRelationTable(connection, relationTableName, multipolygonGeometry);
         String relationTagTableName = TableUtilities.caseIdentifier(requestedTable, osmTableName + OSMTablesFactory.RELATION_TAG, dbType);
         relationTagPreparedStmt = OSMTablesFactory.createRelationTagTable(connection, relationTagTableName);
         String nodeMemberTableName = TableUtilities.caseIdentifier(requestedTable, osmTableName + OSMTablesFactory.NODE_MEMBER, dbType);
@@ -311,41 +440,27 @@ public class OSMParser extends DefaultHandler {
         } else if (localName.compareToIgnoreCase("relation") == 0) {
             relationOSMElement = new OSMElement();
             setCommonsAttributes(relationOSMElement, attributes);
+            idMemberOrder = 1;
+            relationWayMembers.clear();
             tagLocation = TAG_LOCATION.RELATION;
         } else if (localName.compareToIgnoreCase("member") == 0) {
-            if (type.equalsIgnoreCase("node")) {
-                try {
-                    nodeMemberPreparedStmt.setObject(1, relationOSMElement.getID());
-                    nodeMemberPreparedStmt.setObject(2, Long.valueOf(attributes.getValue("ref")));
-                    nodeMemberPreparedStmt.setObject(3, attributes.getValue("role"));
-                    nodeMemberPreparedStmt.setObject(4, idMemberOrder);
-                    nodeMemberPreparedStmt.addBatch();
+            try {
+                if (type.equalsIgnoreCase("node")) {
+                    insertMember(nodeMemberPreparedStmt, relationOSMElement.getID(),
+                            Long.valueOf(attributes.getValue("ref")), attributes.getValue("role"), idMemberOrder);
                     nodeMemberPreparedStmtBatchSize++;
-                } catch (SQLException ex) {
-                    throw new SAXException("Cannot insert the node member for the relation :  " + relationOSMElement.getID(), ex);
-                }
-            } else if (type.equalsIgnoreCase("way")) {
-                try {
-                    wayMemberPreparedStmt.setObject(1, relationOSMElement.getID());
-                    wayMemberPreparedStmt.setObject(2, Long.valueOf(attributes.getValue("ref")));
-                    wayMemberPreparedStmt.setObject(3, attributes.getValue("role"));
-                    wayMemberPreparedStmt.setObject(4, idMemberOrder);
-                    wayMemberPreparedStmt.addBatch();
+                } else if (type.equalsIgnoreCase("way")) {
+                    relationWayMembers.add(Long.valueOf(attributes.getValue("ref")));
+                    insertMember(wayMemberPreparedStmt, relationOSMElement.getID(),
+                            Long.valueOf(attributes.getValue("ref")), attributes.getValue("role"), idMemberOrder);
                     wayMemberPreparedStmtBatchSize++;
-                } catch (SQLException ex) {
-                    throw new SAXException("Cannot insert the way member for the relation :  " + relationOSMElement.getID(), ex);
-                }
-            } else if (type.equalsIgnoreCase("relation")) {
-                try {
-                    relationMemberPreparedStmt.setObject(1, relationOSMElement.getID());
-                    relationMemberPreparedStmt.setObject(2, Long.valueOf(attributes.getValue("ref")));
-                    relationMemberPreparedStmt.setObject(3, attributes.getValue("role"));
-                    relationMemberPreparedStmt.setObject(4, idMemberOrder);
-                    relationMemberPreparedStmt.addBatch();
+                } else if (type.equalsIgnoreCase("relation")) {
+                    insertMember(relationMemberPreparedStmt, relationOSMElement.getID(),
+                            Long.valueOf(attributes.getValue("ref")), attributes.getValue("role"), idMemberOrder);
                     relationMemberPreparedStmtBatchSize++;
-                } catch (SQLException ex) {
-                    throw new SAXException("Cannot insert the relation member for the relation :  " + relationOSMElement.getID(), ex);
                 }
+            } catch (SQLException ex) {
+                throw new SAXException("Cannot insert the " + type + " member for the relation :  " + relationOSMElement.getID(), ex);
             }
         }
     }
@@ -354,16 +469,7 @@ public class OSMParser extends DefaultHandler {
     public void endDocument() throws SAXException {
         // Execute remaining batch
         try {
-            nodePreparedStmtBatchSize = insertBatch(nodePreparedStmt, nodePreparedStmtBatchSize, 1);
-            nodeTagPreparedStmtBatchSize = insertBatch(nodeTagPreparedStmt, nodeTagPreparedStmtBatchSize, 1);
-            wayPreparedStmtBatchSize = insertBatch(wayPreparedStmt, wayPreparedStmtBatchSize, 1);
-            wayTagPreparedStmtBatchSize = insertBatch(wayTagPreparedStmt, wayTagPreparedStmtBatchSize, 1);
-            relationPreparedStmtBatchSize = insertBatch(relationPreparedStmt, relationPreparedStmtBatchSize, 1);
-            relationTagPreparedStmtBatchSize = insertBatch(relationTagPreparedStmt, relationTagPreparedStmtBatchSize, 1);
-            nodeMemberPreparedStmtBatchSize = insertBatch(nodeMemberPreparedStmt,nodeMemberPreparedStmtBatchSize, 1);
-            wayMemberPreparedStmtBatchSize = insertBatch(wayMemberPreparedStmt, wayMemberPreparedStmtBatchSize, 1);
-            relationMemberPreparedStmtBatchSize = insertBatch(relationMemberPreparedStmt, relationMemberPreparedStmtBatchSize, 1);
-            wayNodePreparedStmtBatchSize = insertBatch(wayNodePreparedStmt, wayNodePreparedStmtBatchSize, 1);
+            flushBatch();
         } catch (SQLException ex) {
             throw new SAXException("Could not insert sql batch", ex);
         }
@@ -374,82 +480,21 @@ public class OSMParser extends DefaultHandler {
         if (localName.compareToIgnoreCase("node") == 0) {
             tagLocation = TAG_LOCATION.OTHER;
             try {
-                nodePreparedStmt.setObject(1, nodeOSMElement.getID());
-                nodePreparedStmt.setObject(2, nodeOSMElement.getPoint(gf));
-                nodePreparedStmt.setObject(3, nodeOSMElement.getElevation());
-                nodePreparedStmt.setObject(4, nodeOSMElement.getUser());
-                nodePreparedStmt.setObject(5, nodeOSMElement.getUID());
-                nodePreparedStmt.setObject(6, nodeOSMElement.getVisible());
-                nodePreparedStmt.setObject(7, nodeOSMElement.getVersion());
-                nodePreparedStmt.setObject(8, nodeOSMElement.getChangeSet());
-                nodePreparedStmt.setObject(9, nodeOSMElement.getTimeStamp(), Types.DATE);
-                nodePreparedStmt.setString(10, nodeOSMElement.getName());
-                nodePreparedStmt.addBatch();
-                nodePreparedStmtBatchSize++;
-                HashMap<String, String> tags = nodeOSMElement.getTags();
-                for (Map.Entry<String, String> entry : tags.entrySet()) {
-                    nodeTagPreparedStmt.setObject(1, nodeOSMElement.getID());
-                    nodeTagPreparedStmt.setObject(2, entry.getKey());
-                    nodeTagPreparedStmt.setObject(3, entry.getValue());
-                    nodeTagPreparedStmt.addBatch();
-                    nodeTagPreparedStmtBatchSize++;
-                }
+                insertNode(nodeOSMElement);
             } catch (SQLException ex) {
                 throw new SAXException("Cannot insert the node  :  " + nodeOSMElement.getID(), ex);
             }
         } else if (localName.compareToIgnoreCase("way") == 0) {
             tagLocation = TAG_LOCATION.OTHER;
             try {
-                wayPreparedStmt.setObject(1, wayOSMElement.getID());
-                wayPreparedStmt.setObject(2, wayOSMElement.getUser());
-                wayPreparedStmt.setObject(3, wayOSMElement.getUID());
-                wayPreparedStmt.setObject(4, wayOSMElement.getVisible());
-                wayPreparedStmt.setObject(5, wayOSMElement.getVersion());
-                wayPreparedStmt.setObject(6, wayOSMElement.getChangeSet());
-                wayPreparedStmt.setTimestamp(7, wayOSMElement.getTimeStamp());
-                wayPreparedStmt.setString(8, wayOSMElement.getName());
-                wayPreparedStmt.addBatch();
-                wayPreparedStmtBatchSize++;
-                HashMap<String, String> tags = wayOSMElement.getTags();
-                for (Map.Entry<String, String> entry : tags.entrySet()) {
-                    wayTagPreparedStmt.setObject(1, wayOSMElement.getID());
-                    wayTagPreparedStmt.setObject(2, entry.getKey());
-                    wayTagPreparedStmt.setObject(3, entry.getValue());
-                    wayTagPreparedStmt.addBatch();
-                    wayTagPreparedStmtBatchSize++;
-                }
-                int order = 1;
-                for (long ref :  wayOSMElement.getNodesRef()) {
-                    wayNodePreparedStmt.setObject(1, wayOSMElement.getID());
-                    wayNodePreparedStmt.setObject(2, ref);
-                    wayNodePreparedStmt.setObject(3, order++);
-                    wayNodePreparedStmt.addBatch();
-                    wayNodePreparedStmtBatchSize++;
-                }
+                insertWay(wayOSMElement);
             } catch (SQLException ex) {
                 throw new SAXException("Cannot insert the way  :  " + wayOSMElement.getID(), ex);
             }
         } else if (localName.compareToIgnoreCase("relation") == 0) {
             tagLocation = TAG_LOCATION.OTHER;
             try {
-                relationPreparedStmt.setObject(1, relationOSMElement.getID());
-                relationPreparedStmt.setObject(2, relationOSMElement.getUser());
-                relationPreparedStmt.setObject(3, relationOSMElement.getUID());
-                relationPreparedStmt.setObject(4, relationOSMElement.getVisible());
-                relationPreparedStmt.setObject(5, relationOSMElement.getVersion());
-                relationPreparedStmt.setObject(6, relationOSMElement.getChangeSet());
-                relationPreparedStmt.setTimestamp(7, relationOSMElement.getTimeStamp());
-                relationPreparedStmt.addBatch();
-                relationPreparedStmtBatchSize++;
-                HashMap<String, String> tags = relationOSMElement.getTags();
-                for (Map.Entry<String, String> entry : tags.entrySet()) {
-                    relationTagPreparedStmt.setObject(1, relationOSMElement.getID());
-                    relationTagPreparedStmt.setObject(2, entry.getKey());
-                    relationTagPreparedStmt.setObject(3, entry.getValue());
-                    relationTagPreparedStmt.addBatch();
-                    relationTagPreparedStmtBatchSize++;
-                }
-                idMemberOrder = 0;
+                insertRelation(relationOSMElement);
             } catch (SQLException ex) {
                 throw new SAXException("Cannot insert the relation  :  " + relationOSMElement.getID(), ex);
             }
@@ -471,6 +516,131 @@ public class OSMParser extends DefaultHandler {
         }
     }
 
+    private void insertNode(NodeOSMElement node) throws SQLException {
+        if (geometryBuilder != null) {
+            try {
+                geometryBuilder.addNode(node);
+            } catch (IOException ex) {
+                throw new SQLException("Cannot store the location of the node " + node.getID(), ex);
+            }
+        }
+        nodePreparedStmt.setObject(1, node.getID());
+        nodePreparedStmt.setObject(2, node.getPoint(gf));
+        nodePreparedStmt.setObject(3, node.getElevation());
+        nodePreparedStmt.setObject(4, node.getUser());
+        nodePreparedStmt.setObject(5, node.getUID());
+        nodePreparedStmt.setObject(6, node.getVisible());
+        nodePreparedStmt.setObject(7, node.getVersion());
+        nodePreparedStmt.setObject(8, node.getChangeSet());
+        nodePreparedStmt.setObject(9, node.getTimeStamp(), Types.DATE);
+        nodePreparedStmt.setString(10, node.getName());
+        nodePreparedStmt.addBatch();
+        nodePreparedStmtBatchSize++;
+        HashMap<String, String> tags = node.getTags();
+        for (Map.Entry<String, String> entry : tags.entrySet()) {
+            nodeTagPreparedStmt.setObject(1, node.getID());
+            nodeTagPreparedStmt.setObject(2, entry.getKey());
+            nodeTagPreparedStmt.setObject(3, entry.getValue());
+            nodeTagPreparedStmt.addBatch();
+            nodeTagPreparedStmtBatchSize++;
+        }
+    }
+
+    private void insertWay(WayOSMElement way) throws SQLException {
+        wayPreparedStmt.setObject(1, way.getID());
+        wayPreparedStmt.setObject(2, way.getUser());
+        wayPreparedStmt.setObject(3, way.getUID());
+        wayPreparedStmt.setObject(4, way.getVisible());
+        wayPreparedStmt.setObject(5, way.getVersion());
+        wayPreparedStmt.setObject(6, way.getChangeSet());
+        wayPreparedStmt.setTimestamp(7, way.getTimeStamp());
+        wayPreparedStmt.setString(8, way.getName());
+        if (geometryBuilder != null) {
+            try {
+                wayPreparedStmt.setObject(9, geometryBuilder.buildWay(way, gf));
+            } catch (IOException ex) {
+                throw new SQLException("Cannot store the locations of the way " + way.getID(), ex);
+            }
+        }
+        wayPreparedStmt.addBatch();
+        wayPreparedStmtBatchSize++;
+        HashMap<String, String> tags = way.getTags();
+        for (Map.Entry<String, String> entry : tags.entrySet()) {
+            wayTagPreparedStmt.setObject(1, way.getID());
+            wayTagPreparedStmt.setObject(2, entry.getKey());
+            wayTagPreparedStmt.setObject(3, entry.getValue());
+            wayTagPreparedStmt.addBatch();
+            wayTagPreparedStmtBatchSize++;
+        }
+        int order = 1;
+        for (long ref : way.getNodesRef()) {
+            wayNodePreparedStmt.setObject(1, way.getID());
+            wayNodePreparedStmt.setObject(2, ref);
+            wayNodePreparedStmt.setObject(3, order++);
+            wayNodePreparedStmt.addBatch();
+            wayNodePreparedStmtBatchSize++;
+        }
+    }
+
+    private void insertRelation(OSMElement relation) throws SQLException {
+        relationPreparedStmt.setObject(1, relation.getID());
+        relationPreparedStmt.setObject(2, relation.getUser());
+        relationPreparedStmt.setObject(3, relation.getUID());
+        relationPreparedStmt.setObject(4, relation.getVisible());
+        relationPreparedStmt.setObject(5, relation.getVersion());
+        relationPreparedStmt.setObject(6, relation.getChangeSet());
+        relationPreparedStmt.setTimestamp(7, relation.getTimeStamp());
+        if (multipolygonGeometry) {
+            Geometry geometry = null;
+            if (OSMGeometryBuilder.isMultipolygon(relation.getTags())) {
+                long[] wayIds = new long[relationWayMembers.size()];
+                for (int i = 0; i < wayIds.length; i++) {
+                    wayIds[i] = relationWayMembers.get(i);
+                }
+                geometry = geometryBuilder.buildMultipolygon(wayIds, gf);
+            }
+            relationPreparedStmt.setObject(8, geometry);
+        }
+        relationPreparedStmt.addBatch();
+        relationPreparedStmtBatchSize++;
+        HashMap<String, String> tags = relation.getTags();
+        for (Map.Entry<String, String> entry : tags.entrySet()) {
+            relationTagPreparedStmt.setObject(1, relation.getID());
+            relationTagPreparedStmt.setObject(2, entry.getKey());
+            relationTagPreparedStmt.setObject(3, entry.getValue());
+            relationTagPreparedStmt.addBatch();
+            relationTagPreparedStmtBatchSize++;
+        }
+    }
+
+    /**
+     * Add a member of a relation to the batch of the member statement, the batch size is updated by the caller
+     */
+    private static void insertMember(PreparedStatement memberPreparedStmt, long relationId, long memberId,
+                                     String role, int order) throws SQLException {
+        memberPreparedStmt.setObject(1, relationId);
+        memberPreparedStmt.setObject(2, memberId);
+        memberPreparedStmt.setObject(3, role);
+        memberPreparedStmt.setObject(4, order);
+        memberPreparedStmt.addBatch();
+    }
+
+    /**
+     * Execute the remaining batches
+     */
+    private void flushBatch() throws SQLException {
+        nodePreparedStmtBatchSize = insertBatch(nodePreparedStmt, nodePreparedStmtBatchSize, 1);
+        nodeTagPreparedStmtBatchSize = insertBatch(nodeTagPreparedStmt, nodeTagPreparedStmtBatchSize, 1);
+        wayPreparedStmtBatchSize = insertBatch(wayPreparedStmt, wayPreparedStmtBatchSize, 1);
+        wayTagPreparedStmtBatchSize = insertBatch(wayTagPreparedStmt, wayTagPreparedStmtBatchSize, 1);
+        relationPreparedStmtBatchSize = insertBatch(relationPreparedStmt, relationPreparedStmtBatchSize, 1);
+        relationTagPreparedStmtBatchSize = insertBatch(relationTagPreparedStmt, relationTagPreparedStmtBatchSize, 1);
+        nodeMemberPreparedStmtBatchSize = insertBatch(nodeMemberPreparedStmt,nodeMemberPreparedStmtBatchSize, 1);
+        wayMemberPreparedStmtBatchSize = insertBatch(wayMemberPreparedStmt, wayMemberPreparedStmtBatchSize, 1);
+        relationMemberPreparedStmtBatchSize = insertBatch(relationMemberPreparedStmt, relationMemberPreparedStmtBatchSize, 1);
+        wayNodePreparedStmtBatchSize = insertBatch(wayNodePreparedStmt, wayNodePreparedStmtBatchSize, 1);
+    }
+
     private void insertBatch() throws SQLException {
         nodePreparedStmtBatchSize = insertBatch(nodePreparedStmt, nodePreparedStmtBatchSize);
         nodeTagPreparedStmtBatchSize = insertBatch(nodeTagPreparedStmt, nodeTagPreparedStmtBatchSize);
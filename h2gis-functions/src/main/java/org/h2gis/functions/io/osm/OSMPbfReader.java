@@ -0,0 +1,687 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.osm;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Read an OSM PBF file. The blobs are read in the file order by the calling thread, then inflated and decoded by
+ * worker threads. The decoded blocks are returned in the file order, at most two blocks per worker are kept in
+ * memory.
+ *
+ * @see <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+class OSMPbfReader implements Closeable {
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    private static final String[] SUPPORTED_FEATURES = {"OsmSchema-V0.6", "DenseNodes", "HistoricalInformation"};
+    private static final int MEMBER_NODE = 0;
+    private static final int MEMBER_WAY = 1;
+    private static final int MEMBER_RELATION = 2;
+
+    private final FileInputStream fileInputStream;
+    private final DataInputStream input;
+    private final ExecutorService executor;
+    private final int queueCapacity;
+    private final ArrayDeque<Future<PrimitiveBlock>> pending = new ArrayDeque<>();
+    private boolean endOfFile = false;
+
+    /**
+     * Constructor
+     * @param file OSM PBF file
+     * @param workerCount Number of threads decoding the blocks
+     */
+    OSMPbfReader(File file, int workerCount) throws IOException {
+        this.fileInputStream = new FileInputStream(file);
+        this.input = new DataInputStream(new BufferedInputStream(fileInputStream, 65536));
+        int threads = Math.max(1, workerCount);
+        this.queueCapacity = threads * 2;
+        final AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "H2GIS-osm-pbf-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return The file channel, to follow the read progression
+     */
+    FileChannel getChannel() {
+        return fileInputStream.getChannel();
+    }
+
+    /**
+     * @return The next block of the file, or null at the end of the file
+     * @throws IOException Read or decode error
+     */
+    PrimitiveBlock next() throws IOException {
+        while (pending.size() < queueCapacity && !endOfFile) {
+            byte[] blob = readBlob();
+            if (blob != null) {
+                pending.add(executor.submit(() -> decodePrimitiveBlock(inflate(blob))));
+            }
+        }
+        Future<PrimitiveBlock> block = pending.poll();
+        if (block == null) {
+            return null;
+        }
+        try {
+            return block.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the file", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getLocalizedMessage(), cause);
+        }
+    }
+
+    /**
+     * Read the next blob of the file. The header blob is checked and skipped.
+     * @return The next data blob, null if the blob must be skipped or if the end of the file is reached
+     */
+    private byte[] readBlob() throws IOException {
+        int headerSize;
+        try {
+            headerSize = input.readInt();
+        } catch (EOFException ex) {
+            endOfFile = true;
+            return null;
+        }
+        if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+            throw new IOException("Invalid OSM PBF blob header size " + headerSize);
+        }
+        byte[] headerBytes = new byte[headerSize];
+        input.readFully(headerBytes);
+        String type = null;
+        int dataSize = -1;
+        PbfInput header = new PbfInput(headerBytes);
+        while (header.nextField()) {
+            switch (header.getFieldNumber()) {
+                case 1:
+                    type = header.readString();
+                    break;
+                case 3:
+                    dataSize = header.readInt32();
+                    break;
+                default:
+                    header.skipField();
+            }
+        }
+        if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+            throw new IOException("Invalid OSM PBF blob header");
+        }
+        byte[] blob = new byte[dataSize];
+        input.readFully(blob);
+        if (type.equals("OSMHeader")) {
+            checkHeaderBlock(inflate(blob));
+            return null;
+        } else if (type.equals("OSMData")) {
+            return blob;
+        }
+        // Unknown blob types are skipped
+        return null;
+    }
+
+    /**
+     * @param blob Blob message
+     * @return The uncompressed content of the blob
+     */
+    private static byte[] inflate(byte[] blob) throws IOException {
+        PbfInput input = new PbfInput(blob);
+        byte[] raw = null;
+        byte[] zlibData = null;
+        int rawSize = -1;
+        while (input.nextField()) {
+            switch (input.getFieldNumber()) {
+                case 1:
+                    raw = input.readBytes();
+                    break;
+                case 2:
+                    rawSize = input.readInt32();
+                    break;
+                case 3:
+                    zlibData = input.readBytes();
+                    break;
+                case 4:
+                case 5:
+                case 6:
+                case 7:
+                    throw new IOException("Only the raw and zlib compressed OSM PBF blobs are supported");
+                default:
+                    input.skipField();
+            }
+        }
+        if (raw != null) {
+            return raw;
+        }
+        if (zlibData == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+            throw new IOException("Invalid OSM PBF blob");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlibData);
+            byte[] data = new byte[rawSize];
+            int length = 0;
+            while (length < rawSize && !inflater.finished()) {
+                int read = inflater.inflate(data, length, rawSize - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != rawSize) {
+                throw new IOException("Truncated OSM PBF blob");
+            }
+            return data;
+        } catch (DataFormatException ex) {
+            throw new IOException("Cannot inflate the OSM PBF blob", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void checkHeaderBlock(byte[] data) throws IOException {
+        PbfInput input = new PbfInput(data);
+        while (input.nextField()) {
+            if (input.getFieldNumber() == 4) {
+                String feature = input.readString();
+                boolean supported = false;
+                for (String supportedFeature : SUPPORTED_FEATURES) {
+                    supported |= supportedFeature.equals(feature);
+                }
+                if (!supported) {
+                    throw new IOException("The OSM PBF feature " + feature + " is not supported");
+                }
+            } else {
+                input.skipField();
+            }
+        }
+    }
+
+    /**
+     * Decode a PrimitiveBlock message
+     * @param data Uncompressed block
+     * @return Decoded elements
+     */
+    static PrimitiveBlock decodePrimitiveBlock(byte[] data) throws IOException {
+        PbfInput input = new PbfInput(data);
+        BlockContext context = new BlockContext();
+        List<PbfInput> groups = new ArrayList<>();
+        while (input.nextField()) {
+            switch (input.getFieldNumber()) {
+                case 1:
+                    context.strings = readStringTable(input.readMessage());
+                    break;
+                case 2:
+                    // The groups are decoded once the granularity is known
+                    groups.add(input.readMessage());
+                    break;
+                case 17:
+                    context.granularity = input.readInt32();
+                    break;
+                case 18:
+                    context.dateGranularity = input.readInt32();
+                    break;
+                case 19:
+                    context.latOffset = input.readVarint();
+                    break;
+                case 20:
+                    context.lonOffset = input.readVarint();
+                    break;
+                default:
+                    input.skipField();
+            }
+        }
+        PrimitiveBlock block = new PrimitiveBlock();
+        for (PbfInput group : groups) {
+            while (group.nextField()) {
+                switch (group.getFieldNumber()) {
+                    case 1:
+                        block.nodes.add(decodeNode(group.readMessage(), context));
+                        break;
+                    case 2:
+                        decodeDenseNodes(group.readMessage(), context, block.nodes);
+                        break;
+                    case 3:
+                        block.ways.add(decodeWay(group.readMessage(), context));
+                        break;
+                    case 4:
+                        block.relations.add(decodeRelation(group.readMessage(), context));
+                        break;
+                    default:
+                        group.skipField();
+                }
+            }
+        }
+        return block;
+    }
+
+    private static String[] readStringTable(PbfInput input) throws IOException {
+        List<String> strings = new ArrayList<>();
+        while (input.nextField()) {
+            if (input.getFieldNumber() == 1) {
+                strings.add(input.readString());
+            } else {
+                input.skipField();
+            }
+        }
+        return strings.toArray(new String[0]);
+    }
+
+    private static NodeOSMElement decodeNode(PbfInput input, BlockContext context) throws IOException {
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        long[] keys = null;
+        long[] values = null;
+        PbfInput info = null;
+        while (input.nextField()) {
+            switch (input.getFieldNumber()) {
+                case 1:
+                    id = input.readSInt64();
+                    break;
+                case 2:
+                    keys = input.readPackedVarints(keys, false);
+                    break;
+                case 3:
+                    values = input.readPackedVarints(values, false);
+                    break;
+                case 4:
+                    info = input.readMessage();
+                    break;
+                case 8:
+                    lat = input.readSInt64();
+                    break;
+                case 9:
+                    lon = input.readSInt64();
+                    break;
+                default:
+                    input.skipField();
+            }
+        }
+        NodeOSMElement node = new NodeOSMElement(context.getLatitude(lat), context.getLongitude(lon));
+        node.setId(id);
+        setInfo(node, info, context);
+        addTags(node, keys, values, context);
+        return node;
+    }
+
+    private static void decodeDenseNodes(PbfInput input, BlockContext context, List<NodeOSMElement> nodes)
+            throws IOException {
+        long[] ids = null;
+        long[] lats = null;
+        long[] lons = null;
+        long[] keysValues = null;
+        long[] versions = null;
+        long[] timestamps = null;
+        long[] changesets = null;
+        long[] uids = null;
+        long[] userSids = null;
+        long[] visibles = null;
+        while (input.nextField()) {
+            switch (input.getFieldNumber()) {
+                case 1:
+                    ids = input.readPackedVarints(ids, true);
+                    break;
+                case 5:
+                    PbfInput denseInfo = input.readMessage();
+                    while (denseInfo.nextField()) {
+                        switch (denseInfo.getFieldNumber()) {
+                            case 1:
+                                versions = denseInfo.readPackedVarints(versions, false);
+                                break;
+                            case 2:
+                                timestamps = denseInfo.readPackedVarints(timestamps, true);
+                                break;
+                            case 3:
+                                changesets = denseInfo.readPackedVarints(changesets, true);
+                                break;
+                            case 4:
+                                uids = denseInfo.readPackedVarints(uids, true);
+                                break;
+                            case 5:
+                                userSids = denseInfo.readPackedVarints(userSids, true);
+                                break;
+                            case 6:
+                                visibles = denseInfo.readPackedVarints(visibles, false);
+                                break;
+                            default:
+                                denseInfo.skipField();
+                        }
+                    }
+                    break;
+                case 8:
+                    lats = input.readPackedVarints(lats, true);
+                    break;
+                case 9:
+                    lons = input.readPackedVarints(lons, true);
+                    break;
+                case 10:
+                    keysValues = input.readPackedVarints(keysValues, false);
+                    break;
+                default:
+                    input.skipField();
+            }
+        }
+        if (ids == null) {
+            return;
+        }
+        if (lats == null || lons == null || lats.length != ids.length || lons.length != ids.length) {
+            throw new IOException("Invalid OSM PBF dense nodes");
+        }
+        // The ids, coordinates and metadata are delta coded
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        long timestamp = 0;
+        long changeset = 0;
+        long uid = 0;
+        long userSid = 0;
+        int keyValueIndex = 0;
+        for (int i = 0; i < ids.length; i++) {
+            id += ids[i];
+            lat += lats[i];
+            lon += lons[i];
+            NodeOSMElement node = new NodeOSMElement(context.getLatitude(lat), context.getLongitude(lon));
+            node.setId(id);
+            if (versions != null && i < versions.length) {
+                node.setVersion((int) versions[i]);
+            }
+            if (timestamps != null && i < timestamps.length) {
+                timestamp += timestamps[i];
+                node.setTimestamp(context.getTimestamp(timestamp));
+            }
+            if (changesets != null && i < changesets.length) {
+                changeset += changesets[i];
+                node.setChangeset((int) changeset);
+            }
+            if (uids != null && i < uids.length) {
+                uid += uids[i];
+                node.setUid(uid);
+            }
+            if (userSids != null && i < userSids.length) {
+                userSid += userSids[i];
+                node.setUser(context.getUser((int) userSid));
+            }
+            node.setVisible(visibles == null || i >= visibles.length || visibles[i] != 0);
+            if (keysValues != null) {
+                // The tags of the nodes are separated by 0
+                while (keyValueIndex < keysValues.length && keysValues[keyValueIndex] != 0) {
+                    if (keyValueIndex + 1 >= keysValues.length) {
+                        throw new IOException("Invalid OSM PBF dense node tags");
+                    }
+                    node.addTag(context.getString(keysValues[keyValueIndex]),
+                            context.getString(keysValues[keyValueIndex + 1]));
+                    keyValueIndex += 2;
+                }
+                keyValueIndex++;
+            }
+            nodes.add(node);
+        }
+    }
+
+    private static WayOSMElement decodeWay(PbfInput input, BlockContext context) throws IOException {
+        WayOSMElement way = new WayOSMElement();
+        long[] keys = null;
+        long[] values = null;
+        long[] refs = null;
+        PbfInput info = null;
+        while (input.nextField()) {
+            switch (input.getFieldNumber()) {
+                case 1:
+                    way.setId(input.readVarint());
+                    break;
+                case 2:
+                    keys = input.readPackedVarints(keys, false);
+                    break;
+                case 3:
+                    values = input.readPackedVarints(values, false);
+                    break;
+                case 4:
+                    info = input.readMessage();
+                    break;
+                case 8:
+                    refs = input.readPackedVarints(refs, true);
+                    break;
+                default:
+                    input.skipField();
+            }
+        }
+        setInfo(way, info, context);
+        addTags(way, keys, values, context);
+        if (refs != null) {
+            long ref = 0;
+            for (long delta : refs) {
+                ref += delta;
+                way.addRef(ref);
+            }
+        }
+        return way;
+    }
+
+    private static RelationElement decodeRelation(PbfInput input, BlockContext context) throws IOException {
+        RelationElement relation = new RelationElement();
+        long[] keys = null;
+        long[] values = null;
+        long[] roles = null;
+        long[] memberIds = null;
+        long[] types = null;
+        PbfInput info = null;
+        while (input.nextField()) {
+            switch (input.getFieldNumber()) {
+                case 1:
+                    relation.setId(input.readVarint());
+                    break;
+                case 2:
+                    keys = input.readPackedVarints(keys, false);
+                    break;
+                case 3:
+                    values = input.readPackedVarints(values, false);
+                    break;
+                case 4:
+                    info = input.readMessage();
+                    break;
+                case 8:
+                    roles = input.readPackedVarints(roles, false);
+                    break;
+                case 9:
+                    memberIds = input.readPackedVarints(memberIds, true);
+                    break;
+                case 10:
+                    types = input.readPackedVarints(types, false);
+                    break;
+                default:
+                    input.skipField();
+            }
+        }
+        setInfo(relation, info, context);
+        addTags(relation, keys, values, context);
+        if (memberIds != null) {
+            if (roles == null || types == null || roles.length != memberIds.length || types.length != memberIds.length) {
+                throw new IOException("Invalid OSM PBF relation members " + relation.getID());
+            }
+            relation.memberIds = new long[memberIds.length];
+            relation.memberTypes = new int[memberIds.length];
+            relation.memberRoles = new String[memberIds.length];
+            long memberId = 0;
+            for (int i = 0; i < memberIds.length; i++) {
+                memberId += memberIds[i];
+                relation.memberIds[i] = memberId;
+                relation.memberTypes[i] = (int) types[i];
+                relation.memberRoles[i] = context.getString(roles[i]);
+            }
+        }
+        return relation;
+    }
+
+    private static void setInfo(OSMElement element, PbfInput info, BlockContext context) throws IOException {
+        element.setVisible(true);
+        if (info == null) {
+            return;
+        }
+        while (info.nextField()) {
+            switch (info.getFieldNumber()) {
+                case 1:
+                    element.setVersion(info.readInt32());
+                    break;
+                case 2:
+                    element.setTimestamp(context.getTimestamp(info.readVarint()));
+                    break;
+                case 3:
+                    element.setChangeset((int) info.readVarint());
+                    break;
+                case 4:
+                    element.setUid(info.readInt32());
+                    break;
+                case 5:
+                    element.setUser(context.getUser(info.readInt32()));
+                    break;
+                case 6:
+                    element.setVisible(info.readBool());
+                    break;
+                default:
+                    info.skipField();
+            }
+        }
+    }
+
+    private static void addTags(OSMElement element, long[] keys, long[] values, BlockContext context)
+            throws IOException {
+        if (keys == null) {
+            return;
+        }
+        if (values == null || values.length != keys.length) {
+            throw new IOException("Invalid OSM PBF tags of the element " + element.getID());
+        }
+        for (int i = 0; i < keys.length; i++) {
+            element.addTag(context.getString(keys[i]), context.getString(values[i]));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        pending.clear();
+        input.close();
+    }
+
+    /**
+     * String table and coordinate encoding of a block
+     */
+    private static final class BlockContext {
+        private String[] strings = new String[0];
+        private int granularity = 100;
+        private int dateGranularity = 1000;
+        private long latOffset = 0;
+        private long lonOffset = 0;
+
+        private String getString(long index) throws IOException {
+            if (index < 0 || index >= strings.length) {
+                throw new IOException("Invalid OSM PBF string index " + index);
+            }
+            return strings[(int) index];
+        }
+
+        private String getUser(int index) throws IOException {
+            // The first string of the table is always empty
+            return index == 0 ? null : getString(index);
+        }
+
+        private double getLatitude(long lat) {
+            // Divided by 1e9 so the value is the nearest double of the decimal coordinate, as in the XML files
+            return (latOffset + (long) granularity * lat) / 1e9;
+        }
+
+        private double getLongitude(long lon) {
+            return (lonOffset + (long) granularity * lon) / 1e9;
+        }
+
+        private Timestamp getTimestamp(long timestamp) {
+            long millis = timestamp * dateGranularity;
+            // Same local date time as the timestamps read from the XML files
+            return Timestamp.valueOf(LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L),
+                    (int) Math.floorMod(millis, 1000L) * 1000000, ZoneOffset.UTC));
+        }
+    }
+
+    /**
+     * Decoded elements of a PrimitiveBlock, in the order of the file
+     */
+    static final class PrimitiveBlock {
+        final List<NodeOSMElement> nodes = new ArrayList<>();
+        final List<WayOSMElement> ways = new ArrayList<>();
+        final List<RelationElement> relations = new ArrayList<>();
+    }
+
+    /**
+     * Relation and its members
+     */
+    static final class RelationElement extends OSMElement {
+        long[] memberIds = new long[0];
+        int[] memberTypes = new int[0];
+        String[] memberRoles = new String[0];
+
+        boolean isNodeMember(int index) {
+            return memberTypes[index] == MEMBER_NODE;
+        }
+
+        boolean isWayMember(int index) {
+            return memberTypes[index] == MEMBER_WAY;
+        }
+
+        boolean isRelationMember(int index) {
+            return memberTypes[index] == MEMBER_RELATION;
+        }
+    }
+}
@@ -50,7 +50,13 @@ public class OSMRead extends AbstractFunction implements ScalarFunction {
                 + "\n path of the file, table name"
                 + "\n path of the file, true for delete the table with the same file name"
                 + "\n path of the file, table name, encoding chartset"
-                + "\n path of the file, table name, encoding chartset, true to delete the table name");
+                + "\n path of the file, table name, encoding chartset, true to delete the table name"
+                + "\n The .osm.pbf files are decoded by worker threads, the encoding chartset argument can be"
+                + "\n replaced by the option 'workers=4' to set the number of threads."
+                + "\n The options 'geometry=true' and 'multipolygon=true' add a THE_GEOM column to the way table"
+                + "\n and to the relation table. The geometries are built during the import, the node locations"
+                + "\n are kept in a temporary memory mapped file."
+                + "\n Example : OSMRead('file.osm.pbf', 'OSM', 'workers=4 multipolygon=true')");
     }
 
     @Override
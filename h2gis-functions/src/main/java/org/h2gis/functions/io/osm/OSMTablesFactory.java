@@ -132,13 +132,29 @@ public class OSMTablesFactory {
      * @return PreparedStatement
      */
     public static PreparedStatement createWayTable(Connection connection, String wayTableName) throws SQLException {
+        return createWayTable(connection, wayTableName, false);
+    }
+
+    /**
+     * Create the ways table that will be used to import OSM ways
+     *
+     * @param connection database
+     * @param wayTableName table name
+     * @param geometry true to add a THE_GEOM column to store the LINESTRING or POLYGON of the way
+     * @return PreparedStatement
+     */
+    public static PreparedStatement createWayTable(Connection connection, String wayTableName, boolean geometry) throws SQLException {
         try (Statement stmt = connection.createStatement()) {
             StringBuilder sb = new StringBuilder("CREATE TABLE ");
             sb.append(wayTableName);
-            sb.append("(ID_WAY BIGINT PRIMARY KEY, USER_NAME VARCHAR, UID BIGINT, VISIBLE BOOLEAN, VERSION INTEGER, CHANGESET INTEGER, LAST_UPDATE TIMESTAMP, NAME VARCHAR);");
+            sb.append("(ID_WAY BIGINT PRIMARY KEY, USER_NAME VARCHAR, UID BIGINT, VISIBLE BOOLEAN, VERSION INTEGER, CHANGESET INTEGER, LAST_UPDATE TIMESTAMP, NAME VARCHAR");
+            if (geometry) {
+                sb.append(", THE_GEOM GEOMETRY(GEOMETRY, 4326)");
+            }
+            sb.append(");");
             stmt.execute(sb.toString());
         }
-        return connection.prepareStatement("INSERT INTO " + wayTableName + " VALUES (?,?,?,?,?,?,?,?);");
+        return connection.prepareStatement("INSERT INTO " + wayTableName + (geometry ? " VALUES (?,?,?,?,?,?,?,?,?);" : " VALUES (?,?,?,?,?,?,?,?);"));
     }
 
     /**
@@ -183,6 +199,18 @@ public class OSMTablesFactory {
      * @return PreparedStatement
      */
     public static PreparedStatement createRelationTable(Connection connection, String relationTable) throws SQLException {
+        return createRelationTable(connection, relationTable, false);
+    }
+
+    /**
+     * Create the relation table.
+     *
+     * @param connection database
+     * @param relationTable table name
+     * @param geometry true to add a THE_GEOM column to store the polygons of the multipolygon relations
+     * @return PreparedStatement
+     */
+    public static PreparedStatement createRelationTable(Connection connection, String relationTable, boolean geometry) throws SQLException {
         try (Statement stmt = connection.createStatement()) {
             StringBuilder sb = new StringBuilder("CREATE TABLE ");
             sb.append(relationTable);
@@ -192,10 +220,14 @@ public class OSMTablesFactory {
                     + "VISIBLE BOOLEAN,"
                     + "VERSION INTEGER,"
                     + "CHANGESET INTEGER,"
-                    + "LAST_UPDATE TIMESTAMP);");
+                    + "LAST_UPDATE TIMESTAMP");
+            if (geometry) {
+                sb.append(", THE_GEOM GEOMETRY(GEOMETRY, 4326)");
+            }
+            sb.append(");");
             stmt.execute(sb.toString());
         }
-        return connection.prepareStatement("INSERT INTO " + relationTable + " VALUES ( ?,?,?,?,?,?,?);");
+        return connection.prepareStatement("INSERT INTO " + relationTable + (geometry ? " VALUES ( ?,?,?,?,?,?,?,?);" : " VALUES ( ?,?,?,?,?,?,?);"));
     }
 
     /**
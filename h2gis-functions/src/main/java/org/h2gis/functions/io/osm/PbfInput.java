@@ -0,0 +1,212 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.osm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Minimal reader of the protocol buffers wire format, enough to decode the messages of an OSM PBF file.
+ * The messages are read from a byte array, an embedded message is read with a new reader on the same array.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+class PbfInput {
+    static final int WIRE_VARINT = 0;
+    static final int WIRE_FIXED64 = 1;
+    static final int WIRE_LENGTH_DELIMITED = 2;
+    static final int WIRE_FIXED32 = 5;
+
+    private final byte[] buffer;
+    private int position;
+    private final int limit;
+    private int tag;
+
+    /**
+     * @param buffer Message bytes
+     * @param offset First byte of the message
+     * @param length Length of the message
+     */
+    PbfInput(byte[] buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.limit = offset + length;
+    }
+
+    PbfInput(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    /**
+     * Read the key of the next field
+     * @return False at the end of the message
+     */
+    boolean nextField() throws IOException {
+        if (position >= limit) {
+            return false;
+        }
+        tag = (int) readVarint();
+        return true;
+    }
+
+    /**
+     * @return Field number of the current field
+     */
+    int getFieldNumber() {
+        return tag >>> 3;
+    }
+
+    /**
+     * @return Wire type of the current field
+     */
+    int getWireType() {
+        return tag & 7;
+    }
+
+    long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= limit) {
+                throw new IOException("Truncated protocol buffer message");
+            }
+            byte b = buffer[position++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IOException("Malformed protocol buffer varint");
+    }
+
+    int readInt32() throws IOException {
+        return (int) readVarint();
+    }
+
+    long readSInt64() throws IOException {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readSInt32() throws IOException {
+        return (int) readSInt64();
+    }
+
+    boolean readBool() throws IOException {
+        return readVarint() != 0;
+    }
+
+    /**
+     * @return Length of the current length delimited field, the position is moved to the first byte of the field
+     */
+    int readLength() throws IOException {
+        long length = readVarint();
+        if (length < 0 || length > limit - position) {
+            throw new IOException("Truncated protocol buffer message");
+        }
+        return (int) length;
+    }
+
+    /**
+     * @return The current length delimited field as an embedded message reader
+     */
+    PbfInput readMessage() throws IOException {
+        int length = readLength();
+        PbfInput message = new PbfInput(buffer, position, length);
+        position += length;
+        return message;
+    }
+
+    byte[] readBytes() throws IOException {
+        int length = readLength();
+        byte[] bytes = new byte[length];
+        System.arraycopy(buffer, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    String readString() throws IOException {
+        int length = readLength();
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    /**
+     * Read a packed repeated field, or a single value if the field is not packed
+     * @param values Previous values of the field, may be null
+     * @param signed True for sint64 values
+     * @return The values followed by the read values
+     */
+    long[] readPackedVarints(long[] values, boolean signed) throws IOException {
+        if (getWireType() != WIRE_LENGTH_DELIMITED) {
+            long value = signed ? readSInt64() : readVarint();
+            long[] result = values == null ? new long[1] : Arrays.copyOf(values, values.length + 1);
+            result[result.length - 1] = value;
+            return result;
+        }
+        int end = readLength() + position;
+        // Each value takes at least one byte
+        long[] read = new long[end - position];
+        int count = 0;
+        PbfInput packed = new PbfInput(buffer, position, end - position);
+        while (packed.position < end) {
+            read[count++] = signed ? packed.readSInt64() : packed.readVarint();
+        }
+        position = end;
+        if (values == null) {
+            return count == read.length ? read : Arrays.copyOf(read, count);
+        }
+        long[] result = Arrays.copyOf(values, values.length + count);
+        System.arraycopy(read, 0, result, values.length, count);
+        return result;
+    }
+
+    /**
+     * Skip the current field
+     */
+    void skipField() throws IOException {
+        switch (getWireType()) {
+            case WIRE_VARINT:
+                readVarint();
+                break;
+            case WIRE_FIXED64:
+                skip(8);
+                break;
+            case WIRE_LENGTH_DELIMITED:
+                skip(readLength());
+                break;
+            case WIRE_FIXED32:
+                skip(4);
+                break;
+            default:
+                throw new IOException("Unsupported protocol buffer wire type " + getWireType());
+        }
+    }
+
+    private void skip(int length) throws IOException {
+        if (length > limit - position) {
+            throw new IOException("Truncated protocol buffer message");
+        }
+        position += length;
+    }
+}
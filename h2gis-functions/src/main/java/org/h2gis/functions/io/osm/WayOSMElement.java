@@ -47,6 +47,15 @@ public class WayOSMElement extends OSMElement {
         }
     }
 
+    /**
+     * Add in a list the ref of the node used to describe the way.
+     *
+     * @param ref ref of the node
+     */
+    public void addRef(long ref) {
+        nodesRef.add(ref);
+    }
+
     /**
      * Return the list of nodes
      *
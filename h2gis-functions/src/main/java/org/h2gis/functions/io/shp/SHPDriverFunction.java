@@ -21,7 +21,9 @@ package org.h2gis.functions.io.shp;
 
 import org.h2.table.Column;
 import org.h2.util.JdbcUtils;
+import org.h2.util.geometry.JTSUtils;
 import org.h2.value.TypeInfo;
+import org.h2.value.Value;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.io.DriverManager;
@@ -32,14 +34,24 @@ import org.h2gis.functions.io.file_table.H2TableIndex;
 import org.h2gis.functions.io.shp.internal.SHPDriver;
 import org.h2gis.functions.io.shp.internal.ShapeType;
 import org.h2gis.functions.io.shp.internal.ShapefileHeader;
+import org.h2gis.functions.io.utility.HilbertSorter;
 import org.h2gis.functions.io.utility.PRJUtil;
+import org.h2gis.functions.io.utility.FileImportOptions;
+import org.h2gis.functions.io.utility.ParallelRowReader;
 import org.h2gis.utilities.GeometryTypeCodes;
 import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.KeyValueOptions;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.GeometryMetaData;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.sql.*;
 import java.util.ArrayList;
@@ -99,6 +111,18 @@ public class SHPDriverFunction implements DriverFunction {
                 throw new IOException("The file already exist.");
             }
         }
+        // The options are the encoding or key=value pairs
+        String encoding = options;
+        boolean spatialSort = false;
+        long sortMemory = HilbertSorter.DEFAULT_MEMORY_BUDGET;
+        if (KeyValueOptions.isKeyValue(options)) {
+            KeyValueOptions exportOptions = KeyValueOptions.parse(options, ParallelRowReader.ENCODING_OPTION,
+                    "charset", "spatialSort", "sortMemory");
+            encoding = exportOptions.getString(ParallelRowReader.ENCODING_OPTION,
+                    exportOptions.getString("charset", null));
+            spatialSort = exportOptions.getBoolean("spatialSort", false);
+            sortMemory = exportOptions.getLong("sortMemory", HilbertSorter.DEFAULT_MEMORY_BUDGET);
+        }
         final DBTypes dbType = DBUtils.getDBType(connection);
         String regex = ".*(?i)\\b(select|from)\\b.*";
         Pattern pattern = Pattern.compile(regex);
@@ -114,7 +138,8 @@ public class SHPDriverFunction implements DriverFunction {
                 resultSet.beforeFirst();
                 ProgressVisitor copyProgress = progress.subProcess(recordCount);
                 Tuple<String, Integer> spatialFieldNameAndIndex = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(resultSet);
-                String[] files = doExport(connection, spatialFieldNameAndIndex.second(), resultSet, recordCount, fileName, progress, options);
+                String[] files = doExport(connection, spatialFieldNameAndIndex.second(), resultSet, recordCount, fileName, progress, encoding,
+                        spatialSort, sortMemory, HilbertSorter.extentOf(connection, tableReference, spatialFieldNameAndIndex.first()));
                 copyProgress.endOfProgress();
                 return files;
             } else {
@@ -130,7 +155,8 @@ public class SHPDriverFunction implements DriverFunction {
             Statement st = connection.createStatement();
             JDBCUtilities.attachCancelResultSet(st, progress);
             ResultSet rs = st.executeQuery(String.format("select * from %s", location));
-            String[] files = doExport(connection, spatialFieldNameAndIndex.second(), rs, recordCount, fileName, copyProgress, options);
+            String[] files = doExport(connection, spatialFieldNameAndIndex.second(), rs, recordCount, fileName, copyProgress, encoding,
+                    spatialSort, sortMemory, HilbertSorter.extentOf(connection, location, spatialFieldNameAndIndex.first()));
             copyProgress.endOfProgress();
             return files;
         }
@@ -156,10 +182,14 @@ public class SHPDriverFunction implements DriverFunction {
      * @param fileName File path to write, if exists it may be replaced
      * @param progress to display the IO progress
      * @param encoding File encoding, null will use default encoding
+     * @param spatialSort true to write the rows in the order of the Hilbert curve of their envelope center
+     * @param sortMemory Size in bytes of the rows kept in memory by the spatial sort before using temporary files
+     * @param extentProvider Extent of the rows, fetched by the spatial sort when the rows do not fit in memory
      */
-    private String[] doExport(Connection connection, Integer spatialFieldIndex, ResultSet rs, int recordCount, File fileName, ProgressVisitor progress, String encoding) throws SQLException, IOException {
-        int srid = 0;
-        ShapeType shapeType = null;
+    private String[] doExport(Connection connection, Integer spatialFieldIndex, ResultSet rs, int recordCount, File fileName,
+                              ProgressVisitor progress, String encoding, boolean spatialSort, long sortMemory,
+                              HilbertSorter.ExtentProvider extentProvider) throws SQLException, IOException {
+        HilbertSorter sorter = spatialSort ? new HilbertSorter(sortMemory, extentProvider) : null;
         try {
             ResultSetMetaData resultSetMetaData = rs.getMetaData();
             ArrayList<Integer> columnIndexes = new ArrayList<Integer>();
@@ -169,54 +199,222 @@ public class SHPDriverFunction implements DriverFunction {
                 header.setEncoding(encoding);
             }
             header.setNumRecords(recordCount);
-            SHPDriver shpDriver = null;
+            ShapeFileWriter writer = new ShapeFileWriter(fileName, header);
             Object[] row = new Object[header.getNumFields() + 1];
             while (rs.next()) {
                 int i = 0;
                 for (Integer index : columnIndexes) {
                     row[i++] = rs.getObject(index);
                 }
-                if (shpDriver == null) {
-                    // If there is not shape type constraint read the first geometry and use the same type
-                    Geometry wkb = (Geometry) rs.getObject(spatialFieldIndex);
-                    if (wkb != null) {
-                        GeometryMetaData gm = GeometryMetaData.getMetaData(wkb);
-                        if (srid == 0) {
-                            srid = gm.SRID;
-                        }
-                        shapeType = getShapeTypeFromGeometryMetaData(gm);
-                    }
-                    if (shapeType != null) {
-                        shpDriver = new SHPDriver();
-                        shpDriver.setGeometryFieldIndex(0);
-                        shpDriver.initDriver(fileName, shapeType, header);
-                    } else {
-                        throw new SQLException("Unsupported geometry type.");
-                    }
-                }
-                if (shpDriver != null) {
-                    shpDriver.insertRow(row);
+                if (sorter != null) {
+                    // The rows are written once all of them are sorted
+                    Geometry geom = (Geometry) row[0];
+                    sorter.add(geom == null ? null : geom.getEnvelopeInternal(), serializeRow(row));
+                } else {
+                    writer.insertRow(row);
                 }
                 progress.endStep();
             }
+            if (sorter != null) {
+                HilbertSorter.SortedRecords sortedRows = sorter.sort();
+                while (sortedRows.next()) {
+                    writer.insertRow(deserializeRow(sortedRows.getPayload(), row.length));
+                }
+            }
+            SHPDriver shpDriver = writer.shpDriver;
             if (shpDriver != null) {
                 shpDriver.close();
             }
-            if(srid>=0) {
+            if(writer.srid>=0) {
                 String path = fileName.getAbsolutePath();
                 String nameWithoutExt = path.substring(0, path.lastIndexOf('.'));
                 File outPrjFile = new File(nameWithoutExt + ".prj");
-                PRJUtil.writePRJ(connection, srid,outPrjFile);
+                PRJUtil.writePRJ(connection, writer.srid,outPrjFile);
                 return new String[]{shpDriver.shpFile.getAbsolutePath(), shpDriver.shxFile.getAbsolutePath(),
                         shpDriver.dbfFile.getAbsolutePath(), outPrjFile.getAbsolutePath()};
             }
             return new String[]{shpDriver.shpFile.getAbsolutePath(), shpDriver.shxFile.getAbsolutePath(), shpDriver.dbfFile.getAbsolutePath()};
 
         } finally {
+            if (sorter != null) {
+                sorter.close();
+            }
             rs.close();
         }
     }
 
+    private static final byte NULL_VALUE = 0;
+    private static final byte GEOMETRY_VALUE = 1;
+    private static final byte STRING_VALUE = 2;
+    private static final byte BOOLEAN_VALUE = 3;
+    private static final byte BYTE_VALUE = 4;
+    private static final byte SHORT_VALUE = 5;
+    private static final byte INTEGER_VALUE = 6;
+    private static final byte LONG_VALUE = 7;
+    private static final byte FLOAT_VALUE = 8;
+    private static final byte DOUBLE_VALUE = 9;
+    private static final byte DECIMAL_VALUE = 10;
+    private static final byte DATE_VALUE = 11;
+
+    /**
+     * Encode the values of a row to sort it, the geometry is written in EWKB and the dBase values with their type
+     * @param row Geometry followed by the dBase values
+     * @return Encoded row
+     * @throws IOException If a value type cannot be written in a dBase file
+     */
+    static byte[] serializeRow(Object[] row) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (Object value : row) {
+            if (value == null) {
+                out.writeByte(NULL_VALUE);
+            } else if (value instanceof Geometry) {
+                out.writeByte(GEOMETRY_VALUE);
+                writeBytes(out, JTSUtils.geometry2ewkb((Geometry) value));
+            } else if (value instanceof String) {
+                out.writeByte(STRING_VALUE);
+                writeBytes(out, ((String) value).getBytes(StandardCharsets.UTF_8));
+            } else if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN_VALUE);
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Byte) {
+                out.writeByte(BYTE_VALUE);
+                out.writeByte((Byte) value);
+            } else if (value instanceof Short) {
+                out.writeByte(SHORT_VALUE);
+                out.writeShort((Short) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(INTEGER_VALUE);
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(LONG_VALUE);
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeByte(FLOAT_VALUE);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.writeByte(DOUBLE_VALUE);
+                out.writeDouble((Double) value);
+            } else if (value instanceof BigDecimal) {
+                out.writeByte(DECIMAL_VALUE);
+                writeBytes(out, value.toString().getBytes(StandardCharsets.US_ASCII));
+            } else if (value instanceof java.util.Date) {
+                out.writeByte(DATE_VALUE);
+                out.writeLong(((java.util.Date) value).getTime());
+            } else {
+                throw new IOException("The values of type " + value.getClass().getName() + " cannot be sorted");
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a row encoded by {@link #serializeRow(Object[])}
+     * @param bytes Encoded row
+     * @param columnCount Number of values of the row
+     * @return Geometry followed by the dBase values
+     */
+    static Object[] deserializeRow(byte[] bytes, int columnCount) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        Object[] row = new Object[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            byte type = in.readByte();
+            switch (type) {
+                case NULL_VALUE:
+                    break;
+                case GEOMETRY_VALUE:
+                    row[i] = JTSUtils.ewkb2geometry(readBytes(in));
+                    break;
+                case STRING_VALUE:
+                    row[i] = new String(readBytes(in), StandardCharsets.UTF_8);
+                    break;
+                case BOOLEAN_VALUE:
+                    row[i] = in.readBoolean();
+                    break;
+                case BYTE_VALUE:
+                    row[i] = in.readByte();
+                    break;
+                case SHORT_VALUE:
+                    row[i] = in.readShort();
+                    break;
+                case INTEGER_VALUE:
+                    row[i] = in.readInt();
+                    break;
+                case LONG_VALUE:
+                    row[i] = in.readLong();
+                    break;
+                case FLOAT_VALUE:
+                    row[i] = in.readFloat();
+                    break;
+                case DOUBLE_VALUE:
+                    row[i] = in.readDouble();
+                    break;
+                case DECIMAL_VALUE:
+                    row[i] = new BigDecimal(new String(readBytes(in), StandardCharsets.US_ASCII));
+                    break;
+                case DATE_VALUE:
+                    row[i] = new Date(in.readLong());
+                    break;
+                default:
+                    throw new IOException("Unknown value type " + type);
+            }
+        }
+        return row;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        return value;
+    }
+
+    /**
+     * Create the shape file with the geometry type of the first row, then write the rows
+     */
+    private static class ShapeFileWriter {
+        private final File fileName;
+        private final DbaseFileHeader header;
+        private SHPDriver shpDriver = null;
+        private int srid = 0;
+
+        private ShapeFileWriter(File fileName, DbaseFileHeader header) {
+            this.fileName = fileName;
+            this.header = header;
+        }
+
+        /**
+         * @param row Geometry followed by the dBase values
+         */
+        private void insertRow(Object[] row) throws SQLException, IOException {
+            if (shpDriver == null) {
+                // If there is not shape type constraint read the first geometry and use the same type
+                ShapeType shapeType = null;
+                Geometry wkb = (Geometry) row[0];
+                if (wkb != null) {
+                    GeometryMetaData gm = GeometryMetaData.getMetaData(wkb);
+                    if (srid == 0) {
+                        srid = gm.SRID;
+                    }
+                    shapeType = getShapeTypeFromGeometryMetaData(gm);
+                }
+                if (shapeType != null) {
+                    shpDriver = new SHPDriver();
+                    shpDriver.setGeometryFieldIndex(0);
+                    shpDriver.initDriver(fileName, shapeType, header);
+                } else {
+                    throw new SQLException("Unsupported geometry type.");
+                }
+            }
+            shpDriver.insertRow(row);
+        }
+    }
+
     @Override
     public String getFormatDescription(String format) {
         if (format.equalsIgnoreCase("shp")) {
@@ -285,8 +483,12 @@ public class SHPDriverFunction implements DriverFunction {
                 stmt.execute("DROP TABLE IF EXISTS " + outputTableName);
                 stmt.close();
             }
+            final FileImportOptions importOptions = FileImportOptions.parse(options);
+            final String encoding = importOptions.getEncoding();
+            final int workers = importOptions.getWorkers();
             SHPDriver shpDriver = new SHPDriver();
-            shpDriver.initDriverFromFile(fileName, options);
+            shpDriver.setMemoryMapped(importOptions.isMemoryMapped());
+            shpDriver.initDriverFromFile(fileName, encoding);
             ProgressVisitor copyProgress = progress.subProcess((int) (shpDriver.getRowCount() / BATCH_MAX_SIZE));
             String lastSql = "";
             int dbfNumFields =0;
@@ -320,20 +522,49 @@ public class SHPDriverFunction implements DriverFunction {
                     connection.setAutoCommit(false);
                     try (PreparedStatement preparedStatement = connection.prepareStatement(lastSql)) {
                         long batchSize = 0;
-                        for (int rowId = 0; rowId < shpDriver.getRowCount(); rowId++) {
-                            //Set the PK
-                            preparedStatement.setInt(1, rowId+1);
-                            for (int columnId = 0; columnId < columnCount; columnId++) {
-                                JdbcUtils.set(preparedStatement,columnId + 2, shpDriver.getField(rowId, columnId), null);
+                        if (workers > 1) {
+                            // Geometries and fields are decoded by the workers, this thread only inserts the rows
+                            final int fileSrid = srid;
+                            try (ParallelRowReader rowReader = new ParallelRowReader(() -> {
+                                SHPDriver workerDriver = new SHPDriver();
+                                workerDriver.setMemoryMapped(importOptions.isMemoryMapped());
+                                workerDriver.initDriverFromFile(fileName, encoding);
+                                workerDriver.setSRID(fileSrid);
+                                return workerDriver;
+                            }, shpDriver.getRowCount(), BATCH_MAX_SIZE, workers)) {
+                                int rowId = 0;
+                                Value[][] rows;
+                                while ((rows = rowReader.nextPartition()) != null) {
+                                    for (Value[] row : rows) {
+                                        //Set the PK
+                                        preparedStatement.setInt(1, ++rowId);
+                                        for (int columnId = 0; columnId < columnCount; columnId++) {
+                                            JdbcUtils.set(preparedStatement, columnId + 2, row[columnId], null);
+                                        }
+                                        preparedStatement.addBatch();
+                                    }
+                                    preparedStatement.executeBatch();
+                                    connection.commit();
+                                    preparedStatement.clearBatch();
+                                    copyProgress.endStep();
+                                }
                             }
-                            preparedStatement.addBatch();
-                            batchSize++;
-                            if (batchSize >= BATCH_MAX_SIZE) {
-                                preparedStatement.executeBatch();
-                                connection.commit();
-                                preparedStatement.clearBatch();
-                                batchSize = 0;
-                                copyProgress.endStep();
+                        } else {
+                            for (int rowId = 0; rowId < shpDriver.getRowCount(); rowId++) {
+                                //Set the PK
+                                preparedStatement.setInt(1, rowId + 1);
+                                for (int columnId = 0; columnId < columnCount; columnId++) {
+                                    JdbcUtils.set(preparedStatement, columnId + 2, shpDriver.getField(rowId, columnId), null);
+                                }
+                                preparedStatement.addBatch();
+                                batchSize++;
+                                if (batchSize >= BATCH_MAX_SIZE) {
+                                    preparedStatement.executeBatch();
+                                    connection.commit();
+                                    preparedStatement.clearBatch();
+                                    batchSize = 0;
+                                    copyProgress.endStep();
+                                }
                             }
                         }
                         if (batchSize > 0) {
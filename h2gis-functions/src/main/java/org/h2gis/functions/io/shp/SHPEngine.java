@@ -29,6 +29,7 @@ import org.h2gis.functions.io.dbf.DBFEngine;
 import org.h2gis.functions.io.file_table.FileEngine;
 import org.h2gis.functions.io.shp.internal.SHPDriver;
 import org.h2gis.functions.io.shp.internal.ShapeType;
+import org.h2gis.functions.io.utility.FileImportOptions;
 import org.h2gis.functions.io.utility.PRJUtil;
 import org.h2gis.utilities.GeometryTypeCodes;
 
@@ -45,8 +46,10 @@ public class SHPEngine extends FileEngine<SHPDriver> {
 
     @Override
     protected SHPDriver createDriver(File filePath, List<String> args) throws IOException {
+        FileImportOptions options = FileImportOptions.parseEngineParams(args);
         SHPDriver driver = new SHPDriver();
-        driver.initDriverFromFile(filePath, args.size() > 1 ? args.get(1) : null);        
+        driver.setMemoryMapped(options.isMemoryMapped());
+        driver.initDriverFromFile(filePath, options.getEncoding());
         int srid = PRJUtil.getSRID(driver.prjFile);
         driver.setSRID(srid);
         return driver;
@@ -48,7 +48,10 @@ public class SHPRead  extends AbstractFunction implements ScalarFunction {
                 "\n path of the file, table name"+
                 "\n path of the file, table name, true to delete the table name"+
                 "\n path of the file, table name, encoding chartset"+
-                "\n path of the file, table name, encoding chartset, true to delete the table name");
+                "\n path of the file, table name, encoding chartset, true to delete the table name"+
+                "\n The encoding chartset can be replaced by import options, ex: 'encoding=utf-8 workers=4'"+
+                "\n where workers is the number of threads used to decode the file"+
+                "\n and mmap=true reads the file through memory mapped buffers");
     }
 
     @Override
@@ -47,7 +47,10 @@ public class SHPWrite extends AbstractFunction implements ScalarFunction {
                 "\n path of the file, table name"+
                 "\n path of the file, table name, true to delete the file if exists"+
                 "\n path of the file, table name, encoding chartset"+
-                "\n path of the file, table name, encoding chartset, true to delete the file if exists");
+                "\n path of the file, table name, encoding chartset, true to delete the file if exists"+
+                "\n The encoding chartset can be replaced by options 'encoding=utf-8 spatialSort=true sortMemory=67108864'"+
+                "\n spatialSort=true writes the rows in the order of the Hilbert curve, sortMemory sets the bytes"+
+                " kept in memory by the sort before using temporary files");
     }
 
     @Override
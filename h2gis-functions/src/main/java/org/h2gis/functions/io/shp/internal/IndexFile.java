@@ -61,9 +61,22 @@ public class IndexFile {
 	 */
 	public IndexFile(FileChannel channel)
 			throws IOException {
+		this(channel, false);
+	}
+
+	/**
+	 * Load the index file from the given channel.
+	 *
+	 * @param channel
+	 *            The channel to read from.
+	 * @param memoryMapped True to read the file through memory mapped buffers
+	 * @throws java.io.IOException If an error occurs.
+	 */
+	public IndexFile(FileChannel channel, boolean memoryMapped)
+			throws IOException {
 		readHeader(channel);
 		this.channel = channel;
-		this.buf = new ReadBufferManager(channel, 8 * 128);
+		this.buf = new ReadBufferManager(channel, 8 * 128, memoryMapped);
 	}
 
 	/**
@@ -93,6 +106,9 @@ public class IndexFile {
 	}
 
 	public void close() throws IOException {
+		if (buf != null) {
+			buf.release();
+		}
 		if (channel != null && channel.isOpen()) {
 			channel.close();
 		}
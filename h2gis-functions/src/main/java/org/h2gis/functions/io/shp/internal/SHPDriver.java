@@ -60,6 +60,7 @@ public class SHPDriver implements FileDriver {
     public File prjFile;
     public File cpgFile;
     private int srid =0;
+    private boolean memoryMapped = false;
 
 
     /**
@@ -189,6 +190,7 @@ public class SHPDriver implements FileDriver {
                     forceEncoding = codePage.trim();
                 }
             }
+            dbfDriver.setMemoryMapped(memoryMapped);
             dbfDriver.initDriverFromFile(dbfFile, forceEncoding);
         } else {
             throw new IllegalArgumentException("DBF File not found");
@@ -197,9 +199,24 @@ public class SHPDriver implements FileDriver {
             throw new IllegalArgumentException("SHX File not found");
         }
         FileInputStream shpFis = new FileInputStream(shpFile);
-        shapefileReader = new ShapefileReader(shpFis.getChannel());
+        shapefileReader = new ShapefileReader(shpFis.getChannel(), memoryMapped);
         FileInputStream shxFis = new FileInputStream(shxFile);
-        shxFileReader = new IndexFile(shxFis.getChannel());
+        shxFileReader = new IndexFile(shxFis.getChannel(), memoryMapped);
+    }
+
+    /**
+     * @return True if the files are read through memory mapped buffers
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * @param memoryMapped True to read the SHP, SHX and DBF files through memory mapped buffers, random
+     *                     access does not issue any system call. Must be set before initDriverFromFile.
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
     }
 
     /**
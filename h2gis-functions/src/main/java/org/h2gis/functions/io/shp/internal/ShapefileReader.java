@@ -54,6 +54,7 @@ public class ShapefileReader {
         private FileChannel channel;
         private ReadBufferManager buffer;
         private ShapeType fileShapeType = ShapeType.UNDEFINED;
+        private boolean memoryMapped;
 
         /**
          * Creates a new instance of ShapeFile.
@@ -64,8 +65,23 @@ public class ShapefileReader {
          * @throws ShapefileException If for some reason the file contains invalid records.
          */
         public ShapefileReader(FileChannel channel) throws IOException,
+                ShapefileException {
+                this(channel, false);
+        }
+
+        /**
+         * Creates a new instance of ShapeFile.
+         *
+         * @param channel
+         *            The ReadableByteChannel this reader will use.
+         * @param memoryMapped True to read the file through memory mapped buffers
+         * @throws java.io.IOException If problems arise.
+         * @throws ShapefileException If for some reason the file contains invalid records.
+         */
+        public ShapefileReader(FileChannel channel, boolean memoryMapped) throws IOException,
                 ShapefileException {
                 this.channel = channel;
+                this.memoryMapped = memoryMapped;
                 init();
         }
 
@@ -99,7 +115,7 @@ public class ShapefileReader {
                 if (handler == null) {
                         throw new IOException("Unsuported shape type:" + fileShapeType);
                 }
-                buffer = new ReadBufferManager(channel);
+                buffer = new ReadBufferManager(channel, memoryMapped);
         }
 
         /**
@@ -119,6 +135,9 @@ public class ShapefileReader {
          * @throws java.io.IOException If errors occur while closing the channel.
          */
         public void close() throws IOException {
+                if (buffer != null) {
+                        buffer.release();
+                }
                 if (channel != null && channel.isOpen()) {
                         channel.close();
                 }
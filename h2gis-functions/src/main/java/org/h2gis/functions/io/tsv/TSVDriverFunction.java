@@ -23,6 +23,7 @@ import org.h2.tools.Csv;
 import org.h2gis.api.DriverFunction;
 import org.h2gis.api.ProgressVisitor;
 import org.h2gis.functions.io.DriverManager;
+import org.h2gis.functions.io.utility.BulkLoader;
 import org.h2gis.utilities.JDBCUtilities;
 import org.h2gis.utilities.TableLocation;
 
@@ -30,6 +31,7 @@ import java.io.*;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.sql.*;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
@@ -62,7 +64,6 @@ import org.h2gis.utilities.dbtypes.DBUtils;
 public class TSVDriverFunction implements DriverFunction {
 
     public static String DESCRIPTION = "TSV file (Tab Separated Values)";
-    private static final int BATCH_MAX_SIZE = 100;
 
     @Override
     public IMPORT_DRIVER_TYPE getImportDriverType() {
@@ -286,20 +287,43 @@ public class TSVDriverFunction implements DriverFunction {
                 stmt.close();
             }
             String table = requestedTable.toString();
-
-            int AVERAGE_NODE_SIZE = 500;
             FileInputStream fis = new FileInputStream(fileName);
-            FileChannel fc = fis.getChannel();
-            long fileSize = fc.size();
-            // Given the file size and an average node file size.
-            // Skip how many nodes in order to update progression at a step of 1%
-            long readFileSizeEachNode = Math.max(1, (fileSize / AVERAGE_NODE_SIZE) / 100);
-            int average_row_size = 0;
+            importFromReader(connection, table, new BufferedReader(new InputStreamReader(fis)), fis.getChannel(), progress);
+            return new String[]{table};
+        } else if (fileName != null && fileName.getName().toLowerCase().endsWith(".gz")) {
+            if (!fileName.exists()) {
+                throw new SQLException("The file " + requestedTable + " doesn't exist ");
+            }
+            if (deleteTables) {
+                Statement stmt = connection.createStatement();
+                stmt.execute("DROP TABLE IF EXISTS " + requestedTable);
+                stmt.close();
+            }
+            String table = requestedTable.toString();
+            importFromReader(connection, table, new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(new FileInputStream(fileName)))), null, progress);
+            return new String[]{table};
+        } else {
+            throw new SQLException("The TSV read driver supports only tsv or gz extensions");
+        }
+    }
 
-            Csv csv = new Csv();
-            csv.setFieldDelimiter('\t');
-            csv.setFieldSeparatorRead('\t');
-            ResultSet reader = csv.read(new BufferedReader(new InputStreamReader(fis)), null);
+    /**
+     * Create a table from the TSV rows of a reader, the columns are VARCHAR
+     *
+     * @param connection database
+     * @param table output table
+     * @param br TSV content, closed at the end
+     * @param fc file channel used to follow the progression, may be null
+     * @param progress Progress visitor following the execution.
+     */
+    private void importFromReader(Connection connection, String table, BufferedReader br, FileChannel fc,
+                                  ProgressVisitor progress) throws SQLException, IOException {
+        Csv csv = new Csv();
+        csv.setFieldDelimiter('\t');
+        csv.setFieldSeparatorRead('\t');
+        ResultSet reader = csv.read(br, null);
+        try {
             ResultSetMetaData metadata = reader.getMetaData();
             int columnCount = metadata.getColumnCount();
 
@@ -322,117 +346,29 @@ public class TSVDriverFunction implements DriverFunction {
             try (Statement stmt = connection.createStatement()) {
                 stmt.execute(createTable.toString());
             }
-
+            int[] columnTypes = new int[columnCount];
+            Arrays.fill(columnTypes, Types.VARCHAR);
+            long fileSize = fc == null ? 0 : fc.size();
             connection.setAutoCommit(false);
-            PreparedStatement pst = connection.prepareStatement(insertTable.toString());
-            long batchSize = 0;
-            try {
-                while (reader.next()) {
-                    if (progress.isCanceled()) {
-                        throw new SQLException("Canceled by user");
+            BulkLoader.load(connection, insertTable.toString(), columnTypes, batch -> {
+                while (!batch.isFull()) {
+                    if (!reader.next()) {
+                        return false;
                     }
-
                     for (int i = 0; i < columnCount; i++) {
-                        pst.setString(i + 1, reader.getString(i + 1));
-                    }
-                    pst.addBatch();
-                    batchSize++;
-                    if (batchSize >= BATCH_MAX_SIZE) {
-                        pst.executeBatch();
-                        connection.commit();
-                        pst.clearBatch();
-                        batchSize = 0;
-                    }
-
-                    if (average_row_size++ % readFileSizeEachNode == 0) {
-                        // Update Progress
-                        try {
-                            progress.setStep((int) (((double) fc.position() / fileSize) * 100));
-                        } catch (IOException ex) {
-                            // Ignore
-                        }
+                        batch.setObject(i + 1, reader.getString(i + 1));
                     }
+                    batch.addRow();
                 }
-                if (batchSize > 0) {
-                    pst.executeBatch();
-                    connection.commit();
+                if (fileSize > 0) {
+                    // Update Progress
+                    progress.setStep((int) (((double) fc.position() / fileSize) * 100));
                 }
-                connection.setAutoCommit(true);
-                return new String[]{table};
-            } finally {
-                pst.close();
-            }
-        } else if (fileName != null && fileName.getName().toLowerCase().endsWith(".gz")) {
-            if (!fileName.exists()) {
-                throw new SQLException("The file " + requestedTable + " doesn't exist ");
-            }
-            if (deleteTables) {
-                Statement stmt = connection.createStatement();
-                stmt.execute("DROP TABLE IF EXISTS " + requestedTable);
-                stmt.close();
-            }
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(
-                    new GZIPInputStream(new FileInputStream(fileName))))) {
-                String table = requestedTable.toString();
-                Csv csv = new Csv();
-                csv.setFieldDelimiter('\t');
-                csv.setFieldSeparatorRead('\t');
-                ResultSet reader = csv.read(br, null);
-                ResultSetMetaData metadata = reader.getMetaData();
-                int columnCount = metadata.getColumnCount();
-                StringBuilder createTable = new StringBuilder("CREATE TABLE ");
-                createTable.append(table).append("(");
-
-                StringBuilder insertTable = new StringBuilder("INSERT INTO ");
-                insertTable.append(table).append(" VALUES(");
-                for (int i = 0; i < columnCount; i++) {
-                    if (i > 0) {
-                        createTable.append(",");
-                        insertTable.append(",");
-                    }
-                    createTable.append(metadata.getColumnName(i + 1)).append(" VARCHAR");
-                    insertTable.append("?");
-                }
-                createTable.append(")");
-                insertTable.append(")");
-
-                try (Statement stmt = connection.createStatement()) {
-                    stmt.execute(createTable.toString());
-                }
-
-                connection.setAutoCommit(false);
-                PreparedStatement pst = connection.prepareStatement(insertTable.toString());
-                long batchSize = 0;
-                try {
-                    while (reader.next()) {
-                        if (progress.isCanceled()) {
-                            throw new SQLException("Canceled by user");
-                        }
-
-                        for (int i = 0; i < columnCount; i++) {
-                            pst.setString(i + 1, reader.getString(i + 1));
-                        }
-                        pst.addBatch();
-                        batchSize++;
-                        if (batchSize >= BATCH_MAX_SIZE) {
-                            pst.executeBatch();
-                            connection.commit();
-                            pst.clearBatch();
-                            batchSize = 0;
-                        }
-                    }
-                    if (batchSize > 0) {
-                        pst.executeBatch();
-                        connection.commit();
-                    }
-                    return new String[]{table};
-                } finally {
-                    connection.setAutoCommit(true);
-                    pst.close();
-                }
-            }
-        } else {
-            throw new SQLException("The TSV read driver supports only tsv or gz extensions");
+                return true;
+            }, progress);
+        } finally {
+            reader.close();
+            connection.setAutoCommit(true);
         }
     }
 }
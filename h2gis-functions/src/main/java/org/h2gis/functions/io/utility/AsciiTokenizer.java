@@ -0,0 +1,217 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Read the whitespace separated words of a text file, as {@link java.util.Scanner} with the default delimiter.
+ * The numbers are parsed in the read buffer, no String is created for each value.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class AsciiTokenizer {
+    private static final int BUFFER_SIZE = 65536;
+    /**
+     * Powers of ten exactly represented by a double
+     */
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+            1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    /**
+     * Greatest number of significant digits of a mantissa exactly represented by a double
+     */
+    private static final int MAX_DIGITS = 15;
+
+    private final Reader reader;
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int limit = 0;
+    private int position = 0;
+    private int tokenStart = 0;
+    private int tokenEnd = 0;
+
+    /**
+     * Constructor
+     * @param reader Text reader, should not be buffered
+     */
+    public AsciiTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * @return The next word
+     * @throws EOFException If there is no more word
+     */
+    public String nextWord() throws IOException {
+        readToken();
+        return getToken();
+    }
+
+    /**
+     * Skip the next word without parsing it
+     * @throws EOFException If there is no more word
+     */
+    public void skipToken() throws IOException {
+        readToken();
+    }
+
+    /**
+     * @return The next word parsed as a double
+     * @throws EOFException If there is no more word
+     * @throws NumberFormatException If the word is not a number
+     */
+    public double nextDouble() throws IOException {
+        readToken();
+        return parseDouble(buffer, tokenStart, tokenEnd);
+    }
+
+    /**
+     * @return The last read word, or an empty string if no word has been read
+     */
+    public String getToken() {
+        return new String(buffer, tokenStart, tokenEnd - tokenStart);
+    }
+
+    private static boolean isDelimiter(char c) {
+        return c <= ' ';
+    }
+
+    private void readToken() throws IOException {
+        while (true) {
+            if (position == limit && !fill(position)) {
+                tokenStart = tokenEnd = 0;
+                throw new EOFException("Unexpected end of file");
+            }
+            if (!isDelimiter(buffer[position])) {
+                break;
+            }
+            position++;
+        }
+        tokenStart = position;
+        while (true) {
+            if (position == limit && !fill(tokenStart)) {
+                break;
+            }
+            if (isDelimiter(buffer[position])) {
+                break;
+            }
+            position++;
+        }
+        tokenEnd = position;
+    }
+
+    /**
+     * Read the next characters of the file
+     * @param keepFrom First character of the buffer that must be kept, it is moved at the start of the buffer
+     * @return False if the end of the file is reached
+     */
+    private boolean fill(int keepFrom) throws IOException {
+        int kept = limit - keepFrom;
+        if (kept == buffer.length) {
+            // Word greater than the buffer
+            char[] newBuffer = new char[buffer.length * 2];
+            System.arraycopy(buffer, keepFrom, newBuffer, 0, kept);
+            buffer = newBuffer;
+        } else if (keepFrom > 0) {
+            System.arraycopy(buffer, keepFrom, buffer, 0, kept);
+        }
+        tokenStart -= keepFrom;
+        position -= keepFrom;
+        limit = kept;
+        int read;
+        do {
+            read = reader.read(buffer, limit, buffer.length - limit);
+        } while (read == 0);
+        if (read < 0) {
+            return false;
+        }
+        limit += read;
+        return true;
+    }
+
+    /**
+     * Parse a decimal number. The numbers with at most 15 significant digits and a small exponent are computed
+     * exactly from the characters, the others are parsed with {@link Double#parseDouble(String)}.
+     * @param chars Characters
+     * @param start First character of the number
+     * @param end Index after the last character of the number
+     * @return The parsed number
+     * @throws NumberFormatException If the characters are not a number
+     */
+    public static double parseDouble(char[] chars, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+            negative = chars[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean hasDigit = false;
+        for (; i < end && chars[i] >= '0' && chars[i] <= '9'; i++) {
+            hasDigit = true;
+            if (mantissa != 0 || chars[i] != '0') {
+                mantissa = mantissa * 10 + (chars[i] - '0');
+                digits++;
+            }
+        }
+        if (i < end && chars[i] == '.') {
+            for (i++; i < end && chars[i] >= '0' && chars[i] <= '9'; i++) {
+                hasDigit = true;
+                if (mantissa != 0 || chars[i] != '0') {
+                    mantissa = mantissa * 10 + (chars[i] - '0');
+                    digits++;
+                }
+                exponent--;
+            }
+        }
+        if (hasDigit && i < end && (chars[i] == 'e' || chars[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (chars[i] == '-' || chars[i] == '+')) {
+                negativeExponent = chars[i] == '-';
+                i++;
+            }
+            int exponentValue = 0;
+            int exponentDigits = 0;
+            for (; i < end && chars[i] >= '0' && chars[i] <= '9' && exponentDigits < 4; i++, exponentDigits++) {
+                exponentValue = exponentValue * 10 + (chars[i] - '0');
+            }
+            if (exponentDigits == 0) {
+                hasDigit = false;
+            }
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+        }
+        if (!hasDigit || i != end || digits > MAX_DIGITS || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(new String(chars, start, end - start));
+        }
+        double value = mantissa;
+        if (exponent > 0) {
+            value *= POW10[exponent];
+        } else if (exponent < 0) {
+            value /= POW10[-exponent];
+        }
+        return negative ? -value : value;
+    }
+}
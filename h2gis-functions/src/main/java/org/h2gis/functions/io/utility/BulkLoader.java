@@ -0,0 +1,263 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.h2gis.api.ProgressVisitor;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Insert the rows parsed from a text file with large JDBC batches.
+ * The file is parsed by a reader thread into typed column batches, the calling thread binds the batches to the
+ * insert statement. At most {@link #BATCH_COUNT} batches are allocated, they are reused for the whole import.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class BulkLoader {
+    /**
+     * Default number of rows inserted by one JDBC batch
+     */
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+    /**
+     * Number of batches shared by the reader thread and the writer
+     */
+    private static final int BATCH_COUNT = 3;
+
+    private BulkLoader() {
+    }
+
+    /**
+     * Parse the rows of a file, called on the reader thread
+     */
+    public interface BatchProducer {
+        /**
+         * Parse the next rows of the file until the batch is full
+         * @param batch Empty batch
+         * @return False if the end of the file has been reached
+         */
+        boolean fill(ColumnBatch batch) throws IOException, SQLException;
+    }
+
+    /**
+     * Insert the rows of a producer with batches of {@link #DEFAULT_BATCH_SIZE} rows
+     * @param connection Active connection in manual commit mode, a commit is done after each batch
+     * @param insertQuery Insert query with one parameter by column
+     * @param columnTypes SQL type of the parameters, {@link Types#INTEGER} and {@link Types#DOUBLE} values are stored
+     *                    in primitive arrays, the other values as objects
+     * @param producer Parse the file
+     * @param progress Progress visitor, checked for cancellation after each batch
+     * @return Number of inserted rows
+     */
+    public static long load(Connection connection, String insertQuery, int[] columnTypes, BatchProducer producer,
+                            ProgressVisitor progress) throws SQLException, IOException {
+        return load(connection, insertQuery, columnTypes, DEFAULT_BATCH_SIZE, producer, progress);
+    }
+
+    /**
+     * Insert the rows of a producer
+     * @param connection Active connection in manual commit mode, a commit is done after each batch
+     * @param insertQuery Insert query with one parameter by column
+     * @param columnTypes SQL type of the parameters, {@link Types#INTEGER} and {@link Types#DOUBLE} values are stored
+     *                    in primitive arrays, the other values as objects
+     * @param batchSize Number of rows inserted by one JDBC batch
+     * @param producer Parse the file
+     * @param progress Progress visitor, checked for cancellation after each batch
+     * @return Number of inserted rows
+     */
+    public static long load(Connection connection, String insertQuery, int[] columnTypes, int batchSize,
+                            BatchProducer producer, ProgressVisitor progress) throws SQLException, IOException {
+        final BlockingQueue<ColumnBatch> freeBatches = new ArrayBlockingQueue<>(BATCH_COUNT);
+        // One more place for the end marker
+        final BlockingQueue<ColumnBatch> filledBatches = new ArrayBlockingQueue<>(BATCH_COUNT + 1);
+        for (int i = 0; i < BATCH_COUNT; i++) {
+            freeBatches.add(new ColumnBatch(columnTypes, batchSize));
+        }
+        final ColumnBatch endOfFile = new ColumnBatch(new int[0], 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "H2GIS-bulk-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long rowCount = 0;
+        try (PreparedStatement preparedStatement = connection.prepareStatement(insertQuery)) {
+            Future<Void> reader = executor.submit(() -> {
+                try {
+                    boolean hasNext = true;
+                    while (hasNext) {
+                        ColumnBatch batch = freeBatches.take();
+                        batch.clear();
+                        hasNext = producer.fill(batch);
+                        if (batch.size() > 0) {
+                            filledBatches.put(batch);
+                        } else {
+                            freeBatches.put(batch);
+                        }
+                    }
+                } finally {
+                    // Never blocks, the queue can hold every batch and the marker
+                    filledBatches.offer(endOfFile);
+                }
+                return null;
+            });
+            ColumnBatch batch;
+            while ((batch = filledBatches.take()) != endOfFile) {
+                if (progress.isCanceled()) {
+                    reader.cancel(true);
+                    throw new SQLException("Canceled by user");
+                }
+                for (int row = 0; row < batch.size(); row++) {
+                    batch.bind(preparedStatement, row);
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                connection.commit();
+                preparedStatement.clearBatch();
+                rowCount += batch.size();
+                freeBatches.put(batch);
+            }
+            reader.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the file", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause.getLocalizedMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return rowCount;
+    }
+
+    /**
+     * Rows of the insert statement stored by column
+     */
+    public static final class ColumnBatch {
+        private final int[] columnTypes;
+        private final int[][] intColumns;
+        private final double[][] doubleColumns;
+        private final Object[][] objectColumns;
+        private final int capacity;
+        private int size = 0;
+
+        private ColumnBatch(int[] columnTypes, int capacity) {
+            this.columnTypes = columnTypes;
+            this.capacity = capacity;
+            intColumns = new int[columnTypes.length][];
+            doubleColumns = new double[columnTypes.length][];
+            objectColumns = new Object[columnTypes.length][];
+            for (int i = 0; i < columnTypes.length; i++) {
+                if (columnTypes[i] == Types.INTEGER) {
+                    intColumns[i] = new int[capacity];
+                } else if (columnTypes[i] == Types.DOUBLE) {
+                    doubleColumns[i] = new double[capacity];
+                } else {
+                    objectColumns[i] = new Object[capacity];
+                }
+            }
+        }
+
+        /**
+         * @return Number of rows of the batch
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return True if no more row can be added
+         */
+        public boolean isFull() {
+            return size >= capacity;
+        }
+
+        /**
+         * @param column Column index, the first column is 1
+         * @param value Value of the current row, the column type must be {@link Types#INTEGER}
+         */
+        public void setInt(int column, int value) {
+            intColumns[column - 1][size] = value;
+        }
+
+        /**
+         * @param column Column index, the first column is 1
+         * @param value Value of the current row, the column type must be {@link Types#DOUBLE}
+         */
+        public void setDouble(int column, double value) {
+            doubleColumns[column - 1][size] = value;
+        }
+
+        /**
+         * @param column Column index, the first column is 1
+         * @param value Value of the current row, the column must not be {@link Types#INTEGER} or
+         *              {@link Types#DOUBLE}
+         */
+        public void setObject(int column, Object value) {
+            objectColumns[column - 1][size] = value;
+        }
+
+        /**
+         * Add the current row to the batch, the next values are set on a new row
+         */
+        public void addRow() {
+            size++;
+        }
+
+        private void clear() {
+            for (Object[] column : objectColumns) {
+                if (column != null) {
+                    Arrays.fill(column, 0, size, null);
+                }
+            }
+            size = 0;
+        }
+
+        private void bind(PreparedStatement preparedStatement, int row) throws SQLException {
+            for (int i = 0; i < columnTypes.length; i++) {
+                if (intColumns[i] != null) {
+                    preparedStatement.setInt(i + 1, intColumns[i][row]);
+                } else if (doubleColumns[i] != null) {
+                    preparedStatement.setDouble(i + 1, doubleColumns[i][row]);
+                } else {
+                    preparedStatement.setObject(i + 1, objectColumns[i][row]);
+                }
+            }
+        }
+    }
+}
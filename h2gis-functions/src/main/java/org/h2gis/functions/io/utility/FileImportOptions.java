@@ -0,0 +1,107 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.h2.util.StringUtils;
+import org.h2gis.utilities.KeyValueOptions;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Options of the SHP and DBF import functions and linked tables. The options are either a file encoding or space
+ * separated key=value pairs, ex: {@code 'encoding=utf-8 workers=4 mmap=true'}
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class FileImportOptions {
+    /**
+     * Option key used to read the files through memory mapped buffers
+     */
+    public static final String MEMORY_MAPPED_OPTION = "mmap";
+
+    private String encoding;
+    private int workers = 1;
+    private boolean memoryMapped = false;
+
+    private FileImportOptions() {
+    }
+
+    /**
+     * Read the import options
+     * @param options Options string, may be null
+     * @return The options, the encoding is null, one worker and no memory mapping if not set
+     * @throws SQLException If an option is unknown or if the number of workers is not a positive integer
+     */
+    public static FileImportOptions parse(String options) throws SQLException {
+        FileImportOptions importOptions = new FileImportOptions();
+        if (options == null || options.isEmpty()) {
+            return importOptions;
+        }
+        if (!KeyValueOptions.isKeyValue(options)) {
+            importOptions.encoding = options;
+            return importOptions;
+        }
+        KeyValueOptions parsed = KeyValueOptions.parse(options, ParallelRowReader.ENCODING_OPTION,
+                ParallelRowReader.WORKERS_OPTION, MEMORY_MAPPED_OPTION);
+        importOptions.encoding = parsed.getString(ParallelRowReader.ENCODING_OPTION, null);
+        importOptions.workers = parsed.getPositiveInt(ParallelRowReader.WORKERS_OPTION, 1);
+        importOptions.memoryMapped = parsed.getBoolean(MEMORY_MAPPED_OPTION, false);
+        return importOptions;
+    }
+
+    /**
+     * Read the options of a linked table, given after the file path in the table engine parameters
+     * @param engineParams Table engine parameters, the first one is the file path
+     * @return The options
+     * @throws IOException If the options are not valid
+     */
+    public static FileImportOptions parseEngineParams(List<String> engineParams) throws IOException {
+        try {
+            return parse(engineParams.size() > 1 ? StringUtils.javaDecode(engineParams.get(1)) : null);
+        } catch (SQLException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @return File encoding, null to use the encoding of the file header
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * @return Number of threads decoding the file
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return True to read the files through memory mapped buffers
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+}
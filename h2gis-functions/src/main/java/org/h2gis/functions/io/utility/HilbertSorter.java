@@ -0,0 +1,560 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * External memory sort of records along the Hilbert curve of the center of their envelope. The exported files
+ * written in this order store the features close in space close in the file.
+ *
+ * The records are kept in memory up to a memory budget, then written as runs in temporary files. When an
+ * {@link ExtentProvider} is given, the extent is fetched before the first run is written and each run is sorted
+ * once when it is written. Otherwise the extent of the data is only known at the end, so the runs are sorted when
+ * {@link #sort()} is called. The sorted runs are then merged, at most {@link #MAX_FAN_IN} files at a time.
+ * Records with the same curve position keep their insertion order, the records without envelope are returned last.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class HilbertSorter implements Closeable {
+    /**
+     * Default memory budget of the records, in bytes
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+    /**
+     * Estimated size of a record in memory, without its payload
+     */
+    private static final int RECORD_OVERHEAD = 80;
+    private static final int IO_BUFFER_SIZE = 65536;
+    /**
+     * Maximum number of temporary files read at the same time by a merge
+     */
+    public static final int MAX_FAN_IN = 32;
+    private static final Comparator<Record> RECORD_ORDER = Comparator.<Record>comparingLong(r -> r.key)
+            .thenComparingLong(r -> r.index);
+
+    private final long memoryBudget;
+    private List<Record> records = new ArrayList<>();
+    private long memoryUsed = 0;
+    private long recordCount = 0;
+    private final List<File> runs = new ArrayList<>();
+    private final Envelope extent = new Envelope();
+    private final List<Closeable> readers = new ArrayList<>();
+    private final ExtentProvider extentProvider;
+    /**
+     * Extent used to place the records on the curve, null until the first run is written or the records are sorted
+     */
+    private Envelope curveExtent;
+    private boolean runsSorted = false;
+    private boolean sorted = false;
+
+    /**
+     * Constructor
+     * @param memoryBudget Size of the records kept in memory before writing them in a temporary file, in bytes
+     * @param extentProvider Extent of all the records, only called when the records do not fit in memory.
+     *                       Null to compute the extent while adding the records.
+     */
+    public HilbertSorter(long memoryBudget, ExtentProvider extentProvider) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget of the spatial sort must be greater than 0");
+        }
+        this.memoryBudget = memoryBudget;
+        this.extentProvider = extentProvider;
+    }
+
+    /**
+     * Constructor
+     * @param memoryBudget Size of the records kept in memory before writing them in a temporary file, in bytes
+     */
+    public HilbertSorter(long memoryBudget) {
+        this(memoryBudget, null);
+    }
+
+    /**
+     * Constructor with the default memory budget
+     */
+    public HilbertSorter() {
+        this(DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Extent of an exported table or query, computed by the database
+     * @param connection Active connection
+     * @param tableReference Table name or select query enclosed in parenthesis
+     * @param geometryColumn Name of the geometry column
+     * @return The extent provider of the spatial sort
+     */
+    public static ExtentProvider extentOf(Connection connection, String tableReference, String geometryColumn) {
+        return () -> {
+            DBTypes dbType = DBUtils.getDBType(connection);
+            Geometry envelope;
+            if (tableReference.startsWith("(") && tableReference.endsWith(")")) {
+                envelope = GeometryTableUtilities.getEnvelope(connection, tableReference,
+                        new String[]{TableLocation.quoteIdentifier(geometryColumn, dbType)});
+            } else {
+                envelope = GeometryTableUtilities.getEnvelope(connection,
+                        TableLocation.parse(tableReference, dbType), geometryColumn);
+            }
+            return envelope == null ? null : envelope.getEnvelopeInternal();
+        };
+    }
+
+    /**
+     * @param envelope Envelope of the record, null or empty if the record has no geometry
+     * @param payload Serialized record
+     */
+    public void add(Envelope envelope, byte[] payload) throws IOException {
+        if (sorted) {
+            throw new IllegalStateException("The records are already sorted");
+        }
+        Record record;
+        if (envelope == null || envelope.isNull()) {
+            record = new Record(recordCount, Double.NaN, Double.NaN, Double.NaN, Double.NaN, payload);
+        } else {
+            record = new Record(recordCount, envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(),
+                    envelope.getMaxY(), payload);
+            extent.expandToInclude(envelope);
+        }
+        recordCount++;
+        records.add(record);
+        memoryUsed += payload.length + RECORD_OVERHEAD;
+        if (memoryUsed >= memoryBudget) {
+            if (runs.isEmpty() && extentProvider != null) {
+                Envelope providedExtent;
+                try {
+                    providedExtent = extentProvider.getExtent();
+                } catch (SQLException ex) {
+                    throw new IOException(ex);
+                }
+                if (providedExtent != null && !providedExtent.isNull()) {
+                    curveExtent = providedExtent;
+                    runsSorted = true;
+                }
+            }
+            if (runsSorted) {
+                sortRecords(records);
+            }
+            runs.add(writeRun(records, runsSorted));
+            records = new ArrayList<>();
+            memoryUsed = 0;
+        }
+    }
+
+    /**
+     * @return Number of added records
+     */
+    public long size() {
+        return recordCount;
+    }
+
+    /**
+     * @return Number of temporary files written to sort the records
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Sort the records. No more record can be added after this call.
+     * @return The records in the order of the Hilbert curve
+     */
+    public SortedRecords sort() throws IOException {
+        if (sorted) {
+            throw new IllegalStateException("The records are already sorted");
+        }
+        sorted = true;
+        if (!runsSorted) {
+            curveExtent = extent;
+            // Sort the runs one by one with the final extent, each run fits in the memory budget
+            for (int i = 0; i < runs.size(); i++) {
+                File unsortedRun = runs.get(i);
+                List<Record> run = new ArrayList<>();
+                try (RunReader reader = new RunReader(unsortedRun, false)) {
+                    Record record;
+                    while ((record = reader.read()) != null) {
+                        run.add(record);
+                    }
+                }
+                sortRecords(run);
+                runs.set(i, writeRun(run, true));
+                Files.deleteIfExists(unsortedRun.toPath());
+            }
+            runsSorted = true;
+        }
+        // Merge the oldest runs until the remaining ones can be read at the same time
+        while (runs.size() > MAX_FAN_IN) {
+            List<File> group = new ArrayList<>(runs.subList(0, MAX_FAN_IN));
+            File merged = mergeRuns(group);
+            runs.subList(0, MAX_FAN_IN).clear();
+            runs.add(0, merged);
+            for (File run : group) {
+                Files.deleteIfExists(run.toPath());
+            }
+        }
+        PriorityQueue<RecordSource> sources = newSourceQueue();
+        for (File run : runs) {
+            RunReader reader = new RunReader(run, true);
+            readers.add(reader);
+            addSource(sources, reader::read);
+        }
+        sortRecords(records);
+        final List<Record> memoryRun = records;
+        records = new ArrayList<>();
+        memoryUsed = 0;
+        addSource(sources, new RecordSupplier() {
+            private int index = 0;
+
+            @Override
+            public Record read() {
+                return index < memoryRun.size() ? memoryRun.set(index++, null) : null;
+            }
+        });
+        return new SortedRecords(sources);
+    }
+
+    private static PriorityQueue<RecordSource> newSourceQueue() {
+        return new PriorityQueue<>((a, b) -> RECORD_ORDER.compare(a.current, b.current));
+    }
+
+    /**
+     * @param group Sorted runs, in the order of their records
+     * @return A sorted run with all the records of the group
+     */
+    private static File mergeRuns(List<File> group) throws IOException {
+        List<RunReader> groupReaders = new ArrayList<>(group.size());
+        try {
+            PriorityQueue<RecordSource> sources = newSourceQueue();
+            for (File run : group) {
+                RunReader reader = new RunReader(run, true);
+                groupReaders.add(reader);
+                addSource(sources, reader::read);
+            }
+            SortedRecords records = new SortedRecords(sources);
+            return writeRun(() -> records.next() ? records.current : null, true);
+        } finally {
+            for (RunReader reader : groupReaders) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void addSource(PriorityQueue<RecordSource> sources, RecordSupplier supplier) throws IOException {
+        RecordSource source = new RecordSource(supplier);
+        if (source.next()) {
+            sources.add(source);
+        }
+    }
+
+    private void sortRecords(List<Record> run) {
+        double width = curveExtent.getWidth();
+        double height = curveExtent.getHeight();
+        for (Record record : run) {
+            if (Double.isNaN(record.minX)) {
+                record.key = Long.MAX_VALUE;
+            } else {
+                // A provided extent may not cover all the records
+                int x = width > 0 ? cell(((record.minX + record.maxX) / 2 - curveExtent.getMinX()) / width) : 0;
+                int y = height > 0 ? cell(((record.minY + record.maxY) / 2 - curveExtent.getMinY()) / height) : 0;
+                record.key = hilbert(x, y);
+            }
+        }
+        run.sort(RECORD_ORDER);
+    }
+
+    private static int cell(double ratio) {
+        return (int) Math.floor(HILBERT_MAX * Math.max(0, Math.min(1, ratio)));
+    }
+
+    /**
+     * Position of a cell of a 65536x65536 grid on the Hilbert curve
+     * @param x Column of the cell
+     * @param y Row of the cell
+     * @return Index of the cell on the curve
+     */
+    public static long hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int aa = a | (b >>> 1);
+        int bb = (a >>> 1) ^ a;
+        int cc = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int dd = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = aa;
+        b = bb;
+        c = cc;
+        d = dd;
+        aa = (a & (a >>> 2)) ^ (b & (b >>> 2));
+        bb = (a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2));
+        cc ^= (a & (c >>> 2)) ^ (b & (d >>> 2));
+        dd ^= (b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2));
+
+        a = aa;
+        b = bb;
+        c = cc;
+        d = dd;
+        aa = (a & (a >>> 4)) ^ (b & (b >>> 4));
+        bb = (a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4));
+        cc ^= (a & (c >>> 4)) ^ (b & (d >>> 4));
+        dd ^= (b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4));
+
+        a = aa;
+        b = bb;
+        c = cc;
+        d = dd;
+        cc ^= (a & (c >>> 8)) ^ (b & (d >>> 8));
+        dd ^= (b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8));
+
+        a = cc ^ (cc >>> 1);
+        b = dd ^ (dd >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = interleave(i0);
+        i1 = interleave(i1);
+        return (((long) i1 << 1) | i0) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * @param value 16 bits value
+     * @return The bits of the value spread on the even bits
+     */
+    private static int interleave(int value) {
+        value = (value | (value << 8)) & 0x00FF00FF;
+        value = (value | (value << 4)) & 0x0F0F0F0F;
+        value = (value | (value << 2)) & 0x33333333;
+        return (value | (value << 1)) & 0x55555555;
+    }
+
+    private static File writeRun(List<Record> run, boolean withKey) throws IOException {
+        Iterator<Record> iterator = run.iterator();
+        return writeRun(() -> iterator.hasNext() ? iterator.next() : null, withKey);
+    }
+
+    private static File writeRun(RecordSupplier run, boolean withKey) throws IOException {
+        File file = File.createTempFile("h2gis_hilbert", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(file), IO_BUFFER_SIZE))) {
+            Record record;
+            while ((record = run.read()) != null) {
+                if (withKey) {
+                    out.writeLong(record.key);
+                }
+                out.writeLong(record.index);
+                out.writeDouble(record.minX);
+                out.writeDouble(record.minY);
+                out.writeDouble(record.maxX);
+                out.writeDouble(record.maxY);
+                out.writeInt(record.payload.length);
+                out.write(record.payload);
+            }
+        } catch (IOException ex) {
+            Files.deleteIfExists(file.toPath());
+            throw ex;
+        }
+        return file;
+    }
+
+    /**
+     * Delete the temporary files
+     */
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (Closeable reader : readers) {
+            try {
+                reader.close();
+            } catch (IOException ex) {
+                error = ex;
+            }
+        }
+        readers.clear();
+        for (File run : runs) {
+            Files.deleteIfExists(run.toPath());
+        }
+        runs.clear();
+        records = new ArrayList<>();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Records in the order of the Hilbert curve
+     */
+    public static final class SortedRecords {
+        private final PriorityQueue<RecordSource> sources;
+        private Record current;
+
+        private SortedRecords(PriorityQueue<RecordSource> sources) {
+            this.sources = sources;
+        }
+
+        /**
+         * Move to the next record
+         * @return False if there is no more record
+         */
+        public boolean next() throws IOException {
+            RecordSource source = sources.poll();
+            if (source == null) {
+                current = null;
+                return false;
+            }
+            current = source.current;
+            if (source.next()) {
+                sources.add(source);
+            }
+            return true;
+        }
+
+        /**
+         * @return Envelope of the current record, null if the record has no envelope
+         */
+        public Envelope getEnvelope() {
+            if (Double.isNaN(current.minX)) {
+                return null;
+            }
+            return new Envelope(current.minX, current.maxX, current.minY, current.maxY);
+        }
+
+        /**
+         * @return Serialized current record
+         */
+        public byte[] getPayload() {
+            return current.payload;
+        }
+    }
+
+    /**
+     * Extent of the records, fetched when the records do not fit in memory
+     */
+    @FunctionalInterface
+    public interface ExtentProvider {
+        /**
+         * @return Extent of all the records, null if it is unknown
+         */
+        Envelope getExtent() throws SQLException;
+    }
+
+    private static final class Record {
+        private final long index;
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+        private final byte[] payload;
+        private long key;
+
+        private Record(long index, double minX, double minY, double maxX, double maxY, byte[] payload) {
+            this.index = index;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.payload = payload;
+        }
+    }
+
+    private interface RecordSupplier {
+        /**
+         * @return The next record or null at the end
+         */
+        Record read() throws IOException;
+    }
+
+    private static final class RecordSource {
+        private final RecordSupplier supplier;
+        private Record current;
+
+        private RecordSource(RecordSupplier supplier) {
+            this.supplier = supplier;
+        }
+
+        private boolean next() throws IOException {
+            current = supplier.read();
+            return current != null;
+        }
+    }
+
+    private static final class RunReader implements Closeable {
+        private final DataInputStream in;
+        private final boolean withKey;
+
+        private RunReader(File file, boolean withKey) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), IO_BUFFER_SIZE));
+            this.withKey = withKey;
+        }
+
+        private Record read() throws IOException {
+            long first;
+            try {
+                first = in.readLong();
+            } catch (EOFException ex) {
+                return null;
+            }
+            long key = withKey ? first : 0;
+            long index = withKey ? in.readLong() : first;
+            double minX = in.readDouble();
+            double minY = in.readDouble();
+            double maxX = in.readDouble();
+            double maxY = in.readDouble();
+            byte[] payload = new byte[in.readInt()];
+            in.readFully(payload);
+            Record record = new Record(index, minX, minY, maxX, maxY, payload);
+            record.key = key;
+            return record;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -426,6 +426,11 @@ public class IOMethods {
                 targetConnection.setAutoCommit(false);
                 int columnsCount = inputMetadata.getColumnCount();
                 HashMap<String, Integer> geomColumnAndSRID = new HashMap<>();
+                HashSet<String> mixedSRID = new HashSet<>();
+                boolean[] geometryColumns = new boolean[columnsCount];
+                for (int i = 0; i < columnsCount; i++) {
+                    geometryColumns[i] = inputMetadata.getColumnTypeName(i + 1).toLowerCase().startsWith("geometry");
+                }
                 StringBuilder insertTable = new StringBuilder("INSERT INTO ");
                 insertTable.append(ouputTableName).append(" VALUES(?");
                 for (int i = 1; i < columnsCount; i++) {
@@ -434,46 +439,48 @@ public class IOMethods {
                 insertTable.append(")");
                 //Check the first row in order to limit the batch size if the query doesn't work
                 if (inputRes.next()) {
-                    preparedStatement = targetConnection.prepareStatement(insertTable.toString());
-                    for (int i = 0; i < columnsCount; i++) {
-                        int index = i + 1;
-                        Object value = inputRes.getObject(index);
-                        if (inputMetadata.getColumnTypeName(index).toLowerCase().startsWith("geometry")) {
-                            geomColumnAndSRID.put(inputMetadata.getColumnName(index), ((Geometry) value).getSRID());
-                        }
-                        preparedStatement.setObject(index, value);
-                    }
-
-                    preparedStatement.execute();
-                    long batchSize = 0;
-                    while (inputRes.next()) {
+                    PostGISCopyWriter copyWriter = targetDBType == DBTypes.POSTGIS
+                            ? PostGISCopyWriter.create(targetConnection, ouputTableName) : null;
+                    if (copyWriter != null) {
+                        // Bulk load with a binary COPY, all the column types can be encoded
+                        copyRows(inputRes, inputMetadata, geometryColumns, copyWriter, geomColumnAndSRID, mixedSRID);
+                        targetConnection.commit();
+                    } else {
+                        preparedStatement = targetConnection.prepareStatement(insertTable.toString());
                         for (int i = 0; i < columnsCount; i++) {
                             int index = i + 1;
                             Object value = inputRes.getObject(index);
-                            String columnName = inputMetadata.getColumnName(index);
-                            if (geomColumnAndSRID.containsKey(columnName)) {
-                                Geometry geometry = (Geometry) value;
-                                int currentSRID = geometry.getSRID();
-                                Integer tmpSRID = geomColumnAndSRID.get(columnName);
-                                if (tmpSRID != currentSRID) {
-                                    geomColumnAndSRID.remove(inputMetadata.getColumnName(index));
-                                }
+                            if (geometryColumns[i]) {
+                                collectSRID(geomColumnAndSRID, mixedSRID, inputMetadata.getColumnName(index), (Geometry) value);
                             }
                             preparedStatement.setObject(index, value);
                         }
-                        preparedStatement.addBatch();
-                        batchSize++;
-                        if (batchSize >= batch_size) {
+
+                        preparedStatement.execute();
+                        long batchSize = 0;
+                        while (inputRes.next()) {
+                            for (int i = 0; i < columnsCount; i++) {
+                                int index = i + 1;
+                                Object value = inputRes.getObject(index);
+                                if (geometryColumns[i]) {
+                                    collectSRID(geomColumnAndSRID, mixedSRID, inputMetadata.getColumnName(index), (Geometry) value);
+                                }
+                                preparedStatement.setObject(index, value);
+                            }
+                            preparedStatement.addBatch();
+                            batchSize++;
+                            if (batchSize >= batch_size) {
+                                preparedStatement.executeBatch();
+                                targetConnection.commit();
+                                preparedStatement.clearBatch();
+                                batchSize = 0;
+                            }
+                        }
+                        if (batchSize > 0) {
                             preparedStatement.executeBatch();
                             targetConnection.commit();
-                            preparedStatement.clearBatch();
-                            batchSize = 0;
                         }
                     }
-                    if (batchSize > 0) {
-                        preparedStatement.executeBatch();
-                        targetConnection.commit();
-                    }
                     //Alter SRID
                     if (!geomColumnAndSRID.isEmpty()) {
                         StringBuilder querySRID = new StringBuilder();
@@ -518,6 +525,62 @@ public class IOMethods {
         return ouputTableName;
     }
 
+    /**
+     * Send the rows of the result set, from the current row, to a PostgreSQL table with a binary COPY.
+     * The SRID of the geometry columns are collected as with the INSERT queries.
+     *
+     * @param inputRes          source rows, positioned on the first row to copy
+     * @param inputMetadata     metadata of the source rows
+     * @param geometryColumns   true for the geometry columns
+     * @param copyWriter        started copy
+     * @param geomColumnAndSRID geometry columns with a single SRID
+     * @param mixedSRID         geometry columns with several SRIDs
+     * @throws SQLException if the copy fails, the copy is then cancelled
+     */
+    private static void copyRows(ResultSet inputRes, ResultSetMetaData inputMetadata, boolean[] geometryColumns,
+                                 PostGISCopyWriter copyWriter, Map<String, Integer> geomColumnAndSRID,
+                                 Set<String> mixedSRID) throws SQLException {
+        int columnsCount = inputMetadata.getColumnCount();
+        Object[] row = new Object[columnsCount];
+        try {
+            do {
+                for (int i = 0; i < columnsCount; i++) {
+                    int index = i + 1;
+                    row[i] = inputRes.getObject(index);
+                    if (geometryColumns[i]) {
+                        collectSRID(geomColumnAndSRID, mixedSRID, inputMetadata.getColumnName(index), (Geometry) row[i]);
+                    }
+                }
+                copyWriter.addRow(row);
+            } while (inputRes.next());
+            copyWriter.finish();
+        } catch (SQLException | RuntimeException e) {
+            copyWriter.cancel();
+            throw e;
+        }
+    }
+
+    /**
+     * Keep the SRID of a geometry column while all its geometries share it.
+     * The null geometries are ignored, so the SRID is taken from the first non-null geometry.
+     *
+     * @param geomColumnAndSRID geometry columns with a single SRID
+     * @param mixedSRID         geometry columns with several SRIDs
+     * @param columnName        name of the geometry column
+     * @param geometry          geometry of the current row, may be null
+     */
+    private static void collectSRID(Map<String, Integer> geomColumnAndSRID, Set<String> mixedSRID,
+                                    String columnName, Geometry geometry) {
+        if (geometry == null || mixedSRID.contains(columnName)) {
+            return;
+        }
+        Integer srid = geomColumnAndSRID.putIfAbsent(columnName, geometry.getSRID());
+        if (srid != null && srid != geometry.getSRID()) {
+            geomColumnAndSRID.remove(columnName);
+            mixedSRID.add(columnName);
+        }
+    }
+
     /**
      * @return Current list of supported drivers
      */
@@ -22,6 +22,7 @@ package org.h2gis.functions.io.utility;
 
 import org.cts.parser.prj.PrjKeyParameters;
 import org.cts.parser.prj.PrjParser;
+import org.h2gis.functions.spatial.crs.CRSCatalog;
 import org.h2gis.utilities.TableLocation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -175,25 +176,7 @@ public class PRJUtil {
      * @return true if the srid exists
      */
     public static boolean isSRIDValid(int srid, Connection connection) throws SQLException {
-        PreparedStatement ps = null;
-        ResultSet rs = null;
-        String queryCheck = "SELECT count(SRID) from PUBLIC.SPATIAL_REF_SYS WHERE SRID = ?";
-        try {
-            ps = connection.prepareStatement(queryCheck);
-            ps.setInt(1, srid);
-            rs = ps.executeQuery();
-            if (rs.next()) {
-                return rs.getInt(1) != 0;
-            }
-        } finally {
-            if (rs != null) {
-                rs.close();
-            }
-            if (ps != null) {
-                ps.close();
-            }
-        }
-        return false;
+        return CRSCatalog.get(connection).contains(srid);
     }
     
 }
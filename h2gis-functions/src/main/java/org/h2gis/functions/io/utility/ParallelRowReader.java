@@ -0,0 +1,164 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.h2.value.Value;
+import org.h2gis.api.FileDriver;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decode the rows of a file driver with several threads.
+ * The record range is split into consecutive partitions, each partition is decoded by a worker thread that owns its
+ * own driver instance. The decoded partitions are returned in the file order, at most two partitions per worker are
+ * kept in memory.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class ParallelRowReader implements AutoCloseable {
+    /**
+     * Option key used to set the number of import threads
+     */
+    public static final String WORKERS_OPTION = "workers";
+    /**
+     * Option key used to set the file encoding
+     */
+    public static final String ENCODING_OPTION = "encoding";
+
+    private final long rowCount;
+    private final int partitionSize;
+    private final int queueCapacity;
+    private final ExecutorService executor;
+    private final ThreadLocal<FileDriver> workerDriver = new ThreadLocal<>();
+    private final Queue<FileDriver> openedDrivers = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<Future<Value[][]>> pending = new ArrayDeque<>();
+    private final DriverFactory driverFactory;
+    private long nextPartitionStart = 0;
+
+    /**
+     * Open a new driver on the same file, called once by each worker thread
+     */
+    public interface DriverFactory {
+        FileDriver open() throws IOException;
+    }
+
+    /**
+     * Constructor
+     * @param driverFactory Create the driver of a worker thread
+     * @param rowCount Number of rows to read
+     * @param partitionSize Number of consecutive rows decoded by a worker at once
+     * @param workerCount Number of worker threads
+     */
+    public ParallelRowReader(DriverFactory driverFactory, long rowCount, int partitionSize, int workerCount) {
+        this.driverFactory = driverFactory;
+        this.rowCount = rowCount;
+        this.partitionSize = Math.max(1, partitionSize);
+        int threads = Math.max(1, workerCount);
+        this.queueCapacity = threads * 2;
+        final AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "H2GIS-import-" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return The next partition of rows in the file order, or null if all the rows have been read.
+     * Each row contains the driver fields.
+     * @throws IOException Read or decode error of a worker
+     */
+    public Value[][] nextPartition() throws IOException {
+        while (pending.size() < queueCapacity && nextPartitionStart < rowCount) {
+            final long start = nextPartitionStart;
+            final long end = Math.min(rowCount, start + partitionSize);
+            pending.add(executor.submit(() -> readPartition(start, end)));
+            nextPartitionStart = end;
+        }
+        Future<Value[][]> partition = pending.poll();
+        if (partition == null) {
+            return null;
+        }
+        try {
+            return partition.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading the file", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause.getLocalizedMessage(), cause);
+        }
+    }
+
+    private Value[][] readPartition(long start, long end) throws IOException {
+        FileDriver driver = workerDriver.get();
+        if (driver == null) {
+            driver = driverFactory.open();
+            openedDrivers.add(driver);
+            workerDriver.set(driver);
+        }
+        int fieldCount = driver.getFieldCount();
+        Value[][] rows = new Value[(int) (end - start)][];
+        for (long rowId = start; rowId < end; rowId++) {
+            Value[] row = new Value[fieldCount];
+            for (int columnId = 0; columnId < fieldCount; columnId++) {
+                row[columnId] = (Value) driver.getField(rowId, columnId);
+            }
+            rows[(int) (rowId - start)] = row;
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        IOException closeException = null;
+        for (FileDriver driver : openedDrivers) {
+            try {
+                driver.close();
+            } catch (IOException ex) {
+                closeException = ex;
+            }
+        }
+        openedDrivers.clear();
+        if (closeException != null) {
+            throw closeException;
+        }
+    }
+}
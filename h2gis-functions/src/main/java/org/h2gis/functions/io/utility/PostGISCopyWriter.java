@@ -0,0 +1,248 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.h2.value.ValueGeometry;
+import org.locationtech.jts.geom.Geometry;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Bulk load rows into a PostgreSQL table with {@code COPY ... FROM STDIN (FORMAT binary)}.
+ * The values are encoded in the binary format of the target column types, the geometries are sent
+ * as EWKB. This avoids the hex encoding of the geometries and the execution of one INSERT per row.
+ *
+ * The PostgreSQL JDBC driver is an optional dependency, {@link #create(Connection, String)} returns
+ * null if it is not available or if a column type of the target table has no binary encoding here.
+ *
+ * @author Erwan Bocher, CNRS
+ * @author Nicolas Fortin, Univ Gustave Eiffel
+ */
+public final class PostGISCopyWriter {
+
+    private static final int BUFFER_SIZE = 1024 * 128;
+    private static final byte[] SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0};
+
+    private static final int INT2 = 0;
+    private static final int INT4 = 1;
+    private static final int INT8 = 2;
+    private static final int FLOAT4 = 3;
+    private static final int FLOAT8 = 4;
+    private static final int BOOL = 5;
+    private static final int TEXT = 6;
+    private static final int GEOMETRY = 7;
+
+    private final CopyIn copyIn;
+    private final int[] columnKinds;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long rowCount = 0;
+
+    private PostGISCopyWriter(CopyIn copyIn, int[] columnKinds) {
+        this.copyIn = copyIn;
+        this.columnKinds = columnKinds;
+        buffer.put(SIGNATURE);
+        // Flags and header extension length
+        buffer.putInt(0);
+        buffer.putInt(0);
+    }
+
+    /**
+     * Start a binary copy into the given table
+     *
+     * @param connection PostgreSQL connection
+     * @param table      target table, formatted for PostgreSQL
+     * @return the writer, or null if the binary copy cannot be used for this connection or this table
+     * @throws SQLException if the copy cannot be started
+     */
+    public static PostGISCopyWriter create(Connection connection, String table) throws SQLException {
+        try {
+            if (!connection.isWrapperFor(PGConnection.class)) {
+                return null;
+            }
+        } catch (LinkageError ex) {
+            // The PostgreSQL driver is not in the class path
+            return null;
+        }
+        int[] columnKinds;
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT * FROM " + table + " LIMIT 0")) {
+            ResultSetMetaData meta = rs.getMetaData();
+            columnKinds = new int[meta.getColumnCount()];
+            for (int i = 0; i < columnKinds.length; i++) {
+                columnKinds[i] = getColumnKind(meta.getColumnTypeName(i + 1));
+                if (columnKinds[i] < 0) {
+                    return null;
+                }
+            }
+        }
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI()
+                .copyIn("COPY " + table + " FROM STDIN (FORMAT binary)");
+        return new PostGISCopyWriter(copyIn, columnKinds);
+    }
+
+    /**
+     * @param typeName PostgreSQL type name
+     * @return the binary encoding of the type, -1 if not supported
+     */
+    private static int getColumnKind(String typeName) {
+        switch (typeName.toLowerCase()) {
+            case "int2":
+                return INT2;
+            case "int4":
+            case "serial":
+                return INT4;
+            case "int8":
+            case "bigserial":
+                return INT8;
+            case "float4":
+                return FLOAT4;
+            case "float8":
+                return FLOAT8;
+            case "bool":
+                return BOOL;
+            case "text":
+            case "varchar":
+            case "bpchar":
+                return TEXT;
+            case "geometry":
+                return GEOMETRY;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Append a row, the values are matched to the columns of the table by position
+     *
+     * @param values row values
+     * @throws SQLException if the row cannot be sent
+     */
+    public void addRow(Object[] values) throws SQLException {
+        if (values.length != columnKinds.length) {
+            throw new SQLException("Expected " + columnKinds.length + " values, found " + values.length);
+        }
+        ensureCapacity(2);
+        buffer.putShort((short) columnKinds.length);
+        for (int i = 0; i < columnKinds.length; i++) {
+            writeValue(columnKinds[i], values[i]);
+        }
+        rowCount++;
+    }
+
+    private void writeValue(int kind, Object value) throws SQLException {
+        if (value == null) {
+            ensureCapacity(4);
+            buffer.putInt(-1);
+            return;
+        }
+        switch (kind) {
+            case INT2:
+                ensureCapacity(6);
+                buffer.putInt(2).putShort(((Number) value).shortValue());
+                break;
+            case INT4:
+                ensureCapacity(8);
+                buffer.putInt(4).putInt(((Number) value).intValue());
+                break;
+            case INT8:
+                ensureCapacity(12);
+                buffer.putInt(8).putLong(((Number) value).longValue());
+                break;
+            case FLOAT4:
+                ensureCapacity(8);
+                buffer.putInt(4).putFloat(((Number) value).floatValue());
+                break;
+            case FLOAT8:
+                ensureCapacity(12);
+                buffer.putInt(8).putDouble(((Number) value).doubleValue());
+                break;
+            case BOOL:
+                ensureCapacity(5);
+                buffer.putInt(1).put((byte) (((Boolean) value) ? 1 : 0));
+                break;
+            case TEXT:
+                writeBytes(value.toString().getBytes(StandardCharsets.UTF_8));
+                break;
+            default:
+                // EWKB, the SRID is written if it is not 0
+                writeBytes(ValueGeometry.getFromGeometry((Geometry) value).getBytesNoCopy());
+                break;
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws SQLException {
+        ensureCapacity(4);
+        buffer.putInt(bytes.length);
+        if (bytes.length > buffer.remaining()) {
+            flush();
+            if (bytes.length > buffer.capacity()) {
+                copyIn.writeToCopy(bytes, 0, bytes.length);
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    private void ensureCapacity(int length) throws SQLException {
+        if (buffer.remaining() < length) {
+            flush();
+        }
+    }
+
+    private void flush() throws SQLException {
+        if (buffer.position() > 0) {
+            copyIn.writeToCopy(buffer.array(), 0, buffer.position());
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Send the remaining rows and end the copy
+     *
+     * @return the number of rows copied
+     * @throws SQLException if the copy fails
+     */
+    public long finish() throws SQLException {
+        ensureCapacity(2);
+        // File trailer
+        buffer.putShort((short) -1);
+        flush();
+        copyIn.endCopy();
+        return rowCount;
+    }
+
+    /**
+     * Abort the copy, the rows already sent are not inserted
+     */
+    public void cancel() throws SQLException {
+        if (copyIn.isActive()) {
+            copyIn.cancelCopy();
+        }
+    }
+}
@@ -23,12 +23,26 @@ package org.h2gis.functions.io.utility;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
 public final class ReadBufferManager {
 
+        /**
+         * Distance in bytes between the start of two consecutive memory mapped chunks
+         */
+        static final long MAPPED_CHUNK_SIZE = 1L << 30;
+        /**
+         * Each memory mapped chunk overlaps the next one by this number of bytes, so that any read of this length
+         * or less is contained in a single chunk
+         */
+        static final int MAPPED_CHUNK_OVERLAP = 1 << 20;
+
         private int bufferSize;
         private ByteBuffer buffer;
+        private ByteBuffer heapBuffer;
+        private MappedByteBuffer[] chunks;
+        private ByteOrder order = ByteOrder.BIG_ENDIAN;
         private FileChannel channel;
         private long windowStart;
         private long positionInFile;
@@ -50,12 +64,69 @@ public final class ReadBufferManager {
          * @param bufferSize buffer size
          */
         public ReadBufferManager(FileChannel channel, int bufferSize)
+                throws IOException {
+                this(channel, bufferSize, false);
+        }
+
+        /**
+         * Instantiates a ReadBufferManager to read the specified channel.
+         * In memory mapped mode the file is mapped by chunks of 1GB, so files larger than 2GB are supported. Reads
+         * do not issue any system call nor copy the content of the file into the java heap.
+         *
+         * @param channel {@link FileChannel}
+         * @param memoryMapped True to map the file in memory instead of reading it through a heap buffer
+         */
+        public ReadBufferManager(FileChannel channel, boolean memoryMapped) throws IOException {
+                this(channel, 1024 * 32, memoryMapped);
+        }
+
+        /**
+         * Instantiates a ReadBufferManager to read the specified channel.
+         *
+         * @param channel {@link FileChannel}
+         * @param bufferSize buffer size, used when the file is not memory mapped or when a read is larger than the
+         *                   overlap between two memory mapped chunks
+         * @param memoryMapped True to map the file in memory instead of reading it through a heap buffer
+         */
+        public ReadBufferManager(FileChannel channel, int bufferSize, boolean memoryMapped)
                 throws IOException {
                 this.channel = channel;
-                buffer = ByteBuffer.allocate(0);
+                heapBuffer = ByteBuffer.allocate(0);
+                buffer = heapBuffer;
                 windowStart = 0;
                 this.bufferSize = bufferSize;
-                getWindowOffset(0, bufferSize);
+                if (memoryMapped) {
+                        long size = channel.size();
+                        chunks = new MappedByteBuffer[(int) ((size + MAPPED_CHUNK_SIZE - 1) / MAPPED_CHUNK_SIZE)];
+                } else {
+                        getWindowOffset(0, bufferSize);
+                }
+        }
+
+        /**
+         * @return True if the file is read through memory mapped buffers
+         */
+        public boolean isMemoryMapped() {
+                return chunks != null;
+        }
+
+        /**
+         * Map the chunk if not already done
+         *
+         * @param chunkIndex chunk index
+         * @return The memory mapped chunk
+         */
+        private MappedByteBuffer getChunk(int chunkIndex) throws IOException {
+                MappedByteBuffer chunk = chunks[chunkIndex];
+                if (chunk == null) {
+                        long chunkStart = chunkIndex * MAPPED_CHUNK_SIZE;
+                        long chunkLength = Math.min(MAPPED_CHUNK_SIZE + MAPPED_CHUNK_OVERLAP,
+                                channel.size() - chunkStart);
+                        chunk = channel.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkLength);
+                        chunks[chunkIndex] = chunk;
+                }
+                chunk.order(order);
+                return chunk;
         }
 
         /**
@@ -75,28 +146,39 @@ public final class ReadBufferManager {
                         } else {
                                 throw new IOException("This buffer is quite large...");
                         }
-                } else {
-                        long bufferCapacity = Math.max(bufferSize, length);
-                        long size = channel.size();
-
-                        bufferCapacity = Math.min(bufferCapacity, size - bytePos);
-                        if (bufferCapacity > Integer.MAX_VALUE) {
-                                throw new IOException("Woaw ! You want to have a REALLY LARGE buffer !");
+                }
+                if (chunks != null && length <= MAPPED_CHUNK_OVERLAP) {
+                        int chunkIndex = (int) (bytePos / MAPPED_CHUNK_SIZE);
+                        if (chunkIndex < chunks.length) {
+                                MappedByteBuffer chunk = getChunk(chunkIndex);
+                                long chunkStart = chunkIndex * MAPPED_CHUNK_SIZE;
+                                if (desiredMax < chunkStart + chunk.capacity()) {
+                                        buffer = chunk;
+                                        windowStart = chunkStart;
+                                        return (int) (bytePos - chunkStart);
+                                }
                         }
-                        windowStart = bytePos;
+                }
+                long bufferCapacity = Math.max(bufferSize, length);
+                long size = channel.size();
 
-                        channel.position(windowStart);
-                        if (buffer.capacity() != bufferCapacity) {
-                                ByteOrder order = buffer.order();
-                                buffer = ByteBuffer.allocate((int)bufferCapacity);
-                                buffer.order(order);
-                        } else {
-                                buffer.clear();
-                        }
-                        channel.read(buffer);
-                        buffer.flip();
-                        return (int) (bytePos - windowStart);
+                bufferCapacity = Math.min(bufferCapacity, size - bytePos);
+                if (bufferCapacity > Integer.MAX_VALUE) {
+                        throw new IOException("Woaw ! You want to have a REALLY LARGE buffer !");
                 }
+                windowStart = bytePos;
+
+                channel.position(windowStart);
+                if (heapBuffer.capacity() != bufferCapacity) {
+                        heapBuffer = ByteBuffer.allocate((int)bufferCapacity);
+                        heapBuffer.order(order);
+                } else {
+                        heapBuffer.clear();
+                }
+                channel.read(heapBuffer);
+                heapBuffer.flip();
+                buffer = heapBuffer;
+                return (int) (bytePos - windowStart);
         }
 
         /**
@@ -125,7 +207,9 @@ public final class ReadBufferManager {
          * @param order {@link ByteOrder}
          */
         public void order(ByteOrder order) {
+                this.order = order;
                 buffer.order(order);
+                heapBuffer.order(order);
         }
 
         /**
@@ -278,4 +362,14 @@ public final class ReadBufferManager {
         public long remaining() throws IOException {
                 return channel.size() - windowStart - buffer.position();
         }
+
+        /**
+         * Drop the references to the memory mapped chunks. The mapping is released when the chunks are garbage
+         * collected: it is not forced, as a buffer still referenced by a reader would then access unmapped memory.
+         * On Windows a mapped file can not be deleted before that. The manager must not be read after this call.
+         */
+        public void release() {
+                chunks = null;
+                buffer = heapBuffer;
+        }
 }
@@ -24,13 +24,13 @@ import java.util.*;
 
 /**
  * @author Erwan Bocher (CNRS)
- * Implements the DBSCAN algorithm using Union-Find and SQL spatial queries.
- * Core points are identified via a COUNT + HAVING query with a spatial index
- * pre-filter (ST_EXPAND bbox), then neighbors are unioned.
+ * Implements the DBSCAN algorithm using Union-Find and an in memory STR-tree.
+ * Core points are identified by counting their neighbours within eps,
+ * then core points are unioned with their neighbors.
  *
- * <p>The spatial self-join is computed only once and materialized into a
- * CACHED LOCAL TEMPORARY table to avoid repeating the
- * most expensive operation.</p>
+ * <p>The neighbour queries are run in parallel, the candidate pairs are
+ * never materialized. A table of points is indexed with a grid of eps
+ * sized cells instead of the STR-tree.</p>
  */
 public class ClusterDBSCAN extends AbstractCluster {
 
@@ -81,122 +81,30 @@ public class ClusterDBSCAN extends AbstractCluster {
 
     @Override
     protected void computeClusters() throws SQLException {
-
-        // Load IDs
-        List<Object> ids = new ArrayList<>();
-        Map<Object, Integer> idx = new HashMap<>();
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet res = stmt.executeQuery(
-                     "SELECT " + idColumn + " FROM " + tableLocation)) {
-            while (res.next()) {
-                Object id = res.getObject(1);
-                idx.put(id, ids.size());
-                ids.add(id);
-            }
-        }
-
-        int n = ids.size();
+        ClusterIndex index = ClusterIndex.load(connection, tableLocation, geomColumn, idColumn);
+        int n = index.size();
         if (n == 0) {
             clusterResults = Collections.emptyMap();
             return;
         }
 
-        // Materialise pairs once (CACHED = B-tree on disk, no OOM risk)
-        String createPairsSql = String.format(
-                "CREATE CACHED LOCAL TEMPORARY TABLE tmp_pairs AS " +
-                        "SELECT a.%s AS id_a, b.%s AS id_b " +
-                        "FROM %s a, %s b " +
-                        "WHERE a.%s < b.%s " +
-                        "AND ST_EXPAND(a.%s, %f) && b.%s " +
-                        "AND ST_DWithin(a.%s, b.%s, %f)",
-                idColumn, idColumn,
-                tableLocation, tableLocation,
-                idColumn, idColumn,
-                geomColumn, eps, geomColumn,
-                geomColumn, geomColumn, eps
-        );
-
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute("DROP TABLE IF EXISTS tmp_pairs");
-            stmt.execute(createPairsSql);
+        // Identify core points
+        int[] neighbourCount = index.countNeighbours(eps);
+        boolean[] core = new boolean[n];
+        boolean[] notCore = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            core[i] = neighbourCount[i] > 0 && neighbourCount[i] >= minPoints - 1;
+            notCore[i] = !core[i];
         }
 
-        try {
-            // Identify core points from tmp_pairs
-            String corePointSql = String.format(
-                    "SELECT id, COUNT(*) AS cnt " +
-                            "FROM ( " +
-                            "  SELECT id_a AS id FROM tmp_pairs " +
-                            "  UNION ALL " +
-                            "  SELECT id_b AS id FROM tmp_pairs " +
-                            ") t " +
-                            "GROUP BY id " +
-                            "HAVING COUNT(*) >= %d",
-                    minPoints - 1
-            );
-            Set<Object> coreIds = new HashSet<>();
-            try (Statement stmt = connection.createStatement();
-                 ResultSet res = stmt.executeQuery(corePointSql)) {
-                while (res.next()) {
-                    coreIds.add(res.getObject(1));
-                }
-            }
-
-            // Union-Find approach
-            int[] parent = new int[n];
-            int[] rank   = new int[n];
-            for (int i = 0; i < n; i++) {
-                parent[i] = i;
-            }
-
-            // Union pairs where at least one endpoint is a core point
-            try (Statement stmt = connection.createStatement();
-                 ResultSet res = stmt.executeQuery("SELECT id_a, id_b FROM tmp_pairs")) {
-                while (res.next()) {
-                    Object idA = res.getObject(1);
-                    Object idB = res.getObject(2);
-                    if (coreIds.contains(idA) || coreIds.contains(idB)) {
-                        Integer i = idx.get(idA);
-                        Integer j = idx.get(idB);
-                        if (i != null && j != null) {
-                            UnionFind.union(parent, rank, i, j);
-                        }
-                    }
-                }
-            }
-
-            // Compute sizes and assign sequential labels
-            Map<Integer, Integer> sizeByRoot  = new HashMap<>();
-            Map<Integer, Integer> labelByRoot = new HashMap<>();
-
-            for (int i = 0; i < n; i++) {
-                sizeByRoot.merge(UnionFind.find(parent, i), 1, Integer::sum);
-            }
-
-            int nextLabel = 1;
-            for (int i = 0; i < n; i++) {
-                int root = UnionFind.find(parent, i);
-                if (!labelByRoot.containsKey(root)) {
-                    labelByRoot.put(root, nextLabel++);
-                }
-            }
-
-            // Build result map
-            clusterResults = new HashMap<>((int) (n / 0.75) + 1);
-            for (int i = 0; i < n; i++) {
-                Object id  = ids.get(i);
-                int root   = UnionFind.find(parent, i);
-                int size   = sizeByRoot.get(root);
-                boolean isNoise = !coreIds.contains(id) && size < minPoints;
-                int label = isNoise ? NOISE : labelByRoot.get(root);
-                clusterResults.put(id, new int[]{label, size});
-            }
-
-        } finally {
-            try (Statement stmt = connection.createStatement()) {
-                stmt.execute("DROP TABLE IF EXISTS tmp_pairs");
-            }
+        // Union-Find approach, union core points with all their neighbours
+        int[] parent = new int[n];
+        int[] rank   = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
         }
+        index.unionNeighbours(parent, rank, eps, core);
+
+        clusterResults = index.getClusters(parent, notCore, minPoints);
     }
 }
\ No newline at end of file
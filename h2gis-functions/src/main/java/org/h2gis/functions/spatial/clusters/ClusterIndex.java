@@ -0,0 +1,293 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.clusters;
+
+import org.h2gis.utilities.TableLocation;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.strtree.STRtree;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * @author Erwan Bocher (CNRS)
+ * In memory spatial index used by the cluster functions.
+ * The geometries are read once from the table into a STR-tree, the neighbours
+ * of each geometry are then queried in parallel and merged into the Union-Find
+ * arrays. Candidate pairs are never stored, only the neighbours of a block of
+ * geometries are kept in memory at a time.
+ * When all the geometries are points, only their coordinates are kept and the
+ * neighbours are searched in a {@link PointGrid} instead of the STR-tree.
+ */
+final class ClusterIndex {
+
+    /**
+     * Number of geometries processed in parallel before the union step
+     */
+    private static final int BLOCK_SIZE = 8192;
+
+    private final List<Object> ids;
+    private final Geometry[] geometries;
+    private final STRtree tree;
+    /** Coordinates of the points, null if the table contains other geometries */
+    private final double[] x;
+    private final double[] y;
+    private PointGrid grid;
+    private double gridDistance;
+
+    private ClusterIndex(List<Object> ids, Geometry[] geometries, STRtree tree) {
+        this.ids = ids;
+        this.geometries = geometries;
+        this.tree = tree;
+        this.x = null;
+        this.y = null;
+    }
+
+    private ClusterIndex(List<Object> ids, double[] x, double[] y) {
+        this.ids = ids;
+        this.geometries = null;
+        this.tree = null;
+        this.x = x;
+        this.y = y;
+    }
+
+    /**
+     * Read the identifiers and the geometries of the table.
+     *
+     * @param connection database connection
+     * @param tableLocation table
+     * @param geomColumn geometry column
+     * @param idColumn identifier column
+     * @return the index
+     */
+    static ClusterIndex load(Connection connection, TableLocation tableLocation,
+                             String geomColumn, String idColumn) throws SQLException {
+        List<Object> ids = new ArrayList<>();
+        List<Geometry> geometries = new ArrayList<>();
+        boolean pointsOnly = true;
+        try (Statement stmt = connection.createStatement();
+             ResultSet res = stmt.executeQuery(
+                     "SELECT " + idColumn + ", " + geomColumn + " FROM " + tableLocation)) {
+            while (res.next()) {
+                Object geomObject = res.getObject(2);
+                Geometry geom = geomObject instanceof Geometry ? (Geometry) geomObject : null;
+                if (geom != null && geom.isEmpty()) {
+                    geom = null;
+                }
+                pointsOnly &= geom == null || geom instanceof Point;
+                ids.add(res.getObject(1));
+                geometries.add(geom);
+            }
+        }
+        int n = geometries.size();
+        if (pointsOnly) {
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                Point point = (Point) geometries.get(i);
+                x[i] = point == null ? Double.NaN : point.getX();
+                y[i] = point == null ? Double.NaN : point.getY();
+            }
+            return new ClusterIndex(ids, x, y);
+        }
+        STRtree tree = new STRtree();
+        for (int i = 0; i < n; i++) {
+            Geometry geom = geometries.get(i);
+            if (geom != null) {
+                tree.insert(geom.getEnvelopeInternal(), i);
+            }
+        }
+        // The tree must be built before being queried by several threads
+        tree.build();
+        return new ClusterIndex(ids, geometries.toArray(new Geometry[0]), tree);
+    }
+
+    /**
+     * @return number of rows
+     */
+    int size() {
+        return ids.size();
+    }
+
+    /**
+     * @param i row index
+     * @return identifier of the row
+     */
+    Object getId(int i) {
+        return ids.get(i);
+    }
+
+    /**
+     * Count the neighbours of each geometry
+     *
+     * @param distance maximum distance, 0 to use the intersection
+     * @return number of neighbours of each geometry, the geometry itself is not counted
+     */
+    int[] countNeighbours(double distance) {
+        int[] counts = new int[size()];
+        if (x != null) {
+            PointGrid pointGrid = getGrid(distance);
+            IntStream.range(0, size()).parallel().forEach(i -> counts[i] = pointGrid.countNeighbours(i));
+        } else {
+            IntStream.range(0, size()).parallel()
+                    .forEach(i -> counts[i] = neighbours(i, distance, false).length);
+        }
+        return counts;
+    }
+
+    /**
+     * @param distance maximum distance
+     * @return the grid of the points for this distance
+     */
+    private PointGrid getGrid(double distance) {
+        if (grid == null || gridDistance != distance) {
+            grid = new PointGrid(x, y, distance);
+            gridDistance = distance;
+        }
+        return grid;
+    }
+
+    /**
+     * Union each source geometry with its neighbours
+     *
+     * @param parent Union-Find parent array
+     * @param rank Union-Find rank array
+     * @param distance maximum distance, 0 to use the intersection
+     * @param sources geometries to process, null to process all the geometries
+     */
+    void unionNeighbours(int[] parent, int[] rank, double distance, boolean[] sources) {
+        int n = size();
+        // Each pair is found from both sides, keep only one side when all the geometries are processed
+        boolean greaterOnly = sources == null;
+        PointGrid pointGrid = x != null ? getGrid(distance) : null;
+        int[][] neighbours = new int[Math.min(BLOCK_SIZE, n)][];
+        for (int blockStart = 0; blockStart < n; blockStart += BLOCK_SIZE) {
+            final int start = blockStart;
+            final int end = Math.min(n, blockStart + BLOCK_SIZE);
+            IntStream.range(start, end).parallel().forEach(i -> {
+                if (sources != null && !sources[i]) {
+                    neighbours[i - start] = null;
+                } else if (pointGrid != null) {
+                    neighbours[i - start] = pointGrid.neighbours(i, greaterOnly);
+                } else {
+                    neighbours[i - start] = neighbours(i, distance, greaterOnly);
+                }
+            });
+            for (int i = start; i < end; i++) {
+                int[] found = neighbours[i - start];
+                if (found != null) {
+                    for (int j : found) {
+                        UnionFind.union(parent, rank, i, j);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Find the neighbours of a geometry
+     *
+     * @param i row index
+     * @param distance maximum distance, 0 to use the intersection
+     * @param greaterOnly keep only the neighbours with a greater row index
+     * @return row index of the neighbours
+     */
+    private int[] neighbours(int i, double distance, boolean greaterOnly) {
+        final Geometry geom = geometries[i];
+        if (geom == null) {
+            return new int[0];
+        }
+        Envelope search = new Envelope(geom.getEnvelopeInternal());
+        search.expandBy(distance);
+        final Point point = geom instanceof Point ? (Point) geom : null;
+        final double distanceSq = distance * distance;
+        final int[][] found = {new int[8]};
+        final int[] count = {0};
+        tree.query(search, (ItemVisitor) item -> {
+            int j = (Integer) item;
+            if (j == i || (greaterOnly && j < i)) {
+                return;
+            }
+            Geometry other = geometries[j];
+            boolean match;
+            if (point != null && other instanceof Point) {
+                double dx = point.getX() - ((Point) other).getX();
+                double dy = point.getY() - ((Point) other).getY();
+                match = dx * dx + dy * dy <= distanceSq;
+            } else if (distance > 0) {
+                match = geom.isWithinDistance(other, distance);
+            } else {
+                match = geom.intersects(other);
+            }
+            if (match) {
+                if (count[0] == found[0].length) {
+                    found[0] = Arrays.copyOf(found[0], count[0] * 2);
+                }
+                found[0][count[0]++] = j;
+            }
+        });
+        return Arrays.copyOf(found[0], count[0]);
+    }
+
+    /**
+     * Build the cluster identifier and the cluster size of each row.
+     * The cluster identifiers are numbered in the table order starting from 1.
+     *
+     * @param parent Union-Find parent array
+     * @param noise rows that are not part of a cluster, null if all rows are in a cluster
+     * @param noiseMaxSize a noise row with a cluster size lower than this value is flagged as NOISE
+     * @return id : [clusterId, clusterSize]
+     */
+    Map<Object, int[]> getClusters(int[] parent, boolean[] noise, int noiseMaxSize) {
+        int n = size();
+        int[] roots = new int[n];
+        int[] sizeByRoot = new int[n];
+        for (int i = 0; i < n; i++) {
+            roots[i] = UnionFind.find(parent, i);
+            sizeByRoot[roots[i]]++;
+        }
+        int[] labelByRoot = new int[n];
+        int nextLabel = 1;
+        for (int i = 0; i < n; i++) {
+            if (labelByRoot[roots[i]] == 0) {
+                labelByRoot[roots[i]] = nextLabel++;
+            }
+        }
+        Map<Object, int[]> clusters = new HashMap<>((int) (n / 0.75) + 1);
+        for (int i = 0; i < n; i++) {
+            int size = sizeByRoot[roots[i]];
+            boolean isNoise = noise != null && noise[i] && size < noiseMaxSize;
+            clusters.put(ids.get(i), new int[]{isNoise ? AbstractCluster.NOISE : labelByRoot[roots[i]], size});
+        }
+        return clusters;
+    }
+}
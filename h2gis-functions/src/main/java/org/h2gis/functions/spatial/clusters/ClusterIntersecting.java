@@ -23,7 +23,6 @@ package org.h2gis.functions.spatial.clusters;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.util.*;
 
 /**
@@ -68,20 +67,8 @@ public class ClusterIntersecting extends AbstractCluster {
 
     @Override
     protected void computeClusters() throws SQLException {
-        List<Object> ids = new ArrayList<>();
-        Map<Object, Integer> idx = new HashMap<>();
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet res = stmt.executeQuery(
-                     "SELECT " + idColumn + " FROM " + tableLocation)) {
-            while (res.next()) {
-                Object id = res.getObject(1);
-                idx.put(id, ids.size());
-                ids.add(id);
-            }
-        }
-
-        int n = ids.size();
+        ClusterIndex index = ClusterIndex.load(connection, tableLocation, geomColumn, idColumn);
+        int n = index.size();
         if (n == 0) {
             clusterResults = Collections.emptyMap();
             return;
@@ -92,49 +79,8 @@ public class ClusterIntersecting extends AbstractCluster {
         for (int i = 0; i < n; i++) {
             parent[i] = i;
         }
+        index.unionNeighbours(parent, rank, 0, null);
 
-        String pairSql = String.format(
-                "SELECT a.%s, b.%s " +
-                        "FROM %s a, %s b " +
-                        "WHERE a.%s < b.%s " +
-                        "AND ST_Intersects(a.%s, b.%s)",
-                idColumn, idColumn,
-                tableLocation, tableLocation,
-                idColumn, idColumn,
-                geomColumn, geomColumn
-        );
-
-        try (Statement stmt = connection.createStatement();
-             ResultSet res = stmt.executeQuery(pairSql)) {
-            while (res.next()) {
-                Integer i = idx.get(res.getObject(1));
-                Integer j = idx.get(res.getObject(2));
-                if (i != null && j != null) {
-                    UnionFind.union(parent, rank, i, j);
-                }
-            }
-        }
-
-        Map<Integer, Integer> sizeByRoot = new HashMap<>();
-        for (int i = 0; i < n; i++) {
-            sizeByRoot.merge(UnionFind.find(parent, i), 1, Integer::sum);
-        }
-
-        Map<Integer, Integer> labelByRoot = new HashMap<>();
-        int nextLabel = 1;
-        for (int i = 0; i < n; i++) {
-            int root = UnionFind.find(parent, i);
-            if (!labelByRoot.containsKey(root)) {
-                labelByRoot.put(root, nextLabel++);
-            }
-        }
-
-        clusterResults = new HashMap<>(n * 2);
-        for (int i = 0; i < n; i++) {
-            int root = UnionFind.find(parent, i);
-            int label = labelByRoot.get(root);
-            int size = sizeByRoot.get(root);
-            clusterResults.put(ids.get(i), new int[]{label, size});
-        }
+        clusterResults = index.getClusters(parent, null, 0);
     }
 }
\ No newline at end of file
@@ -0,0 +1,223 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.clusters;
+
+import java.util.Arrays;
+
+/**
+ * @author Erwan Bocher (CNRS)
+ * Uniform grid of points used by the cluster functions when all the geometries are points.
+ * The cell size is the search distance, so the neighbours of a point are in the 3x3 cells
+ * around the cell of the point. The cells are stored in an open addressing hash table, only
+ * the non empty cells are allocated.
+ */
+final class PointGrid {
+
+    private static final int EMPTY = -1;
+    /** Bound of the cell coordinates, the 3x3 cells around a cell must not overflow */
+    private static final long MAX_CELL = 1L << 60;
+
+    private final double[] x;
+    private final double[] y;
+    private final double distanceSq;
+    private final double cellSize;
+    private final double minX;
+    private final double minY;
+    /** Hash table of the cells, column and row of the cell by slot */
+    private final long[] slotColumn;
+    private final long[] slotRow;
+    /** Cell number by slot, EMPTY if the slot is not used */
+    private final int[] slotCell;
+    private final int mask;
+    /** Points sorted by cell, the points of cell c are in [cellStart[c], cellStart[c + 1]) */
+    private final int[] cellStart;
+    private final int[] sortedPoints;
+
+    /**
+     * Build the grid
+     *
+     * @param x        x of the points, NaN if the row has no point
+     * @param y        y of the points
+     * @param distance maximum distance between two neighbours
+     */
+    PointGrid(double[] x, double[] y, double distance) {
+        this.x = x;
+        this.y = y;
+        this.distanceSq = distance * distance;
+        int n = x.length;
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        int pointCount = 0;
+        for (int i = 0; i < n; i++) {
+            if (!Double.isNaN(x[i])) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+                pointCount++;
+            }
+        }
+        this.minX = minX;
+        this.minY = minY;
+        if (distance > 0) {
+            cellSize = distance;
+        } else {
+            // Only the identical points are neighbours, use about one point per cell
+            double extent = Math.max(maxX - minX, maxY - minY);
+            cellSize = extent > 0 ? extent / Math.max(1, Math.sqrt(pointCount)) : 1;
+        }
+        int capacity = Integer.highestOneBit(Math.max(16, pointCount * 2 - 1)) << 1;
+        mask = capacity - 1;
+        slotColumn = new long[capacity];
+        slotRow = new long[capacity];
+        slotCell = new int[capacity];
+        Arrays.fill(slotCell, EMPTY);
+        // Assign a cell number to each point then group the points by cell
+        int[] pointCell = new int[n];
+        int[] cellCount = new int[Math.max(1, pointCount)];
+        int cellNumber = 0;
+        for (int i = 0; i < n; i++) {
+            if (Double.isNaN(x[i])) {
+                pointCell[i] = EMPTY;
+                continue;
+            }
+            long column = column(x[i]);
+            long row = row(y[i]);
+            int slot = slot(column, row);
+            if (slotCell[slot] == EMPTY) {
+                slotColumn[slot] = column;
+                slotRow[slot] = row;
+                slotCell[slot] = cellNumber++;
+            }
+            pointCell[i] = slotCell[slot];
+            cellCount[pointCell[i]]++;
+        }
+        cellStart = new int[cellNumber + 1];
+        for (int c = 0; c < cellNumber; c++) {
+            cellStart[c + 1] = cellStart[c] + cellCount[c];
+        }
+        sortedPoints = new int[pointCount];
+        int[] position = Arrays.copyOf(cellStart, cellNumber);
+        for (int i = 0; i < n; i++) {
+            if (pointCell[i] != EMPTY) {
+                sortedPoints[position[pointCell[i]]++] = i;
+            }
+        }
+    }
+
+    private long column(double px) {
+        return Math.min(MAX_CELL, (long) Math.floor((px - minX) / cellSize));
+    }
+
+    private long row(double py) {
+        return Math.min(MAX_CELL, (long) Math.floor((py - minY) / cellSize));
+    }
+
+    /**
+     * @return the slot of the cell, or the empty slot where the cell must be inserted
+     */
+    private int slot(long column, long row) {
+        long hash = column * 0x9E3779B97F4A7C15L + row * 0xC2B2AE3D27D4EB4FL;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (slotCell[slot] != EMPTY && (slotColumn[slot] != column || slotRow[slot] != row)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Count the neighbours of a point
+     *
+     * @param i row index
+     * @return number of points within the distance, the point itself is not counted
+     */
+    int countNeighbours(int i) {
+        final double px = x[i];
+        if (Double.isNaN(px)) {
+            return 0;
+        }
+        final double py = y[i];
+        final long column = column(px);
+        final long row = row(py);
+        int count = 0;
+        for (long c = column - 1; c <= column + 1; c++) {
+            for (long r = row - 1; r <= row + 1; r++) {
+                int cell = slotCell[slot(c, r)];
+                if (cell == EMPTY) {
+                    continue;
+                }
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int j = sortedPoints[k];
+                    double dx = px - x[j];
+                    double dy = py - y[j];
+                    if (j != i && dx * dx + dy * dy <= distanceSq) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Find the neighbours of a point
+     *
+     * @param i           row index
+     * @param greaterOnly keep only the neighbours with a greater row index
+     * @return row index of the neighbours
+     */
+    int[] neighbours(int i, boolean greaterOnly) {
+        final double px = x[i];
+        if (Double.isNaN(px)) {
+            return new int[0];
+        }
+        final double py = y[i];
+        final long column = column(px);
+        final long row = row(py);
+        int[] found = new int[8];
+        int count = 0;
+        for (long c = column - 1; c <= column + 1; c++) {
+            for (long r = row - 1; r <= row + 1; r++) {
+                int cell = slotCell[slot(c, r)];
+                if (cell == EMPTY) {
+                    continue;
+                }
+                for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                    int j = sortedPoints[k];
+                    if (j == i || (greaterOnly && j < i)) {
+                        continue;
+                    }
+                    double dx = px - x[j];
+                    double dy = py - y[j];
+                    if (dx * dx + dy * dy <= distanceSq) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = j;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+}
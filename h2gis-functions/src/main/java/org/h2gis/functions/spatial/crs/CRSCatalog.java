@@ -0,0 +1,335 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.crs;
+
+import org.cts.CRSFactory;
+import org.cts.crs.CRSException;
+import org.cts.crs.CoordinateReferenceSystem;
+import org.cts.datum.Ellipsoid;
+import org.cts.op.CoordinateOperation;
+import org.cts.registry.AbstractProjRegistry;
+import org.cts.registry.RegistryException;
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.engine.SessionLocal;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.table.Table;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coordinate reference systems of the SPATIAL_REF_SYS table of a database.
+ *
+ * For an embedded H2 database the table is read once, the CRS and their ellipsoid radius are built the first
+ * time a SRID is used and then shared by all the sessions of the database. The catalog is built again when the
+ * SPATIAL_REF_SYS table is modified. Other databases cannot tell when the table is modified, their catalog
+ * queries the definition of each SRID it uses and is not shared.
+ *
+ * @author Erwan Bocher, CNRS
+ * @author Nicolas Fortin, Univ Gustave Eiffel
+ */
+public final class CRSCatalog {
+
+    /**
+     * Maximum number of cached coordinate operations, the cache is cleared when it is full
+     */
+    private static final int MAX_OPERATIONS = 256;
+    /**
+     * The catalogs do not reference the database, so it can be garbage collected once closed
+     */
+    private static final Map<Database, CRSCatalog> H2_CATALOGS = Collections.synchronizedMap(new WeakHashMap<>());
+    /** Definition of a SRID missing from the SPATIAL_REF_SYS table */
+    private static final String[] MISSING = new String[0];
+
+    /** Connection queried for the definitions, null if the definitions are read once from an embedded H2 database */
+    private final Connection connection;
+    /** Id of the SPATIAL_REF_SYS table and its modification id when it was read */
+    private final int tableId;
+    private final long modificationId;
+    /** Authority name and proj4 text by SRID, filled on demand if the connection is queried */
+    private final Map<Integer, String[]> definitions;
+    private final CRSFactory crsf = new CRSFactory();
+    private final Map<Integer, CRSEntry> entries = new ConcurrentHashMap<>();
+    /**
+     * Coordinate operations by SRID pair, filled by {@link ST_Transform}
+     */
+    private final Map<EPSGTuple, CoordinateOperation> operations = new ConcurrentHashMap<>();
+
+    private CRSCatalog(Connection connection, int tableId, long modificationId, Map<Integer, String[]> definitions) {
+        this.connection = connection;
+        this.tableId = tableId;
+        this.modificationId = modificationId;
+        this.definitions = definitions;
+        crsf.getRegistryManager().addRegistry(new CatalogRegistry());
+    }
+
+    /**
+     * Return the catalog of the database
+     *
+     * @param connection database
+     * @return the catalog, read from the SPATIAL_REF_SYS table if it is not cached or if the table has changed.
+     * If this is not an embedded H2 database, a new catalog querying the connection.
+     * @throws SQLException if the SPATIAL_REF_SYS table cannot be read
+     */
+    public static CRSCatalog get(Connection connection) throws SQLException {
+        SessionLocal session = getLocalSession(connection);
+        if (session == null) {
+            return new CRSCatalog(connection, 0, 0, new ConcurrentHashMap<>());
+        }
+        Database database = session.getDatabase();
+        Table table = database.getMainSchema().findTableOrView(session, database.sysIdentifier("SPATIAL_REF_SYS"));
+        if (table == null) {
+            throw new SQLException("The SPATIAL_REF_SYS table does not exist");
+        }
+        CRSCatalog catalog = H2_CATALOGS.get(database);
+        if (catalog != null && catalog.tableId == table.getId() &&
+                catalog.modificationId == table.getMaxDataModificationId()) {
+            return catalog;
+        }
+        synchronized (H2_CATALOGS) {
+            catalog = H2_CATALOGS.get(database);
+            long currentModificationId = table.getMaxDataModificationId();
+            if (catalog == null || catalog.tableId != table.getId() || catalog.modificationId != currentModificationId) {
+                catalog = new CRSCatalog(null, table.getId(), currentModificationId, readDefinitions(connection));
+                H2_CATALOGS.put(database, catalog);
+            }
+            return catalog;
+        }
+    }
+
+    /**
+     * @param connection database
+     * @return the embedded H2 session of the connection, null if this is not an embedded H2 database
+     */
+    private static SessionLocal getLocalSession(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(JdbcConnection.class)) {
+            return null;
+        }
+        Session session = connection.unwrap(JdbcConnection.class).getSession();
+        return session instanceof SessionLocal ? (SessionLocal) session : null;
+    }
+
+    private static Map<Integer, String[]> readDefinitions(Connection connection) throws SQLException {
+        Map<Integer, String[]> definitions = new HashMap<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT srid, auth_name, proj4text FROM SPATIAL_REF_SYS")) {
+            while (rs.next()) {
+                definitions.put(rs.getInt(1), new String[]{rs.getString(2), rs.getString(3)});
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * Remove all the cached catalogs, they are read again from the SPATIAL_REF_SYS tables
+     */
+    public static void clearCache() {
+        H2_CATALOGS.clear();
+    }
+
+    /**
+     * @param srid srid code
+     * @return authority name and proj4 text of the srid, null if the srid does not exist
+     * @throws SQLException if the SPATIAL_REF_SYS table cannot be read
+     */
+    private String[] getDefinition(int srid) throws SQLException {
+        String[] definition = definitions.get(srid);
+        if (definition == null && connection != null) {
+            definition = MISSING;
+            try (PreparedStatement ps = connection.prepareStatement(
+                    "SELECT auth_name, proj4text FROM SPATIAL_REF_SYS WHERE srid = ?")) {
+                ps.setInt(1, srid);
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) {
+                        definition = new String[]{rs.getString(1), rs.getString(2)};
+                    }
+                }
+            }
+            definitions.put(srid, definition);
+        }
+        return definition == MISSING ? null : definition;
+    }
+
+    /**
+     * @param srid srid code
+     * @return true if the srid exists in the SPATIAL_REF_SYS table
+     * @throws SQLException if the SPATIAL_REF_SYS table cannot be read
+     */
+    public boolean contains(int srid) throws SQLException {
+        return getDefinition(srid) != null;
+    }
+
+    /**
+     * @return the srid codes of the SPATIAL_REF_SYS table
+     * @throws SQLException if the SPATIAL_REF_SYS table cannot be read
+     */
+    public Set<Integer> getSupportedCodes() throws SQLException {
+        if (connection == null) {
+            return Collections.unmodifiableSet(definitions.keySet());
+        }
+        Set<Integer> codes = new HashSet<>();
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT srid FROM SPATIAL_REF_SYS")) {
+            while (rs.next()) {
+                codes.add(rs.getInt(1));
+            }
+        }
+        return codes;
+    }
+
+    /**
+     * @param srid srid code
+     * @return authority name of the srid, null if the srid does not exist
+     * @throws SQLException if the SPATIAL_REF_SYS table cannot be read
+     */
+    public String getAuthorityName(int srid) throws SQLException {
+        String[] definition = getDefinition(srid);
+        return definition == null ? null : definition[0];
+    }
+
+    /**
+     * Return the coordinate reference system of a srid
+     *
+     * @param srid srid code
+     * @return the coordinate reference system
+     * @throws CRSException if the srid does not exist or cannot be parsed
+     */
+    public CoordinateReferenceSystem getCRS(int srid) throws CRSException {
+        return getEntry(srid).crs;
+    }
+
+    /**
+     * Return the mean radius of the ellipsoid of a srid, (2a + b) / 3
+     *
+     * @param srid srid code
+     * @return radius in meters, NaN if the CRS has no ellipsoid
+     * @throws CRSException if the srid does not exist or cannot be parsed
+     */
+    public double getMeanRadius(int srid) throws CRSException {
+        return getEntry(srid).meanRadius;
+    }
+
+    private CRSEntry getEntry(int srid) throws CRSException {
+        CRSEntry entry = entries.get(srid);
+        if (entry == null) {
+            CoordinateReferenceSystem crs;
+            // The CTS factory and parser are not thread safe
+            synchronized (crsf) {
+                crs = crsf.getCRS("epsg:" + srid);
+            }
+            entry = new CRSEntry(crs);
+            CRSEntry previous = entries.putIfAbsent(srid, entry);
+            if (previous != null) {
+                entry = previous;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Return a coordinate operation built for this catalog, the operations are cleared when there are too many.
+     *
+     * @param epsg pair of srid
+     * @return the operation, null if not cached
+     */
+    CoordinateOperation getOperation(EPSGTuple epsg) {
+        return operations.get(epsg);
+    }
+
+    /**
+     * Cache a coordinate operation
+     *
+     * @param epsg pair of srid
+     * @param op   coordinate operation
+     * @return the cached operation
+     */
+    CoordinateOperation putOperation(EPSGTuple epsg, CoordinateOperation op) {
+        if (operations.size() >= MAX_OPERATIONS) {
+            operations.clear();
+        }
+        CoordinateOperation previous = operations.putIfAbsent(epsg, op);
+        return previous == null ? op : previous;
+    }
+
+    /**
+     * Resolved CRS of a srid
+     */
+    private static final class CRSEntry {
+        private final CoordinateReferenceSystem crs;
+        private final double meanRadius;
+
+        private CRSEntry(CoordinateReferenceSystem crs) {
+            this.crs = crs;
+            Ellipsoid ellipsoid = crs.getDatum() == null ? null : crs.getDatum().getEllipsoid();
+            this.meanRadius = ellipsoid == null ? Double.NaN
+                    : (2.0 * ellipsoid.getSemiMajorAxis() + ellipsoid.getSemiMinorAxis()) / 3.0;
+        }
+    }
+
+    /**
+     * CTS registry reading the definitions loaded from the SPATIAL_REF_SYS table
+     */
+    private final class CatalogRegistry extends AbstractProjRegistry {
+
+        @Override
+        public String getRegistryName() {
+            return "epsg";
+        }
+
+        @Override
+        public Map<String, String> getParameters(String code) throws RegistryException {
+            String[] definition;
+            try {
+                definition = getDefinition(Integer.parseInt(code));
+            } catch (SQLException ex) {
+                throw new RegistryException("Cannot read the definition of " + code, ex);
+            }
+            if (definition == null) {
+                return null;
+            }
+            return SpatialRefRegistry.parseProj4(definition[1], definition[0] + ":" + code);
+        }
+
+        @Override
+        public Set<String> getSupportedCodes() throws RegistryException {
+            Set<String> codes = new HashSet<>();
+            try {
+                for (Integer srid : CRSCatalog.this.getSupportedCodes()) {
+                    codes.add(srid.toString());
+                }
+            } catch (SQLException ex) {
+                throw new RegistryException("Cannot read the SPATIAL_REF_SYS table", ex);
+            }
+            return codes;
+        }
+    }
+}
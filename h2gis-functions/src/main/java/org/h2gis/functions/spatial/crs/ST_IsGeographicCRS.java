@@ -20,15 +20,12 @@
 
 package org.h2gis.functions.spatial.crs;
 
-import org.cts.CRSFactory;
 import org.cts.crs.*;
-import org.cts.op.CoordinateOperation;
 import org.h2gis.api.DeterministicScalarFunction;
 import org.locationtech.jts.geom.Geometry;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Map;
 
 /**
  * Method to check if the CRS of the geometry is geographic
@@ -36,10 +33,6 @@ import java.util.Map;
  */
 public class ST_IsGeographicCRS extends DeterministicScalarFunction {
 
-    private static CRSFactory crsf;
-    private static SpatialRefRegistry srr = new SpatialRefRegistry();
-    private static Map<EPSGTuple, CoordinateOperation> copPool = new ST_Transform.CopCache(5);
-
     public ST_IsGeographicCRS() {
         addProperty(PROP_REMARKS, "ST_IsGeographicCRS takes a geometry and \n"
                 + "return true is the coordinate system is geographic, otherwise false. False is the geometry is null \n" +
@@ -66,23 +59,14 @@ public class ST_IsGeographicCRS extends DeterministicScalarFunction {
         if (inputSRID == 0) {
             return false;
         } else {
-            if (crsf == null) {
-                crsf = new CRSFactory();
-                //Activate the CRSFactory and the internal H2 spatial_ref_sys registry to
-                // manage Coordinate Reference Systems.
-                crsf.getRegistryManager().addRegistry(srr);
-            }
-            srr.setConnection(connection);
             try {
-                CoordinateReferenceSystem inputCRS = crsf.getCRS(srr.getRegistryName() + ":" + inputSRID);
+                CoordinateReferenceSystem inputCRS = CRSCatalog.get(connection).getCRS(inputSRID);
                 if(inputCRS instanceof Geographic2DCRS || inputCRS instanceof Geographic3DCRS){
                     return true;
                 }
 
             } catch (CRSException ex) {
                 throw new SQLException("Cannot create the CRS", ex);
-            } finally {
-                srr.setConnection(null);
             }
         }
         return false;
@@ -20,17 +20,14 @@
 
 package org.h2gis.functions.spatial.crs;
 
-import org.cts.CRSFactory;
 import org.cts.crs.CRSException;
 import org.cts.crs.CoordinateReferenceSystem;
 import org.cts.crs.ProjectedCRS;
-import org.cts.op.CoordinateOperation;
 import org.h2gis.api.DeterministicScalarFunction;
 import org.locationtech.jts.geom.Geometry;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Map;
 
 /**
  * Method to check if the CRS of the geometry is projected
@@ -38,10 +35,6 @@ import java.util.Map;
  */
 public class ST_IsProjectedCRS extends DeterministicScalarFunction {
 
-    private static CRSFactory crsf;
-    private static SpatialRefRegistry srr = new SpatialRefRegistry();
-    private static Map<EPSGTuple, CoordinateOperation> copPool = new ST_Transform.CopCache(5);
-
     public ST_IsProjectedCRS() {
         addProperty(PROP_REMARKS, "ST_IsProjectedCRS takes a geometry and \n"
                 + "return true is the coordinate system is projected, otherwise false. False is the geometry is null \n" +
@@ -68,23 +61,14 @@ public class ST_IsProjectedCRS extends DeterministicScalarFunction {
         if (inputSRID == 0) {
             return false;
         } else {
-            if (crsf == null) {
-                crsf = new CRSFactory();
-                //Activate the CRSFactory and the internal H2 spatial_ref_sys registry to
-                // manage Coordinate Reference Systems.
-                crsf.getRegistryManager().addRegistry(srr);
-            }
-            srr.setConnection(connection);
             try {
-                CoordinateReferenceSystem inputCRS = crsf.getCRS(srr.getRegistryName() + ":" + inputSRID);
+                CoordinateReferenceSystem inputCRS = CRSCatalog.get(connection).getCRS(inputSRID);
                 if(inputCRS instanceof ProjectedCRS){
                     return true;
                 }
 
             } catch (CRSException ex) {
                 throw new SQLException("Cannot create the CRS", ex);
-            } finally {
-                srr.setConnection(null);
             }
         }
         return false;
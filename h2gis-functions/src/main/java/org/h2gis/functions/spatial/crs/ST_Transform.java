@@ -20,7 +20,6 @@
 
 package org.h2gis.functions.spatial.crs;
 
-import org.cts.CRSFactory;
 import org.cts.IllegalCoordinateException;
 import org.cts.crs.CRSException;
 import org.cts.crs.CoordinateReferenceSystem;
@@ -28,6 +27,7 @@ import org.cts.crs.GeodeticCRS;
 import org.cts.op.CoordinateOperation;
 import org.cts.op.CoordinateOperationException;
 import org.cts.op.CoordinateOperationFactory;
+import org.cts.op.Identity;
 import org.h2gis.api.AbstractFunction;
 import org.h2gis.api.ScalarFunction;
 import org.locationtech.jts.geom.Coordinate;
@@ -53,10 +53,6 @@ import java.util.logging.Logger;
  */
 public class ST_Transform extends AbstractFunction implements ScalarFunction {
 
-    private static CRSFactory crsf;
-    private static SpatialRefRegistry srr = new SpatialRefRegistry();
-    private static Map<EPSGTuple, CoordinateOperation> copPool = new CopCache(5);
-
     /**
      * Constructor
      */
@@ -85,63 +81,77 @@ public class ST_Transform extends AbstractFunction implements ScalarFunction {
         if (codeEpsg == null) {
             throw new IllegalArgumentException("The SRID code cannot be null.");
         }
-        if (crsf == null) {
-            crsf = new CRSFactory();
-            //Activate the CRSFactory and the internal H2 spatial_ref_sys registry to
-            // manage Coordinate Reference Systems.
-            crsf.getRegistryManager().addRegistry(srr);
+        int inputSRID = geom.getSRID();
+        if (inputSRID == 0) {
+            throw new SQLException("Cannot find a CRS");
+        }
+        CoordinateOperation op = getCoordinateOperation(connection, inputSRID, codeEpsg);
+        if (op == null) {
+            return null;
+        }
+        if (op == Identity.IDENTITY) {
+            return geom;
+        }
+        Geometry outPutGeom = geom.copy();
+        new SequenceTransformer(op).transform(outPutGeom);
+        outPutGeom.setSRID(codeEpsg);
+        return outPutGeom;
+    }
+
+    /**
+     * Return the coordinate operation from a SRID to another. The operations are cached in the
+     * {@link CRSCatalog} of the database, they are built only the first time a pair of SRID is used.
+     *
+     * @param connection database
+     * @param inputSRID  srid code of the input geometries
+     * @param targetSRID srid code of the output geometries
+     * @return The most precise operation, {@link Identity#IDENTITY} if both srid codes define the same CRS, null
+     * if no operation is found
+     */
+    public static CoordinateOperation getCoordinateOperation(Connection connection, int inputSRID, int targetSRID)
+            throws SQLException {
+        final EPSGTuple epsg = new EPSGTuple(inputSRID, targetSRID);
+        final CRSCatalog catalog = CRSCatalog.get(connection);
+        CoordinateOperation op = catalog.getOperation(epsg);
+        if (op != null) {
+            return op;
         }
-        srr.setConnection(connection);
         try {
-            int inputSRID = geom.getSRID();
-            if (inputSRID == 0) {
-                throw new SQLException("Cannot find a CRS");
-            } else {
-                CoordinateReferenceSystem inputCRS = crsf.getCRS(srr.getRegistryName() + ":" + inputSRID);
-                CoordinateReferenceSystem targetCRS = crsf.getCRS(srr.getRegistryName() + ":" + codeEpsg);
-                if (inputCRS.equals(targetCRS)) {
-                    return geom;
-                }
-                EPSGTuple epsg = new EPSGTuple(inputSRID, codeEpsg);
-                CoordinateOperation op = copPool.get(epsg);
-                if (op != null) {
-                    Geometry outPutGeom = geom.copy();
-                    outPutGeom.geometryChanged();
-                    outPutGeom.apply(new CRSTransformFilter(op));
-                    outPutGeom.setSRID(codeEpsg);
-                    return outPutGeom;
-                } else {
-                    if (inputCRS instanceof GeodeticCRS && targetCRS instanceof GeodeticCRS) {
-                        Set<CoordinateOperation> ops = CoordinateOperationFactory
-                                .createCoordinateOperations((GeodeticCRS) inputCRS, (GeodeticCRS) targetCRS);
-                        if (!ops.isEmpty()) {
-                            op = CoordinateOperationFactory.getMostPrecise(ops);
-                            Geometry outPutGeom = geom.copy();
-                            outPutGeom.geometryChanged();
-                            outPutGeom.apply(new CRSTransformFilter(op));
-                            copPool.put(epsg, op);
-                            outPutGeom.setSRID(codeEpsg);
-                            return outPutGeom;
-                        }
-                    } else {
-                        throw new SQLException("The transformation from "
-                                + inputCRS + " to " + codeEpsg + " is not yet supported.");
-                    }
+            CoordinateReferenceSystem inputCRS = catalog.getCRS(inputSRID);
+            CoordinateReferenceSystem targetCRS = catalog.getCRS(targetSRID);
+            if (inputCRS.equals(targetCRS)) {
+                op = Identity.IDENTITY;
+            } else if (inputCRS instanceof GeodeticCRS && targetCRS instanceof GeodeticCRS) {
+                Set<CoordinateOperation> ops = CoordinateOperationFactory
+                        .createCoordinateOperations((GeodeticCRS) inputCRS, (GeodeticCRS) targetCRS);
+                if (ops.isEmpty()) {
+                    return null;
                 }
+                op = CoordinateOperationFactory.getMostPrecise(ops);
+            } else {
+                throw new SQLException("The transformation from "
+                        + inputCRS + " to " + targetSRID + " is not yet supported.");
             }
         } catch (CRSException ex) {
             throw new SQLException("Cannot create the CRS", ex);
-        } finally {
-            srr.setConnection(null);
+        } catch (CoordinateOperationException ex) {
+            throw new SQLException("Cannot create the coordinate operation", ex);
         }
-        return null;
+        return catalog.putOperation(epsg, op);
+    }
 
+    /**
+     * Remove the cached coordinate operations, they are built again from the SPATIAL_REF_SYS table
+     */
+    public static void clearCache() {
+        CRSCatalog.clearCache();
     }
 
   
     /**
      * This method is used to apply a {@link CoordinateOperation} to a geometry.
      * The transformation loops on each coordinate. 
+     * {@link SequenceTransformer} is faster and reports the coordinates that cannot be transformed.
      */
     public static class CRSTransformFilter implements CoordinateFilter{
         private final CoordinateOperation coordinateOperation;
@@ -0,0 +1,259 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.crs;
+
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.GeometryMetaData;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Copy a table with all its geometry columns transformed to another CRS. The rows are copied by a single
+ * INSERT ... SELECT query so they are not sent back and forth to the client, and the coordinate operations
+ * are resolved once before the copy.
+ * The output table keeps the NOT NULL constraints, the primary key and the indexes of the input table.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class ST_TransformTable extends AbstractFunction implements ScalarFunction {
+
+    /**
+     * Constructor
+     */
+    public ST_TransformTable() {
+        addProperty(PROP_REMARKS, "Copy a table into a new table, the geometry columns are transformed to the " +
+                "CRS referenced by the integer code from the SPATIAL_REF_SYS table.\n" +
+                "ST_TransformTable('input_table', 'output_table', srid)");
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "transformTable";
+    }
+
+    /**
+     * Copy the input table into the output table and transform its geometry columns. The NOT NULL constraints,
+     * the primary key and the indexes of the input table are created on the output table.
+     *
+     * @param connection  database
+     * @param inputTable  input table name
+     * @param outputTable output table name, the table must not exist
+     * @param codeEpsg    srid code of the output geometries
+     * @return true if the table has been created
+     */
+    public static boolean transformTable(Connection connection, String inputTable, String outputTable,
+                                         Integer codeEpsg) throws SQLException {
+        if (codeEpsg == null) {
+            throw new IllegalArgumentException("The SRID code cannot be null.");
+        }
+        final DBTypes dbType = DBUtils.getDBType(connection);
+        final TableLocation input = TableLocation.parse(inputTable, dbType);
+        final TableLocation output = TableLocation.parse(outputTable, dbType);
+        if (JDBCUtilities.tableExists(connection, output)) {
+            throw new SQLException("The table " + output + " already exists");
+        }
+        final LinkedHashMap<String, GeometryMetaData> geometryColumns =
+                GeometryTableUtilities.getMetaData(connection, input);
+        if (geometryColumns.isEmpty()) {
+            throw new SQLException("The table " + input + " does not contain a geometry column");
+        }
+        // Resolve the operations of the declared SRID, the geometries are scanned only if the column has no SRID
+        for (Map.Entry<String, GeometryMetaData> column : geometryColumns.entrySet()) {
+            final int declaredSRID = column.getValue().getSRID();
+            if (declaredSRID != 0) {
+                checkCoordinateOperation(connection, declaredSRID, codeEpsg);
+                continue;
+            }
+            final String columnName = TableLocation.quoteIdentifier(column.getKey(), dbType);
+            try (PreparedStatement st = connection.prepareStatement("SELECT DISTINCT ST_SRID(" + columnName +
+                    ") FROM " + input + " WHERE " + columnName + " IS NOT NULL");
+                 ResultSet rs = st.executeQuery()) {
+                while (rs.next()) {
+                    final int srid = rs.getInt(1);
+                    if (srid == 0) {
+                        throw new SQLException("Cannot find a CRS, the column " + column.getKey() +
+                                " contains geometries without SRID");
+                    }
+                    checkCoordinateOperation(connection, srid, codeEpsg);
+                }
+            }
+        }
+        final List<String> columnNames = JDBCUtilities.getColumnNames(connection, input);
+        final StringBuilder select = new StringBuilder();
+        for (String columnName : columnNames) {
+            if (select.length() > 0) {
+                select.append(", ");
+            }
+            final String quoted = TableLocation.quoteIdentifier(columnName, dbType);
+            if (geometryColumns.containsKey(columnName)) {
+                select.append("ST_Transform(").append(quoted).append(", ").append(codeEpsg).append(")");
+            } else {
+                select.append(quoted);
+            }
+        }
+        // CREATE TABLE AS only copies the column types
+        final DatabaseMetaData metaData = connection.getMetaData();
+        final List<String> notNullColumns = new ArrayList<>();
+        try (ResultSet rs = metaData.getColumns(connection.getCatalog(), input.getSchema(null), input.getTable(),
+                null)) {
+            while (rs.next()) {
+                if ("NO".equals(rs.getString("IS_NULLABLE"))) {
+                    notNullColumns.add(rs.getString("COLUMN_NAME"));
+                }
+            }
+        }
+        final Map<Short, String> primaryKey = new TreeMap<>();
+        try (ResultSet rs = metaData.getPrimaryKeys(connection.getCatalog(), input.getSchema(null),
+                input.getTable())) {
+            while (rs.next()) {
+                primaryKey.put(rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME"));
+            }
+        }
+        final List<String> indexes = getIndexes(connection, input, output, geometryColumns, primaryKey, dbType);
+        final boolean previousAutoCommit = connection.getAutoCommit();
+        try (Statement st = connection.createStatement()) {
+            connection.setAutoCommit(false);
+            st.execute("CREATE TABLE " + output + " AS SELECT * FROM " + input + " WITH NO DATA");
+            for (Map.Entry<String, GeometryMetaData> column : geometryColumns.entrySet()) {
+                final GeometryMetaData geometryMetaData = column.getValue();
+                st.execute("ALTER TABLE " + output + " ALTER COLUMN " +
+                        TableLocation.quoteIdentifier(column.getKey(), dbType) + " SET DATA TYPE GEOMETRY(" +
+                        geometryMetaData.getGeometryType() + "," + codeEpsg + ")");
+            }
+            for (String column : notNullColumns) {
+                st.execute("ALTER TABLE " + output + " ALTER COLUMN " +
+                        TableLocation.quoteIdentifier(column, dbType) + " SET NOT NULL");
+            }
+            if (!primaryKey.isEmpty()) {
+                st.execute("ALTER TABLE " + output + " ADD PRIMARY KEY (" +
+                        quoteColumns(primaryKey.values(), dbType) + ")");
+            }
+            st.execute("INSERT INTO " + output + " SELECT " + select + " FROM " + input);
+            // The indexes are faster to build once the table is filled
+            for (String index : indexes) {
+                st.execute(index);
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            try (Statement st = connection.createStatement()) {
+                st.execute("DROP TABLE IF EXISTS " + output);
+            }
+            throw e;
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+        return true;
+    }
+
+    /**
+     * Check that the geometries of a SRID can be transformed into the target SRID
+     *
+     * @param connection database
+     * @param srid       srid of the input geometries
+     * @param codeEpsg   srid code of the output geometries
+     * @throws SQLException If there is no coordinate operation between the two CRS
+     */
+    private static void checkCoordinateOperation(Connection connection, int srid, int codeEpsg) throws SQLException {
+        if (ST_Transform.getCoordinateOperation(connection, srid, codeEpsg) == null) {
+            throw new SQLException("No coordinate operation found from " + srid + " to " + codeEpsg);
+        }
+    }
+
+    /**
+     * Read the indexes of the input table, except the index of the primary key
+     *
+     * @param connection      database
+     * @param input           input table
+     * @param output          output table
+     * @param geometryColumns geometry columns of the input table
+     * @param primaryKey      primary key columns
+     * @param dbType          database type
+     * @return The statements creating the same indexes on the output table
+     */
+    private static List<String> getIndexes(Connection connection, TableLocation input, TableLocation output,
+                                           Map<String, GeometryMetaData> geometryColumns,
+                                           Map<Short, String> primaryKey, DBTypes dbType) throws SQLException {
+        final Map<String, Map<Short, String>> indexColumns = new LinkedHashMap<>();
+        final Map<String, Boolean> uniqueIndexes = new LinkedHashMap<>();
+        try (ResultSet rs = connection.getMetaData().getIndexInfo(connection.getCatalog(), input.getSchema(null),
+                input.getTable(), false, true)) {
+            while (rs.next()) {
+                final String indexName = rs.getString("INDEX_NAME");
+                final String columnName = rs.getString("COLUMN_NAME");
+                if (indexName == null || columnName == null) {
+                    continue;
+                }
+                indexColumns.computeIfAbsent(indexName, name -> new TreeMap<>())
+                        .put(rs.getShort("ORDINAL_POSITION"), columnName);
+                uniqueIndexes.put(indexName, !rs.getBoolean("NON_UNIQUE"));
+            }
+        }
+        final List<String> indexes = new ArrayList<>();
+        final List<String> primaryKeyColumns = new ArrayList<>(primaryKey.values());
+        for (Map.Entry<String, Map<Short, String>> index : indexColumns.entrySet()) {
+            final List<String> columns = new ArrayList<>(index.getValue().values());
+            if (columns.equals(primaryKeyColumns) && uniqueIndexes.get(index.getKey())) {
+                continue;
+            }
+            if (columns.size() == 1 && geometryColumns.containsKey(columns.get(0)) &&
+                    JDBCUtilities.isSpatialIndexed(connection, input, columns.get(0))) {
+                if (dbType == DBTypes.POSTGIS || dbType == DBTypes.POSTGRESQL) {
+                    indexes.add("CREATE INDEX ON " + output + " USING GIST (" + quoteColumns(columns, dbType) + ")");
+                } else {
+                    indexes.add("CREATE SPATIAL INDEX ON " + output + " (" + quoteColumns(columns, dbType) + ")");
+                }
+                continue;
+            }
+            indexes.add((uniqueIndexes.get(index.getKey()) ? "CREATE UNIQUE INDEX ON " : "CREATE INDEX ON ") +
+                    output + " (" + quoteColumns(columns, dbType) + ")");
+        }
+        return indexes;
+    }
+
+    private static String quoteColumns(Iterable<String> columns, DBTypes dbType) {
+        final StringBuilder quoted = new StringBuilder();
+        for (String column : columns) {
+            if (quoted.length() > 0) {
+                quoted.append(", ");
+            }
+            quoted.append(TableLocation.quoteIdentifier(column, dbType));
+        }
+        return quoted.toString();
+    }
+}
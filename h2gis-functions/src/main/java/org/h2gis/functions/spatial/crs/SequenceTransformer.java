@@ -0,0 +1,123 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.crs;
+
+import org.cts.IllegalCoordinateException;
+import org.cts.op.CoordinateOperation;
+import org.cts.op.CoordinateOperationException;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryCollection;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Apply a {@link CoordinateOperation} to the coordinate sequences of a geometry, in place.
+ * The coordinates are passed to the operation through a buffer allocated once, and the
+ * ordinates are read and written with the {@link CoordinateSequence} accessors, so no
+ * object is created per coordinate.
+ *
+ * An instance is not thread safe, the operation can be shared between instances.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public final class SequenceTransformer {
+
+    private final CoordinateOperation operation;
+    private final double[] buffer = new double[3];
+
+    /**
+     * @param operation Coordinate operation
+     */
+    public SequenceTransformer(CoordinateOperation operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * @return The coordinate operation
+     */
+    public CoordinateOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Transform all the coordinates of the geometry. The geometry is modified, copy it before
+     * if it is shared.
+     *
+     * @param geometry Geometry
+     * @throws CoordinateOperationException If a coordinate cannot be transformed
+     */
+    public void transform(Geometry geometry) throws CoordinateOperationException {
+        transformComponents(geometry);
+        geometry.geometryChanged();
+    }
+
+    private void transformComponents(Geometry geometry) throws CoordinateOperationException {
+        if (geometry instanceof Point) {
+            transform(((Point) geometry).getCoordinateSequence());
+        } else if (geometry instanceof LineString) {
+            transform(((LineString) geometry).getCoordinateSequence());
+        } else if (geometry instanceof Polygon) {
+            final Polygon polygon = (Polygon) geometry;
+            transform(polygon.getExteriorRing().getCoordinateSequence());
+            for (int i = 0; i < polygon.getNumInteriorRing(); i++) {
+                transform(polygon.getInteriorRingN(i).getCoordinateSequence());
+            }
+        } else if (geometry instanceof GeometryCollection) {
+            for (int i = 0; i < geometry.getNumGeometries(); i++) {
+                transformComponents(geometry.getGeometryN(i));
+            }
+        }
+    }
+
+    /**
+     * Transform the coordinates of the sequence. A missing z is transformed as 0, the z of the
+     * result is stored only if the sequence has a z ordinate.
+     *
+     * @param sequence Coordinate sequence
+     * @throws CoordinateOperationException If a coordinate cannot be transformed
+     */
+    public void transform(CoordinateSequence sequence) throws CoordinateOperationException {
+        final int size = sequence.size();
+        final boolean hasZ = sequence.hasZ();
+        for (int i = 0; i < size; i++) {
+            buffer[0] = sequence.getX(i);
+            buffer[1] = sequence.getY(i);
+            final double z = hasZ ? sequence.getZ(i) : Double.NaN;
+            buffer[2] = Double.isNaN(z) ? 0 : z;
+            final double[] xyz;
+            try {
+                // Most operations transform the buffer itself
+                xyz = operation.transform(buffer);
+            } catch (IllegalCoordinateException ex) {
+                throw new CoordinateOperationException("Cannot transform the coordinate (" + sequence.getX(i) +
+                        " " + sequence.getY(i) + "): " + ex.getMessage());
+            }
+            sequence.setOrdinate(i, CoordinateSequence.X, xyz[0]);
+            sequence.setOrdinate(i, CoordinateSequence.Y, xyz[1]);
+            if (hasZ) {
+                sequence.setOrdinate(i, CoordinateSequence.Z, xyz.length > 2 ? xyz[2] : Double.NaN);
+            }
+        }
+    }
+}
@@ -57,33 +57,12 @@ public class SpatialRefRegistry  extends AbstractProjRegistry implements Registr
         try {
             PreparedStatement prepStmt = connection.prepareStatement("SELECT proj4text, auth_name FROM SPATIAL_REF_SYS where srid=?");
             prepStmt.setInt(1, Integer.valueOf(code));
-            ResultSet rs = prepStmt.executeQuery();
-            if (rs.next()) {
-                String proj4Text = rs.getString(1);
-                String authcode = rs.getString(2) + ":" + code;
-                if(proj4Text.isEmpty()){
-                    throw new RegistryException("No translation for "+  authcode +" to PROJ format is known");
-                }
-                String[] tokens = regex.split(proj4Text);
-                Map<String, String> v = new HashMap<String, String>();
-                for (String token : tokens) {
-                    String[] keyValue = token.split("=");
-                    if (keyValue.length == 2) {
-                        String key = formatKey(keyValue[0]);
-                        ProjKeyParameters.checkUnsupported(key);
-                        v.put(key, keyValue[1]);
-                    } else {
-                        String key = formatKey(token);
-                        ProjKeyParameters.checkUnsupported(key);
-                        v.put(key, null);
-                    }
-                }
-                if (!v.containsKey(ProjKeyParameters.title)) {
-                    v.put(ProjKeyParameters.title, authcode);
+            try (ResultSet rs = prepStmt.executeQuery()) {
+                if (rs.next()) {
+                    return parseProj4(rs.getString(1), rs.getString(2) + ":" + code);
                 }
+            } finally {
                 prepStmt.close();
-                
-                return v;
             }
         } catch (SQLException ex) {
             throw new RegistryException("Cannot obtain the CRS parameters", ex);
@@ -91,6 +70,37 @@ public class SpatialRefRegistry  extends AbstractProjRegistry implements Registr
         return null;
     }
 
+    /**
+     * Split a proj4 definition into the CTS parameters
+     *
+     * @param proj4Text proj4 definition
+     * @param authcode  authority name and code, used as title if the definition has none
+     * @return the parameters
+     */
+    static Map<String, String> parseProj4(String proj4Text, String authcode) throws RegistryException {
+        if (proj4Text == null || proj4Text.isEmpty()) {
+            throw new RegistryException("No translation for " + authcode + " to PROJ format is known");
+        }
+        String[] tokens = regex.split(proj4Text);
+        Map<String, String> v = new HashMap<String, String>();
+        for (String token : tokens) {
+            String[] keyValue = token.split("=");
+            if (keyValue.length == 2) {
+                String key = formatKey(keyValue[0]);
+                ProjKeyParameters.checkUnsupported(key);
+                v.put(key, keyValue[1]);
+            } else {
+                String key = formatKey(token);
+                ProjKeyParameters.checkUnsupported(key);
+                v.put(key, null);
+            }
+        }
+        if (!v.containsKey(ProjKeyParameters.title)) {
+            v.put(ProjKeyParameters.title, authcode);
+        }
+        return v;
+    }
+
     /**
      * Remove + char if exists
      *
@@ -22,10 +22,13 @@ package org.h2gis.functions.spatial.earth;
 import java.sql.SQLException;
 import org.h2gis.api.DeterministicScalarFunction;
 import org.h2gis.utilities.jts_utils.CoordinateUtils;
+import org.locationtech.jts.algorithm.RobustLineIntersector;
 import org.locationtech.jts.geom.*;
-import org.locationtech.jts.index.strtree.STRtree;
-import org.locationtech.jts.math.Vector2D;
+import org.locationtech.jts.index.ItemVisitor;
+import org.locationtech.jts.index.SpatialIndex;
+import org.locationtech.jts.index.hprtree.HPRtree;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -37,7 +40,7 @@ import java.util.List;
 public class ST_Svf extends DeterministicScalarFunction{
 
     //target step length m
-    private static int RAY_STEP_LENGTH = 10;
+    static final int RAY_STEP_LENGTH = 10;
     
     public ST_Svf(){
         addProperty(PROP_REMARKS, "Return the Sky View Factor (SVF) for a given point.\n"
@@ -108,93 +111,137 @@ public class ST_Svf extends DeterministicScalarFunction{
             throw new IllegalArgumentException("The ray length parameter must be greater than 0");
         }
         
-        RAY_STEP_LENGTH = stepRayLength;
+        if (geoms.getDimension() > 0) {
+            HPRtree obstacles = new HPRtree();
+            if (addObstacles(geoms, obstacles) == 0) {
+                return 1D;
+            }
+            svf = computeSvf(pt.getCoordinate(), obstacles, distance, rayCount, stepRayLength, new RayBuffer());
+        }
+        return svf;
+    }
 
-        if (geoms.getDimension() > 0) {            
-            GeometryFactory factory = pt.getFactory();
-            //Convert input geoms to a set of linestring
-            STRtree sTRtree = new STRtree();
-            int nbGeoms = geoms.getNumGeometries();
-            for (int i = 0; i < nbGeoms; i++) {
-                Geometry subGeom = geoms.getGeometryN(i);
-                if (subGeom instanceof LineString) {
-                    addSegments(subGeom.getCoordinates(),factory, sTRtree);
-                } else if (subGeom instanceof Polygon) {
-                    Polygon p = (Polygon) subGeom;
-                    addSegments(p.getExteriorRing().getCoordinates(),factory, sTRtree);
-                    int nbInterior = p.getNumInteriorRing();
-                    for (int j = 0; j < nbInterior; j++) {
-                        addSegments(p.getInteriorRingN(j).getCoordinates(),factory, sTRtree);
-                    }
+    /**
+     * Add the segments of the linestrings and polygons of a geometry to an obstacle index
+     *
+     * @param geoms     geometry obstacles
+     * @param obstacles index of {@link LineSegment}
+     * @return number of segments added to the index
+     */
+    public static int addObstacles(Geometry geoms, SpatialIndex obstacles) {
+        int count = 0;
+        int nbGeoms = geoms.getNumGeometries();
+        for (int i = 0; i < nbGeoms; i++) {
+            Geometry subGeom = geoms.getGeometryN(i);
+            if (subGeom instanceof LineString) {
+                count += addSegments(subGeom.getCoordinates(), obstacles);
+            } else if (subGeom instanceof Polygon) {
+                Polygon p = (Polygon) subGeom;
+                count += addSegments(p.getExteriorRing().getCoordinates(), obstacles);
+                int nbInterior = p.getNumInteriorRing();
+                for (int j = 0; j < nbInterior; j++) {
+                    count += addSegments(p.getInteriorRingN(j).getCoordinates(), obstacles);
                 }
             }
-            if(sTRtree.isEmpty()){
-                return 1D;
-            }
-            Coordinate startCoordinate = pt.getCoordinate();
-            double startZ = Double.isNaN(startCoordinate.z)?0:startCoordinate.z;
-            double sumArea = 2*Math.PI; 
-            double elementaryAngle = sumArea / rayCount;
-            int stepCount = (int) Math.round(distance / RAY_STEP_LENGTH);
-            double stepLength = distance / stepCount;
-            //Compute the  SVF for each ray according an angle  
-            for (int i = 0; i < rayCount; i+=1) {             
-                //To limit the number of geometries in the query with create a progressive ray
-                Vector2D vStart = new Vector2D(startCoordinate);
-                double angleRad = elementaryAngle * i;
-                Vector2D v = Vector2D.create(Math.cos(angleRad), Math.sin(angleRad));
-                // This is the translation vector
-                v = v.multiply(stepLength);
-                double max = 0;
-                for (int j = 0; j < stepCount; j++) {
-                    LineSegment stepLine = new LineSegment(vStart.add(v.multiply(j)).toCoordinate(), vStart.add(v.multiply(j + 1)).toCoordinate());
-                    LineString rayStep = stepLine.toGeometry(factory);
-                    List<LineString> interEnv = sTRtree.query(rayStep.getEnvelopeInternal());
-                    if (!interEnv.isEmpty()) {
-                        for (LineString lineGeoms : interEnv) {
-                            Coordinate[] coords = lineGeoms.getCoordinates();
-                            Coordinate coordsStart = coords[0];
-                            Coordinate coordsEnd = coords[1];
-                            if (Math.max(coordsStart.z, coordsEnd.z) > max * j * stepLength){
-                                Geometry ptsIntersect =  lineGeoms.intersection(rayStep);
-                                if (ptsIntersect instanceof Point && ptsIntersect!=null) {
-                                    double coordWithZ = CoordinateUtils.interpolate(lineGeoms.getCoordinateN(0), lineGeoms.getCoordinateN(1), ptsIntersect.getCoordinate());
-                                    double distancePoint = ptsIntersect.distance(pt);
-                                    double ratio = (coordWithZ - startZ) / distancePoint;
-                                    if (ratio > max) {
-                                        max = ratio;
-                                    }
-                                }
+        }
+        return count;
+    }
+
+    /**
+     * Compute the Sky View Factor of a location with an obstacle index. The index must be built before being
+     * shared by several threads ({@link HPRtree} queries do not lock), each thread uses its own buffer.
+     *
+     * @param startCoordinate location to compute the svf
+     * @param obstacles       index of {@link LineSegment} with z values
+     * @param distance        distance to compute the sky sphere
+     * @param rayCount        number of rays
+     * @param stepRayLength   length of sub ray used to limit the number of segments of the index queries
+     * @param buffer          buffer of the calling thread
+     * @return svf value
+     */
+    public static double computeSvf(Coordinate startCoordinate, SpatialIndex obstacles, double distance, int rayCount,
+                                    int stepRayLength, RayBuffer buffer) {
+        double startZ = Double.isNaN(startCoordinate.z) ? 0 : startCoordinate.z;
+        double sumArea = 2 * Math.PI;
+        double elementaryAngle = sumArea / rayCount;
+        int stepCount = Math.max(1, (int) Math.round(distance / stepRayLength));
+        double stepLength = distance / stepCount;
+        Coordinate stepStart = buffer.stepStart;
+        Coordinate stepEnd = buffer.stepEnd;
+        Envelope stepEnvelope = buffer.stepEnvelope;
+        List<LineSegment> segments = buffer.segments;
+        RobustLineIntersector intersector = buffer.intersector;
+        //Compute the  SVF for each ray according an angle
+        for (int i = 0; i < rayCount; i += 1) {
+            //To limit the number of geometries in the query with create a progressive ray
+            double angleRad = elementaryAngle * i;
+            // This is the translation vector
+            double dx = Math.cos(angleRad) * stepLength;
+            double dy = Math.sin(angleRad) * stepLength;
+            double max = 0;
+            for (int j = 0; j < stepCount; j++) {
+                stepStart.setX(startCoordinate.x + dx * j);
+                stepStart.setY(startCoordinate.y + dy * j);
+                stepEnd.setX(startCoordinate.x + dx * (j + 1));
+                stepEnd.setY(startCoordinate.y + dy * (j + 1));
+                stepEnvelope.init(stepStart, stepEnd);
+                segments.clear();
+                obstacles.query(stepEnvelope, buffer);
+                for (LineSegment segment : segments) {
+                    if (Math.max(segment.p0.z, segment.p1.z) > max * j * stepLength) {
+                        intersector.computeIntersection(segment.p0, segment.p1, stepStart, stepEnd);
+                        // Collinear segments have two intersections and are ignored
+                        if (intersector.getIntersectionNum() == 1) {
+                            Coordinate intersection = intersector.getIntersection(0);
+                            double coordWithZ = CoordinateUtils.interpolate(segment.p0, segment.p1, intersection);
+                            double distancePoint = intersection.distance(startCoordinate);
+                            double ratio = (coordWithZ - startZ) / distancePoint;
+                            if (ratio > max) {
+                                max = ratio;
                             }
                         }
                     }
                 }
-                double sinTheta = Math.sin(Math.atan(max));
-                sumArea -= elementaryAngle * sinTheta * sinTheta;
             }
-            svf = sumArea / (2 * Math.PI);
-        }        
-        return svf;
-        
+            double sinTheta = Math.sin(Math.atan(max));
+            sumArea -= elementaryAngle * sinTheta * sinTheta;
+        }
+        return sumArea / (2 * Math.PI);
     }
-    
+
     /**
-     * Tranform to segments and add then in a STRtree if they intersect a buffer
-     * geometry
+     * Transform to segments and add them in a spatial index, the segments without z are ignored
      * @param coords the coordinates of the input geometry
-     * @param factory the geometry factory
-     * @param strtree  the STRtree to store the segments
+     * @param index  the index to store the {@link LineSegment}
+     * @return number of segments added to the index
      */
-    public static void addSegments(final Coordinate[] coords, GeometryFactory factory, STRtree strtree) {
+    public static int addSegments(final Coordinate[] coords, SpatialIndex index) {
+        int count = 0;
         for (int j = 0; j < coords.length - 1; j++) {
             Coordinate startCoord = coords[j];
             Coordinate endCoord = coords[j + 1];
-            if (!(Double.isNaN(startCoord.z) || Double.isNaN(endCoord.z))) {                
-                LineString lineString = factory.createLineString(
-                        new Coordinate[]{startCoord, endCoord});
-                strtree.insert(lineString.getEnvelopeInternal(), lineString);                
+            if (!(Double.isNaN(startCoord.z) || Double.isNaN(endCoord.z))) {
+                index.insert(new Envelope(startCoord, endCoord), new LineSegment(startCoord, endCoord));
+                count++;
             }
         }
+        return count;
     }
 
+    /**
+     * Objects reused by {@link #computeSvf(Coordinate, SpatialIndex, double, int, int, RayBuffer)}, a buffer must not be
+     * shared by several threads.
+     */
+    public static final class RayBuffer implements ItemVisitor {
+        private final Coordinate stepStart = new Coordinate();
+        private final Coordinate stepEnd = new Coordinate();
+        private final Envelope stepEnvelope = new Envelope();
+        private final List<LineSegment> segments = new ArrayList<>();
+        private final RobustLineIntersector intersector = new RobustLineIntersector();
+
+        @Override
+        public void visitItem(Object item) {
+            segments.add((LineSegment) item);
+        }
+    }
 }
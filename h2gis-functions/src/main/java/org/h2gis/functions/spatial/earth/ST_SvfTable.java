@@ -0,0 +1,266 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.earth;
+
+import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.h2gis.utilities.dbtypes.DBTypes;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.index.hprtree.HPRtree;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.stream.IntStream;
+
+/**
+ * Compute the Sky View Factor of all the points of a table. The obstacle segments are read once into a
+ * shared index, then the points are read by blocks and their SVF computed in parallel.
+ *
+ * @author Erwan Bocher, CNRS
+ * @author Nicolas Fortin, Univ Gustave Eiffel
+ */
+public class ST_SvfTable extends AbstractFunction implements ScalarFunction {
+
+    /**
+     * Number of points computed in parallel before being returned
+     */
+    private static final int BLOCK_SIZE = 4096;
+
+    public ST_SvfTable() {
+        addProperty(PROP_REMARKS, "Return the Sky View Factor (SVF) of each point of a table.\n"
+                + "ST_SvfTable('points', 'obstacles', distance, rayCount [, stepRayLength])\n"
+                + "points = Table of points, all its columns are returned with a SVF column\n"
+                + "obstacles = Table of geometries used as sky obstacles (z coordinates should be given and not NaN)\n"
+                + "distance = Only obstacles located within this distance from a point are considered in the calculation (double - in meters)\n"
+                + "rayCount = Number of ray considered for the calculation (integer - number of direction of calculation)\n"
+                + "stepRayLength = 10 (default) Each ray is subdivided to make the calculation faster. This argument set\n"
+                + "the length of each subdivision");
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "execute";
+    }
+
+    /**
+     * Compute the Sky View Factor of each point of a table
+     *
+     * @param connection     database
+     * @param pointsTable    table of points
+     * @param obstaclesTable table of obstacles
+     * @param distance       distance to compute the sky sphere
+     * @param rayCount       number of rays
+     * @return the columns of the points table and the SVF
+     */
+    public static ResultSet execute(Connection connection, String pointsTable, String obstaclesTable,
+                                    double distance, int rayCount) throws SQLException {
+        return execute(connection, pointsTable, obstaclesTable, distance, rayCount, ST_Svf.RAY_STEP_LENGTH);
+    }
+
+    /**
+     * Compute the Sky View Factor of each point of a table
+     *
+     * @param connection     database
+     * @param pointsTable    table of points
+     * @param obstaclesTable table of obstacles
+     * @param distance       distance to compute the sky sphere
+     * @param rayCount       number of rays
+     * @param stepRayLength  length of sub ray used to limit the number of segments of the index queries
+     * @return the columns of the points table and the SVF
+     */
+    public static ResultSet execute(Connection connection, String pointsTable, String obstaclesTable,
+                                    double distance, int rayCount, int stepRayLength) throws SQLException {
+        if (distance <= 0) {
+            throw new IllegalArgumentException("The distance value must be greater than 0");
+        }
+        if (rayCount < 4) {
+            throw new IllegalArgumentException("The number of rays must be greater than or equal to 4");
+        }
+        if (stepRayLength <= 0) {
+            throw new IllegalArgumentException("The ray length parameter must be greater than 0");
+        }
+        SvfRowSource rowSource = new SvfRowSource(connection, pointsTable, obstaclesTable, distance, rayCount,
+                stepRayLength);
+        SimpleResultSet rs = new SimpleResultSet(rowSource);
+        String sql = "SELECT * FROM " + rowSource.points + " LIMIT 0";
+        try (Statement stmt = connection.createStatement();
+             ResultSet res = stmt.executeQuery(sql)) {
+            TableUtilities.copyFields(rs, res.getMetaData());
+        }
+        rs.addColumn("SVF", Types.DOUBLE, 17, 0);
+        return rs;
+    }
+
+    /**
+     * Stream the rows of the points table with their SVF
+     */
+    private static final class SvfRowSource implements SimpleRowSource {
+        private final Connection connection;
+        private final TableLocation points;
+        private final TableLocation obstacles;
+        private final double distance;
+        private final int rayCount;
+        private final int stepRayLength;
+        private final ThreadLocal<ST_Svf.RayBuffer> buffers = ThreadLocal.withInitial(ST_Svf.RayBuffer::new);
+        private HPRtree obstacleIndex;
+        private boolean noObstacle;
+        private Statement pointsStatement;
+        private ResultSet pointsRS;
+        private int geometryIndex;
+        private int columnCount;
+        private Object[][] block;
+        private int blockSize = 0;
+        private int blockPosition = 0;
+
+        private SvfRowSource(Connection connection, String pointsTable, String obstaclesTable, double distance,
+                             int rayCount, int stepRayLength) throws SQLException {
+            this.connection = connection;
+            DBTypes dbType = DBUtils.getDBType(connection);
+            this.points = TableLocation.parse(pointsTable, dbType);
+            this.obstacles = TableLocation.parse(obstaclesTable, dbType);
+            this.distance = distance;
+            this.rayCount = rayCount;
+            this.stepRayLength = stepRayLength;
+        }
+
+        @Override
+        public Object[] readRow() throws SQLException {
+            if (pointsRS == null) {
+                open();
+            }
+            if (blockPosition == blockSize && !readBlock()) {
+                close();
+                return null;
+            }
+            return block[blockPosition++];
+        }
+
+        /**
+         * Build the obstacle index and open the points table
+         */
+        private void open() throws SQLException {
+            String pointsGeometry = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(connection, points)
+                    .first();
+            String obstaclesGeometry = TableLocation.quoteIdentifier(
+                    GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(connection, obstacles).first());
+            Geometry extent = GeometryTableUtilities.getEnvelope(connection, points, pointsGeometry);
+            obstacleIndex = new HPRtree();
+            int srid = extent == null ? 0 : extent.getSRID();
+            if (extent != null && !extent.isEmpty()) {
+                // Only the obstacles around the points are loaded
+                Envelope searchEnvelope = extent.getEnvelopeInternal();
+                searchEnvelope.expandBy(distance);
+                try (PreparedStatement ps = connection.prepareStatement("SELECT " + obstaclesGeometry + " FROM "
+                        + obstacles + " WHERE " + obstaclesGeometry + " && ?")) {
+                    ps.setObject(1, extent.getFactory().toGeometry(searchEnvelope));
+                    try (ResultSet rs = ps.executeQuery()) {
+                        int segmentCount = 0;
+                        while (rs.next()) {
+                            Geometry geom = (Geometry) rs.getObject(1);
+                            if (geom != null && !geom.isEmpty()) {
+                                if (geom.getSRID() != srid) {
+                                    throw new SQLException("Operation on mixed SRID geometries not supported");
+                                }
+                                segmentCount += ST_Svf.addObstacles(geom, obstacleIndex);
+                            }
+                        }
+                        noObstacle = segmentCount == 0;
+                    }
+                }
+            }
+            // The index must be built before being queried by several threads
+            obstacleIndex.build();
+            pointsStatement = connection.createStatement();
+            pointsRS = pointsStatement.executeQuery("SELECT * FROM " + points);
+            ResultSetMetaData metaData = pointsRS.getMetaData();
+            columnCount = metaData.getColumnCount();
+            geometryIndex = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(metaData).second() - 1;
+            block = new Object[BLOCK_SIZE][];
+        }
+
+        /**
+         * Read the next rows of the points table and compute their SVF
+         *
+         * @return false if there is no more rows
+         */
+        private boolean readBlock() throws SQLException {
+            blockSize = 0;
+            blockPosition = 0;
+            while (blockSize < BLOCK_SIZE && pointsRS.next()) {
+                Object[] row = new Object[columnCount + 1];
+                for (int i = 0; i < columnCount; i++) {
+                    row[i] = pointsRS.getObject(i + 1);
+                }
+                block[blockSize++] = row;
+            }
+            IntStream.range(0, blockSize).parallel().forEach(i -> {
+                Object[] row = block[i];
+                row[columnCount] = computeSvf((Geometry) row[geometryIndex]);
+            });
+            return blockSize > 0;
+        }
+
+        private Double computeSvf(Geometry point) {
+            if (point == null || point.isEmpty()) {
+                return null;
+            }
+            if (noObstacle) {
+                return 1D;
+            }
+            return ST_Svf.computeSvf(point.getCoordinate(), obstacleIndex, distance, rayCount, stepRayLength,
+                    buffers.get());
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (pointsRS != null) {
+                    pointsRS.close();
+                }
+                if (pointsStatement != null) {
+                    pointsStatement.close();
+                }
+            } catch (SQLException ignored) {
+            }
+            blockSize = 0;
+            blockPosition = 0;
+        }
+
+        @Override
+        public void reset() throws SQLException {
+            close();
+            pointsRS = null;
+            pointsStatement = null;
+        }
+    }
+}
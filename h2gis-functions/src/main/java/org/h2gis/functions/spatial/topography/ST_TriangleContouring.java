@@ -35,13 +35,24 @@ import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.operation.overlayng.OverlayNGRobust;
 
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.KeyValueOptions;
 
 /**
  * Split triangle into area within the specified range values.
+ * The triangles are read by batches, the batches are split by worker threads.
  * *********************************
  * ANR EvalPDU
  * IFSTTAR 11_05_2011
@@ -53,14 +64,30 @@ import org.h2gis.utilities.GeometryTableUtilities;
 public class ST_TriangleContouring extends DeterministicScalarFunction {
     /** The default field name for explode count, value is [1-n] */
     public static final String ISO_FIELD_NAME = "IDISO";
+    /** Number of worker threads, the number of processors by default */
+    public static final String WORKERS_OPTION = "workers";
+    /** If false the split triangles are returned when their batch is done, not in the order of the input table */
+    public static final String ORDERED_OPTION = "ordered";
+    /** If true the split triangles of each iso level are merged into polygons */
+    public static final String MERGE_OPTION = "merge";
     private static final String HACK_URL = "jdbc:columnlist:connection";
+    /** Number of triangles given to a worker thread */
+    private static final int BATCH_SIZE = 4096;
+    /** Number of partial unions of an iso level merged together while the table is read, at each depth of the cascade */
+    private static final int MERGE_SIZE = 32;
 
     public ST_TriangleContouring() {
         addProperty(PROP_REMARKS, "Split triangle into polygons within the specified range of values.\n" +
                 "Iso contouring using Z:\n" +
                 "select * from ST_TRIANGLECONTOURING('input_table',10,20,30,40)\n" +
                 "Iso contouring using table columns\n" +
-                "SELECT * FROM ST_TRIANGLECONTOURING('input_table','m1','m2','m3',10,20,30,40)");
+                "SELECT * FROM ST_TRIANGLECONTOURING('input_table','m1','m2','m3',10,20,30,40)\n" +
+                "An options string may be given as last argument, with space separated key=value pairs:\n" +
+                "workers=4 number of threads splitting the triangles (number of processors by default)\n" +
+                "ordered=false return the triangles as soon as they are split, not in the table order\n" +
+                "merge=true merge the triangles of each iso level into polygons, only the geometry and the iso\n" +
+                "level are returned\n" +
+                "SELECT * FROM ST_TRIANGLECONTOURING('input_table',10,20,30,40,'workers=8 merge=true')");
     }
 
     @Override
@@ -79,8 +106,14 @@ public class ST_TriangleContouring extends DeterministicScalarFunction {
      * @return Result Set
      */
     public static ResultSet triangleContouring(Connection connection, String tableName, Value... varArgs) throws SQLException {
+        ContouringOptions options = new ContouringOptions();
+        if (varArgs.length > 0 && varArgs[varArgs.length - 1] instanceof ValueVarchar
+                && KeyValueOptions.isKeyValue(varArgs[varArgs.length - 1].getString())) {
+            options.parse(varArgs[varArgs.length - 1].getString());
+            varArgs = Arrays.copyOf(varArgs, varArgs.length - 1);
+        }
         if (connection.getMetaData().getURL().equals(HACK_URL)) {
-            return new ExplodeResultSet(connection,tableName, Collections.singletonList(0.0)).getResultSet();
+            return new ExplodeResultSet(connection,tableName, new double[]{0.0}, options).getResultSet();
         }
         ExplodeResultSet rowSource = null;
         if(varArgs.length > 3) {
@@ -89,12 +122,12 @@ public class ST_TriangleContouring extends DeterministicScalarFunction {
                     varArgs[1] instanceof ValueVarchar &&
                     varArgs[2] instanceof ValueVarchar) {
                 // Use table columns for iso levels
-                List<Double> isoLvls = new ArrayList<Double>(varArgs.length - 3);
+                double[] isoLvls = new double[varArgs.length - 3];
                 for(int idArg = 3; idArg < varArgs.length; idArg++) {
-                    isoLvls.add(varArgs[idArg].getDouble());
+                    isoLvls[idArg - 3] = varArgs[idArg].getDouble();
                 }
                 rowSource = new ExplodeResultSet(connection,tableName,varArgs[0].getString(), varArgs[1].getString(),
-                        varArgs[2].getString(), isoLvls);
+                        varArgs[2].getString(), isoLvls, options);
             }
         }
         if(rowSource == null) {
@@ -109,11 +142,28 @@ public class ST_TriangleContouring extends DeterministicScalarFunction {
                     isoLvls.add(value.getDouble());
                 }
             }
-            rowSource = new ExplodeResultSet(connection,tableName, isoLvls);
+            rowSource = new ExplodeResultSet(connection,tableName,
+                    isoLvls.stream().mapToDouble(Double::doubleValue).toArray(), options);
         }
         return rowSource.getResultSet();
     }
 
+    /**
+     * Options given in the last argument
+     */
+    private static class ContouringOptions {
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private boolean ordered = true;
+        private boolean merge = false;
+
+        private void parse(String options) throws SQLException {
+            KeyValueOptions parsed = KeyValueOptions.parse(options, WORKERS_OPTION, ORDERED_OPTION, MERGE_OPTION);
+            workers = parsed.getPositiveInt(WORKERS_OPTION, workers);
+            ordered = parsed.getBoolean(ORDERED_OPTION, ordered);
+            merge = parsed.getBoolean(MERGE_OPTION, merge);
+        }
+    }
+
     /**
      * Explode fields only on request
      */
@@ -126,17 +176,24 @@ public class ST_TriangleContouring extends DeterministicScalarFunction {
         private String spatialFieldName;
         private Integer spatialFieldIndex;
         private int columnCount;
-        private Queue<GeneratedTriangle> generatedRows = new LinkedList<GeneratedTriangle>();
+        private Deque<Object[]> generatedRows = new ArrayDeque<Object[]>();
         private Connection connection;
         private boolean useZ;
         private String isoFieldName1 = "",isoFieldName2 = "",isoFieldName3 = "";
         /** Extract Z or Field value, depending on implementation */
         private TriMarkersFactory triFactory;
-        private List<Double> isoLvls;
+        private final double[] isoLvls;
+        private final ContouringOptions options;
         private GeometryFactory factory = new GeometryFactory();
         private TableLocation tableLocation;
+        private ExecutorService executor;
+        private ExecutorCompletionService<SplitBatch> completionService;
+        /** Submitted batches, in the table order */
+        private final Deque<Future<SplitBatch>> pendingBatches = new ArrayDeque<Future<SplitBatch>>();
+        /** Cascade of the partial unions of each iso level, a union at the depth i merges MERGE_SIZE^i batches */
+        private final Map<Short, List<List<Geometry>>> bands = new TreeMap<Short, List<List<Geometry>>>();
 
-        private ExplodeResultSet(Connection connection, String tableName, String isoField1,String isoField2,String isoField3, List<Double> isoLvls) throws SQLException {
+        private ExplodeResultSet(Connection connection, String tableName, String isoField1,String isoField2,String isoField3, double[] isoLvls, ContouringOptions options) throws SQLException {
             this.tableName = tableName;                      
             this.tableLocation=TableLocation.parse(tableName, DBUtils.getDBType(connection));
             this.spatialFieldName = "";
@@ -146,15 +203,17 @@ public class ST_TriangleContouring extends DeterministicScalarFunction {
             this.isoFieldName2 = isoField2;
             this.isoFieldName3 = isoField3;
             this.isoLvls = isoLvls;
+            this.options = options;
         }
 
-        private ExplodeResultSet(Connection connection, String tableName, List<Double> isoLvls) throws SQLException {
+        private ExplodeResultSet(Connection connection, String tableName, double[] isoLvls, ContouringOptions options) throws SQLException {
             this.tableName = tableName;            
             this.tableLocation=TableLocation.parse(tableName, DBUtils.getDBType(connection));
             this.spatialFieldName = "";
             this.connection = connection;
             useZ = true;
             this.isoLvls = isoLvls;
+            this.options = options;
         }
 
         @Override
@@ -162,30 +221,34 @@ public class ST_TriangleContouring extends DeterministicScalarFunction {
             if(firstRow) {
                 reset();
             }
-            while(generatedRows.isEmpty() && !endOfResultSet) {
-                parseRow();
+            while(generatedRows.isEmpty() && (!endOfResultSet || !pendingBatches.isEmpty())) {
+                // Keep the workers busy while the batches are read
+                while (!endOfResultSet && pendingBatches.size() < options.workers * 2) {
+                    submitBatch();
+                }
+                if (!pendingBatches.isEmpty()) {
+                    addBatch(nextBatch());
+                }
+                if (options.merge && endOfResultSet && pendingBatches.isEmpty()) {
+                    addBands();
+                }
             }
             if(generatedRows.isEmpty()) {
                 // No more rows
+                close();
                 return null;
             } else {
-                Object[] objects = new Object[columnCount+1];
-                GeneratedTriangle result = generatedRows.remove();
-                for(int i=1;i<=columnCount+1;i++) {
-                    if(i==spatialFieldIndex) {
-                        objects[i-1] = result.getTriangle();
-                    } else if(i==columnCount+1) {
-                        objects[i-1] = result.getIdIso();
-                    } else {
-                        objects[i-1] = tableQuery.getObject(i);
-                    }
-                }
-                return objects;
+                return generatedRows.poll();
             }
         }
 
         @Override
         public void close() {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+            pendingBatches.clear();
             if(tableQuery!=null) {
                 try {
                     tableQuery.close();
@@ -196,27 +259,135 @@ public class ST_TriangleContouring extends DeterministicScalarFunction {
             }
         }
 
-        private void parseRow() throws SQLException {
-            generatedRows.clear();
-            if(tableQuery.next()) {
+        /**
+         * Read the next triangles of the table and give them to a worker thread
+         */
+        private void submitBatch() throws SQLException {
+            List<Object[]> rows = new ArrayList<Object[]>(BATCH_SIZE);
+            List<TriMarkers> triangles = new ArrayList<TriMarkers>(BATCH_SIZE);
+            while (rows.size() < BATCH_SIZE) {
+                if (!tableQuery.next()) {
+                    endOfResultSet = true;
+                    break;
+                }
                 Geometry inputTriangle = (Geometry) tableQuery.getObject(spatialFieldIndex);
                 if(inputTriangle == null || inputTriangle.getNumPoints() != 4) {
                     throw new SQLException("Invalid geometry input, got " + (inputTriangle == null ? "null" : inputTriangle.toText()));
                 }
-                // Compute ISO
-                TriMarkers triangle = triFactory.getTriangle(inputTriangle.getCoordinates());
-                Map<Short, Deque<TriMarkers>> result = Contouring.processTriangle(triangle, isoLvls);
+                triangles.add(triFactory.getTriangle(inputTriangle.getCoordinates()));
+                if (!options.merge) {
+                    Object[] row = new Object[columnCount + 1];
+                    for (int i = 1; i <= columnCount; i++) {
+                        row[i - 1] = tableQuery.getObject(i);
+                    }
+                    rows.add(row);
+                } else {
+                    rows.add(null);
+                }
+            }
+            if (!rows.isEmpty()) {
+                Callable<SplitBatch> task = () -> splitBatch(rows, triangles);
+                // The completion queue is read only if the output is not ordered
+                pendingBatches.add(options.ordered ? executor.submit(task) : completionService.submit(task));
+            }
+        }
+
+        /**
+         * @return The next batch done, the first one submitted if the output is ordered
+         */
+        private SplitBatch nextBatch() throws SQLException {
+            try {
+                Future<SplitBatch> future;
+                if (options.ordered) {
+                    future = pendingBatches.poll();
+                } else {
+                    future = completionService.take();
+                    pendingBatches.remove(future);
+                }
+                return future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while splitting the triangles", ex);
+            } catch (ExecutionException ex) {
+                Throwable cause = ex.getCause();
+                if (cause instanceof SQLException) {
+                    throw (SQLException) cause;
+                }
+                throw new SQLException(cause.getLocalizedMessage(), cause);
+            }
+        }
+
+        /**
+         * Split the triangles of a batch, run by the worker threads
+         */
+        private SplitBatch splitBatch(List<Object[]> rows, List<TriMarkers> triangles) {
+            SplitBatch batch = new SplitBatch();
+            Map<Short, List<Geometry>> levels = new TreeMap<Short, List<Geometry>>();
+            for (int idRow = 0; idRow < triangles.size(); idRow++) {
+                Map<Short, Deque<TriMarkers>> result = Contouring.processTriangle(triangles.get(idRow), isoLvls);
                 for(Map.Entry<Short, Deque<TriMarkers>> isoResult : result.entrySet()) {
                     for(TriMarkers outputTriangle : isoResult.getValue()) {
                         Coordinate[] pverts = {outputTriangle.p0, outputTriangle.p1, outputTriangle.p2,
                                 outputTriangle.p0};
                         Polygon polygon = factory.createPolygon(factory.createLinearRing(pverts), null);
-                        generatedRows.add(new GeneratedTriangle(polygon, isoResult.getKey()));
+                        if (options.merge) {
+                            levels.computeIfAbsent(isoResult.getKey(), k -> new ArrayList<Geometry>()).add(polygon);
+                        } else {
+                            Object[] row = rows.get(idRow).clone();
+                            row[spatialFieldIndex - 1] = polygon;
+                            row[columnCount] = isoResult.getKey().intValue();
+                            batch.rows.add(row);
+                        }
                     }
                 }
-            } else {
-                endOfResultSet = true;
             }
+            for (Map.Entry<Short, List<Geometry>> level : levels.entrySet()) {
+                batch.levels.put(level.getKey(), OverlayNGRobust.union(level.getValue()));
+            }
+            return batch;
+        }
+
+        /**
+         * Add the rows of a batch, or keep its polygons to merge them with the next batches
+         */
+        private void addBatch(SplitBatch batch) {
+            generatedRows.addAll(batch.rows);
+            for (Map.Entry<Short, Geometry> level : batch.levels.entrySet()) {
+                List<List<Geometry>> cascade = bands.computeIfAbsent(level.getKey(),
+                        k -> new ArrayList<List<Geometry>>());
+                // As in CascadedPolygonUnion, a full depth is merged into the next one, so a polygon is merged
+                // once by depth instead of once every MERGE_SIZE batches
+                Geometry union = level.getValue();
+                for (int depth = 0; union != null; depth++) {
+                    if (depth == cascade.size()) {
+                        cascade.add(new ArrayList<Geometry>(MERGE_SIZE));
+                    }
+                    List<Geometry> partialUnions = cascade.get(depth);
+                    partialUnions.add(union);
+                    union = null;
+                    if (partialUnions.size() == MERGE_SIZE) {
+                        union = OverlayNGRobust.union(partialUnions);
+                        partialUnions.clear();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Merge the partial unions, a row is returned for each polygon of each iso level
+         */
+        private void addBands() {
+            for (Map.Entry<Short, List<List<Geometry>>> level : bands.entrySet()) {
+                List<Geometry> partialUnions = new ArrayList<Geometry>();
+                for (List<Geometry> depth : level.getValue()) {
+                    partialUnions.addAll(depth);
+                }
+                Geometry band = OverlayNGRobust.union(partialUnions);
+                for (int i = 0; i < band.getNumGeometries(); i++) {
+                    generatedRows.add(new Object[]{band.getGeometryN(i), level.getKey().intValue()});
+                }
+            }
+            bands.clear();
         }
 
         @Override
@@ -241,6 +412,9 @@ public class ST_TriangleContouring extends DeterministicScalarFunction {
             Statement st = connection.createStatement();
             tableQuery = st.executeQuery("SELECT * FROM "+tableName);
             firstRow = false;
+            endOfResultSet = false;
+            generatedRows.clear();
+            bands.clear();
             ResultSetMetaData meta = tableQuery.getMetaData();
             columnCount = meta.getColumnCount();
 
@@ -255,36 +429,36 @@ public class ST_TriangleContouring extends DeterministicScalarFunction {
             if(spatialFieldIndex == null) {
                 throw new SQLException("Geometry field "+spatialFieldName+" of table "+tableName+" not found");
             }
+            final AtomicInteger threadId = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(options.workers, runnable -> {
+                Thread thread = new Thread(runnable, "H2GIS-contouring-" + threadId.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            completionService = new ExecutorCompletionService<SplitBatch>(executor);
         }
 
         public ResultSet getResultSet() throws SQLException {
             SimpleResultSet rs = new SimpleResultSet(this);
-            // Feed with fields
-            TableUtilities.copyFields(connection, rs, TableLocation.parse(tableName, DBUtils.getDBType(connection)));
+            if (options.merge) {
+                rs.addColumn("THE_GEOM", Types.OTHER, "GEOMETRY", 0, 0);
+            } else {
+                // Feed with fields
+                TableUtilities.copyFields(connection, rs, TableLocation.parse(tableName, DBUtils.getDBType(connection)));
+            }
             rs.addColumn(ISO_FIELD_NAME, Types.INTEGER,10,0);
             return rs;
         }
     }
 
     /**
-     * Triangle to add in table
+     * Triangles of a batch, split by iso level
      */
-    private static class GeneratedTriangle {
-        private final Polygon triangle;
-        private final int idIso;
-
-        private GeneratedTriangle(Polygon triangle, int idIso) {
-            this.triangle = triangle;
-            this.idIso = idIso;
-        }
-
-        public Polygon getTriangle() {
-            return triangle;
-        }
-
-        public int getIdIso() {
-            return idIso;
-        }
+    private static class SplitBatch {
+        /** Rows of the split triangles */
+        private final List<Object[]> rows = new ArrayList<Object[]>();
+        /** Union of the split triangles of each iso level, if the triangles are merged */
+        private final Map<Short, Geometry> levels = new TreeMap<Short, Geometry>();
     }
 
     /**
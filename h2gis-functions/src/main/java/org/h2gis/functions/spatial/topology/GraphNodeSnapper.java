@@ -0,0 +1,226 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+package org.h2gis.functions.spatial.topology;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.Arrays;
+
+/**
+ * Snap the edge end points of ST_Graph to node ids, in memory.
+ *
+ * The points are given in the order of the temporary points table of ST_Graph: the start points of all the edges,
+ * then their end points. A point is a new node if no previous point is within the tolerance, a point is assigned to
+ * the node of lowest id within the tolerance. Two points are within the tolerance if their envelopes expanded by the
+ * tolerance intersect, the same rule as the {@code ST_Expand} and {@code &&} conditions of the SQL version.
+ * With a zero tolerance the points are snapped only to equal points.
+ *
+ * The points are indexed in a hash grid of cells twice as large as the tolerance, so only the neighbour cells are
+ * read. The coordinates are stored in primitive arrays.
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+class GraphNodeSnapper {
+    private static final int NO_NODE = 0;
+    private static final int EMPTY = -1;
+    private final double tolerance;
+    private final double cellSize;
+    // Indexed points, every point with a tolerance, only the nodes without tolerance
+    private double[] pointX = new double[1024];
+    private double[] pointY = new double[1024];
+    private int[] pointNode = new int[1024];
+    private int[] nextPoint = new int[1024];
+    private int pointCount = 0;
+    // Nodes coordinates, the node id is the index + 1
+    private double[] nodeX = new double[1024];
+    private double[] nodeY = new double[1024];
+    private double[] nodeZ = new double[1024];
+    private int nodeCount = 0;
+    // Open addressing hash table of the grid cells, the value is the first point of the cell
+    private long[] cellKeysX = new long[2048];
+    private long[] cellKeysY = new long[2048];
+    private int[] cellFirstPoint = new int[2048];
+    private int cellCount = 0;
+
+    /**
+     * @param tolerance Snapping tolerance, 0 to snap only the equal points
+     */
+    GraphNodeSnapper(double tolerance) {
+        this.tolerance = tolerance;
+        // Slightly larger than the maximal distance between two snapped points, so the snapped points are always
+        // in the same cell or in a neighbour cell
+        this.cellSize = tolerance * 2 * (1 + 1e-6);
+        Arrays.fill(cellFirstPoint, EMPTY);
+    }
+
+    /**
+     * @return Number of nodes
+     */
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @param nodeId Node id, from 1
+     * @return Coordinate of the node, the coordinate of the point that created it
+     */
+    Coordinate getNode(int nodeId) {
+        return new Coordinate(nodeX[nodeId - 1], nodeY[nodeId - 1], nodeZ[nodeId - 1]);
+    }
+
+    /**
+     * @param nodeId Node id, from 1
+     * @return Z of the node, NaN if the node has no Z
+     */
+    double getNodeZ(int nodeId) {
+        return nodeZ[nodeId - 1];
+    }
+
+    /**
+     * Snap the next point
+     * @param coordinate Point coordinate
+     * @return Node id of the point, 0 if the point is not a node and no node is within the tolerance
+     */
+    int snap(Coordinate coordinate) {
+        if (tolerance > 0) {
+            return snapWithTolerance(coordinate);
+        }
+        long keyX = Double.doubleToLongBits(coordinate.x);
+        long keyY = Double.doubleToLongBits(coordinate.y);
+        int slot = findCell(keyX, keyY);
+        if (cellFirstPoint[slot] != EMPTY) {
+            for (int point = cellFirstPoint[slot]; point != EMPTY; point = nextPoint[point]) {
+                int node = pointNode[point];
+                // Equal points, as for the geometry comparison the Z is also checked
+                if (Double.compare(nodeZ[node - 1], coordinate.getZ()) == 0) {
+                    return node;
+                }
+            }
+        }
+        int node = addNode(coordinate);
+        addPoint(keyX, keyY, coordinate, node);
+        return node;
+    }
+
+    private int snapWithTolerance(Coordinate coordinate) {
+        long cellX = (long) Math.floor(coordinate.x / cellSize);
+        long cellY = (long) Math.floor(coordinate.y / cellSize);
+        boolean isNode = true;
+        int snappedNode = NO_NODE;
+        for (long x = cellX - 1; x <= cellX + 1; x++) {
+            for (long y = cellY - 1; y <= cellY + 1; y++) {
+                int slot = findCell(x, y);
+                for (int point = cellFirstPoint[slot]; point != EMPTY; point = nextPoint[point]) {
+                    if (intersects(coordinate, point)) {
+                        isNode = false;
+                        int node = pointNode[point];
+                        if (node != NO_NODE && (snappedNode == NO_NODE || node < snappedNode)) {
+                            snappedNode = node;
+                        }
+                    }
+                }
+            }
+        }
+        int node = isNode ? addNode(coordinate) : NO_NODE;
+        addPoint(cellX, cellY, coordinate, node);
+        return isNode ? node : snappedNode;
+    }
+
+    /**
+     * Intersection of the envelopes expanded by the tolerance, computed as the && operator on the ST_Expand envelopes
+     */
+    private boolean intersects(Coordinate coordinate, int point) {
+        return coordinate.x - tolerance <= pointX[point] + tolerance
+                && pointX[point] - tolerance <= coordinate.x + tolerance
+                && coordinate.y - tolerance <= pointY[point] + tolerance
+                && pointY[point] - tolerance <= coordinate.y + tolerance;
+    }
+
+    private int addNode(Coordinate coordinate) {
+        if (nodeCount == nodeX.length) {
+            int capacity = nodeCount * 2;
+            nodeX = Arrays.copyOf(nodeX, capacity);
+            nodeY = Arrays.copyOf(nodeY, capacity);
+            nodeZ = Arrays.copyOf(nodeZ, capacity);
+        }
+        nodeX[nodeCount] = coordinate.x;
+        nodeY[nodeCount] = coordinate.y;
+        nodeZ[nodeCount] = coordinate.getZ();
+        return ++nodeCount;
+    }
+
+    private void addPoint(long keyX, long keyY, Coordinate coordinate, int node) {
+        if (pointCount == pointX.length) {
+            int capacity = pointCount * 2;
+            pointX = Arrays.copyOf(pointX, capacity);
+            pointY = Arrays.copyOf(pointY, capacity);
+            pointNode = Arrays.copyOf(pointNode, capacity);
+            nextPoint = Arrays.copyOf(nextPoint, capacity);
+        }
+        int slot = findCell(keyX, keyY);
+        if (cellFirstPoint[slot] == EMPTY) {
+            cellKeysX[slot] = keyX;
+            cellKeysY[slot] = keyY;
+            cellCount++;
+        }
+        pointX[pointCount] = coordinate.x;
+        pointY[pointCount] = coordinate.y;
+        pointNode[pointCount] = node;
+        nextPoint[pointCount] = cellFirstPoint[slot];
+        cellFirstPoint[slot] = pointCount;
+        pointCount++;
+        if (cellCount * 2 > cellFirstPoint.length) {
+            growCells();
+        }
+    }
+
+    /**
+     * @return The slot of the cell, or the empty slot where the cell must be inserted
+     */
+    private int findCell(long keyX, long keyY) {
+        int mask = cellFirstPoint.length - 1;
+        long hash = (keyX * 0x9E3779B97F4A7C15L) ^ (keyY * 0xC2B2AE3D27D4EB4FL);
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (cellFirstPoint[slot] != EMPTY && (cellKeysX[slot] != keyX || cellKeysY[slot] != keyY)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void growCells() {
+        long[] oldKeysX = cellKeysX;
+        long[] oldKeysY = cellKeysY;
+        int[] oldFirstPoint = cellFirstPoint;
+        int capacity = oldFirstPoint.length * 2;
+        cellKeysX = new long[capacity];
+        cellKeysY = new long[capacity];
+        cellFirstPoint = new int[capacity];
+        Arrays.fill(cellFirstPoint, EMPTY);
+        for (int i = 0; i < oldFirstPoint.length; i++) {
+            if (oldFirstPoint[i] != EMPTY) {
+                int slot = findCell(oldKeysX[i], oldKeysY[i]);
+                cellKeysX[slot] = oldKeysX[i];
+                cellKeysY[slot] = oldKeysY[i];
+                cellFirstPoint[slot] = oldFirstPoint[i];
+            }
+        }
+    }
+}
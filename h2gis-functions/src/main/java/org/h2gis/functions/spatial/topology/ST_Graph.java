@@ -26,11 +26,16 @@ import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.*;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.PrecisionModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -73,12 +78,16 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
             "snapped together. The tolerance works only in metric units.\n" +
             "\n" +
             "A boolean value may be set to true to specify that edges should be oriented by\n" +
-            "the z-value of their first and last coordinates (decreasing).\n";
+            "the z-value of their first and last coordinates (decreasing).\n" +
+            "\n" +
+            "The end points are snapped in memory with a hash grid, the input table is read\n" +
+            "twice and the nodes and edges tables are filled with batch inserts.\n";
 
     private static final Logger LOGGER = LoggerFactory.getLogger("gui." + ST_Graph.class);
     public static final String TYPE_ERROR = "Only LINESTRINGs and LINESTRING Zs " +
             "are accepted. Type code: ";
     public static final String ALREADY_RUN_ERROR = "ST_Graph has already been called on table ";
+    private static final int BATCH_SIZE = 1000;
     
     /**
      * Constructor
@@ -332,6 +341,36 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
                                       double tolerance,
                                       boolean orientBySlope,
                                       boolean deleteTables, ArrayList<String> columns) throws SQLException {
+        return createGraph(connection, inputTable, spatialFieldName, tolerance, orientBySlope, deleteTables, columns, true);
+    }
+
+    /**
+     * Create the nodes and edges tables from the input table containing
+     * LINESTRINGs in the given column and using the given
+     * tolerance, and potentially orienting edges by slope.
+     *
+     * The end points are snapped in memory, or with temporary tables and spatial
+     * self joins if inMemory is false. Both ways give the same nodes and edges,
+     * the in memory snapping needs about 200 bytes by edge.
+     *
+     * @param connection       Connection
+     * @param inputTable       Input table
+     * @param spatialFieldName Name of column containing LINESTRINGs
+     * @param tolerance        Tolerance
+     * @param orientBySlope    True if edges should be oriented by the z-value of
+     *                         their first and last coordinates (decreasing)
+     * @param deleteTables     True delete the existing tables
+     * @param columns          an array of columns to keep
+     * @param inMemory         True to snap the end points in memory
+     * @return true if both output tables were created
+     */
+    public static boolean createGraph(Connection connection,
+                                      String inputTable,
+                                      String spatialFieldName,
+                                      double tolerance,
+                                      boolean orientBySlope,
+                                      boolean deleteTables, ArrayList<String> columns,
+                                      boolean inMemory) throws SQLException {
         if (tolerance < 0) {
             throw new IllegalArgumentException("Only positive tolerances are allowed.");
         }
@@ -383,13 +422,19 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
             }
         }
         checkGeometryType(geometryMetada.getValue().geometryTypeCode);
+        String selectedColumns="";
+        if(columns!=null && !columns.isEmpty())  {
+            selectedColumns = ","+String.join(",", columns);
+
+        }
+        if (inMemory) {
+            snapInMemory(connection, tableName, nodesName, edgesName, idRowColumn, geometryMetada.getKey(),
+                    tolerance, orientBySlope, geometryMetada.getValue().SRID, geometryMetada.getValue().hasZ,
+                    columns == null ? 0 : columns.size(), selectedColumns);
+            return true;
+        }
         final Statement st = connection.createStatement();
         try {
-            String selectedColumns="";
-            if(columns!=null && !columns.isEmpty())  {
-                selectedColumns = ","+String.join(",", columns);
-
-            }
             firstFirstLastLast(st, tableName, idRowColumn, geometryMetada.getKey(), tolerance,selectedColumns);
             int srid = geometryMetada.getValue().SRID;
             boolean hasZ = geometryMetada.getValue().hasZ;
@@ -407,6 +452,129 @@ public class ST_Graph extends AbstractFunction implements ScalarFunction {
         return true;
     }
 
+    /**
+     * Create the nodes and edges tables without temporary tables. The end points are read once and snapped in
+     * memory, the input table is read a second time to copy the edges and the selected columns. The identifiers
+     * read by the first pass are checked by the second one, so a table modified in between is an error.
+     */
+    private static void snapInMemory(Connection connection,
+                                     TableLocation tableName,
+                                     TableLocation nodesName,
+                                     TableLocation edgesName,
+                                     String pkCol,
+                                     String geomCol,
+                                     double tolerance,
+                                     boolean orientBySlope,
+                                     int srid, boolean hasZ,
+                                     int columnCount, String columns) throws SQLException {
+        LOGGER.debug("Snapping the end points in memory...");
+        final String filter = " FROM " + tableName + " WHERE ST_ISEMPTY(" + geomCol + ") = FALSE ORDER BY " + pkCol;
+        GraphNodeSnapper snapper = new GraphNodeSnapper(tolerance);
+        int edgeCount = 0;
+        long[] edgeIds = new long[1024];
+        int[] startNodes = new int[1024];
+        double[] endCoordinates = new double[3 * 1024];
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + pkCol + ", " + geomCol + filter)) {
+            // The start points are snapped first, then the end points
+            while (rs.next()) {
+                Geometry geometry = (Geometry) rs.getObject(2);
+                Geometry first = geometry.getGeometryN(0);
+                Geometry last = geometry.getGeometryN(geometry.getNumGeometries() - 1);
+                Coordinate[] lastCoordinates = last.getCoordinates();
+                Coordinate end = lastCoordinates[lastCoordinates.length - 1];
+                if (edgeCount == startNodes.length) {
+                    edgeIds = Arrays.copyOf(edgeIds, edgeCount * 2);
+                    startNodes = Arrays.copyOf(startNodes, edgeCount * 2);
+                    endCoordinates = Arrays.copyOf(endCoordinates, edgeCount * 6);
+                }
+                edgeIds[edgeCount] = rs.getLong(1);
+                startNodes[edgeCount] = snapper.snap(first.getCoordinates()[0]);
+                endCoordinates[edgeCount * 3] = end.x;
+                endCoordinates[edgeCount * 3 + 1] = end.y;
+                endCoordinates[edgeCount * 3 + 2] = end.getZ();
+                edgeCount++;
+            }
+        }
+        int[] endNodes = new int[edgeCount];
+        int nullEdges = 0;
+        for (int i = 0; i < edgeCount; i++) {
+            endNodes[i] = snapper.snap(new Coordinate(endCoordinates[i * 3], endCoordinates[i * 3 + 1],
+                    endCoordinates[i * 3 + 2]));
+            if (startNodes[i] == 0 || endNodes[i] == 0) {
+                nullEdges++;
+            }
+        }
+        if (nullEdges > 0) {
+            String msg = "There " + (nullEdges == 1 ? "is one edge " : "are " + nullEdges + " edges ");
+            throw new IllegalStateException(msg + "with a null start node or end node. " +
+                    "Try using a slightly smaller tolerance.");
+        }
+        endCoordinates = null;
+        LOGGER.debug("Creating the nodes table...");
+        String pointSignature = hasZ ? "POINTZ" : "POINT";
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE " + nodesName + "(" +
+                    "NODE_ID SERIAL PRIMARY KEY, " +
+                    "THE_GEOM GEOMETRY(" + pointSignature + ", " + srid + ")" +
+                    ") ");
+        }
+        GeometryFactory factory = new GeometryFactory(new PrecisionModel(), srid);
+        try (PreparedStatement ps = connection.prepareStatement("INSERT INTO " + nodesName + " VALUES (?, ?)")) {
+            for (int nodeId = 1; nodeId <= snapper.getNodeCount(); nodeId++) {
+                ps.setInt(1, nodeId);
+                ps.setObject(2, factory.createPoint(snapper.getNode(nodeId)));
+                ps.addBatch();
+                if (nodeId % BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        LOGGER.debug("Creating the edges table...");
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE " + edgesName + " AS SELECT " + pkCol + " EDGE_ID, " +
+                    "CAST(NULL AS INTEGER) START_NODE, CAST(NULL AS INTEGER) END_NODE" + columns +
+                    " FROM " + tableName + " WITH NO DATA");
+        }
+        StringBuilder insert = new StringBuilder("INSERT INTO " + edgesName + " VALUES (?, ?, ?");
+        for (int i = 0; i < columnCount; i++) {
+            insert.append(", ?");
+        }
+        insert.append(")");
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT " + pkCol + columns + filter);
+             PreparedStatement ps = connection.prepareStatement(insert.toString())) {
+            int edge = 0;
+            while (rs.next()) {
+                if (edge == edgeCount || rs.getLong(1) != edgeIds[edge]) {
+                    throw new SQLException("The table " + tableName + " has been modified while the graph was built");
+                }
+                int startNode = startNodes[edge];
+                int endNode = endNodes[edge];
+                if (orientBySlope && snapper.getNodeZ(startNode) < snapper.getNodeZ(endNode)) {
+                    startNode = endNodes[edge];
+                    endNode = startNodes[edge];
+                }
+                ps.setObject(1, rs.getObject(1));
+                ps.setInt(2, startNode);
+                ps.setInt(3, endNode);
+                for (int i = 0; i < columnCount; i++) {
+                    ps.setObject(4 + i, rs.getObject(2 + i));
+                }
+                ps.addBatch();
+                edge++;
+                if (edge % BATCH_SIZE == 0) {
+                    ps.executeBatch();
+                }
+            }
+            if (edge != edgeCount) {
+                throw new SQLException("The table " + tableName + " has been modified while the graph was built");
+            }
+            ps.executeBatch();
+        }
+    }
+
     private static void checkGeometryType(int geomType) throws SQLException {
         if (geomType != GeometryTypeCodes.LINESTRING && geomType != GeometryTypeCodes.LINESTRINGZ) {
             throw new IllegalArgumentException(TYPE_ERROR);
@@ -62,7 +62,10 @@ public class ST_Node extends DeterministicScalarFunction{
         for (Iterator<SegmentString> segment = segStrings.iterator();  segment.hasNext();){
             SegmentString ss = segment.next();
             LineString line = geomFact.createLineString(ss.getCoordinates());
-            lines.add(line);
+            // The set compares the coordinates in order, the same substring in the other direction is also a duplicate
+            if (!lines.contains(line.reverse())) {
+                lines.add(line);
+            }
         }
         return geomFact.createMultiLineString(lines.toArray(lines.toArray(new LineString[0])));
 
@@ -0,0 +1,492 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.spatial.topology;
+
+import org.h2.tools.SimpleResultSet;
+import org.h2.tools.SimpleRowSource;
+import org.h2gis.api.AbstractFunction;
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.GeometryTableUtilities;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.Tuple;
+import org.h2gis.utilities.dbtypes.DBUtils;
+import org.h2gis.utilities.jts_utils.RobustLineIntersector3D;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.util.LinearComponentExtracter;
+import org.locationtech.jts.noding.IntersectionAdder;
+import org.locationtech.jts.noding.MCIndexNoder;
+import org.locationtech.jts.noding.NodedSegmentString;
+import org.locationtech.jts.noding.SegmentIntersector;
+import org.locationtech.jts.noding.SegmentNode;
+import org.locationtech.jts.noding.SegmentString;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Node all the lines of a table, without merging them into a single geometry.
+ *
+ * The extent of the table is cut into square tiles. The lines of a tile are read with the {@code &&} operator and
+ * noded together. A pair of intersecting segments is noded by the tile that contains the lower left corner of the
+ * intersection of the segment envelopes. This corner depends only on the input coordinates, so every pair is noded
+ * by exactly one tile, even if the intersection is on a tile border. A line is split when all the tiles crossed by
+ * its envelope have been processed. The tiles are read by blocks and the tiles of a block are noded in parallel.
+ *
+ * Without a spatial index on the geometry column, each {@code &&} query would scan the whole table. The table is
+ * then read once and its lines are dispatched in the tiles crossed by their envelope, all the lines are kept in
+ * memory until their last tile is read.
+ *
+ * @author Erwan Bocher, CNRS
+ * @author Nicolas Fortin, Univ Gustave Eiffel
+ */
+public class ST_NodeTable extends AbstractFunction implements ScalarFunction {
+
+    /**
+     * Default number of lines in a tile, used to compute the tile size
+     */
+    private static final int LINES_BY_TILE = 10000;
+
+    public ST_NodeTable() {
+        addProperty(PROP_REMARKS, "Add nodes on the lines of a table for each intersection.\n"
+                + "ST_NodeTable('tableName' [, tileSize])\n"
+                + "tableName = Table of lines with an integer primary key, the first geometry column is noded\n"
+                + "tileSize = Side of the square tiles noded in parallel, by default the tiles contain about "
+                + LINES_BY_TILE + " lines\n"
+                + "Return a LINESTRING for each noded part of a line with the primary key value of the line.\n"
+                + "The overlapping parts of two lines are returned for both lines.");
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "execute";
+    }
+
+    /**
+     * Node the lines of a table
+     *
+     * @param connection database
+     * @param tableName  table of lines
+     * @return the noded lines with the primary key of their source line
+     */
+    public static ResultSet execute(Connection connection, String tableName) throws SQLException {
+        return execute(connection, tableName, -1);
+    }
+
+    /**
+     * Node the lines of a table
+     *
+     * @param connection database
+     * @param tableName  table of lines
+     * @param tileSize   side of the tiles, the default size is used if negative
+     * @return the noded lines with the primary key of their source line
+     */
+    public static ResultSet execute(Connection connection, String tableName, double tileSize) throws SQLException {
+        if (tileSize == 0) {
+            throw new IllegalArgumentException("The tile size must be greater than 0");
+        }
+        TableLocation table = TableLocation.parse(tableName, DBUtils.getDBType(connection));
+        Tuple<String, Integer> pkIndex = JDBCUtilities.getIntegerPrimaryKeyNameAndIndex(connection, table);
+        String pkColumn = pkIndex == null ? JDBCUtilities.getFirstAutoIncrementColumn(connection, table)
+                : pkIndex.first();
+        if (pkColumn == null) {
+            throw new SQLException("Table " + table.getTable()
+                    + " must contain a single integer primary key or an autoincremented column.");
+        }
+        String geometryColumn = GeometryTableUtilities.getFirstGeometryColumnNameAndIndex(connection, table).first();
+        SimpleResultSet rs = new SimpleResultSet(new NodeRowSource(connection, table, pkColumn, geometryColumn,
+                tileSize));
+        rs.addColumn("THE_GEOM", Types.OTHER, "GEOMETRY", 0, 0);
+        rs.addColumn(pkColumn, Types.BIGINT, 19, 0);
+        return rs;
+    }
+
+    /**
+     * Node the tiles by blocks and return the lines once they are split
+     */
+    private static final class NodeRowSource implements SimpleRowSource {
+        private final Connection connection;
+        private final TableLocation table;
+        private final String pkColumn;
+        private final String geometryColumn;
+        private final double requestedTileSize;
+        private final ArrayDeque<Object[]> nodedLines = new ArrayDeque<>();
+        private final Map<Long, PendingLine> pendingLines = new HashMap<>();
+        private PreparedStatement tileStatement;
+        // Lines of the table read in a single scan, when the geometry column has no spatial index
+        private Map<Integer, List<Integer>> tileLines;
+        private List<Long> scannedIds;
+        private List<Geometry> scannedGeometries;
+        private GeometryFactory factory;
+        private double minX;
+        private double minY;
+        private double tileSize;
+        private int columns;
+        private int rows;
+        private int tileCount;
+        private int nextTile;
+
+        private NodeRowSource(Connection connection, TableLocation table, String pkColumn, String geometryColumn,
+                              double tileSize) {
+            this.connection = connection;
+            this.table = table;
+            this.pkColumn = pkColumn;
+            this.geometryColumn = geometryColumn;
+            this.requestedTileSize = tileSize;
+        }
+
+        @Override
+        public Object[] readRow() throws SQLException {
+            if (tileStatement == null) {
+                open();
+            }
+            while (nodedLines.isEmpty() && nextTile < tileCount) {
+                readBlock();
+            }
+            if (nodedLines.isEmpty()) {
+                close();
+                return null;
+            }
+            return nodedLines.poll();
+        }
+
+        /**
+         * Compute the tile grid from the table extent
+         */
+        private void open() throws SQLException {
+            Geometry extent = GeometryTableUtilities.getEnvelope(connection, table, geometryColumn);
+            String geometry = TableLocation.quoteIdentifier(geometryColumn);
+            tileStatement = connection.prepareStatement("SELECT " + TableLocation.quoteIdentifier(pkColumn) + ", "
+                    + geometry + " FROM " + table + " WHERE " + geometry + " && ?");
+            if (extent == null || extent.isEmpty()) {
+                tileCount = 0;
+                return;
+            }
+            factory = extent.getFactory();
+            Envelope envelope = extent.getEnvelopeInternal();
+            minX = envelope.getMinX();
+            minY = envelope.getMinY();
+            tileSize = requestedTileSize;
+            if (tileSize < 0) {
+                int tiles = Math.max(1, JDBCUtilities.getRowCount(connection, table) / LINES_BY_TILE);
+                tileSize = Math.max(envelope.getWidth(), envelope.getHeight()) / Math.ceil(Math.sqrt(tiles));
+            }
+            if (!(tileSize > 0)) {
+                // The extent is a point
+                tileSize = 1;
+            }
+            columns = Math.max(1, (int) Math.ceil(envelope.getWidth() / tileSize));
+            rows = Math.max(1, (int) Math.ceil(envelope.getHeight() / tileSize));
+            tileCount = columns * rows;
+            nextTile = 0;
+            if (!JDBCUtilities.isSpatialIndexed(connection, table, geometryColumn)) {
+                scanTable(geometry);
+            }
+        }
+
+        /**
+         * Read the table once and keep the lines of each tile
+         */
+        private void scanTable(String geometry) throws SQLException {
+            tileLines = new HashMap<>();
+            scannedIds = new ArrayList<>();
+            scannedGeometries = new ArrayList<>();
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT " + TableLocation.quoteIdentifier(pkColumn) + ", "
+                         + geometry + " FROM " + table)) {
+                while (rs.next()) {
+                    Geometry line = (Geometry) rs.getObject(2);
+                    if (line == null || line.isEmpty()) {
+                        continue;
+                    }
+                    int lineIndex = scannedIds.size();
+                    scannedIds.add(rs.getLong(1));
+                    scannedGeometries.add(line);
+                    Envelope lineEnvelope = line.getEnvelopeInternal();
+                    for (int tileRow = row(lineEnvelope.getMinY()); tileRow <= row(lineEnvelope.getMaxY()); tileRow++) {
+                        for (int tileColumn = column(lineEnvelope.getMinX());
+                             tileColumn <= column(lineEnvelope.getMaxX()); tileColumn++) {
+                            tileLines.computeIfAbsent(tileRow * columns + tileColumn, k -> new ArrayList<>())
+                                    .add(lineIndex);
+                        }
+                    }
+                }
+            }
+        }
+
+        private int column(double x) {
+            return Math.min(columns - 1, Math.max(0, (int) Math.floor((x - minX) / tileSize)));
+        }
+
+        private int row(double y) {
+            return Math.min(rows - 1, Math.max(0, (int) Math.floor((y - minY) / tileSize)));
+        }
+
+        /**
+         * Read and node the next tiles, then split the lines whose all the tiles have been processed
+         */
+        private void readBlock() throws SQLException {
+            int blockSize = Math.min(tileCount - nextTile, Runtime.getRuntime().availableProcessors() * 2);
+            Tile[] block = new Tile[blockSize];
+            for (int i = 0; i < blockSize; i++) {
+                block[i] = readTile(nextTile++);
+            }
+            IntStream.range(0, blockSize).parallel().forEach(i -> block[i].node());
+            for (Tile tile : block) {
+                PendingLine[] lines = new PendingLine[tile.ids.size()];
+                for (int i = 0; i < lines.length; i++) {
+                    lines[i] = pendingLines.get(tile.ids.get(i));
+                    if (lines[i] == null) {
+                        lines[i] = new PendingLine(tile.geometries.get(i), tile.tileCounts[i]);
+                        pendingLines.put(tile.ids.get(i), lines[i]);
+                    }
+                }
+                for (int i = 0; i < tile.nodes.size(); i++) {
+                    int[] nodePart = tile.nodeParts.get(i);
+                    SegmentNode node = tile.nodes.get(i);
+                    lines[nodePart[0]].parts[nodePart[1]].addIntersection(node.coord, node.segmentIndex);
+                }
+                for (int i = 0; i < lines.length; i++) {
+                    if (--lines[i].remainingTiles == 0) {
+                        Long id = tile.ids.get(i);
+                        pendingLines.remove(id);
+                        lines[i].split(id, nodedLines);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Read the lines whose envelope is in the tile
+         */
+        private Tile readTile(int tileIndex) throws SQLException {
+            int tileColumn = tileIndex % columns;
+            int tileRow = tileIndex / columns;
+            Tile tile = new Tile(tileColumn, tileRow);
+            if (tileLines != null) {
+                return readScannedTile(tile, tileIndex);
+            }
+            // The query envelope is slightly larger, the tiles of the lines are computed the same way as the node tiles
+            double margin = tileSize * 1e-6;
+            Envelope envelope = new Envelope(minX + tileColumn * tileSize - margin,
+                    minX + (tileColumn + 1) * tileSize + margin, minY + tileRow * tileSize - margin,
+                    minY + (tileRow + 1) * tileSize + margin);
+            tileStatement.setObject(1, factory.toGeometry(envelope));
+            List<Integer> tileCounts = new ArrayList<>();
+            try (ResultSet rs = tileStatement.executeQuery()) {
+                while (rs.next()) {
+                    Geometry geometry = (Geometry) rs.getObject(2);
+                    if (geometry == null || geometry.isEmpty()) {
+                        continue;
+                    }
+                    Envelope lineEnvelope = geometry.getEnvelopeInternal();
+                    int firstColumn = column(lineEnvelope.getMinX());
+                    int lastColumn = column(lineEnvelope.getMaxX());
+                    int firstRow = row(lineEnvelope.getMinY());
+                    int lastRow = row(lineEnvelope.getMaxY());
+                    if (tileColumn >= firstColumn && tileColumn <= lastColumn && tileRow >= firstRow
+                            && tileRow <= lastRow) {
+                        tile.ids.add(rs.getLong(1));
+                        tile.geometries.add(geometry);
+                        tileCounts.add((lastColumn - firstColumn + 1) * (lastRow - firstRow + 1));
+                    }
+                }
+            }
+            tile.tileCounts = tileCounts.stream().mapToInt(Integer::intValue).toArray();
+            return tile;
+        }
+
+        /**
+         * Take the lines of the tile from the table scan
+         */
+        private Tile readScannedTile(Tile tile, int tileIndex) {
+            List<Integer> lines = tileLines.remove(tileIndex);
+            if (lines == null) {
+                tile.tileCounts = new int[0];
+                return tile;
+            }
+            tile.tileCounts = new int[lines.size()];
+            for (int i = 0; i < lines.size(); i++) {
+                int lineIndex = lines.get(i);
+                Geometry geometry = scannedGeometries.get(lineIndex);
+                Envelope lineEnvelope = geometry.getEnvelopeInternal();
+                int firstColumn = column(lineEnvelope.getMinX());
+                int lastColumn = column(lineEnvelope.getMaxX());
+                int firstRow = row(lineEnvelope.getMinY());
+                int lastRow = row(lineEnvelope.getMaxY());
+                tile.ids.add(scannedIds.get(lineIndex));
+                tile.geometries.add(geometry);
+                tile.tileCounts[i] = (lastColumn - firstColumn + 1) * (lastRow - firstRow + 1);
+                if (tileIndex == lastRow * columns + lastColumn) {
+                    // The last tile of the line, the pending line keeps the coordinates
+                    scannedGeometries.set(lineIndex, null);
+                }
+            }
+            return tile;
+        }
+
+        @Override
+        public void close() {
+            try {
+                if (tileStatement != null) {
+                    tileStatement.close();
+                }
+            } catch (SQLException ignored) {
+            }
+            nodedLines.clear();
+            pendingLines.clear();
+            tileLines = null;
+            scannedIds = null;
+            scannedGeometries = null;
+        }
+
+        @Override
+        public void reset() throws SQLException {
+            close();
+            tileStatement = null;
+        }
+
+        /**
+         * Lines of a tile and the intersection nodes located in the tile
+         */
+        private final class Tile {
+            private final int tileColumn;
+            private final int tileRow;
+            private final List<Long> ids = new ArrayList<>();
+            private final List<Geometry> geometries = new ArrayList<>();
+            private final List<SegmentNode> nodes = new ArrayList<>();
+            // Line index in the tile and part index in the line of each node
+            private final List<int[]> nodeParts = new ArrayList<>();
+            private int[] tileCounts;
+
+            private Tile(int tileColumn, int tileRow) {
+                this.tileColumn = tileColumn;
+                this.tileRow = tileRow;
+            }
+
+            private void node() {
+                List<NodedSegmentString> segmentStrings = new ArrayList<>();
+                for (int i = 0; i < geometries.size(); i++) {
+                    List<LineString> parts = getParts(geometries.get(i));
+                    for (int part = 0; part < parts.size(); part++) {
+                        segmentStrings.add(new NodedSegmentString(parts.get(part).getCoordinates(),
+                                new int[]{i, part}));
+                    }
+                }
+                IntersectionAdder intersectionAdder = new IntersectionAdder(new RobustLineIntersector3D());
+                MCIndexNoder noder = new MCIndexNoder(new SegmentIntersector() {
+                    @Override
+                    public void processIntersections(SegmentString e0, int segIndex0, SegmentString e1,
+                                                     int segIndex1) {
+                        if (isOwner(e0.getCoordinates(), segIndex0, e1.getCoordinates(), segIndex1)) {
+                            intersectionAdder.processIntersections(e0, segIndex0, e1, segIndex1);
+                        }
+                    }
+
+                    @Override
+                    public boolean isDone() {
+                        return false;
+                    }
+                });
+                noder.computeNodes(segmentStrings);
+                for (NodedSegmentString segmentString : segmentStrings) {
+                    Iterator<?> it = segmentString.getNodeList().iterator();
+                    while (it.hasNext()) {
+                        nodes.add((SegmentNode) it.next());
+                        nodeParts.add((int[]) segmentString.getData());
+                    }
+                }
+            }
+
+            /**
+             * @return True if the tile contains the lower left corner of the intersection of the segment envelopes.
+             * The corner is within the envelopes of both lines, so the owner tile reads the two lines.
+             */
+            private boolean isOwner(Coordinate[] line0, int segIndex0, Coordinate[] line1, int segIndex1) {
+                Coordinate p0 = line0[segIndex0];
+                Coordinate p1 = line0[segIndex0 + 1];
+                Coordinate q0 = line1[segIndex1];
+                Coordinate q1 = line1[segIndex1 + 1];
+                double x = Math.max(Math.min(p0.x, p1.x), Math.min(q0.x, q1.x));
+                double y = Math.max(Math.min(p0.y, p1.y), Math.min(q0.y, q1.y));
+                return column(x) == tileColumn && row(y) == tileRow;
+            }
+        }
+    }
+
+    /**
+     * @return The linear components of a geometry with at least two coordinates
+     */
+    private static List<LineString> getParts(Geometry geometry) {
+        List<LineString> parts = new ArrayList<>();
+        for (Object line : LinearComponentExtracter.getLines(geometry)) {
+            if (((LineString) line).getNumPoints() > 1) {
+                parts.add((LineString) line);
+            }
+        }
+        return parts;
+    }
+
+    /**
+     * Line waiting for the nodes of its other tiles
+     */
+    private static final class PendingLine {
+        private final GeometryFactory factory;
+        private final NodedSegmentString[] parts;
+        private int remainingTiles;
+
+        private PendingLine(Geometry geometry, int tileCount) {
+            factory = geometry.getFactory();
+            List<LineString> lines = getParts(geometry);
+            parts = new NodedSegmentString[lines.size()];
+            for (int i = 0; i < parts.length; i++) {
+                parts[i] = new NodedSegmentString(lines.get(i).getCoordinates(), null);
+            }
+            remainingTiles = tileCount;
+        }
+
+        /**
+         * Split the line at its nodes
+         */
+        private void split(Long id, ArrayDeque<Object[]> rows) {
+            for (Object substring : NodedSegmentString.getNodedSubstrings(Arrays.asList(parts))) {
+                Coordinate[] coordinates = ((NodedSegmentString) substring).getCoordinates();
+                rows.add(new Object[]{factory.createLineString(coordinates), id});
+            }
+        }
+    }
+}
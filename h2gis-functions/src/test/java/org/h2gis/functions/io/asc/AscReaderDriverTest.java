@@ -36,6 +36,7 @@ import org.locationtech.jts.geom.GeometryFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -453,4 +454,74 @@ public class AscReaderDriverTest {
         }
         st.execute("DROP TABLE PRECIP30MIN_ASC IF EXISTS");        
     }
+
+    @Test
+    public void testReadSeveralBatches() throws IOException, SQLException {
+        // The grid is greater than one batch of the bulk loader
+        File file = new File("target/several_batches.asc");
+        StringBuilder sb = new StringBuilder("ncols 150\nnrows 150\nxllcorner 0\nyllcorner 0\ncellsize 1\nNODATA_value -9999\n");
+        for (int i = 0; i < 150; i++) {
+            for (int j = 0; j < 150; j++) {
+                sb.append(j == 0 ? "-9999" : (i * 150 + j) / 10.0).append(j < 149 ? " " : "\r\n");
+            }
+        }
+        Files.write(file.toPath(), sb.toString().getBytes());
+        Statement st = connection.createStatement();
+        st.execute("DROP TABLE IF EXISTS SEVERAL_BATCHES");
+        AscReaderDriver reader = new AscReaderDriver();
+        reader.read(connection, file, new EmptyProgressVisitor(), "SEVERAL_BATCHES", 2154);
+        try (ResultSet rs = st.executeQuery("SELECT COUNT(*), MAX(PK), SUM(Z), MIN(Z) FROM SEVERAL_BATCHES")) {
+            assertTrue(rs.next());
+            assertEquals(150 * 149, rs.getInt(1));
+            assertEquals(150 * 150 - 1, rs.getInt(2));
+            double sum = 0;
+            for (int i = 0; i < 150; i++) {
+                for (int j = 1; j < 150; j++) {
+                    sum += (i * 150 + j) / 10.0;
+                }
+            }
+            assertEquals(sum, rs.getDouble(3), 1e-6);
+            assertEquals(0.1, rs.getDouble(4), 1e-12);
+        }
+        try (ResultSet rs = st.executeQuery("SELECT THE_GEOM, Z FROM SEVERAL_BATCHES WHERE PK = 151")) {
+            assertTrue(rs.next());
+            GeometryAsserts.assertGeometryEquals("SRID=2154;POINT Z (1.5 148.5 15.1)", (Geometry) rs.getObject("THE_GEOM"));
+        }
+        st.execute("DROP TABLE IF EXISTS SEVERAL_BATCHES");
+    }
+
+    @Test
+    public void testFileTableWindow() throws IOException, SQLException {
+        // 4 columns, 3 rows, the lower left corner is (10, 20)
+        File file = new File("target/file_table_window.asc");
+        Files.write(file.toPath(), ("ncols 4\nnrows 3\nxllcorner 10\nyllcorner 20\ncellsize 2\nNODATA_value -9999\n" +
+                "1 2 3 4\n5 6 -9999\n8 9 10 11 12\n").getBytes());
+        Statement st = connection.createStatement();
+        st.execute("DROP TABLE IF EXISTS ASC_LINKED");
+        st.execute("CALL FILE_TABLE('" + file.getAbsolutePath() + "', 'ASC_LINKED')");
+        try (ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(Z), MAX(CELL_ROW), MAX(CELL_COL) FROM ASC_LINKED WHERE Z <> -9999")) {
+            assertTrue(rs.next());
+            assertEquals(11, rs.getInt(1));
+            assertEquals(71, rs.getDouble(2), 1e-12);
+            assertEquals(2, rs.getInt(3));
+            assertEquals(3, rs.getInt(4));
+        }
+        try (ResultSet rs = st.executeQuery("SELECT THE_GEOM, Z FROM ASC_LINKED WHERE PK = 6")) {
+            assertTrue(rs.next());
+            GeometryAsserts.assertGeometryEquals("POINT Z (13 23 6)", (Geometry) rs.getObject("THE_GEOM"));
+            assertEquals(6, rs.getDouble("Z"));
+        }
+        String envelope = "ST_MakeEnvelope(12.5, 21, 15, 23.5)";
+        try (ResultSet rs = st.executeQuery("EXPLAIN SELECT Z FROM ASC_LINKED WHERE THE_GEOM && " + envelope)) {
+            assertTrue(rs.next());
+            assertTrue(rs.getString(1).contains("SPATIAL_INDEX"), rs.getString(1));
+        }
+        try (ResultSet rs = st.executeQuery("SELECT SUM(Z), COUNT(*) FROM ASC_LINKED WHERE THE_GEOM && " + envelope)) {
+            assertTrue(rs.next());
+            // Cell centers (13 23), (15 23), (13 21) and (15 21)
+            assertEquals(6 - 9999 + 10 + 11, rs.getDouble(1), 1e-12);
+            assertEquals(4, rs.getInt(2));
+        }
+        st.execute("DROP TABLE ASC_LINKED");
+    }
 }
@@ -91,6 +91,21 @@ public class DBFImportExportTest {
         assertEquals("second area", dbfDriver.getField(1,2).getString());
     }
 
+    @Test
+    public void testParallelImport() throws SQLException {
+        Statement st = connection.createStatement();
+        final String path = SHPEngineTest.class.getResource("waternetwork.dbf").getPath();
+        st.execute("CALL DBFRead('" + path + "', 'WATERNETWORK_SEQ', true)");
+        st.execute("CALL DBFRead('" + path + "', 'WATERNETWORK_PAR', 'workers=4', true)");
+        ResultSet rs = st.executeQuery("SELECT (SELECT COUNT(*) FROM WATERNETWORK_SEQ), (SELECT COUNT(*) FROM " +
+                "(SELECT * FROM WATERNETWORK_SEQ EXCEPT SELECT * FROM WATERNETWORK_PAR))");
+        assertTrue(rs.next());
+        assertTrue(rs.getInt(1) > 100);
+        assertEquals(0, rs.getInt(2));
+        rs.close();
+        st.execute("DROP TABLE WATERNETWORK_SEQ, WATERNETWORK_PAR");
+    }
+
     @Test
     public void importTableTestGeomEnd() throws SQLException, IOException {
         Statement st = connection.createStatement();
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -35,6 +36,7 @@ import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertIterableEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class FGBImportExportTest {
@@ -249,6 +251,31 @@ public class FGBImportExportTest {
     }
 
 
+    @Test
+    public void testFGBFileTableSpatialIndex() throws Exception {
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS COUNTRIES_LINKED");
+            stat.execute("CALL FILE_TABLE('" + FGBImportExportTest.class.getResource("countries_gdal.fgb") +
+                    "', 'COUNTRIES_LINKED');");
+            String envelope = "ST_MakeEnvelope(115.95, 5.17, 125.031, 11.88)";
+            ResultSet rs = stat.executeQuery("EXPLAIN SELECT ID FROM COUNTRIES_LINKED WHERE THE_GEOM && " + envelope);
+            assertTrue(rs.next());
+            assertTrue(rs.getString(1).contains("SPATIAL_INDEX"), rs.getString(1));
+            List<String> ids = new ArrayList<>();
+            rs = stat.executeQuery("SELECT ID FROM COUNTRIES_LINKED WHERE THE_GEOM && " + envelope + " ORDER BY ID");
+            while (rs.next()) {
+                ids.add(rs.getString(1));
+            }
+            assertIterableEquals(Arrays.asList("IDN", "MYS", "PHL"), ids);
+            // Primary key returned by the index must be the same as the one returned by a table scan
+            rs = stat.executeQuery("SELECT COUNT(*) FROM COUNTRIES_LINKED A, COUNTRIES_LINKED B " +
+                    "WHERE A.THE_GEOM && " + envelope + " AND A.PK = B.PK AND A.ID = B.ID");
+            assertTrue(rs.next());
+            assertEquals(3, rs.getInt(1));
+            stat.execute("DROP TABLE COUNTRIES_LINKED");
+        }
+    }
+
     @Test
     public void testReadWriteSpatialIndex(@TempDir File temporaryDirectory) throws Exception {
         File tempOutputFile = new File(temporaryDirectory, "countries_exported.fgb");
@@ -547,4 +574,46 @@ public class FGBImportExportTest {
             assertFalse(rs.next());
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testWriteSpatialSort(@TempDir File temporaryDirectory) throws Exception {
+        File file = new File(temporaryDirectory, "grid.fgb");
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS GRID, GRID_LINKED");
+            // 32x32 points written row by row
+            stat.execute("CREATE TABLE GRID AS SELECT X::int ID, ST_MakePoint(MOD(X, 32), X / 32) THE_GEOM " +
+                    "FROM SYSTEM_RANGE(0, 1023)");
+            // A small memory budget splits the sort in several temporary files
+            stat.execute("CALL FGBWrite('" + file + "', 'GRID', true, 'createIndex=true spatialSort=true sortMemory=4096');");
+            stat.execute("CALL FILE_TABLE('" + file + "', 'GRID_LINKED');");
+            List<Geometry> points = new ArrayList<>();
+            long idSum = 0;
+            try (ResultSet rs = stat.executeQuery("SELECT * FROM GRID_LINKED")) {
+                while (rs.next()) {
+                    idSum += rs.getInt("ID");
+                    points.add((Geometry) rs.getObject("THE_GEOM"));
+                }
+            }
+            assertEquals(1024, points.size());
+            assertEquals(1023 * 1024 / 2, idSum);
+            // The features close on the Hilbert curve are close in space, the row by row order jumps at each row
+            double pathLength = 0;
+            for (int i = 1; i < points.size(); i++) {
+                pathLength += points.get(i).distance(points.get(i - 1));
+            }
+            assertTrue(pathLength < 1300, "Path length " + pathLength);
+            try (ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM GRID_LINKED " +
+                    "WHERE THE_GEOM && ST_MakeEnvelope(3.5, 3.5, 7.5, 5.5)")) {
+                assertTrue(rs.next());
+                assertEquals(8, rs.getInt(1));
+            }
+            assertThrows(SQLException.class, () ->
+                    stat.execute("CALL FGBWrite('" + file + "', 'GRID', true, 'spatialSort=true unknown=1');"));
+            assertThrows(SQLException.class, () ->
+                    stat.execute("CALL FGBWrite('" + file + "', 'GRID', true, 'nodeSize=1');"));
+            assertThrows(SQLException.class, () ->
+                    stat.execute("CALL FGBWrite('" + file + "', 'GRID', true, 'sortMemory=x');"));
+            stat.execute("DROP TABLE IF EXISTS GRID, GRID_LINKED");
+        }
+    }
+}
@@ -20,6 +20,7 @@
 
 package org.h2gis.functions.io.geojson;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import org.h2.jdbc.JdbcSQLDataException;
 import org.h2.jdbc.JdbcSQLException;
 import org.h2.util.StringUtils;
@@ -28,6 +29,7 @@ import org.h2gis.api.EmptyProgressVisitor;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.h2gis.functions.factory.H2GISFunctions;
 import org.h2gis.postgis_jts.PostGISDBFactory;
+import org.h2gis.utilities.dbtypes.DBTypes;
 import org.junit.jupiter.api.*;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
@@ -37,6 +39,7 @@ import org.locationtech.jts.io.WKTReader;
 import java.io.File;
 import java.io.IOException;
 import java.net.ConnectException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.sql.*;
 import java.util.Properties;
@@ -1489,4 +1492,222 @@ public class GeojsonImportExportTest {
             stat.execute("DROP TABLE IF EXISTS TABLE_POINTS_READ");
         }
     }
+
+    @Test
+    public void testReadSinglePassWidening() throws Exception {
+        // The properties and the geometry type change after the features used to create the table
+        File file = new File("target/single_pass_widening.geojson");
+        StringBuilder sb = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+        for (int i = 0; i < 1500; i++) {
+            if (i > 0) {
+                sb.append(",");
+            }
+            sb.append("{\"type\":\"Feature\",\"geometry\":");
+            if (i < 1200) {
+                sb.append("{\"type\":\"Point\",\"coordinates\":[").append(i).append(",1]}");
+                sb.append(",\"properties\":{\"a\":").append(i).append(",\"c\":null}}");
+            } else {
+                sb.append("{\"type\":\"LineString\",\"coordinates\":[[").append(i).append(",1,2],[0,0,3]]}");
+                sb.append(",\"properties\":{\"a\":").append(i).append(".5,\"b\":\"v").append(i)
+                        .append("\",\"c\":").append(i).append("}}");
+            }
+        }
+        sb.append("]}");
+        Files.write(file.toPath(), sb.toString().getBytes());
+        try (Statement stat = connection.createStatement()) {
+            new GeoJsonReaderDriver(connection, file, null, true).read(new EmptyProgressVisitor(), "SINGLE_PASS");
+            GeoJsonReaderDriver twoPass = new GeoJsonReaderDriver(connection, file, null, true);
+            twoPass.setSinglePass(false);
+            twoPass.read(new EmptyProgressVisitor(), "TWO_PASS");
+            ResultSet res = stat.executeQuery("SELECT DATA_TYPE, GEOMETRY_TYPE FROM INFORMATION_SCHEMA.COLUMNS " +
+                    "WHERE TABLE_NAME = 'SINGLE_PASS' ORDER BY ORDINAL_POSITION");
+            assertTrue(res.next());
+            assertEquals("GEOMETRY", res.getString(1));
+            assertNull(res.getString(2));
+            assertTrue(res.next());
+            assertEquals("DOUBLE PRECISION", res.getString(1));
+            assertTrue(res.next());
+            assertEquals("BIGINT", res.getString(1));
+            assertTrue(res.next());
+            assertEquals("CHARACTER VARYING", res.getString(1));
+            assertFalse(res.next());
+            res.close();
+            res = stat.executeQuery("SELECT COUNT(*), COUNT(s.C), SUM(ST_NPoints(s.THE_GEOM)), " +
+                    "COUNT(CASE WHEN s.B IS NOT DISTINCT FROM t.B AND s.C IS NOT DISTINCT FROM t.C " +
+                    "AND ST_XMin(s.THE_GEOM) = ST_XMin(t.THE_GEOM) THEN 1 END), " +
+                    "COUNT(CASE WHEN ST_Z(ST_StartPoint(s.THE_GEOM)) = 2 THEN 1 END) " +
+                    "FROM SINGLE_PASS s, TWO_PASS t WHERE s.A = t.A");
+            assertTrue(res.next());
+            assertEquals(1500, res.getInt(1));
+            assertEquals(300, res.getInt(2));
+            assertEquals(1800, res.getInt(3));
+            assertEquals(1500, res.getInt(4));
+            assertEquals(300, res.getInt(5));
+            res.close();
+            stat.execute("DROP TABLE IF EXISTS SINGLE_PASS, TWO_PASS");
+        }
+    }
+
+    @Test
+    public void testWriteReadGeoJsonSeq() throws Exception {
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS TABLE_SEQ, TABLE_SEQ_L, TABLE_SEQ_S");
+            stat.execute("CREATE TABLE TABLE_SEQ(THE_GEOM GEOMETRY(GEOMETRY), ID INTEGER, NAME VARCHAR, RATIO DOUBLE PRECISION)");
+            stat.execute("INSERT INTO TABLE_SEQ SELECT CASE WHEN X % 2 = 0 THEN ST_MakePoint(X, X, X) " +
+                    "ELSE 'LINESTRING Z(0 0 1, 1 1 2)'::GEOMETRY END, X, CASE WHEN X % 3 = 0 THEN NULL ELSE 'n' || X END, " +
+                    "X / 10.0 FROM SYSTEM_RANGE(1, 2500)");
+            stat.execute("CALL GeoJsonWrite('target/table_seq.geojsonl', 'TABLE_SEQ', true)");
+            stat.execute("CALL GeoJsonWrite('target/table_seq.geojsons', '(SELECT * FROM TABLE_SEQ)', true)");
+            byte[] lines = Files.readAllBytes(new File("target/table_seq.geojsons").toPath());
+            assertEquals(0x1E, lines[0]);
+            assertEquals('\n', lines[lines.length - 1]);
+            stat.execute("CALL GeoJsonRead('target/table_seq.geojsonl', 'TABLE_SEQ_L', true)");
+            stat.execute("CALL GeoJsonRead('target/table_seq.geojsons', 'TABLE_SEQ_S', true)");
+            for (String table : new String[]{"TABLE_SEQ_L", "TABLE_SEQ_S"}) {
+                ResultSet res = stat.executeQuery("SELECT COUNT(*), COUNT(CASE WHEN ST_Equals(ST_SetSRID(s.THE_GEOM, 4326), t.THE_GEOM) " +
+                        "AND ST_ZMax(s.THE_GEOM) = ST_ZMax(t.THE_GEOM) " +
+                        "AND s.NAME IS NOT DISTINCT FROM t.NAME AND s.RATIO = t.RATIO THEN 1 END) " +
+                        "FROM TABLE_SEQ s, " + table + " t WHERE s.ID = t.ID");
+                assertTrue(res.next());
+                assertEquals(2500, res.getInt(1));
+                assertEquals(2500, res.getInt(2));
+                res.close();
+            }
+            stat.execute("DROP TABLE IF EXISTS TABLE_SEQ, TABLE_SEQ_L, TABLE_SEQ_S");
+        }
+    }
+
+    @Test
+    public void testWriteGeoJsonSeqSRID() throws Exception {
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS SEQ_SRID, SEQ_SRID_READ");
+            stat.execute("CREATE TABLE SEQ_SRID(ID INTEGER, THE_GEOM GEOMETRY)");
+            // The null geometries are skipped, the first non-null geometry gives the SRID
+            stat.execute("INSERT INTO SEQ_SRID VALUES (1, NULL), (2, 'SRID=4326;POINT (1 2)'), (3, 'SRID=4326;POINT (3 4)')");
+            stat.execute("CALL GeoJsonWrite('target/seq_srid.geojsonl', 'SEQ_SRID', true)");
+            stat.execute("CALL GeoJsonRead('target/seq_srid.geojsonl', 'SEQ_SRID_READ', true)");
+            ResultSet res = stat.executeQuery("SELECT COUNT(*), COUNT(THE_GEOM) FROM SEQ_SRID_READ");
+            assertTrue(res.next());
+            assertEquals(3, res.getInt(1));
+            assertEquals(2, res.getInt(2));
+            res.close();
+            // Mixed SRID
+            stat.execute("INSERT INTO SEQ_SRID VALUES (4, 'SRID=0;POINT (5 6)')");
+            assertThrows(SQLException.class, () ->
+                    stat.execute("CALL GeoJsonWrite('target/seq_srid.geojsonl', 'SEQ_SRID', true)"));
+            // The coordinates of a text sequence are always in WGS 84
+            stat.execute("TRUNCATE TABLE SEQ_SRID");
+            stat.execute("INSERT INTO SEQ_SRID VALUES (1, 'SRID=2154;POINT (700000 6600000)')");
+            assertThrows(SQLException.class, () ->
+                    stat.execute("CALL GeoJsonWrite('target/seq_srid.geojsons', 'SEQ_SRID', true)"));
+            stat.execute("CALL GeoJsonWrite('target/seq_srid.geojsons', " +
+                    "'(SELECT ID, ST_Transform(THE_GEOM, 4326) THE_GEOM FROM SEQ_SRID)', true)");
+            stat.execute("DROP TABLE IF EXISTS SEQ_SRID, SEQ_SRID_READ");
+        }
+    }
+
+    @Test
+    public void testReadGeoJsonSeqRanges() throws Exception {
+        // The ranges are parsed independently then merged in the order of the file
+        File file = new File("target/seq_ranges.geojsonl");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append("\u001E{\"type\":\"Feature\",\"geometry\":{\"type\":\"Point\",\"coordinates\":[")
+                    .append(i).append(",1]},\"properties\":{\"a\":").append(i);
+            if (i >= 200) {
+                sb.append(",\"b\":\"v").append(i).append("\"");
+            }
+            sb.append("}}\n");
+        }
+        Files.write(file.toPath(), sb.toString().getBytes());
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long[] bounds = GeoJsonSeqChunk.split(channel, 1000, GeoJsonSeqChunk.LINE_FEED);
+            assertTrue(bounds.length > 3);
+            assertEquals(0, bounds[0]);
+            assertEquals(file.length(), bounds[bounds.length - 1]);
+            int count = 0;
+            for (int i = 0; i < bounds.length - 1; i++) {
+                GeoJsonSeqChunk chunk = GeoJsonSeqChunk.parse(channel, bounds[i], bounds[i + 1],
+                        GeoJsonSeqChunk.LINE_FEED, new JsonFactory(), DBTypes.H2GIS, 4326);
+                for (Object[] row : chunk.rows) {
+                    assertEquals(count++, ((Number) row[1]).intValue());
+                }
+            }
+            assertEquals(300, count);
+        }
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("CALL GeoJsonRead('target/seq_ranges.geojsonl', 'SEQ_RANGES', true)");
+            ResultSet res = stat.executeQuery("SELECT COUNT(*), COUNT(B), SUM(A) FROM SEQ_RANGES");
+            assertTrue(res.next());
+            assertEquals(300, res.getInt(1));
+            assertEquals(100, res.getInt(2));
+            assertEquals(44850, res.getInt(3));
+            res.close();
+            stat.execute("DROP TABLE IF EXISTS SEQ_RANGES");
+        }
+    }
+
+    @Test
+    public void testReadGeoJsonSeqMultiLine() throws Exception {
+        // A record of a text sequence may span several lines, only the record separator delimits it
+        File file = new File("target/seq_multiline.geojsons");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            sb.append("\u001E{\n  \"type\": \"Feature\",\n  \"geometry\": {\n    \"type\": \"Point\",\n")
+                    .append("    \"coordinates\": [").append(i).append(", 1]\n  },\n")
+                    .append("  \"properties\": {\n    \"a\": ").append(i).append("\n  }\n}\n");
+        }
+        Files.write(file.toPath(), sb.toString().getBytes());
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            long[] bounds = GeoJsonSeqChunk.split(channel, 1000, GeoJsonSeqChunk.RECORD_SEPARATOR);
+            assertTrue(bounds.length > 3);
+            assertEquals(file.length(), bounds[bounds.length - 1]);
+        }
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS SEQ_MULTILINE");
+            stat.execute("CALL GeoJsonRead('target/seq_multiline.geojsons', 'SEQ_MULTILINE', true)");
+            ResultSet res = stat.executeQuery("SELECT COUNT(*), SUM(A), SUM(ST_X(THE_GEOM)), " +
+                    "MIN(ST_SRID(THE_GEOM)), MAX(ST_SRID(THE_GEOM)) FROM SEQ_MULTILINE");
+            assertTrue(res.next());
+            assertEquals(300, res.getInt(1));
+            assertEquals(44850, res.getInt(2));
+            assertEquals(44850, res.getDouble(3));
+            assertEquals(4326, res.getInt(4));
+            assertEquals(4326, res.getInt(5));
+            res.close();
+            stat.execute("DROP TABLE IF EXISTS SEQ_MULTILINE");
+        }
+    }
+
+    @Test
+    public void testWriteGeoJsonSeqSpatialSort() throws Exception {
+        try (Statement stat = connection.createStatement()) {
+            stat.execute("DROP TABLE IF EXISTS GRID, GRID_SORTED");
+            // 32x32 points written row by row
+            stat.execute("CREATE TABLE GRID AS SELECT X::int ID, ST_MakePoint(MOD(X, 32), X / 32) THE_GEOM " +
+                    "FROM SYSTEM_RANGE(0, 1023)");
+            // A small memory budget splits the sort in several temporary files
+            stat.execute("CALL GeoJsonWrite('target/grid_sorted.geojsonl', 'GRID', true, 'spatialSort=true sortMemory=8192')");
+            stat.execute("CALL GeoJsonRead('target/grid_sorted.geojsonl', 'GRID_SORTED', true)");
+            double pathLength = 0;
+            int count = 0;
+            Geometry previous = null;
+            try (ResultSet rs = stat.executeQuery("SELECT * FROM GRID_SORTED")) {
+                while (rs.next()) {
+                    Geometry point = (Geometry) rs.getObject("THE_GEOM");
+                    assertEquals(rs.getInt("ID"), (int) point.getCoordinate().x + 32 * (int) point.getCoordinate().y);
+                    if (previous != null) {
+                        pathLength += point.distance(previous);
+                    }
+                    previous = point;
+                    count++;
+                }
+            }
+            assertEquals(1024, count);
+            assertTrue(pathLength < 1300, "Path length " + pathLength);
+            assertThrows(SQLException.class, () ->
+                    stat.execute("CALL GeoJsonWrite('target/grid_sorted.geojson', 'GRID', true, 'spatialSort=true')"));
+            stat.execute("DROP TABLE IF EXISTS GRID, GRID_SORTED");
+        }
+    }
 }
@@ -23,7 +23,9 @@ package org.h2gis.functions.io.osm;
 import org.h2.util.StringUtils;
 import org.h2gis.functions.factory.H2GISDBFactory;
 import org.junit.jupiter.api.*;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Point;
+import org.locationtech.jts.geom.Polygon;
 
 import java.io.File;
 import java.io.IOException;
@@ -214,6 +216,140 @@ public class OSMImportTest {
         rs.close();
     }
     
+    @Test
+    public void importPbfOSMFile() throws SQLException {
+        st.execute("DROP TABLE IF EXISTS  OSM_NODE, OSM_NODE_TAG, OSM_WAY,OSM_WAY_TAG, OSM_WAY_NODE, OSM_RELATION, OSM_RELATION_TAG, OSM_NODE_MEMBER, OSM_WAY_MEMBER, OSM_RELATION_MEMBER;");
+        st.execute("DROP TABLE IF EXISTS  PBF_NODE, PBF_NODE_TAG, PBF_WAY,PBF_WAY_TAG, PBF_WAY_NODE, PBF_RELATION, PBF_RELATION_TAG, PBF_NODE_MEMBER, PBF_WAY_MEMBER, PBF_RELATION_MEMBER;");
+        st.execute("CALL OSMRead(" + StringUtils.quoteStringSQL(OSMImportTest.class.getResource("saint_jean.osm").getPath()) + ", 'OSM');");
+        st.execute("CALL OSMRead(" + StringUtils.quoteStringSQL(OSMImportTest.class.getResource("saint_jean.osm.pbf").getPath()) + ", 'PBF', 'workers=4');");
+        ResultSet rs = st.executeQuery("SELECT count(ID_NODE) FROM PBF_NODE");
+        rs.next();
+        assertEquals(3243, rs.getInt(1));
+        rs.close();
+        rs = st.executeQuery("SELECT THE_GEOM FROM PBF_NODE WHERE ID_NODE=462020579");
+        assertTrue(rs.next());
+        assertEquals("SRID=4326;POINT (-2.1213541 47.6347657)", rs.getString("the_geom"));
+        rs.close();
+        rs = st.executeQuery("SELECT ELE FROM PBF_NODE WHERE ID_NODE=670177172");
+        assertTrue(rs.next());
+        assertEquals(91.9,rs.getDouble("ELE"),0.1);
+        rs.close();
+        rs = st.executeQuery("SELECT TAG_VALUE FROM PBF_WAY_TAG WHERE ID_WAY=296514939 and TAG_KEY='building'");
+        assertTrue(rs.next());
+        assertEquals("yes", rs.getString(1));
+        rs.close();
+        // The PBF file has been converted from the OSM file, the tables must have the same content
+        String[] suffixes = new String[]{"_NODE", "_NODE_TAG", "_WAY", "_WAY_TAG", "_WAY_NODE", "_RELATION",
+                "_RELATION_TAG", "_NODE_MEMBER", "_WAY_MEMBER", "_RELATION_MEMBER"};
+        for (String suffix : suffixes) {
+            rs = st.executeQuery("SELECT (SELECT COUNT(*) FROM OSM" + suffix + "), (SELECT COUNT(*) FROM PBF" + suffix + ")," +
+                    " (SELECT COUNT(*) FROM (SELECT * FROM OSM" + suffix + " EXCEPT SELECT * FROM PBF" + suffix + "))");
+            assertTrue(rs.next());
+            assertTrue(rs.getInt(1) > 0, suffix);
+            assertEquals(rs.getInt(1), rs.getInt(2), suffix);
+            assertEquals(0, rs.getInt(3), suffix);
+            rs.close();
+        }
+    }
+
+    @Test
+    public void importOSMFileWayGeometry() throws SQLException {
+        st.execute("DROP TABLE IF EXISTS  OSM_NODE, OSM_NODE_TAG, OSM_WAY,OSM_WAY_TAG, OSM_WAY_NODE, OSM_RELATION, OSM_RELATION_TAG, OSM_NODE_MEMBER, OSM_WAY_MEMBER, OSM_RELATION_MEMBER;");
+        st.execute("DROP TABLE IF EXISTS  PBF_NODE, PBF_NODE_TAG, PBF_WAY,PBF_WAY_TAG, PBF_WAY_NODE, PBF_RELATION, PBF_RELATION_TAG, PBF_NODE_MEMBER, PBF_WAY_MEMBER, PBF_RELATION_MEMBER;");
+        st.execute("CALL OSMRead(" + StringUtils.quoteStringSQL(OSMImportTest.class.getResource("saint_jean.osm").getPath()) + ", 'OSM', 'geometry=true');");
+        ResultSet rs = st.executeQuery("SELECT COUNT(THE_GEOM), COUNT(*) FILTER (WHERE ST_GeometryType(THE_GEOM) = 'POLYGON') FROM OSM_WAY");
+        assertTrue(rs.next());
+        assertEquals(472, rs.getInt(1));
+        assertEquals(450, rs.getInt(2));
+        rs.close();
+        rs = st.executeQuery("SELECT THE_GEOM FROM OSM_WAY WHERE ID_WAY=296514939");
+        assertTrue(rs.next());
+        Geometry geometry = (Geometry) rs.getObject(1);
+        assertEquals("Polygon", geometry.getGeometryType());
+        assertEquals(5, geometry.getNumPoints());
+        assertEquals(4326, geometry.getSRID());
+        rs.close();
+        // The way geometries are made of the node coordinates
+        rs = st.executeQuery("SELECT COUNT(*) FROM OSM_WAY_NODE WN, OSM_WAY W, OSM_NODE N WHERE WN.ID_WAY = W.ID_WAY" +
+                " AND WN.ID_NODE = N.ID_NODE AND NOT ST_Equals(ST_PointN(ST_ExteriorRing(W.THE_GEOM), WN.NODE_ORDER), N.THE_GEOM)" +
+                " AND ST_GeometryType(W.THE_GEOM) = 'POLYGON'");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        rs.close();
+        st.execute("CALL OSMRead(" + StringUtils.quoteStringSQL(OSMImportTest.class.getResource("saint_jean.osm.pbf").getPath()) + ", 'PBF', 'geometry=true workers=2');");
+        rs = st.executeQuery("SELECT COUNT(*) FROM (SELECT * FROM OSM_WAY EXCEPT SELECT * FROM PBF_WAY)");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        rs.close();
+    }
+
+    @Test
+    public void importOSMFileMultipolygon() throws SQLException {
+        st.execute("DROP TABLE IF EXISTS  MP_NODE, MP_NODE_TAG, MP_WAY,MP_WAY_TAG, MP_WAY_NODE, MP_RELATION, MP_RELATION_TAG, MP_NODE_MEMBER, MP_WAY_MEMBER, MP_RELATION_MEMBER;");
+        st.execute("CALL OSMRead(" + StringUtils.quoteStringSQL(OSMImportTest.class.getResource("multipolygon.osm").getPath()) + ", 'MP', 'multipolygon=true');");
+        ResultSet rs = st.executeQuery("SELECT ID_WAY, ST_GeometryType(THE_GEOM) FROM MP_WAY ORDER BY ID_WAY");
+        assertTrue(rs.next());
+        assertEquals("LINESTRING", rs.getString(2));
+        assertTrue(rs.next());
+        assertEquals("LINESTRING", rs.getString(2));
+        assertTrue(rs.next());
+        assertEquals("POLYGON", rs.getString(2));
+        assertTrue(rs.next());
+        // A node of the way is missing
+        assertEquals(13, rs.getLong(1));
+        assertNull(rs.getString(2));
+        assertFalse(rs.next());
+        rs.close();
+        rs = st.executeQuery("SELECT THE_GEOM FROM MP_RELATION ORDER BY ID_RELATION");
+        assertTrue(rs.next());
+        Geometry geometry = (Geometry) rs.getObject(1);
+        assertEquals("Polygon", geometry.getGeometryType());
+        assertEquals(1, ((Polygon) geometry).getNumInteriorRing());
+        assertEquals(96, geometry.getArea(), 1e-9);
+        assertEquals(4326, geometry.getSRID());
+        // A member way is missing
+        assertTrue(rs.next());
+        assertNull(rs.getObject(1));
+        // Not a multipolygon
+        assertTrue(rs.next());
+        assertNull(rs.getObject(1));
+        assertFalse(rs.next());
+        rs.close();
+    }
+
+    @Test
+    public void importOSMFileOptionsFail() {
+        String path = StringUtils.quoteStringSQL(OSMImportTest.class.getResource("saint_jean.osm.pbf").getPath());
+        SQLException ex = assertThrows(SQLException.class, () ->
+                st.execute("CALL OSMRead(" + path + ", 'PBF_FAIL', 'workers=0');"));
+        assertTrue(ex.getMessage().contains("The option workers must be greater than 0"), ex.getMessage());
+        ex = assertThrows(SQLException.class, () ->
+                st.execute("CALL OSMRead(" + path + ", 'PBF_FAIL', 'workers=x');"));
+        assertTrue(ex.getMessage().contains("workers"), ex.getMessage());
+        ex = assertThrows(SQLException.class, () ->
+                st.execute("CALL OSMRead(" + path + ", 'PBF_FAIL', 'geometry=true unknown=1');"));
+        assertTrue(ex.getMessage().contains("Unknown option unknown"), ex.getMessage());
+    }
+
+    @Test
+    public void mappedIdMapOrder() throws IOException {
+        try (MappedIdMap map = new MappedIdMap("h2gis_test_ids")) {
+            // The ids out of order are sorted once by finish
+            long[] ids = {5, 3, 9, 1, 7};
+            for (long id : ids) {
+                map.put(id, id * 10);
+            }
+            assertThrows(IllegalStateException.class, () -> map.get(5));
+            map.finish();
+            assertTrue(map.isFinished());
+            for (long id : ids) {
+                assertEquals(id * 10, map.get(id));
+            }
+            assertEquals(MappedIdMap.MISSING, map.get(4));
+            assertThrows(IllegalStateException.class, () -> map.put(11, 110));
+        }
+    }
+
     @Test
     public void importOSMFileTwice() throws SQLException {
         st.execute("DROP TABLE IF EXISTS  OSM_NODE, OSM_NODE_TAG, OSM_WAY,OSM_WAY_TAG, OSM_WAY_NODE, OSM_RELATION, OSM_RELATION_TAG, OSM_NODE_MEMBER, OSM_WAY_MEMBER, OSM_RELATION_MEMBER;");
@@ -109,6 +109,118 @@ public class SHPImportExportTest {
         assertGeometryEquals("MULTIPOLYGON (((90 109, 190 109, 190 9, 90 9, 90 109)))", (ValueGeometry) shpDriver.getField(1, 1));
     }
 
+    @Test
+    public void testMemoryMappedRandomRead() throws IOException {
+        File shpFile = new File(SHPImportExportTest.class.getResource("waternetwork.shp").getFile());
+        SHPDriver mappedDriver = new SHPDriver();
+        mappedDriver.setMemoryMapped(true);
+        mappedDriver.initDriverFromFile(shpFile);
+        SHPDriver bufferedDriver = new SHPDriver();
+        bufferedDriver.initDriverFromFile(shpFile);
+        try {
+            assertFalse(bufferedDriver.isMemoryMapped());
+            assertTrue(mappedDriver.isMemoryMapped());
+            assertEquals(bufferedDriver.getRowCount(), mappedDriver.getRowCount());
+            int rowCount = (int) mappedDriver.getRowCount();
+            // Read rows from the end to the start in order to move the buffer window on each row
+            for (int rowId = rowCount - 1; rowId >= 0; rowId--) {
+                for (int column = 0; column < mappedDriver.getFieldCount(); column++) {
+                    assertEquals(bufferedDriver.getField(rowId, column), mappedDriver.getField(rowId, column));
+                }
+            }
+        } finally {
+            mappedDriver.close();
+            bufferedDriver.close();
+        }
+    }
+
+    @Test
+    public void testMemoryMappedOption() throws SQLException {
+        Statement stat = connection.createStatement();
+        String path = SHPImportExportTest.class.getResource("waternetwork.shp").getPath();
+        String dbfPath = SHPImportExportTest.class.getResource("waternetwork.dbf").getPath();
+        stat.execute("CALL SHPRead('" + path + "', 'WATERNETWORK_SEQ', true)");
+        stat.execute("CALL SHPRead('" + path + "', 'WATERNETWORK_MMAP', 'mmap=true', true)");
+        stat.execute("CALL SHPRead('" + path + "', 'WATERNETWORK_MMAP_PAR', 'workers=3 mmap=true', true)");
+        stat.execute("CALL DBFRead('" + dbfPath + "', 'WATERNETWORK_DBF', true)");
+        stat.execute("CALL DBFRead('" + dbfPath + "', 'WATERNETWORK_DBF_MMAP', 'encoding=UTF-8 mmap=true', true)");
+        stat.execute("DROP TABLE IF EXISTS WATERNETWORK_LINKED");
+        stat.execute("CALL FILE_TABLE('" + path + "', 'WATERNETWORK_LINKED', 'mmap=true')");
+        for (String[] tables : new String[][]{{"WATERNETWORK_SEQ", "WATERNETWORK_MMAP"},
+                {"WATERNETWORK_SEQ", "WATERNETWORK_MMAP_PAR"}, {"WATERNETWORK_SEQ", "WATERNETWORK_LINKED"},
+                {"WATERNETWORK_DBF", "WATERNETWORK_DBF_MMAP"}}) {
+            try (ResultSet rs = stat.executeQuery("SELECT (SELECT COUNT(*) FROM " + tables[0] + "), " +
+                    "(SELECT COUNT(*) FROM " + tables[1] + "), (SELECT COUNT(*) FROM (SELECT * FROM " + tables[0] +
+                    " EXCEPT SELECT * FROM " + tables[1] + "))")) {
+                assertTrue(rs.next());
+                assertTrue(rs.getInt(1) > 100);
+                assertEquals(rs.getInt(1), rs.getInt(2), tables[1]);
+                assertEquals(0, rs.getInt(3), tables[1]);
+            }
+        }
+        assertThrows(SQLException.class, () ->
+                stat.execute("CALL FILE_TABLE('" + path + "', 'WATERNETWORK_LINKED2', 'mmap=true unknown=1')"));
+        stat.execute("DROP TABLE WATERNETWORK_SEQ, WATERNETWORK_MMAP, WATERNETWORK_MMAP_PAR, WATERNETWORK_DBF, " +
+                "WATERNETWORK_DBF_MMAP, WATERNETWORK_LINKED");
+    }
+
+    @Test
+    public void testDeleteFilesAfterClose() throws IOException, SQLException {
+        File folder = new File("target/delete_after_close");
+        folder.mkdirs();
+        File[] files = new File[3];
+        String[] extensions = new String[]{"shp", "shx", "dbf"};
+        for (int i = 0; i < extensions.length; i++) {
+            files[i] = new File(folder, "waternetwork." + extensions[i]);
+            Files.copy(SHPImportExportTest.class.getResourceAsStream("waternetwork." + extensions[i]),
+                    files[i].toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        }
+        // Default driver, files are not mapped so they can be deleted as soon as the driver is closed
+        SHPDriver driver = new SHPDriver();
+        driver.initDriverFromFile(files[0]);
+        for (int rowId = 0; rowId < driver.getRowCount(); rowId++) {
+            assertNotNull(driver.getField(rowId, 0));
+        }
+        driver.close();
+        // Linked table
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS WATERNETWORK_DELETE");
+        stat.execute("CALL FILE_TABLE('" + files[0].getPath() + "', 'WATERNETWORK_DELETE')");
+        try (ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM WATERNETWORK_DELETE")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getInt(1) > 0);
+        }
+        stat.execute("DROP TABLE WATERNETWORK_DELETE");
+        for (File file : files) {
+            assertTrue(file.delete(), file.getPath());
+        }
+    }
+
+    @Test
+    public void testParallelImport() throws SQLException {
+        Statement stat = connection.createStatement();
+        String path = SHPImportExportTest.class.getResource("waternetwork.shp").getPath();
+        stat.execute("CALL SHPRead('" + path + "', 'WATERNETWORK_SEQ', true)");
+        stat.execute("CALL SHPRead('" + path + "', 'WATERNETWORK_PAR', 'workers=3', true)");
+        ResultSet rs = stat.executeQuery("SELECT COUNT(*) FROM WATERNETWORK_PAR");
+        assertTrue(rs.next());
+        assertTrue(rs.getInt(1) > 100);
+        rs.close();
+        // Same rows with the same primary key
+        rs = stat.executeQuery("SELECT COUNT(*) FROM (SELECT * FROM WATERNETWORK_SEQ EXCEPT SELECT * FROM WATERNETWORK_PAR) " +
+                "UNION ALL SELECT COUNT(*) FROM (SELECT * FROM WATERNETWORK_PAR EXCEPT SELECT * FROM WATERNETWORK_SEQ)");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+        rs.close();
+        stat.execute("DROP TABLE WATERNETWORK_SEQ, WATERNETWORK_PAR");
+        assertThrows(SQLException.class, () ->
+                stat.execute("CALL SHPRead('" + path + "', 'WATERNETWORK_PAR', 'workers=0', true)"));
+        assertThrows(SQLException.class, () ->
+                stat.execute("CALL SHPRead('" + path + "', 'WATERNETWORK_PAR', 'workers=2 unknown=1', true)"));
+    }
+
     @Test
     public void exportTableTestGeomDeb() throws SQLException, IOException {
         Statement stat = connection.createStatement();
@@ -1005,4 +1117,81 @@ public class SHPImportExportTest {
         });
         stat.execute("DROP TABLE IF EXISTS PUNCTUAL;");
     }
+
+    @Test
+    public void exportSpatialSort() throws SQLException {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS GRID, GRID_SORTED");
+        // 32x32 points written row by row
+        stat.execute("CREATE TABLE GRID AS SELECT X::int ID, ST_MakePoint(MOD(X, 32), X / 32) THE_GEOM " +
+                "FROM SYSTEM_RANGE(0, 1023)");
+        // A small memory budget splits the sort in several temporary files
+        stat.execute("CALL SHPWrite('target/grid_sorted.shp', 'GRID', 'encoding=UTF-8 spatialSort=true sortMemory=8192', true)");
+        stat.execute("CALL SHPRead('target/grid_sorted.shp', 'GRID_SORTED', true)");
+        double pathLength = 0;
+        int count = 0;
+        Geometry previous = null;
+        try (ResultSet rs = stat.executeQuery("SELECT * FROM GRID_SORTED")) {
+            while (rs.next()) {
+                Geometry point = (Geometry) rs.getObject("THE_GEOM");
+                // The attributes are kept with their geometry
+                assertEquals(rs.getInt("ID"), (int) point.getCoordinate().x + 32 * (int) point.getCoordinate().y);
+                if (previous != null) {
+                    pathLength += point.distance(previous);
+                }
+                previous = point;
+                count++;
+            }
+        }
+        assertEquals(1024, count);
+        // The rows close on the Hilbert curve are close in space, the row by row order jumps at each row
+        assertTrue(pathLength < 1300, "Path length " + pathLength);
+        stat.execute("DROP TABLE IF EXISTS GRID, GRID_SORTED");
+    }
+
+    @Test
+    public void sortedRowEncoding() throws Exception {
+        Geometry geom = new WKTReader().read("POINT ZM (1 2 3 4)");
+        geom.setSRID(4326);
+        Object[] row = new Object[]{geom, "été", true, (byte) 1, (short) 2, 3, 4L, 5.5f, 6.5,
+                new java.math.BigDecimal("123.456"), java.sql.Date.valueOf("2024-02-29"), null};
+        Object[] decoded = SHPDriverFunction.deserializeRow(SHPDriverFunction.serializeRow(row), row.length);
+        Geometry decodedGeom = (Geometry) decoded[0];
+        assertEquals(4326, decodedGeom.getSRID());
+        assertEquals(4.0, decodedGeom.getCoordinate().getM());
+        assertGeometryEquals("SRID=4326;POINT ZM (1 2 3 4)", decodedGeom);
+        for (int i = 1; i < row.length; i++) {
+            assertEquals(row[i], decoded[i]);
+        }
+        assertThrows(IOException.class, () -> SHPDriverFunction.serializeRow(new Object[]{new Object()}));
+    }
+
+    @Test
+    public void exportSpatialSortTypes() throws SQLException {
+        Statement stat = connection.createStatement();
+        stat.execute("DROP TABLE IF EXISTS SORT_TYPES, SORT_TYPES_READ");
+        stat.execute("CREATE TABLE SORT_TYPES(THE_GEOM GEOMETRY(POINT, 2154), ID INTEGER, CODE BIGINT, " +
+                "VAL DOUBLE PRECISION, NAME VARCHAR(10))");
+        stat.execute("INSERT INTO SORT_TYPES VALUES ('SRID=2154;POINT (10 10)', 1, 10000000000, 1.5, 'abc'), " +
+                "('SRID=2154;POINT (0 0)', 2, NULL, NULL, NULL)");
+        stat.execute("CALL SHPWrite('target/sort_types.shp', 'SORT_TYPES', 'encoding=UTF-8 spatialSort=true', true)");
+        stat.execute("CALL SHPRead('target/sort_types.shp', 'SORT_TYPES_READ', true)");
+        try (ResultSet rs = stat.executeQuery("SELECT * FROM SORT_TYPES_READ ORDER BY ID")) {
+            assertTrue(rs.next());
+            assertGeometryEquals("SRID=2154;POINT (10 10)", (Geometry) rs.getObject("THE_GEOM"));
+            assertEquals(10000000000L, rs.getLong("CODE"));
+            assertEquals(1.5, rs.getDouble("VAL"));
+            assertEquals("abc", rs.getString("NAME"));
+            assertTrue(rs.next());
+            assertEquals(2, rs.getInt("ID"));
+            assertNull(rs.getObject("NAME"));
+            assertFalse(rs.next());
+        }
+        // The options are checked by the shared parser
+        assertThrows(SQLException.class, () ->
+                stat.execute("CALL SHPWrite('target/sort_types.shp', 'SORT_TYPES', 'spatialSort=true unknown=1', true)"));
+        assertThrows(SQLException.class, () ->
+                stat.execute("CALL SHPWrite('target/sort_types.shp', 'SORT_TYPES', 'spatialSort=true sortMemory=x', true)"));
+        stat.execute("DROP TABLE IF EXISTS SORT_TYPES, SORT_TYPES_READ");
+    }
 }
@@ -0,0 +1,165 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.EOFException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the parsing of {@link AsciiTokenizer} against {@link Double#parseDouble(String)}
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class AsciiTokenizerTest {
+
+    private static double parse(String value) {
+        return AsciiTokenizer.parseDouble(value.toCharArray(), 0, value.length());
+    }
+
+    private static void assertParse(String value) {
+        assertEquals(Double.parseDouble(value), parse(value), value);
+    }
+
+    @Test
+    public void testParseDouble() {
+        String[] values = new String[]{"0", "-0", "+1", "-1", "1.5", "-1.5", ".5", "5.", "-.25", "0.1", "0.3",
+                "00000000000000000001.5", "1.000000000000000000", "-9999", "42.42"};
+        for (String value : values) {
+            assertParse(value);
+        }
+        assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(parse("-0")));
+    }
+
+    @Test
+    public void testParseDoubleExponent() {
+        String[] values = new String[]{"1e5", "1E5", "1e+5", "1E-5", "1.25e+3", "-2.5e-3", "1e0", "1e0000", "1e00001",
+                "1e22", "1e23", "1e-22", "1e-23", "123456789012345e-22", "123456789012345e22", "0e-30", "5e-324",
+                "4.9e-324", "1.7976931348623157e308", "1e309", "-1e309", "1e-400", ".5e1"};
+        for (String value : values) {
+            assertParse(value);
+        }
+    }
+
+    @Test
+    public void testParseDoubleDigits() {
+        // 15 digits are computed from the characters, 16 digits and more fall back to Double.parseDouble
+        String[] values = new String[]{"123456789012345", "999999999999999", "0.123456789012345",
+                "1234567890.12345", "0.000123456789012345", "1234567890123456", "9999999999999999",
+                "9007199254740993", "0.1234567890123456", "12345678901234567890", "-123456789012345678901234567890",
+                "2.2250738585072014E-308", "0.30000000000000004"};
+        for (String value : values) {
+            assertParse(value);
+        }
+    }
+
+    @Test
+    public void testParseDoubleSpecialValues() {
+        assertTrue(Double.isNaN(parse("NaN")));
+        assertEquals(Double.POSITIVE_INFINITY, parse("Infinity"));
+        assertEquals(Double.NEGATIVE_INFINITY, parse("-Infinity"));
+        assertEquals(Double.POSITIVE_INFINITY, parse("+Infinity"));
+    }
+
+    @Test
+    public void testParseDoubleMalformed() {
+        String[] values = new String[]{"", "-", "+", ".", "-.", "e5", ".e5", "1e", "1e+", "1e-", "1.2.3", "abc",
+                "1,5", "--1", "+-1", "1e5.5", "inf", "nan", "1 2", "0x"};
+        for (String value : values) {
+            assertThrows(NumberFormatException.class, () -> parse(value), value);
+        }
+    }
+
+    @Test
+    public void testParseDoubleRandom() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            // Shortest representation of random doubles
+            assertParse(Double.toString(Double.longBitsToDouble(random.nextLong())));
+            assertParse(Double.toString((random.nextDouble() - 0.5) * 1e6));
+            // Decimal numbers with up to 17 digits and small exponents
+            StringBuilder sb = new StringBuilder();
+            if (random.nextBoolean()) {
+                sb.append('-');
+            }
+            int digits = 1 + random.nextInt(17);
+            int point = random.nextInt(digits + 1);
+            for (int d = 0; d < digits; d++) {
+                if (d == point) {
+                    sb.append('.');
+                }
+                sb.append((char) ('0' + random.nextInt(10)));
+            }
+            if (random.nextBoolean()) {
+                sb.append('e').append(random.nextInt(61) - 30);
+            }
+            assertParse(sb.toString());
+        }
+    }
+
+    @Test
+    public void testParseDoubleRange() {
+        char[] chars = "x12.5e1y".toCharArray();
+        assertEquals(125.0, AsciiTokenizer.parseDouble(chars, 1, 7));
+        assertEquals(12.5, AsciiTokenizer.parseDouble(chars, 1, 5));
+    }
+
+    @Test
+    public void testTokenizer() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        // Enough values to refill the buffer several times, a value is split between two reads
+        for (int i = 0; i < 50000; i++) {
+            sb.append(i * 0.5).append(i % 10 == 0 ? "\r\n" : " \t ");
+        }
+        sb.append("word");
+        // A word greater than the buffer
+        char[] longWord = new char[200000];
+        Arrays.fill(longWord, 'a');
+        sb.append(' ').append(longWord).append("\n  ");
+        AsciiTokenizer tokenizer = new AsciiTokenizer(new StringReader(sb.toString()));
+        for (int i = 0; i < 50000; i++) {
+            if (i % 3 == 0) {
+                tokenizer.skipToken();
+            } else {
+                assertEquals(i * 0.5, tokenizer.nextDouble());
+            }
+        }
+        assertEquals("word", tokenizer.nextWord());
+        assertEquals(new String(longWord), tokenizer.nextWord());
+        assertThrows(EOFException.class, tokenizer::nextWord);
+        assertEquals("", tokenizer.getToken());
+    }
+
+    @Test
+    public void testTokenizerMalformed() throws Exception {
+        AsciiTokenizer tokenizer = new AsciiTokenizer(new StringReader("1 x2 3"));
+        assertEquals(1, tokenizer.nextDouble());
+        assertThrows(NumberFormatException.class, tokenizer::nextDouble);
+        assertEquals("x2", tokenizer.getToken());
+        assertEquals(3, tokenizer.nextDouble());
+    }
+}
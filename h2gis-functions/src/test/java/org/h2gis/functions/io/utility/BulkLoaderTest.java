@@ -0,0 +1,216 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the insertion and the error paths of {@link BulkLoader}
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class BulkLoaderTest {
+
+    private static final int[] COLUMN_TYPES = new int[]{Types.INTEGER, Types.DOUBLE, Types.VARCHAR};
+    private static final String INSERT = "INSERT INTO BULK_TABLE VALUES (?, ?, ?)";
+    private static Connection connection;
+
+    @BeforeAll
+    public static void tearUp() throws Exception {
+        connection = H2GISDBFactory.createSpatialDataBase(BulkLoaderTest.class.getSimpleName());
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    @BeforeEach
+    public void createTable() throws Exception {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS BULK_TABLE;" +
+                    "CREATE TABLE BULK_TABLE(ID INTEGER, VAL DOUBLE PRECISION, NAME VARCHAR NOT NULL)");
+        }
+    }
+
+    /**
+     * Produce rowCount rows, then fail or end the file
+     */
+    private static class RowProducer implements BulkLoader.BatchProducer {
+        private final int rowCount;
+        private final Exception failure;
+        private final int nullNameRow;
+        private final AtomicReference<Thread> thread = new AtomicReference<>();
+        int row = 0;
+
+        RowProducer(int rowCount, Exception failure) {
+            this(rowCount, failure, -1);
+        }
+
+        RowProducer(int rowCount, Exception failure, int nullNameRow) {
+            this.rowCount = rowCount;
+            this.failure = failure;
+            this.nullNameRow = nullNameRow;
+        }
+
+        @Override
+        public boolean fill(BulkLoader.ColumnBatch batch) throws IOException, SQLException {
+            thread.set(Thread.currentThread());
+            while (!batch.isFull()) {
+                if (row == rowCount) {
+                    if (failure instanceof IOException) {
+                        throw (IOException) failure;
+                    } else if (failure instanceof SQLException) {
+                        throw (SQLException) failure;
+                    } else if (failure != null) {
+                        throw (RuntimeException) failure;
+                    }
+                    return false;
+                }
+                batch.setInt(1, row);
+                batch.setDouble(2, row / 4.0);
+                batch.setObject(3, row == nullNameRow ? null : "r" + row);
+                batch.addRow();
+                row++;
+            }
+            return true;
+        }
+
+        void assertStopped() throws InterruptedException {
+            Thread readerThread = thread.get();
+            assertNotNull(readerThread);
+            readerThread.join(10000);
+            assertFalse(readerThread.isAlive());
+        }
+    }
+
+    private static long load(BulkLoader.BatchProducer producer, EmptyProgressVisitor progress) throws Exception {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            return BulkLoader.load(connection, INSERT, COLUMN_TYPES, 10, producer, progress);
+        } finally {
+            connection.rollback();
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private static int countRows() throws SQLException {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM BULK_TABLE")) {
+            assertTrue(rs.next());
+            return rs.getInt(1);
+        }
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        // Two full batches and a partial one
+        assertEquals(25, load(new RowProducer(25, null), new EmptyProgressVisitor()));
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(ID), SUM(VAL), COUNT(DISTINCT NAME) FROM BULK_TABLE")) {
+            assertTrue(rs.next());
+            assertEquals(25, rs.getInt(1));
+            assertEquals(300, rs.getInt(2));
+            assertEquals(75.0, rs.getDouble(3), 1e-12);
+            assertEquals(25, rs.getInt(4));
+        }
+        // An empty file, then a file with exactly one batch
+        createTable();
+        assertEquals(0, load(new RowProducer(0, null), new EmptyProgressVisitor()));
+        assertEquals(10, load(new RowProducer(10, null), new EmptyProgressVisitor()));
+        assertEquals(10, countRows());
+    }
+
+    @Test
+    public void testReaderIOException() throws Exception {
+        IOException failure = new IOException("Malformed line 45");
+        RowProducer producer = new RowProducer(45, failure);
+        // The exception of the reader thread is rethrown by the calling thread
+        IOException ex = assertThrows(IOException.class, () -> load(producer, new EmptyProgressVisitor()));
+        assertSame(failure, ex);
+        producer.assertStopped();
+        // The full batches read before the error are committed
+        assertEquals(40, countRows());
+    }
+
+    @Test
+    public void testReaderSQLException() throws Exception {
+        SQLException failure = new SQLException("Invalid value");
+        RowProducer producer = new RowProducer(5, failure);
+        assertSame(failure, assertThrows(SQLException.class, () -> load(producer, new EmptyProgressVisitor())));
+        producer.assertStopped();
+    }
+
+    @Test
+    public void testReaderRuntimeException() throws Exception {
+        NumberFormatException failure = new NumberFormatException("For input string: \"x\"");
+        RowProducer producer = new RowProducer(15, failure);
+        assertSame(failure, assertThrows(NumberFormatException.class,
+                () -> load(producer, new EmptyProgressVisitor())));
+        producer.assertStopped();
+    }
+
+    @Test
+    public void testInsertFailure() throws Exception {
+        // A null name is rejected by the table, the reader thread must not stay blocked on a full queue
+        RowProducer producer = new RowProducer(Integer.MAX_VALUE, null, 13);
+        assertThrows(SQLException.class, () -> load(producer, new EmptyProgressVisitor()));
+        producer.assertStopped();
+        assertEquals(10, countRows());
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        EmptyProgressVisitor progress = new EmptyProgressVisitor();
+        // An endless file, canceled while the third batch is read
+        RowProducer producer = new RowProducer(Integer.MAX_VALUE, null) {
+            @Override
+            public boolean fill(BulkLoader.ColumnBatch batch) throws IOException, SQLException {
+                boolean hasNext = super.fill(batch);
+                if (row > 20) {
+                    progress.cancel();
+                }
+                return hasNext;
+            }
+        };
+        SQLException ex = assertThrows(SQLException.class, () -> load(producer, progress));
+        assertEquals("Canceled by user", ex.getMessage());
+        producer.assertStopped();
+        assertTrue(countRows() <= 20);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.functions.io.utility;
+
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Envelope;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the external sort of {@link HilbertSorter} against the same sort done in memory
+ *
+ * @author Erwan Bocher
+ * @author Nicolas Fortin
+ */
+public class HilbertSorterTest {
+
+    private static final int RECORD_COUNT = 5000;
+
+    private static Envelope envelope(int i) {
+        // Every tenth record has no geometry
+        if (i % 10 == 0) {
+            return null;
+        }
+        Random random = new Random(i);
+        double x = random.nextDouble() * 1000;
+        double y = random.nextDouble() * 500;
+        return new Envelope(x, x + random.nextDouble(), y, y + random.nextDouble());
+    }
+
+    private static void fill(HilbertSorter sorter) throws IOException {
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            sorter.add(envelope(i), ByteBuffer.allocate(4).putInt(i).array());
+        }
+    }
+
+    private static List<Integer> sort(HilbertSorter sorter) throws IOException {
+        fill(sorter);
+        return read(sorter);
+    }
+
+    private static List<Integer> read(HilbertSorter sorter) throws IOException {
+        List<Integer> order = new ArrayList<>(RECORD_COUNT);
+        HilbertSorter.SortedRecords records = sorter.sort();
+        while (records.next()) {
+            order.add(ByteBuffer.wrap(records.getPayload()).getInt());
+        }
+        return order;
+    }
+
+    private static Envelope extent() {
+        Envelope extent = new Envelope();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            Envelope envelope = envelope(i);
+            if (envelope != null) {
+                extent.expandToInclude(envelope);
+            }
+        }
+        return extent;
+    }
+
+    @Test
+    public void testMergeRuns() throws IOException {
+        List<Integer> expected;
+        try (HilbertSorter sorter = new HilbertSorter()) {
+            expected = sort(sorter);
+            assertEquals(0, sorter.getRunCount());
+        }
+        assertEquals(RECORD_COUNT, expected.size());
+        // The records without envelope are the last ones
+        assertEquals(RECORD_COUNT - RECORD_COUNT / 10, expected.indexOf(0));
+        // More runs than the files merged at the same time
+        try (HilbertSorter sorter = new HilbertSorter(4096)) {
+            fill(sorter);
+            assertTrue(sorter.getRunCount() > HilbertSorter.MAX_FAN_IN, "Runs " + sorter.getRunCount());
+            assertEquals(expected, read(sorter));
+            assertTrue(sorter.getRunCount() <= HilbertSorter.MAX_FAN_IN);
+        }
+    }
+
+    @Test
+    public void testExtentProvider() throws IOException {
+        List<Integer> expected;
+        try (HilbertSorter sorter = new HilbertSorter()) {
+            expected = sort(sorter);
+        }
+        AtomicInteger calls = new AtomicInteger();
+        // The runs are sorted when they are written, the extent is fetched once
+        try (HilbertSorter sorter = new HilbertSorter(4096, () -> {
+            calls.incrementAndGet();
+            return extent();
+        })) {
+            assertEquals(expected, sort(sorter));
+        }
+        assertEquals(1, calls.get());
+        // The records fit in memory, the extent is not fetched
+        try (HilbertSorter sorter = new HilbertSorter(HilbertSorter.DEFAULT_MEMORY_BUDGET, () -> {
+            calls.incrementAndGet();
+            return extent();
+        })) {
+            assertEquals(expected, sort(sorter));
+        }
+        assertEquals(1, calls.get());
+        // A smaller extent than the records only changes their order
+        try (HilbertSorter sorter = new HilbertSorter(4096, () -> new Envelope(0, 100, 0, 100))) {
+            List<Integer> order = sort(sorter);
+            assertEquals(RECORD_COUNT, order.size());
+            assertEquals(RECORD_COUNT, order.stream().distinct().count());
+        }
+    }
+}
@@ -994,6 +994,33 @@ public class SpatialFunction2Test {
         });
     }
 
+    @Test
+    public void test_ST_SvfTable() throws Exception {
+        st.execute("DROP TABLE IF EXISTS svf_points, svf_buildings, svf_result;" +
+                "CREATE TABLE svf_points(id int, the_geom GEOMETRY(POINTZ, 2154));" +
+                "INSERT INTO svf_points VALUES (1, 'SRID=2154;POINTZ(0 0 0)'), (2, 'SRID=2154;POINTZ(20 5 0)')," +
+                "(3, 'SRID=2154;POINTZ(-60 30 0)'), (4, NULL);" +
+                "CREATE TABLE svf_buildings(the_geom GEOMETRY(POLYGONZ, 2154));" +
+                "INSERT INTO svf_buildings VALUES ('SRID=2154;POLYGONZ((10 -5 10, 10 5 10, 15 5 10, 15 -5 10, 10 -5 10))')," +
+                "('SRID=2154;POLYGONZ((-10 -5 25, -10 10 25, -20 10 25, -20 -5 25, -10 -5 25))');" +
+                "CREATE TABLE svf_result AS SELECT * FROM ST_SvfTable('svf_points', 'svf_buildings', 100, 60);");
+        ResultSet rs = st.executeQuery("SELECT r.id, r.svf, ST_SVF(r.the_geom, " +
+                "(SELECT ST_ACCUM(the_geom) FROM svf_buildings), 100, 60) FROM svf_result r ORDER BY r.id");
+        int count = 0;
+        while (rs.next()) {
+            count++;
+            if (rs.getInt(1) == 4) {
+                assertNull(rs.getObject(2));
+            } else {
+                assertTrue(rs.getDouble(2) < 1);
+                assertEquals(rs.getDouble(3), rs.getDouble(2), 1e-12);
+            }
+        }
+        assertEquals(4, count);
+        rs.close();
+        st.execute("DROP TABLE IF EXISTS svf_points, svf_buildings, svf_result");
+    }
+
     @Test
     public void test_ST_ShortestLine1() throws Exception {
         Statement st = connection.createStatement();
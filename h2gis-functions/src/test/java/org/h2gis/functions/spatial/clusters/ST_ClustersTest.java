@@ -204,4 +204,63 @@ public class ST_ClustersTest {
         }
         st.execute("DROP TABLE IF EXISTS sample_points, clusters");
     }
+
+    @Test
+    public void st_ClusterDBSCANManyPoints() throws SQLException {
+        // 3 dense grids of 400 points and isolated points
+        st.execute("DROP TABLE IF EXISTS sample_points;" +
+                "CREATE TABLE sample_points (id INT, the_geom GEOMETRY(POINT));" +
+                "INSERT INTO sample_points SELECT X, ST_MAKEPOINT(MOD(X, 20) + 1000 * (X / 400), MOD(X / 20, 20)) " +
+                "FROM SYSTEM_RANGE(0, 1199);" +
+                "INSERT INTO sample_points SELECT X, ST_MAKEPOINT(10000 + X * 100, 0) FROM SYSTEM_RANGE(1200, 1209);");
+        st.execute("DROP TABLE IF EXISTS CLUSTERS;" +
+                "CREATE TABLE CLUSTERS AS SELECT * FROM ST_ClusterDBSCAN('sample_points', 'the_geom', 'id', 1.5, 5)");
+        ResultSet res = st.executeQuery("SELECT COUNT(DISTINCT CLUSTER_ID), MIN(CLUSTER_SIZE), MAX(CLUSTER_SIZE), " +
+                "COUNT(*) FILTER (WHERE CLUSTER_ID IS NULL) FROM CLUSTERS");
+        assertTrue(res.next());
+        assertEquals(3, res.getInt(1));
+        assertEquals(400, res.getInt(2));
+        assertEquals(400, res.getInt(3));
+        assertEquals(10, res.getInt(4));
+        // All the points of a grid share the same cluster
+        res = st.executeQuery("SELECT COUNT(DISTINCT CLUSTER_ID) FROM CLUSTERS WHERE ID < 1200 GROUP BY ID / 400");
+        while (res.next()) {
+            assertEquals(1, res.getInt(1));
+        }
+        st.execute("DROP TABLE IF EXISTS sample_points, clusters");
+    }
+
+    @Test
+    public void st_ClusterDBSCANPointGrid() throws SQLException {
+        // Points on a lattice with a spacing equal to eps, a null geometry and duplicated points
+        st.execute("DROP TABLE IF EXISTS sample_points, sample_mixed;" +
+                "CREATE TABLE sample_points (id INT, the_geom GEOMETRY);" +
+                "INSERT INTO sample_points SELECT X, ST_MAKEPOINT(MOD(X * 7919, 97), MOD(X * 104729, 89)) " +
+                "FROM SYSTEM_RANGE(1, 3000);" +
+                "INSERT INTO sample_points VALUES (3001, NULL), (3002, 'POINT(-50 -50)'), (3003, 'POINT(-50 -50)');" +
+                "CREATE TABLE sample_mixed AS SELECT * FROM sample_points;" +
+                "INSERT INTO sample_mixed VALUES (3004, 'LINESTRING(1000 1000, 1001 1001)');");
+        // The grid is used for the points only table, the STR-tree for the other one
+        st.execute("DROP TABLE IF EXISTS clusters_grid, clusters_tree;" +
+                "CREATE TABLE clusters_grid AS SELECT * FROM ST_ClusterDBSCAN('sample_points', 'the_geom', 'id', 1.0, 4);" +
+                "CREATE TABLE clusters_tree AS SELECT * FROM ST_ClusterDBSCAN('sample_mixed', 'the_geom', 'id', 1.0, 4)");
+        ResultSet res = st.executeQuery("SELECT COUNT(*), " +
+                "COUNT(*) FILTER (WHERE a.CLUSTER_ID IS NOT DISTINCT FROM b.CLUSTER_ID " +
+                "AND a.CLUSTER_SIZE IS NOT DISTINCT FROM b.CLUSTER_SIZE), COUNT(*) FILTER (WHERE a.CLUSTER_ID IS NULL) " +
+                "FROM clusters_grid a, clusters_tree b WHERE a.ID = b.ID");
+        assertTrue(res.next());
+        assertEquals(3003, res.getInt(1));
+        assertEquals(3003, res.getInt(2));
+        assertTrue(res.getInt(3) > 1);
+        res = st.executeQuery("SELECT CLUSTER_ID, CLUSTER_SIZE FROM " +
+                "ST_ClusterDBSCAN('sample_points', 'the_geom', 'id', 1.0, 2) WHERE ID IN (3001, 3002, 3003) ORDER BY ID");
+        assertTrue(res.next());
+        assertNull(res.getObject(1));
+        assertTrue(res.next());
+        int duplicateCluster = res.getInt(1);
+        assertEquals(2, res.getInt(2));
+        assertTrue(res.next());
+        assertEquals(duplicateCluster, res.getInt(1));
+        st.execute("DROP TABLE IF EXISTS sample_points, sample_mixed, clusters_grid, clusters_tree");
+    }
 }
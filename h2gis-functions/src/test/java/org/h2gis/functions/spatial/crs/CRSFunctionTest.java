@@ -27,6 +27,7 @@ import org.junit.jupiter.api.*;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -327,6 +328,163 @@ public class CRSFunctionTest {
         rs.close();
     }
 
+    @Test
+    public void testST_TransformTable() throws SQLException {
+        st.execute("DROP TABLE IF EXISTS TRANSFORM_INPUT, TRANSFORM_OUTPUT;" +
+                "CREATE TABLE TRANSFORM_INPUT(ID INT PRIMARY KEY, NAME VARCHAR, THE_GEOM GEOMETRY(POINT, 27572));" +
+                "INSERT INTO TRANSFORM_INPUT VALUES (1, 'a', 'SRID=27572;POINT(584173.736059813 2594514.82833411)'), " +
+                "(2, 'b', 'SRID=27572;POINT(282331 2273699.7)'), (3, 'c', NULL)");
+        ResultSet rs = st.executeQuery("SELECT ST_TransformTable('TRANSFORM_INPUT', 'TRANSFORM_OUTPUT', 4326)");
+        assertTrue(rs.next());
+        assertTrue(rs.getBoolean(1));
+        rs.close();
+        // Same result as ST_Transform
+        rs = st.executeQuery("SELECT O.ID, O.NAME, O.THE_GEOM, ST_Transform(I.THE_GEOM, 4326) FROM TRANSFORM_OUTPUT O, " +
+                "TRANSFORM_INPUT I WHERE O.ID = I.ID ORDER BY O.ID");
+        for (int id = 1; id <= 3; id++) {
+            assertTrue(rs.next());
+            assertEquals(id, rs.getInt(1));
+            assertEquals(String.valueOf((char) ('a' + id - 1)), rs.getString(2));
+            Geometry geom = (Geometry) rs.getObject(3);
+            if (id == 3) {
+                assertNull(geom);
+            } else {
+                assertEquals(4326, geom.getSRID());
+                assertTrue(geom.equalsExact((Geometry) rs.getObject(4), 1E-12));
+            }
+        }
+        assertFalse(rs.next());
+        rs.close();
+        rs = st.executeQuery("SELECT ST_SRID(THE_GEOM) FROM TRANSFORM_OUTPUT WHERE ID = 1");
+        assertTrue(rs.next());
+        assertEquals(4326, rs.getInt(1));
+        rs.close();
+        // The output table must not exist
+        assertThrows(SQLException.class, () ->
+                st.execute("SELECT ST_TransformTable('TRANSFORM_INPUT', 'TRANSFORM_OUTPUT', 2154)"));
+        st.execute("DROP TABLE TRANSFORM_INPUT, TRANSFORM_OUTPUT");
+    }
+
+    @Test
+    public void testST_TransformTableConstraints() throws SQLException {
+        st.execute("DROP TABLE IF EXISTS TRANSFORM_INPUT, TRANSFORM_OUTPUT;" +
+                "CREATE TABLE TRANSFORM_INPUT(ID INT, CODE INT NOT NULL, NAME VARCHAR, " +
+                "THE_GEOM GEOMETRY(POINT, 27572) NOT NULL, PRIMARY KEY (ID, CODE));" +
+                "CREATE INDEX ON TRANSFORM_INPUT(NAME);" +
+                "CREATE SPATIAL INDEX ON TRANSFORM_INPUT(THE_GEOM);" +
+                "INSERT INTO TRANSFORM_INPUT VALUES (1, 10, 'a', 'SRID=27572;POINT(584173.736059813 2594514.82833411)'), " +
+                "(2, 20, 'b', 'SRID=27572;POINT(282331 2273699.7)')");
+        st.execute("SELECT ST_TransformTable('TRANSFORM_INPUT', 'TRANSFORM_OUTPUT', 4326)");
+        try (ResultSet rs = connection.getMetaData().getPrimaryKeys(null, "PUBLIC", "TRANSFORM_OUTPUT")) {
+            assertTrue(rs.next());
+            assertTrue(rs.next());
+            assertFalse(rs.next());
+        }
+        // The primary key and the NOT NULL constraints are kept
+        assertThrows(SQLException.class, () ->
+                st.execute("INSERT INTO TRANSFORM_OUTPUT VALUES (1, 10, 'c', 'SRID=4326;POINT(1 1)')"));
+        assertThrows(SQLException.class, () ->
+                st.execute("INSERT INTO TRANSFORM_OUTPUT VALUES (3, NULL, 'c', 'SRID=4326;POINT(1 1)')"));
+        assertThrows(SQLException.class, () ->
+                st.execute("INSERT INTO TRANSFORM_OUTPUT VALUES (3, 30, 'c', NULL)"));
+        st.execute("INSERT INTO TRANSFORM_OUTPUT VALUES (1, 30, NULL, 'SRID=4326;POINT(1 1)')");
+        assertTrue(JDBCUtilities.isIndexed(connection, "TRANSFORM_OUTPUT", "NAME"));
+        assertTrue(JDBCUtilities.isSpatialIndexed(connection, "TRANSFORM_OUTPUT", "THE_GEOM"));
+        st.execute("DROP TABLE TRANSFORM_INPUT, TRANSFORM_OUTPUT");
+    }
+
+    @Test
+    public void testST_TransformLineZ() throws SQLException {
+        // The cached operation is reused for each coordinate
+        ResultSet rs = st.executeQuery("SELECT ST_Transform('SRID=27572;LINESTRING Z(584173.736059813 " +
+                "2594514.82833411 10, 282331 2273699.7 20)'::GEOMETRY, 4326)");
+        assertTrue(rs.next());
+        Geometry geom = (Geometry) rs.getObject(1);
+        assertEquals(4326, geom.getSRID());
+        assertEquals(2.114551398096724, geom.getCoordinates()[0].x, 1E-9);
+        assertEquals(50.34560979151726, geom.getCoordinates()[0].y, 1E-9);
+        assertEquals(2, geom.getNumPoints());
+        // This operation has no height, the z is removed
+        assertTrue(Double.isNaN(geom.getCoordinates()[0].getZ()));
+        assertTrue(Double.isNaN(geom.getCoordinates()[1].getZ()));
+        rs.close();
+        // Same coordinate as the point
+        rs = st.executeQuery("SELECT ST_Transform('SRID=27572;POINT(282331 2273699.7)'::GEOMETRY, 4326)");
+        assertTrue(rs.next());
+        assertTrue(geom.getCoordinates()[1].equals2D(((Geometry) rs.getObject(1)).getCoordinate(), 1E-12));
+        rs.close();
+        // The z is transformed with the x and y
+        rs = st.executeQuery("SELECT ST_Transform('SRID=2154;LINESTRING Z(584173 6594514 10, 625422 6767095 20)'" +
+                "::GEOMETRY, 4326)");
+        assertTrue(rs.next());
+        geom = (Geometry) rs.getObject(1);
+        assertEquals(1.4912184974864156, geom.getCoordinates()[0].x, 1E-9);
+        assertEquals(46.440636470911635, geom.getCoordinates()[0].y, 1E-9);
+        assertEquals(10, geom.getCoordinates()[0].getZ(), 1E-6);
+        assertEquals(20, geom.getCoordinates()[1].getZ(), 1E-6);
+        rs.close();
+        // A 2D geometry stays 2D
+        rs = st.executeQuery("SELECT ST_Transform('SRID=2154;POINT(584173 6594514)'::GEOMETRY, 4326)");
+        assertTrue(rs.next());
+        geom = (Geometry) rs.getObject(1);
+        assertEquals(1.4912184974864156, geom.getCoordinate().x, 1E-9);
+        assertTrue(Double.isNaN(geom.getCoordinate().getZ()));
+        rs.close();
+    }
+
+    @Test
+    public void testCRSCatalogRefresh() throws SQLException, Exception {
+        CRSCatalog catalog = CRSCatalog.get(connection);
+        assertSame(catalog, CRSCatalog.get(connection));
+        assertTrue(catalog.contains(4326));
+        assertFalse(catalog.contains(990001));
+        assertEquals("EPSG", catalog.getAuthorityName(4326));
+        assertEquals((2 * 6378137 + 6356752.314245179) / 3, catalog.getMeanRadius(4326), 1E-6);
+        // A new definition is visible as soon as the table is modified
+        st.execute("INSERT INTO SPATIAL_REF_SYS VALUES(990001, 'EPSG', 990001, '', " +
+                "'+proj=longlat +ellps=WGS84 +towgs84=0,0,0,0,0,0,0 +no_defs')");
+        try {
+            CRSCatalog updated = CRSCatalog.get(connection);
+            assertNotSame(catalog, updated);
+            assertTrue(updated.contains(990001));
+            ResultSet rs = st.executeQuery("SELECT ST_Transform('SRID=4326;POINT(2 50)'::GEOMETRY, 990001)");
+            assertTrue(rs.next());
+            assertGeometryBarelyEquals("SRID=990001;POINT(2 50)", rs.getObject(1));
+            rs.close();
+        } finally {
+            st.execute("DELETE FROM SPATIAL_REF_SYS WHERE SRID = 990001");
+        }
+        assertFalse(CRSCatalog.get(connection).contains(990001));
+    }
+
+    @Test
+    public void testCRSCatalogLiveQuery() throws Exception {
+        // A connection which is not an embedded H2 connection
+        Connection remote = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("isWrapperFor")) {
+                        return false;
+                    }
+                    return method.invoke(connection, args);
+                });
+        CRSCatalog catalog = CRSCatalog.get(remote);
+        assertNotSame(catalog, CRSCatalog.get(remote));
+        assertEquals("EPSG", catalog.getAuthorityName(4326));
+        assertEquals((2 * 6378137 + 6356752.314245179) / 3, catalog.getMeanRadius(4326), 1E-6);
+        assertFalse(catalog.contains(990002));
+        st.execute("INSERT INTO SPATIAL_REF_SYS VALUES(990002, 'EPSG', 990002, '', " +
+                "'+proj=longlat +ellps=WGS84 +towgs84=0,0,0,0,0,0,0 +no_defs')");
+        try {
+            CRSCatalog updated = CRSCatalog.get(remote);
+            assertTrue(updated.contains(990002));
+            assertTrue(updated.getSupportedCodes().contains(990002));
+            assertNotNull(updated.getCRS(990002));
+        } finally {
+            st.execute("DELETE FROM SPATIAL_REF_SYS WHERE SRID = 990002");
+        }
+        assertFalse(CRSCatalog.get(remote).contains(990002));
+    }
+
     //TODO : fix CTS projection
     @Disabled
     @Test
@@ -359,6 +359,72 @@ public class TopographyTest {
         }
     }
     
+    @Test
+    public void testST_TriangleContouringWorkers() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS TIN");
+            st.execute("CREATE TABLE TIN(pk INT PRIMARY KEY, THE_GEOM GEOMETRY(POLYGON Z))");
+            // 50x50 squares split in two triangles, more triangles than a batch, z = x + y
+            st.execute("INSERT INTO TIN SELECT X, CAST('POLYGONZ((' || MOD(X, 50) || ' ' || X / 50 || ' ' || (MOD(X, 50) + X / 50) || ', '" +
+                    " || (MOD(X, 50) + 1) || ' ' || X / 50 || ' ' || (MOD(X, 50) + X / 50 + 1) || ', '" +
+                    " || (MOD(X, 50) + 1) || ' ' || (X / 50 + 1) || ' ' || (MOD(X, 50) + X / 50 + 2) || ', '" +
+                    " || MOD(X, 50) || ' ' || X / 50 || ' ' || (MOD(X, 50) + X / 50) || '))' AS GEOMETRY) FROM SYSTEM_RANGE(0, 2499)");
+            st.execute("INSERT INTO TIN SELECT X + 2500, CAST('POLYGONZ((' || MOD(X, 50) || ' ' || X / 50 || ' ' || (MOD(X, 50) + X / 50) || ', '" +
+                    " || (MOD(X, 50) + 1) || ' ' || (X / 50 + 1) || ' ' || (MOD(X, 50) + X / 50 + 2) || ', '" +
+                    " || MOD(X, 50) || ' ' || (X / 50 + 1) || ' ' || (MOD(X, 50) + X / 50 + 1) || ', '" +
+                    " || MOD(X, 50) || ' ' || X / 50 || ' ' || (MOD(X, 50) + X / 50) || '))' AS GEOMETRY) FROM SYSTEM_RANGE(0, 2499)");
+            String levels = "DOUBLERANGE(10, 100, 10)";
+            ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM (" +
+                    "SELECT pk, idiso, ST_Normalize(the_geom) FROM ST_TriangleContouring('TIN', " + levels + ", 'workers=1')" +
+                    " EXCEPT SELECT pk, idiso, ST_Normalize(the_geom) FROM ST_TriangleContouring('TIN', " + levels +
+                    ", 'workers=3 ordered=false'))");
+            assertTrue(rs.next());
+            assertEquals(0, rs.getInt(1));
+            rs = st.executeQuery("SELECT COUNT(*) FROM ST_TriangleContouring('TIN', " + levels + ", 'workers=3 ordered=false')" +
+                    " UNION ALL SELECT COUNT(*) FROM ST_TriangleContouring('TIN', " + levels + ")");
+            assertTrue(rs.next());
+            int count = rs.getInt(1);
+            assertTrue(rs.next());
+            assertEquals(count, rs.getInt(1));
+            // The merged bands cover the same area
+            rs = st.executeQuery("SELECT SUM(ST_Area(the_geom)) FROM ST_TriangleContouring('TIN', " + levels + ", 'merge=true')" +
+                    " UNION ALL SELECT SUM(ST_Area(the_geom)) FROM ST_TriangleContouring('TIN', " + levels + ")");
+            assertTrue(rs.next());
+            double area = rs.getDouble(1);
+            assertTrue(rs.next());
+            assertEquals(rs.getDouble(1), area, 1e-6);
+        }
+    }
+
+    @Test
+    public void testST_TriangleContouringMerge() throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS TIN");
+            st.execute("CREATE TABLE TIN(pk INT PRIMARY KEY, THE_GEOM GEOMETRY(POLYGON Z))");
+            st.execute("INSERT INTO TIN VALUES (1, 'POLYGONZ((0 0 0, 10 0 0, 10 10 10, 0 0 0))'), " +
+                    "(2, 'POLYGONZ((0 0 0, 10 10 10, 0 10 10, 0 0 0))')");
+            ResultSet rs = st.executeQuery("SELECT * FROM ST_TriangleContouring('TIN', 2.5, 5, 7.5, 'merge=true')");
+            assertEquals(2, rs.getMetaData().getColumnCount());
+            for (int level = 0; level < 3; level++) {
+                assertTrue(rs.next());
+                assertEquals(level, rs.getInt("IDISO"));
+                Geometry band = (Geometry) rs.getObject(1);
+                assertEquals("Polygon", band.getGeometryType());
+                assertEquals(25, band.getArea(), 1e-9);
+            }
+            assertFalse(rs.next());
+            SQLException ex = assertThrows(SQLException.class, () ->
+                    st.executeQuery("SELECT * FROM ST_TriangleContouring('TIN', 2.5, 5, 'workers=0')"));
+            assertTrue(ex.getMessage().contains("The option workers must be greater than 0"), ex.getMessage());
+            ex = assertThrows(SQLException.class, () ->
+                    st.executeQuery("SELECT * FROM ST_TriangleContouring('TIN', 2.5, 5, 'merge=true unknown=1')"));
+            assertTrue(ex.getMessage().contains("Unknown option unknown"), ex.getMessage());
+            ex = assertThrows(SQLException.class, () ->
+                    st.executeQuery("SELECT * FROM ST_TriangleContouring('TIN', 2.5, 5, 'merge=true ordered')"));
+            assertTrue(ex.getMessage().contains("must be a key=value pair"), ex.getMessage());
+        }
+    }
+
     @Test
     public void testST_Drape1() throws SQLException {
         Statement st = connection.createStatement();
@@ -27,6 +27,7 @@ import org.h2gis.functions.factory.H2GISFunctions;
 import org.junit.jupiter.api.*;
 
 import java.sql.*;
+import java.util.ArrayList;
 
 import static org.h2gis.unitTest.GeometryAsserts.assertGeometryEquals;
 import static org.junit.jupiter.api.Assertions.*;
@@ -718,4 +719,40 @@ public class ST_GraphTest {
         }
     }
 
+    @Test
+    public void test_ST_Graph_InMemorySameAsTables() throws Exception {
+        st.execute("DROP TABLE IF EXISTS TEST, TEST_NODES, TEST_EDGES, REF_NODES, REF_EDGES");
+        st.execute("CREATE TABLE test(road GEOMETRY(LINESTRING Z), description VARCHAR, id INT AUTO_INCREMENT PRIMARY KEY)");
+        // Grid of roads, the end points are moved a little to be snapped together
+        st.execute("INSERT INTO test(road, description) SELECT ST_MakeLine(" +
+                "ST_MakePoint(MOD(X, 20) + MOD(X, 7) * 0.01, X / 20 + MOD(X, 3) * 0.01, MOD(X, 5)), " +
+                "ST_MakePoint(MOD(X, 20) + 1 - MOD(X, 4) * 0.01, X / 20 + MOD(X, 6) * 0.01, MOD(X, 11))), " +
+                "'road' || X FROM SYSTEM_RANGE(0, 399)");
+        st.execute("INSERT INTO test(road, description) SELECT ST_MakeLine(" +
+                "ST_MakePoint(MOD(X, 20) - MOD(X, 3) * 0.01, X / 20 + MOD(X, 7) * 0.01, MOD(X, 13)), " +
+                "ST_MakePoint(MOD(X, 20) + MOD(X, 5) * 0.01, X / 20 + 1 - MOD(X, 4) * 0.01, MOD(X, 3))), " +
+                "'road' || X FROM SYSTEM_RANGE(0, 399)");
+        ArrayList<String> columns = new ArrayList<>();
+        columns.add("description");
+        assertTrue(ST_Graph.createGraph(connection, "TEST", "road", 0.1, true, false, columns, false));
+        st.execute("ALTER TABLE TEST_NODES RENAME TO REF_NODES");
+        st.execute("ALTER TABLE TEST_EDGES RENAME TO REF_EDGES");
+        assertTrue(ST_Graph.createGraph(connection, "TEST", "road", 0.1, true, false, columns, true));
+        try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM TEST_NODES")) {
+            assertTrue(rs.next());
+            assertEquals(440, rs.getInt(1));
+        }
+        for (String table : new String[]{"NODES", "EDGES"}) {
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM (SELECT * FROM TEST_" + table +
+                    " EXCEPT SELECT * FROM REF_" + table + ") UNION ALL SELECT COUNT(*) FROM (SELECT * FROM REF_" +
+                    table + " EXCEPT SELECT * FROM TEST_" + table + ")")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+        st.execute("DROP TABLE REF_NODES, REF_EDGES");
+    }
+
 }
@@ -37,6 +37,7 @@ import java.sql.Statement;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Test class dedicated to {@link ST_Node}.
@@ -152,6 +153,85 @@ public class ST_NodeTest {
         assertNull(ST_Node.node(null));
     }
 
+    @Test
+    void st_nodeReversedDuplicateTest() throws SQLException {
+        ResultSet rs = st.executeQuery("SELECT ST_NumGeometries(ST_NODE('MULTILINESTRING ((0 0, 2 0), (2 0, 0 0), (1 -1, 1 1))'::GEOMETRY))");
+        assertTrue(rs.next());
+        assertEquals(4, rs.getInt(1));
+    }
+
+    @Test
+    void st_nodeTableTest() throws SQLException {
+        st.execute("DROP TABLE IF EXISTS TEST;");
+        st.execute("CREATE TABLE test(id INT PRIMARY KEY, the_geom GEOMETRY(LINESTRING));");
+        // 10 horizontal lines crossed by 10 vertical lines, some crossings are on the tile borders
+        st.execute("INSERT INTO test SELECT X, ST_MakeLine(ST_MakePoint(0, X - 1), ST_MakePoint(10, X - 1)) " +
+                "FROM SYSTEM_RANGE(1, 10)");
+        st.execute("INSERT INTO test SELECT X + 10, ST_MakeLine(ST_MakePoint(X - 0.5, -1), ST_MakePoint(X - 0.5, 10)) " +
+                "FROM SYSTEM_RANGE(1, 10)");
+        // The lines are read by tile with the spatial index, else in a single scan
+        for (boolean indexed : new boolean[]{false, true}) {
+            if (indexed) {
+                st.execute("CREATE SPATIAL INDEX ON test(the_geom)");
+            }
+            for (String tileSize : new String[]{"", ", 1.5", ", 4"}) {
+                ResultSet rs = st.executeQuery("SELECT COUNT(*), SUM(ST_Length(the_geom)), COUNT(DISTINCT id) " +
+                        "FROM ST_NodeTable('TEST'" + tileSize + ")");
+                assertTrue(rs.next());
+                assertEquals(220, rs.getInt(1));
+                assertEquals(210, rs.getDouble(2), 1e-9);
+                assertEquals(20, rs.getInt(3));
+                rs = st.executeQuery("SELECT COUNT(*) FROM ST_NodeTable('TEST'" + tileSize + ") WHERE id = 1");
+                assertTrue(rs.next());
+                assertEquals(11, rs.getInt(1));
+                // Same lines as ST_Node on the whole table
+                rs = st.executeQuery("SELECT COUNT(*) FROM (SELECT ST_Normalize(the_geom) FROM ST_NodeTable('TEST'"
+                        + tileSize + ") EXCEPT SELECT ST_Normalize(the_geom) FROM " +
+                        "ST_Explode('(SELECT ST_Node(ST_Accum(the_geom)) the_geom FROM test)'))");
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    void st_nodeTableBorderTest() throws SQLException {
+        st.execute("DROP TABLE IF EXISTS TEST;");
+        st.execute("CREATE TABLE test(id INT PRIMARY KEY, the_geom GEOMETRY(LINESTRING));");
+        // Oblique lines crossing on the tile borders and corners, the computed nodes are rounded
+        st.execute("INSERT INTO test SELECT X, ST_MakeLine(ST_MakePoint(0, X - 1), ST_MakePoint(6, X + 0.1)) " +
+                "FROM SYSTEM_RANGE(1, 6)");
+        st.execute("INSERT INTO test SELECT X + 6, ST_MakeLine(ST_MakePoint(0, X + 0.1), ST_MakePoint(6, X - 1)) " +
+                "FROM SYSTEM_RANGE(1, 6)");
+        st.execute("INSERT INTO test VALUES (13, 'LINESTRING (0 0, 6 6)'), (14, 'LINESTRING (0 6, 6 0)')");
+        for (boolean indexed : new boolean[]{false, true}) {
+            if (indexed) {
+                st.execute("CREATE SPATIAL INDEX ON test(the_geom)");
+            }
+            for (String tileSize : new String[]{", 0.5", ", 1", ", 1.5", ", 2", ", 3"}) {
+                // Same lines as ST_Node on the whole table
+                ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM (SELECT ST_Normalize(the_geom) FROM ST_NodeTable('TEST'"
+                        + tileSize + ") EXCEPT SELECT ST_Normalize(the_geom) FROM " +
+                        "ST_Explode('(SELECT ST_Node(ST_Accum(the_geom)) the_geom FROM test)'))");
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+                rs = st.executeQuery("SELECT (SELECT COUNT(*) FROM ST_NodeTable('TEST'" + tileSize + ")), " +
+                        "(SELECT ST_NumGeometries(ST_Node(ST_Accum(the_geom))) FROM test)");
+                assertTrue(rs.next());
+                assertEquals(rs.getInt(2), rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    void st_nodeTableEmptyTest() throws SQLException {
+        st.execute("DROP TABLE IF EXISTS TEST;");
+        st.execute("CREATE TABLE test(id INT PRIMARY KEY, the_geom GEOMETRY(LINESTRING));");
+        ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM ST_NodeTable('TEST')");
+        assertTrue(rs.next());
+        assertEquals(0, rs.getInt(1));
+    }
+
     private static void testMultiLineString3DEquality(MultiLineString expected, MultiLineString result){
         assertEquals(expected.getNumGeometries(), result.getNumGeometries());
         for(int i=0; i<expected.getNumGeometries(); i++){
@@ -405,6 +405,86 @@ public class IOMethodsTest {
         }
     }
 
+    @Test
+    public void testExportH2GISTableToPOSTGISCopy(TestInfo testInfo) throws SQLException {
+        String url = "jdbc:postgresql://localhost:5432/orbisgis_db";
+        Properties props = new Properties();
+        props.setProperty("user", "orbisgis");
+        props.setProperty("password", "orbisgis");
+        props.setProperty("url", url);
+        Connection con = null;
+        try {
+            DataSource ds = dataSourceFactory.createDataSource(props);
+            con = ds.getConnection();
+
+        } catch (SQLException e) {
+            log.warn("Cannot connect to the database to execute the test " + testInfo.getDisplayName());
+        }
+        if (con != null) {
+            st.execute("DROP TABLE IF EXISTS H2GIS_COPY");
+            st.execute("CREATE TABLE H2GIS_COPY(id INTEGER, code BIGINT, val DOUBLE PRECISION, name VARCHAR, " +
+                    "flag BOOLEAN, the_geom GEOMETRY(POINTZ, 4326))");
+            st.execute("INSERT INTO H2GIS_COPY SELECT X, X * 10000000000, X / 3.0, 'name_' || X, MOD(X, 2) = 0, " +
+                    "ST_SetSRID(ST_MakePoint(X, X, X), 4326) FROM SYSTEM_RANGE(1, 10000)");
+            st.execute("INSERT INTO H2GIS_COPY VALUES(0, NULL, NULL, NULL, NULL, NULL)");
+            IOMethods.exportToDataBase(connection, "H2GIS_COPY", con, "h2gis_copy", -1, 100);
+            Statement postgisST = con.createStatement();
+            ResultSet res = postgisST.executeQuery("SELECT COUNT(*), SUM(code), ST_SRID(ST_Collect(the_geom)) " +
+                    "FROM h2gis_copy");
+            assertTrue(res.next());
+            assertEquals(10001, res.getInt(1));
+            assertEquals(500050000000000000L, res.getLong(2));
+            assertEquals(4326, res.getInt(3));
+            res.close();
+            res = postgisST.executeQuery("SELECT * FROM h2gis_copy WHERE id IN (0, 3) ORDER BY id");
+            assertTrue(res.next());
+            assertNull(res.getObject("code"));
+            assertNull(res.getObject("the_geom"));
+            assertTrue(res.next());
+            assertEquals(30000000000L, res.getLong("code"));
+            assertEquals(1.0, res.getDouble("val"), 1e-12);
+            assertEquals("name_3", res.getString("name"));
+            assertFalse(res.getBoolean("flag"));
+            assertGeometryEquals("SRID=4326;POINTZ (3 3 3)", (Geometry) res.getObject("the_geom"));
+            res.close();
+            postgisST.execute("DROP TABLE h2gis_copy");
+        }
+    }
+
+    @Test
+    public void testExportH2GISTableToPOSTGISNullFirstGeometry(TestInfo testInfo) throws SQLException {
+        String url = "jdbc:postgresql://localhost:5432/orbisgis_db";
+        Properties props = new Properties();
+        props.setProperty("user", "orbisgis");
+        props.setProperty("password", "orbisgis");
+        props.setProperty("url", url);
+        Connection con = null;
+        try {
+            DataSource ds = dataSourceFactory.createDataSource(props);
+            con = ds.getConnection();
+
+        } catch (SQLException e) {
+            log.warn("Cannot connect to the database to execute the test " + testInfo.getDisplayName());
+        }
+        if (con != null) {
+            st.execute("DROP TABLE IF EXISTS H2GIS_NULL_FIRST");
+            st.execute("CREATE TABLE H2GIS_NULL_FIRST(id INTEGER, the_geom GEOMETRY, other_geom GEOMETRY)");
+            st.execute("INSERT INTO H2GIS_NULL_FIRST VALUES(1, NULL, 'SRID=4326;POINT (1 1)'), " +
+                    "(2, 'SRID=2154;POINT (2 2)', NULL), (3, 'SRID=2154;POINT (3 3)', 'SRID=2154;POINT (3 3)')");
+            IOMethods.exportToDataBase(connection, "H2GIS_NULL_FIRST", con, "h2gis_null_first", -1, 100);
+            Statement postgisST = con.createStatement();
+            // The SRID comes from the first non-null geometry, a column with mixed SRID is left unconstrained
+            ResultSet res = postgisST.executeQuery("SELECT Find_SRID('public', 'h2gis_null_first', 'the_geom'), " +
+                    "Find_SRID('public', 'h2gis_null_first', 'other_geom')");
+            assertTrue(res.next());
+            assertEquals(2154, res.getInt(1));
+            assertEquals(0, res.getInt(2));
+            res.close();
+            postgisST.execute("DROP TABLE h2gis_null_first");
+            st.execute("DROP TABLE H2GIS_NULL_FIRST");
+        }
+    }
+
     @Test
     public void test_linkedFile() throws Exception {
         IOMethods ioMethods = new IOMethods();
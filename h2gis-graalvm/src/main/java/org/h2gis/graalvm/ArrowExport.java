@@ -0,0 +1,566 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.graalvm;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Write a batch of rows of a JDBC {@link ResultSet} as an Arrow record batch, using the
+ * <a href="https://arrow.apache.org/docs/format/CDataInterface.html">Arrow C Data Interface</a>.
+ * <p>
+ * The values are written column by column directly into native buffers, which are handed over to
+ * the consumer without any copy. The batch is a struct array with one child per column:
+ * <ul>
+ *     <li>TINYINT, SMALLINT, INTEGER, BIGINT → int64 ({@code l})</li>
+ *     <li>REAL, FLOAT, DOUBLE → float64 ({@code g})</li>
+ *     <li>DECIMAL, NUMERIC → decimal128 ({@code d:p,s}) if the precision is at most 38 digits, else utf8 string
+ *     ({@code u}) to keep the exact value</li>
+ *     <li>BOOLEAN → boolean ({@code b})</li>
+ *     <li>GEOMETRY → binary with the EWKB of the geometry ({@code z})</li>
+ *     <li>BINARY, VARBINARY → binary ({@code z})</li>
+ *     <li>Other types → utf8 string ({@code u})</li>
+ * </ul>
+ * The structures are read and written with explicit offsets (64-bit ABI). All the memory referenced
+ * by a structure is allocated by the given {@link ArrowMemory}, the C library in the native image, so the
+ * release callbacks free it with the C library. The native callbacks of {@code GraalArrowInterface} call
+ * {@link #releaseSchema} and {@link #releaseArray}.
+ *
+ * @author Maël PHILIPPE, CNRS
+ * @author Erwan BOCHER, CNRS
+ */
+public final class ArrowExport {
+
+    /**
+     * Number of rows of a batch when the requested size is not positive
+     */
+    public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+
+    /** Size of struct ArrowSchema */
+    static final int SCHEMA_SIZE = 72;
+    static final int SCHEMA_FORMAT = 0;
+    static final int SCHEMA_NAME = 8;
+    static final int SCHEMA_METADATA = 16;
+    static final int SCHEMA_FLAGS = 24;
+    static final int SCHEMA_N_CHILDREN = 32;
+    static final int SCHEMA_CHILDREN = 40;
+    static final int SCHEMA_DICTIONARY = 48;
+    static final int SCHEMA_RELEASE = 56;
+    static final int SCHEMA_PRIVATE_DATA = 64;
+
+    /** Size of struct ArrowArray */
+    static final int ARRAY_SIZE = 80;
+    static final int ARRAY_LENGTH = 0;
+    static final int ARRAY_NULL_COUNT = 8;
+    static final int ARRAY_OFFSET = 16;
+    static final int ARRAY_N_BUFFERS = 24;
+    static final int ARRAY_N_CHILDREN = 32;
+    static final int ARRAY_BUFFERS = 40;
+    static final int ARRAY_CHILDREN = 48;
+    static final int ARRAY_DICTIONARY = 56;
+    static final int ARRAY_RELEASE = 64;
+    static final int ARRAY_PRIVATE_DATA = 72;
+
+    /** ArrowSchema flag, the field is nullable */
+    static final long FLAG_NULLABLE = 2;
+
+    private ArrowExport() {
+    }
+
+    /**
+     * Read at most {@code batchSize} rows from the result set and write them into the given Arrow structures.
+     * The structures are allocated by the caller, they are filled only if no error occurs and must then be
+     * released by the consumer through their release callback.
+     *
+     * @param rs            result set positioned before the first row of the batch
+     * @param batchSize     maximum number of rows
+     * @param memory        allocator of the buffers, it must match the release callbacks
+     * @param schema        struct ArrowSchema* to fill, or 0 to skip the schema
+     * @param array         struct ArrowArray* to fill
+     * @param releaseSchema release callback of the schemas
+     * @param releaseArray  release callback of the arrays
+     * @return the number of rows of the batch, 0 when the result set is exhausted
+     * @throws SQLException if a value cannot be read
+     */
+    static int fetch(ResultSet rs, int batchSize, ArrowMemory memory, long schema, long array,
+                     long releaseSchema, long releaseArray) throws SQLException {
+        if (batchSize <= 0) {
+            batchSize = DEFAULT_BATCH_SIZE;
+        }
+        ResultSetMetaData meta = rs.getMetaData();
+        int columnCount = meta.getColumnCount();
+        ColumnWriter[] writers = new ColumnWriter[columnCount];
+        try {
+            for (int i = 0; i < columnCount; i++) {
+                writers[i] = ColumnWriter.create(memory, meta, i + 1);
+            }
+            int rowCount = 0;
+            while (rowCount < batchSize && rs.next()) {
+                for (int i = 0; i < columnCount; i++) {
+                    writers[i].write(rs, rowCount);
+                }
+                rowCount++;
+            }
+            if (schema != 0) {
+                writeSchema(memory, meta, writers, schema, releaseSchema);
+            }
+            try {
+                writeArray(memory, writers, rowCount, array, releaseArray);
+            } catch (RuntimeException | OutOfMemoryError e) {
+                if (schema != 0) {
+                    releaseSchema(memory, schema);
+                }
+                throw e;
+            }
+            return rowCount;
+        } catch (SQLException | RuntimeException | OutOfMemoryError e) {
+            for (ColumnWriter writer : writers) {
+                if (writer != null) {
+                    writer.free();
+                }
+            }
+            throw e;
+        }
+    }
+
+    private static void writeSchema(ArrowMemory memory, ResultSetMetaData meta, ColumnWriter[] writers,
+                                    long schema, long release) throws SQLException {
+        long children = calloc(memory, 8L * writers.length);
+        long format = 0;
+        long name = 0;
+        try {
+            for (int i = 0; i < writers.length; i++) {
+                long child = calloc(memory, SCHEMA_SIZE);
+                memory.writeLong(children + i * 8L, child);
+                memory.writeLong(child + SCHEMA_FORMAT, toNativeString(memory, writers[i].format));
+                memory.writeLong(child + SCHEMA_NAME, toNativeString(memory, meta.getColumnLabel(i + 1)));
+                memory.writeLong(child + SCHEMA_FLAGS, FLAG_NULLABLE);
+                memory.writeLong(child + SCHEMA_RELEASE, release);
+            }
+            format = toNativeString(memory, "+s");
+            name = toNativeString(memory, "");
+        } catch (SQLException | RuntimeException | OutOfMemoryError e) {
+            // The children are zeroed until they are allocated
+            for (int i = 0; i < writers.length; i++) {
+                long child = memory.readLong(children + i * 8L);
+                if (child != 0) {
+                    memory.free(memory.readLong(child + SCHEMA_FORMAT));
+                    memory.free(memory.readLong(child + SCHEMA_NAME));
+                    memory.free(child);
+                }
+            }
+            memory.free(children);
+            memory.free(format);
+            throw e;
+        }
+        memory.writeLong(schema + SCHEMA_FORMAT, format);
+        memory.writeLong(schema + SCHEMA_NAME, name);
+        memory.writeLong(schema + SCHEMA_METADATA, 0);
+        memory.writeLong(schema + SCHEMA_FLAGS, 0);
+        memory.writeLong(schema + SCHEMA_N_CHILDREN, writers.length);
+        memory.writeLong(schema + SCHEMA_CHILDREN, children);
+        memory.writeLong(schema + SCHEMA_DICTIONARY, 0);
+        memory.writeLong(schema + SCHEMA_PRIVATE_DATA, 0);
+        memory.writeLong(schema + SCHEMA_RELEASE, release);
+    }
+
+    private static void writeArray(ArrowMemory memory, ColumnWriter[] writers, int rowCount, long array,
+                                   long release) {
+        long children = calloc(memory, 8L * writers.length);
+        long buffers;
+        try {
+            // The struct array has only a validity buffer, which is omitted as it has no null
+            buffers = calloc(memory, 8);
+        } catch (OutOfMemoryError e) {
+            memory.free(children);
+            throw e;
+        }
+        for (int i = 0; i < writers.length; i++) {
+            try {
+                memory.writeLong(children + i * 8L, writers[i].toArray(rowCount, release));
+            } catch (RuntimeException | OutOfMemoryError e) {
+                for (int j = 0; j < i; j++) {
+                    long child = memory.readLong(children + j * 8L);
+                    releaseArray(memory, child);
+                    memory.free(child);
+                }
+                memory.free(children);
+                memory.free(buffers);
+                throw e;
+            }
+        }
+        memory.writeLong(array + ARRAY_LENGTH, rowCount);
+        memory.writeLong(array + ARRAY_NULL_COUNT, 0);
+        memory.writeLong(array + ARRAY_OFFSET, 0);
+        memory.writeLong(array + ARRAY_N_BUFFERS, 1);
+        memory.writeLong(array + ARRAY_N_CHILDREN, writers.length);
+        memory.writeLong(array + ARRAY_BUFFERS, buffers);
+        memory.writeLong(array + ARRAY_CHILDREN, children);
+        memory.writeLong(array + ARRAY_DICTIONARY, 0);
+        memory.writeLong(array + ARRAY_PRIVATE_DATA, 0);
+        memory.writeLong(array + ARRAY_RELEASE, release);
+    }
+
+    /**
+     * Free the strings and the children of a schema and mark it as released
+     *
+     * @param memory allocator of the schema
+     * @param schema struct ArrowSchema*
+     */
+    static void releaseSchema(ArrowMemory memory, long schema) {
+        memory.free(memory.readLong(schema + SCHEMA_FORMAT));
+        memory.free(memory.readLong(schema + SCHEMA_NAME));
+        memory.free(memory.readLong(schema + SCHEMA_METADATA));
+        long children = memory.readLong(schema + SCHEMA_CHILDREN);
+        long childCount = memory.readLong(schema + SCHEMA_N_CHILDREN);
+        for (int i = 0; i < childCount; i++) {
+            long child = memory.readLong(children + i * 8L);
+            // A child may have been moved and released by the consumer
+            if (memory.readLong(child + SCHEMA_RELEASE) != 0) {
+                releaseSchema(memory, child);
+            }
+            memory.free(child);
+        }
+        memory.free(children);
+        memory.writeLong(schema + SCHEMA_RELEASE, 0);
+    }
+
+    /**
+     * Free the buffers and the children of an array and mark it as released
+     *
+     * @param memory allocator of the array
+     * @param array  struct ArrowArray*
+     */
+    static void releaseArray(ArrowMemory memory, long array) {
+        long buffers = memory.readLong(array + ARRAY_BUFFERS);
+        long bufferCount = memory.readLong(array + ARRAY_N_BUFFERS);
+        for (int i = 0; i < bufferCount; i++) {
+            memory.free(memory.readLong(buffers + i * 8L));
+        }
+        memory.free(buffers);
+        long children = memory.readLong(array + ARRAY_CHILDREN);
+        long childCount = memory.readLong(array + ARRAY_N_CHILDREN);
+        for (int i = 0; i < childCount; i++) {
+            long child = memory.readLong(children + i * 8L);
+            if (memory.readLong(child + ARRAY_RELEASE) != 0) {
+                releaseArray(memory, child);
+            }
+            memory.free(child);
+        }
+        memory.free(children);
+        memory.writeLong(array + ARRAY_RELEASE, 0);
+    }
+
+    private static long calloc(ArrowMemory memory, long size) {
+        long address = memory.calloc(size);
+        if (address == 0) {
+            throw new OutOfMemoryError("Cannot allocate " + size + " bytes of native memory");
+        }
+        return address;
+    }
+
+    private static long toNativeString(ArrowMemory memory, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // calloc writes the terminating NUL
+        long address = calloc(memory, bytes.length + 1);
+        memory.writeBytes(address, bytes);
+        return address;
+    }
+
+    /**
+     * Growable native buffer
+     */
+    private static final class NativeBuffer {
+        private final ArrowMemory memory;
+        private long address = 0;
+        private long capacity;
+        private long size;
+
+        NativeBuffer(ArrowMemory memory) {
+            this.memory = memory;
+        }
+
+        void reserve(long required) {
+            if (required > capacity) {
+                long newCapacity = Math.max(required, Math.max(64, capacity * 2));
+                long newAddress = memory.realloc(address, newCapacity);
+                if (newAddress == 0) {
+                    throw new OutOfMemoryError("Cannot allocate " + newCapacity + " bytes of native memory");
+                }
+                address = newAddress;
+                capacity = newCapacity;
+            }
+        }
+
+        void writeLong(long value) {
+            reserve(size + 8);
+            memory.writeLong(address + size, value);
+            size += 8;
+        }
+
+        void writeDouble(double value) {
+            reserve(size + 8);
+            memory.writeDouble(address + size, value);
+            size += 8;
+        }
+
+        /**
+         * Write a decimal128 value, 16 bytes little endian two's complement
+         */
+        void writeDecimal128(BigInteger unscaled) {
+            if (unscaled.bitLength() > 127) {
+                throw new IllegalStateException("The decimal value " + unscaled + " exceeds 128 bits");
+            }
+            writeLong(unscaled.longValue());
+            writeLong(unscaled.shiftRight(64).longValue());
+        }
+
+        void writeInt(int value) {
+            reserve(size + 4);
+            memory.writeInt(address + size, value);
+            size += 4;
+        }
+
+        void writeBytes(byte[] value) {
+            reserve(size + value.length);
+            memory.writeBytes(address + size, value);
+            size += value.length;
+        }
+
+        /**
+         * Set or clear a bit, the bytes are cleared when they are reached
+         */
+        void writeBit(int index, boolean value) {
+            long byteIndex = index >>> 3;
+            if ((index & 7) == 0) {
+                reserve(byteIndex + 1);
+                memory.writeByte(address + byteIndex, (byte) 0);
+                size = byteIndex + 1;
+            }
+            if (value) {
+                byte current = memory.readByte(address + byteIndex);
+                memory.writeByte(address + byteIndex, (byte) (current | (1 << (index & 7))));
+            }
+        }
+
+        /**
+         * @return The native memory, the ownership is transferred to the caller
+         */
+        long detach() {
+            long result = address;
+            address = 0;
+            capacity = 0;
+            size = 0;
+            return result;
+        }
+
+        void free() {
+            memory.free(detach());
+        }
+    }
+
+    /**
+     * Accumulate the values of a column into Arrow buffers
+     */
+    private static final class ColumnWriter {
+        private static final int INT64 = 0;
+        private static final int FLOAT64 = 1;
+        private static final int BOOLEAN = 2;
+        private static final int BINARY = 3;
+        private static final int UTF8 = 4;
+        private static final int DECIMAL128 = 5;
+        /**
+         * Largest number of digits of a decimal128 value
+         */
+        private static final int DECIMAL128_MAX_PRECISION = 38;
+
+        private final ArrowMemory memory;
+        private final int column;
+        private final int kind;
+        private final String format;
+        private final int scale;
+        private final NativeBuffer validity;
+        private final NativeBuffer offsets;
+        private final NativeBuffer values;
+        private long nullCount = 0;
+
+        private ColumnWriter(ArrowMemory memory, int column, int kind, String format) {
+            this(memory, column, kind, format, 0);
+        }
+
+        private ColumnWriter(ArrowMemory memory, int column, int kind, String format, int scale) {
+            this.memory = memory;
+            this.column = column;
+            this.kind = kind;
+            this.format = format;
+            this.scale = scale;
+            validity = new NativeBuffer(memory);
+            offsets = new NativeBuffer(memory);
+            values = new NativeBuffer(memory);
+            if (kind == BINARY || kind == UTF8) {
+                offsets.writeInt(0);
+            }
+        }
+
+        static ColumnWriter create(ArrowMemory memory, ResultSetMetaData meta, int column) throws SQLException {
+            String typeName = meta.getColumnTypeName(column).toLowerCase();
+            if (typeName.startsWith("geometry")) {
+                return new ColumnWriter(memory, column, BINARY, "z");
+            }
+            switch (meta.getColumnType(column)) {
+                case Types.TINYINT:
+                case Types.SMALLINT:
+                case Types.INTEGER:
+                case Types.BIGINT:
+                    return new ColumnWriter(memory, column, INT64, "l");
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    return new ColumnWriter(memory, column, FLOAT64, "g");
+                case Types.DECIMAL:
+                case Types.NUMERIC:
+                    int precision = meta.getPrecision(column);
+                    int scale = meta.getScale(column);
+                    if (precision > 0 && precision <= DECIMAL128_MAX_PRECISION && scale >= 0 && scale <= precision) {
+                        return new ColumnWriter(memory, column, DECIMAL128, "d:" + precision + "," + scale, scale);
+                    }
+                    return new ColumnWriter(memory, column, UTF8, "u");
+                case Types.BOOLEAN:
+                case Types.BIT:
+                    return new ColumnWriter(memory, column, BOOLEAN, "b");
+                case Types.BINARY:
+                case Types.VARBINARY:
+                case Types.LONGVARBINARY:
+                case Types.BLOB:
+                    return new ColumnWriter(memory, column, BINARY, "z");
+                default:
+                    return new ColumnWriter(memory, column, UTF8, "u");
+            }
+        }
+
+        /**
+         * Append the value of the current row
+         */
+        void write(ResultSet rs, int row) throws SQLException {
+            boolean valid;
+            switch (kind) {
+                case INT64:
+                    values.writeLong(rs.getLong(column));
+                    valid = !rs.wasNull();
+                    break;
+                case FLOAT64:
+                    values.writeDouble(rs.getDouble(column));
+                    valid = !rs.wasNull();
+                    break;
+                case DECIMAL128:
+                    BigDecimal decimal = rs.getBigDecimal(column);
+                    valid = decimal != null;
+                    values.writeDecimal128(valid ? decimal.setScale(scale, RoundingMode.HALF_UP).unscaledValue()
+                            : BigInteger.ZERO);
+                    break;
+                case BOOLEAN:
+                    boolean value = rs.getBoolean(column);
+                    valid = !rs.wasNull();
+                    values.writeBit(row, value);
+                    break;
+                default:
+                    // For a geometry H2 returns the EWKB without decoding the geometry
+                    byte[] bytes = kind == BINARY ? rs.getBytes(column) : toUtf8(rs.getString(column));
+                    valid = bytes != null;
+                    if (valid) {
+                        values.writeBytes(bytes);
+                    }
+                    if (values.size > Integer.MAX_VALUE) {
+                        throw new IllegalStateException("The values of the column " + column +
+                                " exceed 2GB, use a smaller batch size");
+                    }
+                    offsets.writeInt((int) values.size);
+                    break;
+            }
+            if (!valid) {
+                nullCount++;
+            }
+            validity.writeBit(row, valid);
+        }
+
+        private static byte[] toUtf8(String value) {
+            return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Move the buffers into a new ArrowArray
+         *
+         * @param rowCount number of rows
+         * @param release  release callback
+         * @return struct ArrowArray*
+         */
+        long toArray(int rowCount, long release) {
+            boolean variableSize = kind == BINARY || kind == UTF8;
+            int bufferCount = variableSize ? 3 : 2;
+            // Allocate first, the buffers stay owned by the writer on failure
+            long buffers = calloc(memory, 8L * bufferCount);
+            long array = 0;
+            try {
+                array = calloc(memory, ARRAY_SIZE);
+                // The data buffer must not be null even if all the values are empty
+                values.reserve(1);
+            } catch (OutOfMemoryError e) {
+                memory.free(array);
+                memory.free(buffers);
+                throw e;
+            }
+            if (nullCount == 0) {
+                // The validity bitmap may be omitted
+                validity.free();
+            }
+            memory.writeLong(buffers, validity.detach());
+            if (variableSize) {
+                memory.writeLong(buffers + 8, offsets.detach());
+                memory.writeLong(buffers + 16, values.detach());
+            } else {
+                memory.writeLong(buffers + 8, values.detach());
+            }
+            memory.writeLong(array + ARRAY_LENGTH, rowCount);
+            memory.writeLong(array + ARRAY_NULL_COUNT, nullCount);
+            memory.writeLong(array + ARRAY_OFFSET, 0);
+            memory.writeLong(array + ARRAY_N_BUFFERS, bufferCount);
+            memory.writeLong(array + ARRAY_N_CHILDREN, 0);
+            memory.writeLong(array + ARRAY_BUFFERS, buffers);
+            memory.writeLong(array + ARRAY_CHILDREN, 0);
+            memory.writeLong(array + ARRAY_DICTIONARY, 0);
+            memory.writeLong(array + ARRAY_PRIVATE_DATA, 0);
+            memory.writeLong(array + ARRAY_RELEASE, release);
+            return array;
+        }
+
+        void free() {
+            validity.free();
+            offsets.free();
+            values.free();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.graalvm;
+
+/**
+ * Memory written by {@link ArrowExport}. The addresses are raw native pointers, 0 is the null pointer.
+ * The native image uses {@link NativeArrowMemory}, the tests use a heap implementation.
+ *
+ * @author Maël PHILIPPE, CNRS
+ * @author Erwan BOCHER, CNRS
+ */
+interface ArrowMemory {
+
+    /**
+     * @param size number of bytes
+     * @return the address of the zeroed memory, 0 if it cannot be allocated
+     */
+    long calloc(long size);
+
+    /**
+     * @param address memory to resize, may be 0
+     * @param size    new number of bytes
+     * @return the new address, 0 if the memory cannot be allocated (the memory at address is then unchanged)
+     */
+    long realloc(long address, long size);
+
+    /**
+     * @param address memory to free, may be 0
+     */
+    void free(long address);
+
+    long readLong(long address);
+
+    void writeLong(long address, long value);
+
+    void writeInt(long address, int value);
+
+    void writeDouble(long address, double value);
+
+    byte readByte(long address);
+
+    void writeByte(long address, byte value);
+
+    void writeBytes(long address, byte[] value);
+}
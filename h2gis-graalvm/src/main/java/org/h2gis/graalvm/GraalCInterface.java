@@ -786,13 +786,23 @@ public class GraalCInterface {
     }
 
 
+    /**
+     * Returns the result set of a query.
+     *
+     * @param queryHandle handle representing the query result set
+     * @return the result set, or null if the handle is unknown
+     */
+    static ResultSet getResultSet(long queryHandle) {
+        return results.get(queryHandle);
+    }
+
     /**
      * Logs an error and sets it in the thread-local error variable.
      *
      * @param message the error message to log
      * @param e       the exception that was thrown, or null
      */
-    private static void logAndSetError(String message, Exception e) {
+    static void logAndSetError(String message, Exception e) {
         if (e != null) {
             LOGGER.log(Level.SEVERE, message, e);
             lastError.set(message + ": " + e.getMessage());
@@ -21,14 +21,30 @@ package org.h2gis.graalvm;
 
 import org.graalvm.nativeimage.hosted.Feature;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author Maël PHILIPPE, CNRS
  * @author Erwan BOCHER, CNRS
  * Class needed to expose the C API as it is not used in any other class.
  */
 public class GraalCInterfaceEntryPointFeature implements Feature {
+    @Override
+    public List<Class<? extends Feature>> getRequiredFeatures() {
+        // The Arrow export is compiled only with JDK 22 or later, its feature registers the upcalls of the
+        // release callbacks
+        try {
+            return Collections.singletonList(
+                    Class.forName("org.h2gis.graalvm.GraalArrowFeature").asSubclass(Feature.class));
+        } catch (ClassNotFoundException e) {
+            return Collections.emptyList();
+        }
+    }
+
     @Override
     public void beforeAnalysis(Feature.BeforeAnalysisAccess access) {
         access.findClassByName("org.h2gis.graalvm.GraalCInterface");
+        access.findClassByName("org.h2gis.graalvm.GraalArrowInterface");
     }
 }
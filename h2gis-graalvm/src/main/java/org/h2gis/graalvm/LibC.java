@@ -0,0 +1,47 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.graalvm;
+
+import org.graalvm.nativeimage.c.function.CFunction;
+import org.graalvm.word.PointerBase;
+import org.graalvm.word.UnsignedWord;
+
+/**
+ * Memory functions of the C library. The Arrow buffers are handed over to the consumer, so they are allocated
+ * and freed with the C library, not with the allocator of the image.
+ *
+ * @author Maël PHILIPPE, CNRS
+ * @author Erwan BOCHER, CNRS
+ */
+final class LibC {
+
+    private LibC() {
+    }
+
+    @CFunction(value = "calloc", transition = CFunction.Transition.NO_TRANSITION)
+    static native <T extends PointerBase> T calloc(UnsignedWord count, UnsignedWord size);
+
+    @CFunction(value = "realloc", transition = CFunction.Transition.NO_TRANSITION)
+    static native <T extends PointerBase> T realloc(PointerBase pointer, UnsignedWord size);
+
+    @CFunction(value = "free", transition = CFunction.Transition.NO_TRANSITION)
+    static native void free(PointerBase pointer);
+}
@@ -0,0 +1,95 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.graalvm;
+
+import org.graalvm.nativeimage.c.type.CTypeConversion;
+import org.graalvm.word.Pointer;
+import org.graalvm.word.WordFactory;
+
+/**
+ * Native memory allocated with the C library, see {@link LibC}
+ *
+ * @author Maël PHILIPPE, CNRS
+ * @author Erwan BOCHER, CNRS
+ */
+final class NativeArrowMemory implements ArrowMemory {
+
+    static final NativeArrowMemory INSTANCE = new NativeArrowMemory();
+
+    private NativeArrowMemory() {
+    }
+
+    private static Pointer pointer(long address) {
+        return WordFactory.pointer(address);
+    }
+
+    @Override
+    public long calloc(long size) {
+        Pointer pointer = LibC.calloc(WordFactory.unsigned(1), WordFactory.unsigned(size));
+        return pointer.rawValue();
+    }
+
+    @Override
+    public long realloc(long address, long size) {
+        Pointer pointer = LibC.realloc(pointer(address), WordFactory.unsigned(size));
+        return pointer.rawValue();
+    }
+
+    @Override
+    public void free(long address) {
+        LibC.free(pointer(address));
+    }
+
+    @Override
+    public long readLong(long address) {
+        return pointer(address).readLong(0);
+    }
+
+    @Override
+    public void writeLong(long address, long value) {
+        pointer(address).writeLong(0, value);
+    }
+
+    @Override
+    public void writeInt(long address, int value) {
+        pointer(address).writeInt(0, value);
+    }
+
+    @Override
+    public void writeDouble(long address, double value) {
+        pointer(address).writeDouble(0, value);
+    }
+
+    @Override
+    public byte readByte(long address) {
+        return pointer(address).readByte(0);
+    }
+
+    @Override
+    public void writeByte(long address, byte value) {
+        pointer(address).writeByte(0, value);
+    }
+
+    @Override
+    public void writeBytes(long address, byte[] value) {
+        CTypeConversion.asByteBuffer(pointer(address), value.length).put(value);
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.graalvm;
+
+import org.graalvm.nativeimage.IsolateThread;
+import org.graalvm.nativeimage.c.function.CEntryPoint;
+import org.graalvm.word.WordBase;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.sql.ResultSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * C entry point exporting query results with the
+ * <a href="https://arrow.apache.org/docs/format/CDataInterface.html">Arrow C Data Interface</a>.
+ * <p>
+ * The release callbacks of the Arrow structures are called by the consumer from any native thread,
+ * without an isolate thread. They are upcall stubs of the Foreign Function and Memory API, which attach the
+ * calling thread to the isolate before running the Java code, so they only use public APIs. The buffers are
+ * allocated with the C library, see {@link NativeArrowMemory}. This class is compiled with JDK 22 or later,
+ * the upcalls are registered by {@link GraalCInterfaceEntryPointFeature}.
+ *
+ * @author Maël PHILIPPE, CNRS
+ * @author Erwan BOCHER, CNRS
+ */
+public final class GraalArrowInterface {
+
+    /**
+     * Signature of the release callbacks: {@code void release(struct Arrow* self)}
+     */
+    static final FunctionDescriptor RELEASE_DESCRIPTOR = FunctionDescriptor.ofVoid(ValueLayout.ADDRESS);
+
+    private static final Logger LOGGER = Logger.getLogger(GraalArrowInterface.class.getName());
+
+    private GraalArrowInterface() {
+    }
+
+    /**
+     * The upcall stubs are created at run time, on the first fetch, and live as long as the isolate
+     */
+    private static final class ReleaseCallbacks {
+        static final MemorySegment RELEASE_SCHEMA = upcall("releaseSchema");
+        static final MemorySegment RELEASE_ARRAY = upcall("releaseArray");
+
+        private static MemorySegment upcall(String methodName) {
+            try {
+                return Linker.nativeLinker().upcallStub(MethodHandles.lookup().findStatic(GraalArrowInterface.class,
+                                methodName, MethodType.methodType(void.class, MemorySegment.class)),
+                        RELEASE_DESCRIPTOR, Arena.global());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot create the Arrow release callback " + methodName, e);
+            }
+        }
+    }
+
+    /**
+     * Fetches a batch of rows from the result set of a query as an Arrow record batch.
+     * <p>
+     * The column values are written directly into native buffers which are owned by the
+     * caller once the function returns: the structures must be released with their
+     * {@code release} callback, not with h2gis_free_result_buffer.
+     * The batch is a struct array with one child per column, see {@link ArrowExport}
+     * for the mapping of the SQL types.
+     *
+     * @param thread      the current Graal Isolate thread
+     * @param queryHandle handle representing the query result set
+     * @param batchSize   the maximum number of rows to fetch, a default size is used if not positive
+     * @param schema      pointer to a caller allocated struct ArrowSchema, or 0 to skip the schema
+     * @param array       pointer to a caller allocated struct ArrowArray
+     * @return the number of rows of the batch, 0 if there is no more rows, -1 on error
+     */
+    @CEntryPoint(name = "h2gis_fetch_arrow")
+    public static int h2gisFetchArrow(IsolateThread thread, long queryHandle, int batchSize,
+                                      WordBase schema, WordBase array) {
+        if (array.rawValue() == 0L) {
+            GraalCInterface.logAndSetError("Null pointer received for the Arrow array", null);
+            return -1;
+        }
+        ResultSet rs = GraalCInterface.getResultSet(queryHandle);
+        if (rs == null) {
+            GraalCInterface.logAndSetError("Invalid query handle: " + queryHandle, null);
+            return -1;
+        }
+        try {
+            return ArrowExport.fetch(rs, batchSize, NativeArrowMemory.INSTANCE, schema.rawValue(),
+                    array.rawValue(), ReleaseCallbacks.RELEASE_SCHEMA.address(),
+                    ReleaseCallbacks.RELEASE_ARRAY.address());
+        } catch (Exception e) {
+            GraalCInterface.logAndSetError("Failed to fetch the Arrow batch", e);
+            return -1;
+        } catch (OutOfMemoryError e) {
+            GraalCInterface.logAndSetError("Failed to fetch the Arrow batch: " + e.getMessage(), null);
+            return -1;
+        }
+    }
+
+    /**
+     * Release callback of an ArrowSchema, free the strings and the children and mark the schema as released.
+     *
+     * @param schema struct ArrowSchema*
+     */
+    static void releaseSchema(MemorySegment schema) {
+        try {
+            ArrowExport.releaseSchema(NativeArrowMemory.INSTANCE, schema.address());
+        } catch (Throwable e) {
+            // An exception thrown by an upcall stops the process
+            LOGGER.log(Level.SEVERE, "Failed to release the Arrow schema", e);
+        }
+    }
+
+    /**
+     * Release callback of an ArrowArray, free the buffers and the children and mark the array as released.
+     *
+     * @param array struct ArrowArray*
+     */
+    static void releaseArray(MemorySegment array) {
+        try {
+            ArrowExport.releaseArray(NativeArrowMemory.INSTANCE, array.address());
+        } catch (Throwable e) {
+            LOGGER.log(Level.SEVERE, "Failed to release the Arrow array", e);
+        }
+    }
+}
@@ -135,6 +135,17 @@ class H2GIS_DEMO:
         ]
         self.lib.h2gis_fetch_all.restype = ctypes.c_char_p
 
+        # Available when the library is built with GraalVM 21 or later
+        if hasattr(self.lib, "h2gis_fetch_arrow"):
+            self.lib.h2gis_fetch_arrow.argtypes = [
+                GraalIsolateThread_p,
+                ctypes.c_long,
+                ctypes.c_int,
+                ctypes.c_void_p,
+                ctypes.c_void_p,
+            ]
+            self.lib.h2gis_fetch_arrow.restype = ctypes.c_int
+
         self.lib.h2gis_close_query.argtypes = [
             GraalIsolateThread_p,
             ctypes.c_long,
@@ -267,6 +278,51 @@ class H2GIS_DEMO:
 
 
 
+    def fetch_arrow(self, sql: str, batch_size: int = 65536):
+        """
+        Execute a SELECT query and return the result as a pyarrow Table.
+        The rows are transferred by batches with the Arrow C Data Interface,
+        the column buffers written by the library are used without copy.
+        Geometries are returned as EWKB binary columns.
+
+        Args:
+            sql (str): The SELECT SQL query to execute.
+            batch_size (int): Maximum number of rows per record batch.
+
+        Returns:
+            pyarrow.Table: The result of the query.
+
+        Raises:
+            RuntimeError: If the query fails.
+        """
+        import pyarrow as pa
+        from pyarrow.cffi import ffi
+
+        handle = self.lib.h2gis_fetch(self.thread, self.connection, sql.encode("utf-8"))
+        if handle == 0:
+            raise RuntimeError("Query execution failed")
+        try:
+            batches = []
+            schema = None
+            while True:
+                c_schema = ffi.new("struct ArrowSchema*")
+                c_array = ffi.new("struct ArrowArray*")
+                schema_ptr = int(ffi.cast("uintptr_t", c_schema)) if schema is None else None
+                array_ptr = int(ffi.cast("uintptr_t", c_array))
+                rows = self.lib.h2gis_fetch_arrow(self.thread, handle, batch_size, schema_ptr, array_ptr)
+                if rows < 0:
+                    raise RuntimeError("Failed to fetch the Arrow batch")
+                if schema is None:
+                    schema = pa.Schema._import_from_c(schema_ptr)
+                # The batch takes the ownership of the buffers, they are freed by the release callback
+                batch = pa.RecordBatch._import_from_c(array_ptr, schema)
+                if rows == 0:
+                    break
+                batches.append(batch)
+            return pa.Table.from_batches(batches, schema=schema)
+        finally:
+            self.lib.h2gis_close_query(self.thread, handle)
+
     def isConnected(self) -> bool:
         """Returns true if there is an active connction."""
         return (self.connection != 0) and (self.ping() == True)
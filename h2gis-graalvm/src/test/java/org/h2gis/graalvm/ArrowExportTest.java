@@ -0,0 +1,358 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.graalvm;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.io.WKBReader;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.h2gis.graalvm.ArrowExport.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Check the Arrow buffers written by {@link ArrowExport} in heap memory
+ *
+ * @author Maël PHILIPPE, CNRS
+ * @author Erwan BOCHER, CNRS
+ */
+public class ArrowExportTest {
+
+    private static final long RELEASE_SCHEMA = 0xA1;
+    private static final long RELEASE_ARRAY = 0xA2;
+    private static Connection connection;
+
+    @BeforeAll
+    public static void tearUp() throws Exception {
+        connection = H2GISDBFactory.createSpatialDataBase(ArrowExportTest.class.getSimpleName());
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS ARROW_INPUT;" +
+                    "CREATE TABLE ARROW_INPUT(ID INT, VAL DOUBLE, FLAG BOOLEAN, NAME VARCHAR, THE_GEOM GEOMETRY);" +
+                    "INSERT INTO ARROW_INPUT VALUES (1, 1.5, TRUE, 'a', 'SRID=4326;POINT (1 2)'), " +
+                    "(NULL, NULL, NULL, NULL, NULL), " +
+                    "(3, 2.5, FALSE, 'été', 'SRID=4326;LINESTRING (0 0, 1 1)')");
+        }
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    /**
+     * Little endian 64-bit memory on the heap, the allocations are checked
+     */
+    private static final class HeapArrowMemory implements ArrowMemory {
+        private final TreeMap<Long, byte[]> blocks = new TreeMap<>();
+        private long nextAddress = 4096;
+        private int allocationLimit = Integer.MAX_VALUE;
+        private int allocationCount = 0;
+
+        private ByteBuffer buffer(long address, int length) {
+            Map.Entry<Long, byte[]> block = blocks.floorEntry(address);
+            assertNotNull(block, "Invalid address " + address);
+            int position = (int) (address - block.getKey());
+            assertTrue(position + length <= block.getValue().length, "Out of bounds access at " + address);
+            ByteBuffer buffer = ByteBuffer.wrap(block.getValue()).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.position(position);
+            return buffer;
+        }
+
+        @Override
+        public long calloc(long size) {
+            if (allocationCount++ >= allocationLimit) {
+                return 0;
+            }
+            long address = nextAddress;
+            // Leave a gap between the blocks to detect the overflows
+            nextAddress += (size + 16 + 15) & ~15L;
+            blocks.put(address, new byte[(int) size]);
+            return address;
+        }
+
+        @Override
+        public long realloc(long address, long size) {
+            long newAddress = calloc(size);
+            if (newAddress != 0 && address != 0) {
+                byte[] old = blocks.remove(address);
+                assertNotNull(old, "Invalid realloc " + address);
+                System.arraycopy(old, 0, blocks.get(newAddress), 0, (int) Math.min(old.length, size));
+            }
+            return newAddress;
+        }
+
+        @Override
+        public void free(long address) {
+            if (address != 0) {
+                assertNotNull(blocks.remove(address), "Invalid free " + address);
+            }
+        }
+
+        @Override
+        public long readLong(long address) {
+            return buffer(address, 8).getLong();
+        }
+
+        @Override
+        public void writeLong(long address, long value) {
+            buffer(address, 8).putLong(value);
+        }
+
+        @Override
+        public void writeInt(long address, int value) {
+            buffer(address, 4).putInt(value);
+        }
+
+        @Override
+        public void writeDouble(long address, double value) {
+            buffer(address, 8).putDouble(value);
+        }
+
+        @Override
+        public byte readByte(long address) {
+            return buffer(address, 1).get();
+        }
+
+        @Override
+        public void writeByte(long address, byte value) {
+            buffer(address, 1).put(value);
+        }
+
+        @Override
+        public void writeBytes(long address, byte[] value) {
+            buffer(address, value.length).put(value);
+        }
+
+        int readInt(long address) {
+            return buffer(address, 4).getInt();
+        }
+
+        double readDouble(long address) {
+            return buffer(address, 8).getDouble();
+        }
+
+        byte[] readBytes(long address, int length) {
+            byte[] bytes = new byte[length];
+            buffer(address, length).get(bytes);
+            return bytes;
+        }
+
+        String readString(long address) {
+            byte[] block = blocks.get(address);
+            assertNotNull(block);
+            int length = 0;
+            while (block[length] != 0) {
+                length++;
+            }
+            return new String(block, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static long child(HeapArrowMemory memory, long array, int index) {
+        return memory.readLong(memory.readLong(array + ARRAY_CHILDREN) + index * 8L);
+    }
+
+    private static long buffer(HeapArrowMemory memory, long array, int index) {
+        return memory.readLong(memory.readLong(array + ARRAY_BUFFERS) + index * 8L);
+    }
+
+    @Test
+    public void testColumnBuffers() throws Exception {
+        HeapArrowMemory memory = new HeapArrowMemory();
+        long schema = memory.calloc(SCHEMA_SIZE);
+        long array = memory.calloc(ARRAY_SIZE);
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT * FROM ARROW_INPUT")) {
+            assertEquals(3, ArrowExport.fetch(rs, 10, memory, schema, array, RELEASE_SCHEMA, RELEASE_ARRAY));
+        }
+        // Schema
+        assertEquals("+s", memory.readString(memory.readLong(schema + SCHEMA_FORMAT)));
+        assertEquals(5, memory.readLong(schema + SCHEMA_N_CHILDREN));
+        assertEquals(RELEASE_SCHEMA, memory.readLong(schema + SCHEMA_RELEASE));
+        String[] formats = new String[]{"l", "g", "b", "u", "z"};
+        String[] names = new String[]{"ID", "VAL", "FLAG", "NAME", "THE_GEOM"};
+        long schemaChildren = memory.readLong(schema + SCHEMA_CHILDREN);
+        for (int i = 0; i < formats.length; i++) {
+            long field = memory.readLong(schemaChildren + i * 8L);
+            assertEquals(formats[i], memory.readString(memory.readLong(field + SCHEMA_FORMAT)));
+            assertEquals(names[i], memory.readString(memory.readLong(field + SCHEMA_NAME)));
+            assertEquals(FLAG_NULLABLE, memory.readLong(field + SCHEMA_FLAGS));
+        }
+        // Struct array
+        assertEquals(3, memory.readLong(array + ARRAY_LENGTH));
+        assertEquals(5, memory.readLong(array + ARRAY_N_CHILDREN));
+        assertEquals(RELEASE_ARRAY, memory.readLong(array + ARRAY_RELEASE));
+        // Int64 column, the second row is null
+        long ids = child(memory, array, 0);
+        assertEquals(3, memory.readLong(ids + ARRAY_LENGTH));
+        assertEquals(1, memory.readLong(ids + ARRAY_NULL_COUNT));
+        assertEquals(2, memory.readLong(ids + ARRAY_N_BUFFERS));
+        assertEquals(0b101, memory.readByte(buffer(memory, ids, 0)));
+        assertEquals(1, memory.readLong(buffer(memory, ids, 1)));
+        assertEquals(3, memory.readLong(buffer(memory, ids, 1) + 16));
+        // Float64 column
+        long values = child(memory, array, 1);
+        assertEquals(1.5, memory.readDouble(buffer(memory, values, 1)));
+        assertEquals(2.5, memory.readDouble(buffer(memory, values, 1) + 16));
+        // Boolean column, the values are a bitmap too
+        long flags = child(memory, array, 2);
+        assertEquals(0b101, memory.readByte(buffer(memory, flags, 0)));
+        assertEquals(0b001, memory.readByte(buffer(memory, flags, 1)) & 0b101);
+        // Utf8 column, the null value is an empty slot
+        long strings = child(memory, array, 3);
+        assertEquals(3, memory.readLong(strings + ARRAY_N_BUFFERS));
+        long offsets = buffer(memory, strings, 1);
+        byte[] ete = "été".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(new int[]{0, 1, 1, 1 + ete.length}, new int[]{memory.readInt(offsets),
+                memory.readInt(offsets + 4), memory.readInt(offsets + 8), memory.readInt(offsets + 12)});
+        assertEquals("aété", new String(memory.readBytes(buffer(memory, strings, 2), 1 + ete.length),
+                StandardCharsets.UTF_8));
+        // Binary column with the EWKB of the geometries
+        long geometries = child(memory, array, 4);
+        assertEquals(1, memory.readLong(geometries + ARRAY_NULL_COUNT));
+        long geometryOffsets = buffer(memory, geometries, 1);
+        long data = buffer(memory, geometries, 2);
+        WKBReader reader = new WKBReader();
+        int start = memory.readInt(geometryOffsets);
+        int end = memory.readInt(geometryOffsets + 4);
+        Geometry point = reader.read(memory.readBytes(data + start, end - start));
+        assertEquals("POINT (1 2)", point.toText());
+        assertEquals(4326, point.getSRID());
+        assertEquals(end, memory.readInt(geometryOffsets + 8));
+        start = end;
+        end = memory.readInt(geometryOffsets + 12);
+        Geometry line = reader.read(memory.readBytes(data + start, end - start));
+        assertEquals("LINESTRING (0 0, 1 1)", line.toText());
+        // Release, only the structures of the caller are left
+        ArrowExport.releaseSchema(memory, schema);
+        ArrowExport.releaseArray(memory, array);
+        assertEquals(0, memory.readLong(schema + SCHEMA_RELEASE));
+        assertEquals(0, memory.readLong(array + ARRAY_RELEASE));
+        memory.free(schema);
+        memory.free(array);
+        assertTrue(memory.blocks.isEmpty());
+    }
+
+    @Test
+    public void testDecimalColumns() throws Exception {
+        HeapArrowMemory memory = new HeapArrowMemory();
+        long schema = memory.calloc(SCHEMA_SIZE);
+        long array = memory.calloc(ARRAY_SIZE);
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT CAST(X AS DECIMAL(10, 3)) D, CAST(X AS NUMERIC) N " +
+                     "FROM (VALUES 12.345, -1.5, NULL) T(X)")) {
+            assertEquals(3, ArrowExport.fetch(rs, 10, memory, schema, array, RELEASE_SCHEMA, RELEASE_ARRAY));
+        }
+        long schemaChildren = memory.readLong(schema + SCHEMA_CHILDREN);
+        assertEquals("d:10,3", memory.readString(memory.readLong(memory.readLong(schemaChildren) + SCHEMA_FORMAT)));
+        // Without precision the value does not fit in a decimal128, it is exported as a string
+        assertEquals("u", memory.readString(memory.readLong(memory.readLong(schemaChildren + 8) + SCHEMA_FORMAT)));
+        // The unscaled values are 16 bytes little endian two's complement
+        long decimals = child(memory, array, 0);
+        assertEquals(1, memory.readLong(decimals + ARRAY_NULL_COUNT));
+        long values = buffer(memory, decimals, 1);
+        assertEquals(12345, memory.readLong(values));
+        assertEquals(0, memory.readLong(values + 8));
+        assertEquals(-1500, memory.readLong(values + 16));
+        assertEquals(-1, memory.readLong(values + 24));
+        ArrowExport.releaseSchema(memory, schema);
+        ArrowExport.releaseArray(memory, array);
+        memory.free(schema);
+        memory.free(array);
+        assertTrue(memory.blocks.isEmpty());
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        HeapArrowMemory memory = new HeapArrowMemory();
+        long array = memory.calloc(ARRAY_SIZE);
+        int[] expected = new int[]{2, 1, 0};
+        int[] rowCounts = new int[expected.length];
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT ID, NAME FROM ARROW_INPUT")) {
+            for (int i = 0; i < expected.length; i++) {
+                rowCounts[i] = ArrowExport.fetch(rs, 2, memory, 0, array, RELEASE_SCHEMA, RELEASE_ARRAY);
+                assertEquals(rowCounts[i], memory.readLong(array + ARRAY_LENGTH));
+                assertEquals(rowCounts[i], memory.readLong(child(memory, array, 0) + ARRAY_LENGTH));
+                // The data buffers are never null, even for an empty batch
+                assertNotEquals(0, buffer(memory, child(memory, array, 1), 2));
+                ArrowExport.releaseArray(memory, array);
+            }
+        }
+        assertArrayEquals(expected, rowCounts);
+        memory.free(array);
+        assertTrue(memory.blocks.isEmpty());
+    }
+
+    @Test
+    public void testMovedChildRelease() throws Exception {
+        HeapArrowMemory memory = new HeapArrowMemory();
+        long array = memory.calloc(ARRAY_SIZE);
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT ID, NAME FROM ARROW_INPUT")) {
+            ArrowExport.fetch(rs, 10, memory, 0, array, RELEASE_SCHEMA, RELEASE_ARRAY);
+        }
+        // The consumer moves the first child and releases it on its own
+        ArrowExport.releaseArray(memory, child(memory, array, 0));
+        ArrowExport.releaseArray(memory, array);
+        memory.free(array);
+        assertTrue(memory.blocks.isEmpty());
+    }
+
+    @Test
+    public void testAllocationFailure() throws Exception {
+        // Fail on each allocation in turn, nothing must leak and the structures must stay untouched
+        for (int limit = 0; ; limit++) {
+            HeapArrowMemory memory = new HeapArrowMemory();
+            long schema = memory.calloc(SCHEMA_SIZE);
+            long array = memory.calloc(ARRAY_SIZE);
+            memory.allocationLimit = limit + 2;
+            try (Statement st = connection.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT * FROM ARROW_INPUT")) {
+                ArrowExport.fetch(rs, 10, memory, schema, array, RELEASE_SCHEMA, RELEASE_ARRAY);
+                // Enough allocations for the whole batch
+                ArrowExport.releaseSchema(memory, schema);
+                ArrowExport.releaseArray(memory, array);
+                memory.free(schema);
+                memory.free(array);
+                assertTrue(memory.blocks.isEmpty());
+                break;
+            } catch (OutOfMemoryError e) {
+                assertEquals(0, memory.readLong(schema + SCHEMA_RELEASE));
+                assertEquals(0, memory.readLong(array + ARRAY_RELEASE));
+                memory.free(schema);
+                memory.free(array);
+                assertTrue(memory.blocks.isEmpty(), "Leak after " + limit + " allocations");
+            }
+        }
+    }
+}
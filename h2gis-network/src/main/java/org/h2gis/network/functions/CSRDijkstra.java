@@ -0,0 +1,265 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Dijkstra and A* shortest path searches on a {@link CSRGraph}.
+ * The state of the search is kept in primitive arrays indexed by vertex. The arrays are allocated once and reset
+ * lazily with a search number, so a single instance can run many searches on large graphs.
+ *
+ * An instance is not thread safe, use one instance per thread. The graph itself can be shared.
+ *
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public class CSRDijkstra {
+
+    /**
+     * Two path lengths closer than this tolerance are equal, multiple shortest paths are kept
+     */
+    public static final double TOLERANCE = 1.0E-9;
+
+    private final CSRGraph graph;
+    private final double[] distances;
+    private final int[] origins;
+    private final int[] reachedSearch;
+    private final int[] settledSearch;
+    private final int[] targetSearch;
+    private final IndexedMinHeap heap;
+    private int search = 0;
+    private double lastDistance = 0;
+
+    /**
+     * Lower bound of the distance from a vertex to the target of an A* search
+     */
+    public interface Heuristic {
+        /**
+         * @param vertex Vertex index
+         * @return Lower bound of the distance to the target, the heuristic must be consistent
+         */
+        double estimate(int vertex);
+    }
+
+    /**
+     * @param graph Graph
+     */
+    public CSRDijkstra(CSRGraph graph) {
+        this.graph = graph;
+        final int vertexCount = graph.getVertexCount();
+        distances = new double[vertexCount];
+        origins = new int[vertexCount];
+        reachedSearch = new int[vertexCount];
+        settledSearch = new int[vertexCount];
+        targetSearch = new int[vertexCount];
+        heap = new IndexedMinHeap(vertexCount);
+    }
+
+    /**
+     * @return The graph
+     */
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return Distance computed by the last search, infinity if the vertex has not been reached
+     */
+    public double getDistance(int vertex) {
+        return reachedSearch[vertex] == search ? distances[vertex] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return Index of the source of the shortest path found by the last search, -1 if the vertex has not been reached
+     */
+    public int getOrigin(int vertex) {
+        return reachedSearch[vertex] == search ? origins[vertex] : -1;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return True if the shortest path to this vertex is known
+     */
+    public boolean isSettled(int vertex) {
+        return settledSearch[vertex] == search;
+    }
+
+    /**
+     * Compute the distances from the source to the vertices closer than the radius.
+     * As in the JGraphT implementation, the search stops as soon as the last updated distance is not lower than the
+     * radius, the vertices found before are settled.
+     *
+     * @param source Source vertex index
+     * @param radius Search radius, {@link Double#POSITIVE_INFINITY} for the whole graph
+     */
+    public void calculate(int source, double radius) {
+        calculate(new int[]{source}, radius);
+    }
+
+    /**
+     * Compute the distance of each vertex to the closest source. The closest source is given by
+     * {@link #getOrigin(int)}.
+     *
+     * @param sources Source vertex indices
+     * @param radius  Search radius, {@link Double#POSITIVE_INFINITY} for the whole graph
+     */
+    public void calculate(int[] sources, double radius) {
+        init(sources);
+        while (!heap.isEmpty() && lastDistance < radius) {
+            relax(heap.poll(), null);
+        }
+    }
+
+    /**
+     * @param source Source vertex index
+     * @param target Target vertex index
+     * @return Distance from the source to the target
+     */
+    public double oneToOne(int source, int target) {
+        return oneToOne(source, target, null);
+    }
+
+    /**
+     * A* search, the search is a Dijkstra search when the heuristic is null.
+     *
+     * @param source    Source vertex index
+     * @param target    Target vertex index
+     * @param heuristic Lower bound of the distance to the target
+     * @return Distance from the source to the target
+     */
+    public double oneToOne(int source, int target, Heuristic heuristic) {
+        init(new int[]{source});
+        while (!heap.isEmpty()) {
+            final int vertex = heap.poll();
+            if (vertex == target) {
+                settledSearch[vertex] = search;
+                break;
+            }
+            relax(vertex, heuristic);
+        }
+        return getDistance(target);
+    }
+
+    /**
+     * Compute the distances from the source to the targets, the search stops when all the targets are settled.
+     *
+     * @param source  Source vertex index
+     * @param targets Target vertex indices
+     * @return Distance to each target, in the order of the targets
+     */
+    public double[] oneToMany(int source, int[] targets) {
+        return oneToMany(source, targets, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Compute the distances from the source to the targets, the search stops when all the targets are settled or
+     * when the remaining vertices are farther than the radius.
+     *
+     * @param source  Source vertex index
+     * @param targets Target vertex indices
+     * @param radius  Search radius, the distance of the targets farther than the radius is infinity
+     * @return Distance to each target, in the order of the targets
+     */
+    public double[] oneToMany(int source, int[] targets, double radius) {
+        init(new int[]{source});
+        int remaining = 0;
+        for (int target : targets) {
+            if (targetSearch[target] != search) {
+                targetSearch[target] = search;
+                remaining++;
+            }
+        }
+        while (!heap.isEmpty() && remaining > 0 && heap.peekKey() <= radius) {
+            final int vertex = heap.poll();
+            if (targetSearch[vertex] == search) {
+                remaining--;
+            }
+            relax(vertex, null);
+        }
+        double[] result = new double[targets.length];
+        for (int i = 0; i < targets.length; i++) {
+            final double distance = getDistance(targets[i]);
+            result[i] = distance <= radius ? distance : Double.POSITIVE_INFINITY;
+        }
+        return result;
+    }
+
+    /**
+     * Check if an arc is on a shortest path found by the last search
+     *
+     * @param source Source vertex index of the arc
+     * @param target Target vertex index of the arc
+     * @param weight Weight of the arc
+     * @return True if the arc ends a shortest path to the target, the source of the arc must be settled
+     */
+    public boolean isPredecessorArc(int source, int target, double weight) {
+        return source != target && settledSearch[source] == search && reachedSearch[target] == search &&
+                Math.abs(distances[target] - (distances[source] + weight)) < TOLERANCE;
+    }
+
+    private void init(int[] sources) {
+        heap.clear();
+        lastDistance = 0;
+        search++;
+        if (search == Integer.MAX_VALUE) {
+            // Restart the numbering of the searches
+            Arrays.fill(reachedSearch, 0);
+            Arrays.fill(settledSearch, 0);
+            Arrays.fill(targetSearch, 0);
+            search = 1;
+        }
+        for (int source : sources) {
+            if (reachedSearch[source] != search) {
+                reachedSearch[source] = search;
+                distances[source] = 0;
+                origins[source] = source;
+                heap.insertOrDecrease(source, 0);
+            }
+        }
+    }
+
+    private void relax(int vertex, Heuristic heuristic) {
+        settledSearch[vertex] = search;
+        final double distance = distances[vertex];
+        final int end = graph.getFirstArc(vertex + 1);
+        for (int arc = graph.getFirstArc(vertex); arc < end; arc++) {
+            final int neighbour = graph.getTarget(arc);
+            if (settledSearch[neighbour] == search) {
+                continue;
+            }
+            final double newDistance = distance + graph.getWeight(arc);
+            if (reachedSearch[neighbour] != search || newDistance < distances[neighbour]) {
+                if (newDistance == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                reachedSearch[neighbour] = search;
+                distances[neighbour] = newDistance;
+                lastDistance = newDistance;
+                origins[neighbour] = origins[vertex];
+                heap.insertOrDecrease(neighbour,
+                        heuristic == null ? newDistance : newDistance + heuristic.estimate(neighbour));
+            }
+        }
+    }
+}
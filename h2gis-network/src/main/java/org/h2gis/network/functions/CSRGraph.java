@@ -0,0 +1,280 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Directed graph stored in compressed sparse row arrays.
+ * The vertices are numbered from 0 in the order of their ids. The arcs leaving the vertex {@code v} are the arcs
+ * {@code getFirstArc(v)} to {@code getFirstArc(v + 1) - 1}, they keep the order of the edges table.
+ * An undirected edge is stored as two arcs.
+ *
+ * The graph is immutable, it can be shared by several threads without synchronization.
+ *
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public final class CSRGraph {
+
+    private final int[] vertexIds;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] edgeIds;
+    private final double[] weights;
+    private final boolean symmetric;
+    private CSRGraph reversed;
+    private long fingerprint;
+    private boolean hasFingerprint = false;
+
+    private CSRGraph(int[] vertexIds, int[] offsets, int[] targets, int[] edgeIds, double[] weights,
+                     boolean symmetric) {
+        this.vertexIds = vertexIds;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.edgeIds = edgeIds;
+        this.weights = weights;
+        this.symmetric = symmetric;
+    }
+
+    /**
+     * @return Number of vertices
+     */
+    public int getVertexCount() {
+        return vertexIds.length;
+    }
+
+    /**
+     * @return Number of arcs
+     */
+    public int getArcCount() {
+        return targets.length;
+    }
+
+    /**
+     * @param vertexId Vertex id
+     * @return Index of the vertex, -1 if the graph does not contain the vertex
+     */
+    public int indexOf(int vertexId) {
+        int index = Arrays.binarySearch(vertexIds, vertexId);
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return Vertex id
+     */
+    public int getVertexId(int vertex) {
+        return vertexIds[vertex];
+    }
+
+    /**
+     * @param vertex Vertex index, {@link #getVertexCount()} gives the end of the last vertex
+     * @return First arc leaving the vertex
+     */
+    public int getFirstArc(int vertex) {
+        return offsets[vertex];
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Index of the vertex reached by the arc
+     */
+    public int getTarget(int arc) {
+        return targets[arc];
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Id of the edge, negative for the reverse arc of an undirected edge in a directed graph
+     */
+    public int getEdgeId(int arc) {
+        return edgeIds[arc];
+    }
+
+    /**
+     * @param arc Arc index
+     * @return Weight of the arc
+     */
+    public double getWeight(int arc) {
+        return weights[arc];
+    }
+
+    /**
+     * @return True if each arc has an opposite arc with the same weight (undirected graph)
+     */
+    public boolean isSymmetric() {
+        return symmetric;
+    }
+
+    /**
+     * @return The graph with all the arcs reversed. The arcs keep their edge id and weight.
+     */
+    public synchronized CSRGraph reverse() {
+        if (symmetric) {
+            return this;
+        }
+        if (reversed == null) {
+            final int vertexCount = getVertexCount();
+            final int arcCount = getArcCount();
+            int[] reverseOffsets = new int[vertexCount + 1];
+            for (int target : targets) {
+                reverseOffsets[target + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                reverseOffsets[v + 1] += reverseOffsets[v];
+            }
+            int[] cursor = Arrays.copyOf(reverseOffsets, vertexCount);
+            int[] reverseTargets = new int[arcCount];
+            int[] reverseEdgeIds = new int[arcCount];
+            double[] reverseWeights = new double[arcCount];
+            for (int v = 0; v < vertexCount; v++) {
+                for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+                    int position = cursor[targets[arc]]++;
+                    reverseTargets[position] = v;
+                    reverseEdgeIds[position] = edgeIds[arc];
+                    reverseWeights[position] = weights[arc];
+                }
+            }
+            reversed = new CSRGraph(vertexIds, reverseOffsets, reverseTargets, reverseEdgeIds, reverseWeights, false);
+            reversed.reversed = this;
+        }
+        return reversed;
+    }
+
+    /**
+     * Hash of the arcs, their vertex ids, edge ids and weights. It does not depend on the order the edges have
+     * been read, so it identifies the content of the edges table a graph has been built from.
+     *
+     * @return Fingerprint of the graph
+     */
+    public synchronized long getFingerprint() {
+        if (!hasFingerprint) {
+            long hash = 0;
+            for (int v = 0; v < getVertexCount(); v++) {
+                for (int arc = offsets[v]; arc < offsets[v + 1]; arc++) {
+                    long arcHash = mix(vertexIds[v]);
+                    arcHash = mix(arcHash ^ vertexIds[targets[arc]]);
+                    arcHash = mix(arcHash ^ edgeIds[arc]);
+                    arcHash = mix(arcHash ^ Double.doubleToLongBits(weights[arc]));
+                    hash += arcHash;
+                }
+            }
+            fingerprint = hash;
+            hasFingerprint = true;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * SplitMix64 finalizer
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * @return Estimated memory used by the graph and its reverse graph in bytes
+     */
+    public long getMemory() {
+        long vertexMemory = 8L * getVertexCount();
+        long arcMemory = 16L * getArcCount();
+        return symmetric ? vertexMemory + arcMemory : 2 * (vertexMemory + arcMemory);
+    }
+
+    /**
+     * Collect the arcs of a graph
+     */
+    static final class Builder {
+        private int[] sources = new int[1024];
+        private int[] targets = new int[1024];
+        private int[] edgeIds = new int[1024];
+        private double[] weights = new double[1024];
+        private int arcCount = 0;
+        private final boolean symmetric;
+
+        /**
+         * @param symmetric True if the arcs are added by pairs of opposite arcs
+         */
+        Builder(boolean symmetric) {
+            this.symmetric = symmetric;
+        }
+
+        /**
+         * @param source Source vertex id
+         * @param target Target vertex id
+         * @param edgeId Edge id
+         * @param weight Weight
+         */
+        void addArc(int source, int target, int edgeId, double weight) {
+            if (arcCount == sources.length) {
+                int capacity = arcCount * 2;
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                edgeIds = Arrays.copyOf(edgeIds, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+            sources[arcCount] = source;
+            targets[arcCount] = target;
+            edgeIds[arcCount] = edgeId;
+            weights[arcCount] = weight;
+            arcCount++;
+        }
+
+        CSRGraph build() {
+            // Vertex ids sorted without duplicates
+            int[] ids = new int[arcCount * 2];
+            System.arraycopy(sources, 0, ids, 0, arcCount);
+            System.arraycopy(targets, 0, ids, arcCount, arcCount);
+            Arrays.sort(ids);
+            int vertexCount = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    ids[vertexCount++] = ids[i];
+                }
+            }
+            final int[] vertexIds = Arrays.copyOf(ids, vertexCount);
+            // Count the arcs of each vertex then place them, the table order is kept for each vertex
+            int[] offsets = new int[vertexCount + 1];
+            for (int arc = 0; arc < arcCount; arc++) {
+                sources[arc] = Arrays.binarySearch(vertexIds, sources[arc]);
+                targets[arc] = Arrays.binarySearch(vertexIds, targets[arc]);
+                offsets[sources[arc] + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            int[] cursor = Arrays.copyOf(offsets, vertexCount);
+            int[] csrTargets = new int[arcCount];
+            int[] csrEdgeIds = new int[arcCount];
+            double[] csrWeights = new double[arcCount];
+            for (int arc = 0; arc < arcCount; arc++) {
+                int position = cursor[sources[arc]]++;
+                csrTargets[position] = targets[arc];
+                csrEdgeIds[position] = edgeIds[arc];
+                csrWeights[position] = weights[arc];
+            }
+            return new CSRGraph(vertexIds, offsets, csrTargets, csrEdgeIds, csrWeights, symmetric);
+        }
+    }
+}
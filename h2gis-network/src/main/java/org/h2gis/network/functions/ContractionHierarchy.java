@@ -0,0 +1,785 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Contraction hierarchy of a {@link CSRGraph}.
+ *
+ * The vertices are contracted one by one, the least important first. When a vertex is contracted, a shortcut arc
+ * replaces each shortest path going through it between two of its remaining neighbours. The contraction order is
+ * the level of the vertex. A shortest path query is then a bidirectional Dijkstra that only goes up in the
+ * hierarchy: the forward search from the source uses the arcs going to a higher level and the backward search
+ * from the target uses the arcs coming from a higher level.
+ *
+ * The hierarchy is immutable and can be shared by several threads, each thread uses its own {@link Query}.
+ *
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public final class ContractionHierarchy {
+
+    /**
+     * Maximum number of vertices settled by a witness search during the contraction.
+     * A lower value gives a faster contraction but more shortcuts.
+     */
+    private static final int WITNESS_SETTLED_LIMIT = 500;
+
+    private final CSRGraph graph;
+    private final int[] levels;
+    private final int[] shortcutSources;
+    private final int[] shortcutTargets;
+    private final double[] shortcutWeights;
+    private final int[] shortcutMiddles;
+    // Arcs u -> w with levels[w] > levels[u], stored at u
+    private final SearchGraph upward;
+    // Arcs u -> w with levels[u] > levels[w], stored at w with u as target
+    private final SearchGraph downward;
+
+    /**
+     * @param graph           Graph
+     * @param levels          Contraction level of each vertex
+     * @param shortcutSources Source vertex index of each shortcut
+     * @param shortcutTargets Target vertex index of each shortcut
+     * @param shortcutWeights Weight of each shortcut
+     * @param shortcutMiddles Contracted vertex index of each shortcut
+     */
+    public ContractionHierarchy(CSRGraph graph, int[] levels, int[] shortcutSources, int[] shortcutTargets,
+                                double[] shortcutWeights, int[] shortcutMiddles) {
+        this.graph = graph;
+        this.levels = levels;
+        this.shortcutSources = shortcutSources;
+        this.shortcutTargets = shortcutTargets;
+        this.shortcutWeights = shortcutWeights;
+        this.shortcutMiddles = shortcutMiddles;
+        final int vertexCount = graph.getVertexCount();
+        final int arcCount = graph.getArcCount() + shortcutSources.length;
+        int[] upCount = new int[vertexCount + 1];
+        int[] downCount = new int[vertexCount + 1];
+        for (int u = 0; u < vertexCount; u++) {
+            final int end = graph.getFirstArc(u + 1);
+            for (int arc = graph.getFirstArc(u); arc < end; arc++) {
+                countArc(u, graph.getTarget(arc), upCount, downCount);
+            }
+        }
+        for (int i = 0; i < shortcutSources.length; i++) {
+            countArc(shortcutSources[i], shortcutTargets[i], upCount, downCount);
+        }
+        upward = new SearchGraph(upCount, arcCount);
+        downward = new SearchGraph(downCount, arcCount);
+        for (int u = 0; u < vertexCount; u++) {
+            final int end = graph.getFirstArc(u + 1);
+            for (int arc = graph.getFirstArc(u); arc < end; arc++) {
+                addArc(u, graph.getTarget(arc), graph.getWeight(arc), arc, -1);
+            }
+        }
+        for (int i = 0; i < shortcutSources.length; i++) {
+            addArc(shortcutSources[i], shortcutTargets[i], shortcutWeights[i], -1, shortcutMiddles[i]);
+        }
+    }
+
+    private void countArc(int source, int target, int[] upCount, int[] downCount) {
+        if (source == target) {
+            return;
+        }
+        if (levels[target] > levels[source]) {
+            upCount[source + 1]++;
+        } else {
+            downCount[target + 1]++;
+        }
+    }
+
+    private void addArc(int source, int target, double weight, int originalArc, int middle) {
+        if (source == target) {
+            return;
+        }
+        if (levels[target] > levels[source]) {
+            upward.add(source, target, weight, originalArc, middle);
+        } else {
+            downward.add(target, source, weight, originalArc, middle);
+        }
+    }
+
+    /**
+     * Contract all the vertices of the graph
+     *
+     * @param graph Graph
+     * @return The contraction hierarchy
+     */
+    public static ContractionHierarchy contract(CSRGraph graph) {
+        return new Contractor(graph).run();
+    }
+
+    /**
+     * @return The contracted graph
+     */
+    public CSRGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @param vertex Vertex index
+     * @return Contraction level of the vertex, from 0 to the number of vertices - 1
+     */
+    public int getLevel(int vertex) {
+        return levels[vertex];
+    }
+
+    /**
+     * @return Number of shortcuts
+     */
+    public int getShortcutCount() {
+        return shortcutSources.length;
+    }
+
+    /**
+     * @param shortcut Shortcut index
+     * @return Source vertex index
+     */
+    public int getShortcutSource(int shortcut) {
+        return shortcutSources[shortcut];
+    }
+
+    /**
+     * @param shortcut Shortcut index
+     * @return Target vertex index
+     */
+    public int getShortcutTarget(int shortcut) {
+        return shortcutTargets[shortcut];
+    }
+
+    /**
+     * @param shortcut Shortcut index
+     * @return Weight
+     */
+    public double getShortcutWeight(int shortcut) {
+        return shortcutWeights[shortcut];
+    }
+
+    /**
+     * @param shortcut Shortcut index
+     * @return Index of the contracted vertex replaced by the shortcut
+     */
+    public int getShortcutMiddle(int shortcut) {
+        return shortcutMiddles[shortcut];
+    }
+
+    /**
+     * @return Estimated memory used by the hierarchy in bytes, the graph is not included
+     */
+    public long getMemory() {
+        return 4L * levels.length + 20L * shortcutSources.length + upward.getMemory() + downward.getMemory();
+    }
+
+    /**
+     * @return A new query, a query must be used by a single thread
+     */
+    public Query newQuery() {
+        return new Query();
+    }
+
+    /**
+     * Run a backward search from each target. The vertices reached by these searches are the meeting points of the
+     * forward searches of {@link Query#fillDistances(int, Buckets, double[])}.
+     *
+     * @param targets Target vertex indices
+     * @return The backward search spaces of the targets
+     */
+    public Buckets buckets(int[] targets) {
+        final Query query = newQuery();
+        int size = 0;
+        int[] vertices = new int[1024];
+        int[] targetIndices = new int[1024];
+        double[] distances = new double[1024];
+        for (int j = 0; j < targets.length; j++) {
+            query.upwardSearch(targets[j], false);
+            for (int i = 0; i < query.settledCount; i++) {
+                if (size == vertices.length) {
+                    vertices = Arrays.copyOf(vertices, size * 2);
+                    targetIndices = Arrays.copyOf(targetIndices, size * 2);
+                    distances = Arrays.copyOf(distances, size * 2);
+                }
+                final int vertex = query.settled[i];
+                vertices[size] = vertex;
+                targetIndices[size] = j;
+                distances[size] = query.backward.distances[vertex];
+                size++;
+            }
+        }
+        return new Buckets(graph.getVertexCount(), targets.length, vertices, targetIndices, distances, size);
+    }
+
+    /**
+     * Compute the distances from each source to each target
+     *
+     * @param sources Source vertex indices
+     * @param targets Target vertex indices
+     * @return Distances, indexed by source then by target
+     */
+    public double[][] manyToMany(int[] sources, int[] targets) {
+        final Buckets buckets = buckets(targets);
+        final Query query = newQuery();
+        final double[][] distances = new double[sources.length][targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            query.fillDistances(sources[i], buckets, distances[i]);
+        }
+        return distances;
+    }
+
+    /**
+     * Backward search spaces of a set of targets, grouped by vertex
+     */
+    public static final class Buckets {
+        private final int targetCount;
+        private final int[] offsets;
+        private final int[] targets;
+        private final double[] distances;
+
+        private Buckets(int vertexCount, int targetCount, int[] vertices, int[] targetIndices,
+                        double[] entryDistances, int size) {
+            this.targetCount = targetCount;
+            offsets = new int[vertexCount + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[vertices[i] + 1]++;
+            }
+            for (int v = 0; v < vertexCount; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            int[] cursor = Arrays.copyOf(offsets, vertexCount);
+            targets = new int[size];
+            distances = new double[size];
+            for (int i = 0; i < size; i++) {
+                int position = cursor[vertices[i]]++;
+                targets[position] = targetIndices[i];
+                distances[position] = entryDistances[i];
+            }
+        }
+
+        /**
+         * @return Number of targets
+         */
+        public int getTargetCount() {
+            return targetCount;
+        }
+    }
+
+    /**
+     * Search state of a shortest path query
+     */
+    public final class Query {
+        private final SearchState forward = new SearchState(graph.getVertexCount());
+        private final SearchState backward = new SearchState(graph.getVertexCount());
+        private final int[] settled = new int[graph.getVertexCount()];
+        private int settledCount;
+        private int meeting = -1;
+
+        private Query() {
+        }
+
+        /**
+         * @param source Source vertex index
+         * @param target Target vertex index
+         * @return Distance from the source to the target
+         */
+        public double distance(int source, int target) {
+            forward.init(source);
+            backward.init(target);
+            double best = source == target ? 0 : Double.POSITIVE_INFINITY;
+            meeting = source == target ? source : -1;
+            while (!forward.heap.isEmpty() || !backward.heap.isEmpty()) {
+                final double forwardMin = forward.heap.isEmpty() ? Double.POSITIVE_INFINITY : forward.heap.peekKey();
+                final double backwardMin = backward.heap.isEmpty() ? Double.POSITIVE_INFINITY : backward.heap.peekKey();
+                if (Math.min(forwardMin, backwardMin) >= best) {
+                    break;
+                }
+                final boolean isForward = forwardMin <= backwardMin;
+                final SearchState state = isForward ? forward : backward;
+                final SearchState opposite = isForward ? backward : forward;
+                final SearchGraph searchGraph = isForward ? upward : downward;
+                final int vertex = state.heap.poll();
+                final double distance = state.distances[vertex];
+                final int end = searchGraph.offsets[vertex + 1];
+                for (int arc = searchGraph.offsets[vertex]; arc < end; arc++) {
+                    final int neighbour = searchGraph.targets[arc];
+                    final double newDistance = distance + searchGraph.weights[arc];
+                    if (state.relax(neighbour, newDistance, vertex, arc) && opposite.isReached(neighbour)
+                            && newDistance + opposite.distances[neighbour] < best) {
+                        best = newDistance + opposite.distances[neighbour];
+                        meeting = neighbour;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Compute a shortest path.
+         *
+         * @param source Source vertex index
+         * @param target Target vertex index
+         * @return The arc indices of the graph from the source to the target, null if the target is not reachable
+         */
+        public int[] path(int source, int target) {
+            if (distance(source, target) == Double.POSITIVE_INFINITY) {
+                return null;
+            }
+            PathBuilder path = new PathBuilder();
+            // Upward arcs from the source to the meeting vertex, collected backward
+            int[] upArcs = new int[8];
+            int upCount = 0;
+            for (int vertex = meeting; vertex != source; vertex = forward.parents[vertex]) {
+                if (upCount == upArcs.length) {
+                    upArcs = Arrays.copyOf(upArcs, upCount * 2);
+                }
+                upArcs[upCount++] = forward.parentArcs[vertex];
+            }
+            int from = source;
+            for (int i = upCount - 1; i >= 0; i--) {
+                final int arc = upArcs[i];
+                final int to = upward.targets[arc];
+                unpack(from, to, upward.weights[arc], upward.originalArcs[arc], upward.middles[arc], path);
+                from = to;
+            }
+            // Downward arcs from the meeting vertex to the target
+            for (int vertex = meeting; vertex != target; vertex = backward.parents[vertex]) {
+                final int arc = backward.parentArcs[vertex];
+                final int to = backward.parents[vertex];
+                unpack(vertex, to, downward.weights[arc], downward.originalArcs[arc], downward.middles[arc], path);
+            }
+            return Arrays.copyOf(path.arcs, path.size);
+        }
+
+        /**
+         * Compute the distances from the source to all the targets of the buckets
+         *
+         * @param source    Source vertex index
+         * @param buckets   Backward search spaces of the targets
+         * @param distances Distance to each target, filled by this method
+         */
+        public void fillDistances(int source, Buckets buckets, double[] distances) {
+            Arrays.fill(distances, Double.POSITIVE_INFINITY);
+            upwardSearch(source, true);
+            for (int i = 0; i < settledCount; i++) {
+                final int vertex = settled[i];
+                final double distance = forward.distances[vertex];
+                final int end = buckets.offsets[vertex + 1];
+                for (int entry = buckets.offsets[vertex]; entry < end; entry++) {
+                    final double total = distance + buckets.distances[entry];
+                    if (total < distances[buckets.targets[entry]]) {
+                        distances[buckets.targets[entry]] = total;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Search all the vertices reachable in the upward (or downward) graph, the settled vertices are kept
+         */
+        private void upwardSearch(int source, boolean isForward) {
+            final SearchState state = isForward ? forward : backward;
+            final SearchGraph searchGraph = isForward ? upward : downward;
+            state.init(source);
+            settledCount = 0;
+            while (!state.heap.isEmpty()) {
+                final int vertex = state.heap.poll();
+                settled[settledCount++] = vertex;
+                final double distance = state.distances[vertex];
+                final int end = searchGraph.offsets[vertex + 1];
+                for (int arc = searchGraph.offsets[vertex]; arc < end; arc++) {
+                    state.relax(searchGraph.targets[arc], distance + searchGraph.weights[arc], vertex, arc);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replace a shortcut by the two arcs going through its contracted vertex, recursively
+     */
+    private void unpack(int from, int to, double weight, int originalArc, int middle, PathBuilder path) {
+        if (originalArc >= 0) {
+            path.add(originalArc);
+            return;
+        }
+        // from -> middle is a downward arc stored at middle, middle -> to is an upward arc stored at middle
+        int bestDown = -1;
+        int bestUp = -1;
+        double bestError = Double.POSITIVE_INFINITY;
+        for (int down = downward.offsets[middle]; down < downward.offsets[middle + 1]; down++) {
+            if (downward.targets[down] != from) {
+                continue;
+            }
+            for (int up = upward.offsets[middle]; up < upward.offsets[middle + 1]; up++) {
+                if (upward.targets[up] != to) {
+                    continue;
+                }
+                final double error = Math.abs(downward.weights[down] + upward.weights[up] - weight);
+                if (error < bestError) {
+                    bestError = error;
+                    bestDown = down;
+                    bestUp = up;
+                }
+            }
+        }
+        if (bestDown < 0) {
+            throw new IllegalStateException("Invalid contraction hierarchy, cannot unpack the shortcut " +
+                    graph.getVertexId(from) + " -> " + graph.getVertexId(to));
+        }
+        unpack(from, middle, downward.weights[bestDown], downward.originalArcs[bestDown], downward.middles[bestDown],
+                path);
+        unpack(middle, to, upward.weights[bestUp], upward.originalArcs[bestUp], upward.middles[bestUp], path);
+    }
+
+    private static final class PathBuilder {
+        private int[] arcs = new int[16];
+        private int size = 0;
+
+        void add(int arc) {
+            if (size == arcs.length) {
+                arcs = Arrays.copyOf(arcs, size * 2);
+            }
+            arcs[size++] = arc;
+        }
+    }
+
+    /**
+     * Arcs of the upward or downward graph in compressed sparse row arrays
+     */
+    private static final class SearchGraph {
+        private final int[] offsets;
+        private final int[] cursor;
+        private final int[] targets;
+        private final double[] weights;
+        private final int[] originalArcs;
+        private final int[] middles;
+
+        SearchGraph(int[] counts, int capacity) {
+            final int vertexCount = counts.length - 1;
+            for (int v = 0; v < vertexCount; v++) {
+                counts[v + 1] += counts[v];
+            }
+            offsets = counts;
+            cursor = Arrays.copyOf(offsets, vertexCount);
+            final int arcCount = offsets[vertexCount];
+            targets = new int[arcCount];
+            weights = new double[arcCount];
+            originalArcs = new int[arcCount];
+            middles = new int[arcCount];
+        }
+
+        void add(int vertex, int target, double weight, int originalArc, int middle) {
+            final int position = cursor[vertex]++;
+            targets[position] = target;
+            weights[position] = weight;
+            originalArcs[position] = originalArc;
+            middles[position] = middle;
+        }
+
+        long getMemory() {
+            return 8L * offsets.length + 20L * targets.length;
+        }
+    }
+
+    /**
+     * Distances of a one direction search, reset lazily with a search number
+     */
+    private static final class SearchState {
+        private final double[] distances;
+        private final int[] parents;
+        private final int[] parentArcs;
+        private final int[] reachedSearch;
+        private final IndexedMinHeap heap;
+        private int search = 0;
+
+        SearchState(int vertexCount) {
+            distances = new double[vertexCount];
+            parents = new int[vertexCount];
+            parentArcs = new int[vertexCount];
+            reachedSearch = new int[vertexCount];
+            heap = new IndexedMinHeap(vertexCount);
+        }
+
+        void init(int source) {
+            heap.clear();
+            search++;
+            if (search == Integer.MAX_VALUE) {
+                Arrays.fill(reachedSearch, 0);
+                search = 1;
+            }
+            reachedSearch[source] = search;
+            distances[source] = 0;
+            parents[source] = -1;
+            parentArcs[source] = -1;
+            heap.insertOrDecrease(source, 0);
+        }
+
+        boolean isReached(int vertex) {
+            return reachedSearch[vertex] == search;
+        }
+
+        boolean relax(int vertex, double distance, int parent, int parentArc) {
+            if (distance == Double.POSITIVE_INFINITY
+                    || (reachedSearch[vertex] == search && distance >= distances[vertex])) {
+                return false;
+            }
+            reachedSearch[vertex] = search;
+            distances[vertex] = distance;
+            parents[vertex] = parent;
+            parentArcs[vertex] = parentArc;
+            heap.insertOrDecrease(vertex, distance);
+            return true;
+        }
+    }
+
+    /**
+     * Contract the vertices of a graph in the order of their importance
+     */
+    private static final class Contractor {
+        private final CSRGraph graph;
+        private final int vertexCount;
+        private final int[][] outTargets;
+        private final double[][] outWeights;
+        private final int[] outCount;
+        private final int[][] inTargets;
+        private final double[][] inWeights;
+        private final int[] inCount;
+        private final boolean[] contracted;
+        private final int[] contractedNeighbours;
+        // Witness search state
+        private final double[] witnessDistances;
+        private final int[] witnessSearch;
+        private final IndexedMinHeap witnessHeap;
+        private int search = 0;
+        // Shortcuts
+        private int shortcutCount = 0;
+        private int[] shortcutSources = new int[1024];
+        private int[] shortcutTargets = new int[1024];
+        private double[] shortcutWeights = new double[1024];
+        private int[] shortcutMiddles = new int[1024];
+
+        Contractor(CSRGraph graph) {
+            this.graph = graph;
+            vertexCount = graph.getVertexCount();
+            outTargets = new int[vertexCount][];
+            outWeights = new double[vertexCount][];
+            outCount = new int[vertexCount];
+            inTargets = new int[vertexCount][];
+            inWeights = new double[vertexCount][];
+            inCount = new int[vertexCount];
+            for (int v = 0; v < vertexCount; v++) {
+                outTargets[v] = new int[4];
+                outWeights[v] = new double[4];
+                inTargets[v] = new int[4];
+                inWeights[v] = new double[4];
+            }
+            contracted = new boolean[vertexCount];
+            contractedNeighbours = new int[vertexCount];
+            witnessDistances = new double[vertexCount];
+            witnessSearch = new int[vertexCount];
+            witnessHeap = new IndexedMinHeap(vertexCount);
+            for (int u = 0; u < vertexCount; u++) {
+                final int end = graph.getFirstArc(u + 1);
+                for (int arc = graph.getFirstArc(u); arc < end; arc++) {
+                    final int w = graph.getTarget(arc);
+                    if (u != w) {
+                        addArc(u, w, graph.getWeight(arc));
+                    }
+                }
+            }
+        }
+
+        ContractionHierarchy run() {
+            final int[] levels = new int[vertexCount];
+            final IndexedMinHeap queue = new IndexedMinHeap(vertexCount);
+            for (int v = 0; v < vertexCount; v++) {
+                queue.update(v, priority(v));
+            }
+            int level = 0;
+            while (!queue.isEmpty()) {
+                final int v = queue.poll();
+                // Lazy update, the priority may have changed since the vertex was queued
+                final double priority = priority(v);
+                if (!queue.isEmpty() && priority > queue.peekKey()) {
+                    queue.update(v, priority);
+                    continue;
+                }
+                contract(v, false);
+                contracted[v] = true;
+                levels[v] = level++;
+                for (int i = 0; i < inCount[v]; i++) {
+                    updateNeighbour(queue, inTargets[v][i]);
+                }
+                for (int i = 0; i < outCount[v]; i++) {
+                    updateNeighbour(queue, outTargets[v][i]);
+                }
+            }
+            return new ContractionHierarchy(graph, levels,
+                    Arrays.copyOf(shortcutSources, shortcutCount),
+                    Arrays.copyOf(shortcutTargets, shortcutCount),
+                    Arrays.copyOf(shortcutWeights, shortcutCount),
+                    Arrays.copyOf(shortcutMiddles, shortcutCount));
+        }
+
+        private void updateNeighbour(IndexedMinHeap queue, int neighbour) {
+            if (!contracted[neighbour]) {
+                contractedNeighbours[neighbour]++;
+                queue.update(neighbour, priority(neighbour));
+            }
+        }
+
+        /**
+         * Edge difference plus the number of contracted neighbours, the vertices are contracted uniformly
+         */
+        private double priority(int v) {
+            int degree = 0;
+            for (int i = 0; i < inCount[v]; i++) {
+                if (!contracted[inTargets[v][i]]) {
+                    degree++;
+                }
+            }
+            for (int i = 0; i < outCount[v]; i++) {
+                if (!contracted[outTargets[v][i]]) {
+                    degree++;
+                }
+            }
+            return contract(v, true) - degree + contractedNeighbours[v];
+        }
+
+        /**
+         * Find the shortcuts needed to contract the vertex
+         *
+         * @param v        Vertex
+         * @param simulate True to only count the shortcuts
+         * @return Number of shortcuts
+         */
+        private int contract(int v, boolean simulate) {
+            int count = 0;
+            for (int i = 0; i < inCount[v]; i++) {
+                final int u = inTargets[v][i];
+                if (contracted[u]) {
+                    continue;
+                }
+                final double inWeight = inWeights[v][i];
+                double maxDistance = Double.NEGATIVE_INFINITY;
+                for (int j = 0; j < outCount[v]; j++) {
+                    final int w = outTargets[v][j];
+                    if (!contracted[w] && w != u) {
+                        maxDistance = Math.max(maxDistance, inWeight + outWeights[v][j]);
+                    }
+                }
+                if (maxDistance == Double.NEGATIVE_INFINITY) {
+                    continue;
+                }
+                witnessSearch(u, v, maxDistance);
+                for (int j = 0; j < outCount[v]; j++) {
+                    final int w = outTargets[v][j];
+                    if (contracted[w] || w == u) {
+                        continue;
+                    }
+                    final double viaDistance = inWeight + outWeights[v][j];
+                    if (viaDistance < witnessDistance(w)) {
+                        count++;
+                        if (!simulate) {
+                            addShortcut(u, w, viaDistance, v);
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Dijkstra from the source that avoids the excluded vertex, limited by a distance and a number of
+         * settled vertices. The distances found are upper bounds of the shortest path lengths.
+         */
+        private void witnessSearch(int source, int excluded, double maxDistance) {
+            witnessHeap.clear();
+            search++;
+            witnessSearch[source] = search;
+            witnessDistances[source] = 0;
+            witnessHeap.insertOrDecrease(source, 0);
+            int settled = 0;
+            while (!witnessHeap.isEmpty() && settled < WITNESS_SETTLED_LIMIT && witnessHeap.peekKey() <= maxDistance) {
+                final int x = witnessHeap.poll();
+                settled++;
+                final double distance = witnessDistances[x];
+                for (int i = 0; i < outCount[x]; i++) {
+                    final int y = outTargets[x][i];
+                    if (contracted[y] || y == excluded) {
+                        continue;
+                    }
+                    final double newDistance = distance + outWeights[x][i];
+                    if (witnessSearch[y] != search || newDistance < witnessDistances[y]) {
+                        witnessSearch[y] = search;
+                        witnessDistances[y] = newDistance;
+                        witnessHeap.insertOrDecrease(y, newDistance);
+                    }
+                }
+            }
+        }
+
+        private double witnessDistance(int vertex) {
+            return witnessSearch[vertex] == search ? witnessDistances[vertex] : Double.POSITIVE_INFINITY;
+        }
+
+        private void addShortcut(int source, int target, double weight, int middle) {
+            if (shortcutCount == shortcutSources.length) {
+                int capacity = shortcutCount * 2;
+                shortcutSources = Arrays.copyOf(shortcutSources, capacity);
+                shortcutTargets = Arrays.copyOf(shortcutTargets, capacity);
+                shortcutWeights = Arrays.copyOf(shortcutWeights, capacity);
+                shortcutMiddles = Arrays.copyOf(shortcutMiddles, capacity);
+            }
+            shortcutSources[shortcutCount] = source;
+            shortcutTargets[shortcutCount] = target;
+            shortcutWeights[shortcutCount] = weight;
+            shortcutMiddles[shortcutCount] = middle;
+            shortcutCount++;
+            addArc(source, target, weight);
+        }
+
+        /**
+         * Add an arc to the remaining graph, only the lowest weight is kept between two vertices
+         */
+        private void addArc(int source, int target, double weight) {
+            outCount[source] = addNeighbour(source, target, weight, outTargets, outWeights, outCount[source]);
+            inCount[target] = addNeighbour(target, source, weight, inTargets, inWeights, inCount[target]);
+        }
+
+        private static int addNeighbour(int vertex, int neighbour, double weight, int[][] targets,
+                                        double[][] weights, int count) {
+            int[] vertexTargets = targets[vertex];
+            for (int i = 0; i < count; i++) {
+                if (vertexTargets[i] == neighbour) {
+                    weights[vertex][i] = Math.min(weights[vertex][i], weight);
+                    return count;
+                }
+            }
+            if (count == vertexTargets.length) {
+                targets[vertex] = Arrays.copyOf(vertexTargets, count * 2);
+                weights[vertex] = Arrays.copyOf(weights[vertex], count * 2);
+            }
+            targets[vertex][count] = neighbour;
+            weights[vertex][count] = weight;
+            return count + 1;
+        }
+    }
+}
@@ -0,0 +1,414 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2.engine.Database;
+import org.h2.engine.Session;
+import org.h2.engine.SessionLocal;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.schema.Schema;
+import org.h2.table.Table;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Keeps the graphs built from the edges tables in memory between the calls of the network functions.
+ * There is one cache per database. Only the tables registered with {@link ST_GraphCache} are cached.
+ * A cached value is rebuilt when the data modification id of its table changes, so any insert, update,
+ * delete or drop of the edges table invalidates it.
+ * While a session holds uncommitted changes on the edges table the cache is bypassed: the graph seen by this
+ * session is not visible to the others, and would stay in the cache after a rollback.
+ * The memory used by the cached values is estimated, the least recently used values are removed when
+ * the estimation exceeds {@link #getMaxMemory()}.
+ *
+ * Cached values are shared by all the sessions without synchronization, so they must be read-only. The JGraphT
+ * graphs are never cached because their vertices hold the state of the graph algorithms.
+ *
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public final class GraphCache {
+
+    /**
+     * Estimated memory used by a graph edge in bytes
+     */
+    public static final long EDGE_MEMORY = 120;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GraphCache.class);
+    private static final Map<Database, GraphCache> CACHES = new WeakHashMap<>();
+
+    private final Set<String> cachedTables = new HashSet<>();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long memory = 0;
+    private long maxMemory = Runtime.getRuntime().maxMemory() / 4;
+
+    /**
+     * Build a value from the edges table
+     * @param <T> Value type
+     */
+    public interface Loader<T> {
+        T load() throws SQLException;
+    }
+
+    /**
+     * Estimate the memory used by a value
+     * @param <T> Value type
+     */
+    public interface MemoryEstimator<T> {
+        long estimate(T value);
+    }
+
+    private GraphCache() {
+    }
+
+    /**
+     * @param connection Connection
+     * @return The graph cache of the database, or null if the connection is not an embedded H2 connection
+     */
+    public static GraphCache getInstance(Connection connection) throws SQLException {
+        SessionLocal session = getSession(connection);
+        if (session == null) {
+            return null;
+        }
+        synchronized (CACHES) {
+            return CACHES.computeIfAbsent(session.getDatabase(), database -> new GraphCache());
+        }
+    }
+
+    /**
+     * Return the cached value or build it with the loader. The value is cached only if the table has
+     * been registered with {@link #register(Connection, String)}.
+     *
+     * @param connection Connection
+     * @param inputTable Edges table
+     * @param key        Parameters used to build the value
+     * @param loader     Build the value
+     * @param estimator  Estimate the memory used by the value
+     * @param <T>        Value type
+     * @return The value
+     */
+    public static <T> T get(Connection connection, String inputTable, String key, Loader<T> loader,
+                            MemoryEstimator<T> estimator) throws SQLException {
+        GraphCache cache = getInstance(connection);
+        if (cache == null) {
+            return loader.load();
+        }
+        Table table = findTable(connection, inputTable);
+        if (table == null) {
+            return loader.load();
+        }
+        final String tableName = getTableName(table);
+        final Key entryKey = new Key(tableName, key);
+        boolean cachedTable;
+        synchronized (cache) {
+            cachedTable = cache.cachedTables.contains(tableName) && !hasUncommittedChanges(connection, table);
+            Entry entry = cachedTable ? cache.entries.get(entryKey) : null;
+            if (entry != null) {
+                if (entry.tableId == table.getId() &&
+                        entry.modificationId == table.getMaxDataModificationId()) {
+                    return (T) entry.value;
+                }
+                cache.remove(entryKey);
+            }
+        }
+        if (!cachedTable) {
+            return loader.load();
+        }
+        // Build the value out of the lock, the other sessions can still use the cache
+        final long modificationId = table.getMaxDataModificationId();
+        final T value = loader.load();
+        if (value != null) {
+            long valueMemory = estimator.estimate(value);
+            synchronized (cache) {
+                if (hasUncommittedChanges(connection, table)) {
+                    // Changed while loading, the value may contain uncommitted rows
+                    return value;
+                }
+                if (cache.cachedTables.contains(tableName) && valueMemory <= cache.maxMemory) {
+                    cache.remove(entryKey);
+                    cache.entries.put(entryKey, new Entry(table.getId(), modificationId, value, valueMemory));
+                    cache.memory += valueMemory;
+                    cache.evict();
+                } else if (valueMemory > cache.maxMemory) {
+                    LOGGER.warn("The graph of the table " + tableName + " is too large to be cached");
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Enable the cache for the given edges table
+     *
+     * @param connection Connection
+     * @param inputTable Edges table
+     * @return True if the table is now cached
+     */
+    public static boolean register(Connection connection, String inputTable) throws SQLException {
+        GraphCache cache = getInstance(connection);
+        Table table = findTable(connection, inputTable);
+        if (cache == null) {
+            return false;
+        }
+        if (table == null) {
+            throw new SQLException("Table " + inputTable + " not found");
+        }
+        synchronized (cache) {
+            cache.cachedTables.add(getTableName(table));
+        }
+        return true;
+    }
+
+    /**
+     * Disable the cache for the given edges table and release its values
+     *
+     * @param connection Connection
+     * @param inputTable Edges table, null to release all the tables of the database
+     * @return Estimated released memory in bytes
+     */
+    public static long unregister(Connection connection, String inputTable) throws SQLException {
+        GraphCache cache = getInstance(connection);
+        if (cache == null) {
+            return 0;
+        }
+        String tableName = null;
+        if (inputTable != null) {
+            Table table = findTable(connection, inputTable);
+            if (table == null) {
+                return 0;
+            }
+            tableName = getTableName(table);
+        }
+        synchronized (cache) {
+            long released = 0;
+            Iterator<Map.Entry<Key, Entry>> it = cache.entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> entry = it.next();
+                if (tableName == null || entry.getKey().tableName.equals(tableName)) {
+                    released += entry.getValue().memory;
+                    it.remove();
+                }
+            }
+            cache.memory -= released;
+            if (tableName == null) {
+                cache.cachedTables.clear();
+            } else {
+                cache.cachedTables.remove(tableName);
+            }
+            return released;
+        }
+    }
+
+    /**
+     * Release the cached values of the given edges table, the table stays registered. This is needed when a value
+     * depends on other tables than the edges table, like a contraction hierarchy.
+     *
+     * @param connection Connection
+     * @param inputTable Edges table
+     * @return Estimated released memory in bytes
+     */
+    public static long invalidate(Connection connection, String inputTable) throws SQLException {
+        GraphCache cache = getInstance(connection);
+        Table table = findTable(connection, inputTable);
+        if (cache == null || table == null) {
+            return 0;
+        }
+        String tableName = getTableName(table);
+        synchronized (cache) {
+            long released = 0;
+            Iterator<Map.Entry<Key, Entry>> it = cache.entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, Entry> entry = it.next();
+                if (entry.getKey().tableName.equals(tableName)) {
+                    released += entry.getValue().memory;
+                    it.remove();
+                }
+            }
+            cache.memory -= released;
+            return released;
+        }
+    }
+
+    /**
+     * @param connection Connection
+     * @param inputTable Edges table
+     * @return Estimated memory in bytes used by the cached values of this table
+     */
+    public static long getMemory(Connection connection, String inputTable) throws SQLException {
+        GraphCache cache = getInstance(connection);
+        Table table = findTable(connection, inputTable);
+        if (cache == null || table == null) {
+            return 0;
+        }
+        String tableName = getTableName(table);
+        synchronized (cache) {
+            long tableMemory = 0;
+            for (Map.Entry<Key, Entry> entry : cache.entries.entrySet()) {
+                if (entry.getKey().tableName.equals(tableName)) {
+                    tableMemory += entry.getValue().memory;
+                }
+            }
+            return tableMemory;
+        }
+    }
+
+    /**
+     * @return Estimated memory in bytes used by all the cached values of this database
+     */
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    /**
+     * @return Maximum memory in bytes used by the cached values of this database
+     */
+    public synchronized long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * @param maxMemory Maximum memory in bytes used by the cached values of this database. Default is a quarter of
+     *                  the maximum heap size.
+     */
+    public synchronized void setMaxMemory(long maxMemory) {
+        this.maxMemory = maxMemory;
+        evict();
+    }
+
+    /**
+     * @return Number of cached values
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private void remove(Key key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            memory -= old.memory;
+        }
+    }
+
+    private void evict() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (memory > maxMemory && it.hasNext()) {
+            memory -= it.next().memory;
+            it.remove();
+        }
+    }
+
+    private static SessionLocal getSession(Connection connection) throws SQLException {
+        if (!connection.isWrapperFor(JdbcConnection.class)) {
+            return null;
+        }
+        Session session = connection.unwrap(JdbcConnection.class).getSession();
+        return session instanceof SessionLocal ? (SessionLocal) session : null;
+    }
+
+    /**
+     * Uncommitted inserts, updates and deletes hold a write lock on the table until the end of the transaction
+     *
+     * @param connection Connection
+     * @param table      Edges table
+     * @return True if a session of the database holds uncommitted changes on the table
+     */
+    private static boolean hasUncommittedChanges(Connection connection, Table table) throws SQLException {
+        SessionLocal session = getSession(connection);
+        if (session == null) {
+            return true;
+        }
+        for (SessionLocal other : session.getDatabase().getSessions(false)) {
+            for (Table locked : other.getLocks()) {
+                if (locked == table) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Table findTable(Connection connection, String inputTable) throws SQLException {
+        SessionLocal session = getSession(connection);
+        if (session == null) {
+            return null;
+        }
+        TableLocation location = TableUtilities.parseInputTable(connection, inputTable);
+        Schema schema = session.getDatabase().findSchema(location.getSchema(session.getCurrentSchemaName()));
+        return schema == null ? null : schema.findTableOrView(session, location.getTable());
+    }
+
+    private static String getTableName(Table table) {
+        return table.getSchema().getName() + "." + table.getName();
+    }
+
+    private static final class Key {
+        private final String tableName;
+        private final String key;
+
+        Key(String tableName, String key) {
+            this.tableName = tableName;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return tableName.equals(other.tableName) && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(tableName, key);
+        }
+    }
+
+    private static final class Entry {
+        private final int tableId;
+        private final long modificationId;
+        private final Object value;
+        private final long memory;
+
+        Entry(int tableId, long modificationId, Object value, long memory) {
+            this.tableId = tableId;
+            this.modificationId = modificationId;
+            this.value = value;
+            this.memory = memory;
+        }
+    }
+}
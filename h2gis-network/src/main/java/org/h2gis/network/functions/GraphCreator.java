@@ -137,6 +137,57 @@ public class GraphCreator<V extends VId, E extends Edge> {
         }
     }
 
+    /**
+     * Prepares a graph stored in compressed sparse row arrays. The arcs are
+     * the same as the edges of {@link #prepareGraph()}, except that an edge
+     * of an undirected graph is stored as two arcs with the same id.
+     *
+     * @return The newly prepared graph
+     */
+    protected CSRGraph prepareCSRGraph() throws SQLException {
+        LOGGER.debug("Loading CSR graph into memory...");
+        final long start = System.currentTimeMillis();
+        final boolean undirected = globalOrientation.equals(GraphFunctionParser.Orientation.UNDIRECTED);
+        final CSRGraph.Builder builder = new CSRGraph.Builder(undirected);
+        try (Statement st = connection.createStatement();
+             ResultSet edges = st.executeQuery("SELECT * FROM " +
+                     TableUtilities.parseInputTable(connection, inputTable))) {
+            initIndices(edges);
+            while (edges.next()) {
+                final int startNode = edges.getInt(startNodeIndex);
+                final int endNode = edges.getInt(endNodeIndex);
+                final int edgeID = edges.getInt(edgeIDIndex);
+                double weight = WeightedGraph.DEFAULT_EDGE_WEIGHT;
+                if (weightColumnIndex != -1) {
+                    weight = edges.getDouble(weightColumnIndex);
+                }
+                if (undirected) {
+                    builder.addArc(startNode, endNode, edgeID, weight);
+                    builder.addArc(endNode, startNode, edgeID, weight);
+                } else {
+                    final int edgeOrientation = getEdgeOrientation(edges);
+                    if (edgeOrientation == UNDIRECTED_EDGE) {
+                        // Same ids as loadDoubleEdge
+                        if (globalOrientation.equals(GraphFunctionParser.Orientation.DIRECTED)) {
+                            builder.addArc(startNode, endNode, edgeID, weight);
+                            builder.addArc(endNode, startNode, -edgeID, weight);
+                        } else {
+                            builder.addArc(endNode, startNode, edgeID, weight);
+                            builder.addArc(startNode, endNode, -edgeID, weight);
+                        }
+                    } else if (edgeOrientation == DIRECTED_EDGE) {
+                        builder.addArc(startNode, endNode, edgeID, weight);
+                    } else {
+                        builder.addArc(endNode, startNode, edgeID, weight);
+                    }
+                }
+            }
+        }
+        final CSRGraph graph = builder.build();
+        logTime(LOGGER, start);
+        return graph;
+    }
+
     /**
      * Recovers the indices from the metadata.
      */
@@ -202,15 +253,8 @@ public class GraphCreator<V extends VId, E extends Edge> {
         } else {
             // Directed graphs are either directed pseudographs or directed
             // weighted pseudographs and must specify an orientation for each
-            // individual edge. If no orientations are specified, every edge
-            // is considered to be directed with orientation given by the
-            // geometry.
-            int edgeOrientation = (edgeOrientationIndex == -1)
-                    ? DIRECTED_EDGE
-                    : edges.getInt(edgeOrientationIndex);
-            if (edges.wasNull()) {
-                throw new IllegalArgumentException("Invalid edge orientation: NULL.");
-            }
+            // individual edge.
+            final int edgeOrientation = getEdgeOrientation(edges);
             if (edgeOrientation == UNDIRECTED_EDGE) {
                 if (globalOrientation.equals(GraphFunctionParser.Orientation.DIRECTED)) {
                     edge = loadDoubleEdge(graph, startNode, endNode, edgeID, weight);
@@ -219,29 +263,43 @@ public class GraphCreator<V extends VId, E extends Edge> {
                     edge = loadDoubleEdge(graph, endNode, startNode, edgeID, weight);
                 }
             } else if (edgeOrientation == DIRECTED_EDGE) {
-                // Reverse a directed edge (global).
-                if (globalOrientation.equals(GraphFunctionParser.Orientation.REVERSED)) {
-                    edge = graph.addEdge(endNode, startNode, edgeID);
-                } // No reversal.
-                else {
-                    edge = graph.addEdge(startNode, endNode, edgeID);
-                }
-            } else if (edgeOrientation == REVERSED_EDGE) {
-                // Reversing twice is the same as no reversal.
-                if (globalOrientation.equals(GraphFunctionParser.Orientation.REVERSED)) {
-                    edge = graph.addEdge(startNode, endNode, edgeID);
-                } // Otherwise reverse just once (local).
-                else {
-                    edge = graph.addEdge(endNode, startNode, edgeID);
-                }
+                edge = graph.addEdge(startNode, endNode, edgeID);
             } else {
-                throw new IllegalArgumentException("Invalid edge orientation: " + edgeOrientation);
+                edge = graph.addEdge(endNode, startNode, edgeID);
             }
         }
         setEdgeWeight(edge, weight);
         return edge;
     }
 
+    /**
+     * Returns the orientation of the edge of the current row once the global
+     * orientation is applied. If no orientations are specified, every edge
+     * is considered to be directed with orientation given by the geometry.
+     *
+     * @param edges Edges
+     * @return {@link #DIRECTED_EDGE} from the start node to the end node,
+     * {@link #REVERSED_EDGE} from the end node to the start node or
+     * {@link #UNDIRECTED_EDGE}
+     */
+    private int getEdgeOrientation(ResultSet edges) throws SQLException {
+        int edgeOrientation = (edgeOrientationIndex == -1)
+                ? DIRECTED_EDGE
+                : edges.getInt(edgeOrientationIndex);
+        if (edges.wasNull()) {
+            throw new IllegalArgumentException("Invalid edge orientation: NULL.");
+        }
+        if (edgeOrientation != UNDIRECTED_EDGE && edgeOrientation != DIRECTED_EDGE
+                && edgeOrientation != REVERSED_EDGE) {
+            throw new IllegalArgumentException("Invalid edge orientation: " + edgeOrientation);
+        }
+        // Reversing twice is the same as no reversal.
+        if (globalOrientation.equals(GraphFunctionParser.Orientation.REVERSED)) {
+            return -edgeOrientation;
+        }
+        return edgeOrientation;
+    }
+
     /**
      * In directed graphs, undirected edges are represented by directed edges
      * in both directions. The edges are assigned ids with opposite signs.
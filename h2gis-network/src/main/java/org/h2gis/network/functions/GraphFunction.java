@@ -20,6 +20,8 @@
 package org.h2gis.network.functions;
 
 import org.h2gis.api.AbstractFunction;
+import org.javanetworkanalyzer.data.VDijkstra;
+import org.javanetworkanalyzer.model.Edge;
 import org.javanetworkanalyzer.model.KeyedGraph;
 import org.slf4j.Logger;
 
@@ -44,7 +46,8 @@ public class GraphFunction extends AbstractFunction {
      * @param weight      Weight column name, null for unweighted graphs
      * @param vertexClass type of vertex
      * @param edgeClass type of edge
-     * @return Graph
+     * @return Graph, a new graph for each call because its vertices hold the state of the graph algorithms,
+     * it is never cached (see {@link GraphCache})
      */
     protected static KeyedGraph prepareGraph(Connection connection,
                                              String inputTable,
@@ -55,11 +58,99 @@ public class GraphFunction extends AbstractFunction {
         GraphFunctionParser parser = new GraphFunctionParser();
         parser.parseWeightAndOrientation(orientation, weight);
 
-        return new GraphCreator(connection,
+        final GraphCreator creator = new GraphCreator(connection,
                 inputTable,
                 parser.getGlobalOrientation(), parser.getEdgeOrientation(), parser.getWeightColumn(),
                 vertexClass,
-                edgeClass).prepareGraph();
+                edgeClass);
+        return creator.prepareGraph();
+    }
+
+    /**
+     * Return a compressed sparse row graph from the input edges table. This graph is used by the shortest path
+     * functions, it is lighter than the JGraphT graph and it can be shared by several sessions without
+     * synchronization.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table name
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return Graph
+     */
+    protected static CSRGraph prepareCSRGraph(Connection connection,
+                                              String inputTable,
+                                              String orientation,
+                                              String weight) throws SQLException {
+        GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+
+        final GraphCreator<VDijkstra, Edge> creator = new GraphCreator<>(connection,
+                inputTable,
+                parser.getGlobalOrientation(), parser.getEdgeOrientation(), parser.getWeightColumn(),
+                VDijkstra.class,
+                Edge.class);
+        final String cacheKey = "csr:" + parser.getGlobalOrientation() + ":" + parser.getEdgeOrientation() + ":" +
+                parser.getWeightColumn();
+        return GraphCache.get(connection, inputTable, cacheKey, creator::prepareCSRGraph, CSRGraph::getMemory);
+    }
+
+    /**
+     * Return the contraction hierarchy built by {@link ST_GraphContract} for the given orientation and weight.
+     * The hierarchy is used only on request, see {@link ParallelDistanceMatrix#HIERARCHY_OPTION}.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table name
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param graph       Graph of the input table
+     * @return The hierarchy
+     * @throws SQLException If the table has not been contracted with this orientation and weight, or if the edges
+     * have been modified since
+     */
+    protected static ContractionHierarchy prepareContractionHierarchy(Connection connection,
+                                                                      String inputTable,
+                                                                      String orientation,
+                                                                      String weight,
+                                                                      CSRGraph graph) throws SQLException {
+        final String description = ST_GraphContract.readDescription(connection, inputTable);
+        if (description == null) {
+            throw new SQLException("The table " + inputTable + " has no contraction hierarchy, " +
+                    "run ST_GraphContract first");
+        }
+        GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+        final String expected = ST_GraphContract.describe(parser, graph);
+        if (!expected.equals(description)) {
+            throw new SQLException("The contraction hierarchy of " + inputTable + " (" + description + ") does " +
+                    "not match the query or the edges (" + expected + "), run ST_GraphContract again");
+        }
+        return GraphCache.get(connection, inputTable, "ch:" + expected,
+                () -> ST_GraphContract.load(connection, inputTable, graph), ContractionHierarchy::getMemory);
+    }
+
+    /**
+     * Return the index of a vertex of the graph
+     *
+     * @param graph    Graph
+     * @param vertexId Vertex id
+     * @return Vertex index
+     * @throws IllegalArgumentException If the graph does not contain the vertex
+     */
+    protected static int getVertexIndex(CSRGraph graph, int vertexId) {
+        final int index = graph.indexOf(vertexId);
+        if (index < 0) {
+            throw new IllegalArgumentException("The graph does not contain vertex " + vertexId);
+        }
+        return index;
+    }
+
+    /**
+     * @param value Last argument
+     * @return True if the argument is an options string (space separated key=value pairs), table and column names
+     * do not contain '='
+     */
+    protected static boolean isOptionsString(String value) {
+        return value.indexOf('=') >= 0;
     }
 
     /**
@@ -0,0 +1,169 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import java.util.Arrays;
+
+/**
+ * Binary min heap of vertex indices with a decrease key operation.
+ * The elements are integers in {@code [0, capacity[}, the keys and the positions are kept in primitive arrays.
+ *
+ * @author Nicolas Fortin
+ */
+final class IndexedMinHeap {
+
+    private final int[] heap;
+    private final int[] positions;
+    private final double[] keys;
+    private int size = 0;
+
+    /**
+     * @param capacity Number of possible elements
+     */
+    IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        positions = new int[capacity];
+        keys = new double[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean contains(int element) {
+        return positions[element] >= 0;
+    }
+
+    /**
+     * @return Key of the minimum element
+     */
+    double peekKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Add the element or decrease its key. Nothing is done if the element has a lower key.
+     *
+     * @param element Element
+     * @param key     Key
+     */
+    void insertOrDecrease(int element, double key) {
+        int position = positions[element];
+        if (position < 0) {
+            position = size++;
+            heap[position] = element;
+            positions[element] = position;
+        } else if (key >= keys[element]) {
+            return;
+        }
+        keys[element] = key;
+        siftUp(position);
+    }
+
+    /**
+     * Add the element or change its key
+     *
+     * @param element Element
+     * @param key     Key
+     */
+    void update(int element, double key) {
+        final int position = positions[element];
+        if (position < 0 || key < keys[element]) {
+            insertOrDecrease(element, key);
+        } else {
+            keys[element] = key;
+            siftDown(position);
+        }
+    }
+
+    /**
+     * Remove the minimum element
+     *
+     * @return The element
+     */
+    int poll() {
+        final int min = heap[0];
+        positions[min] = -1;
+        size--;
+        if (size > 0) {
+            final int last = heap[size];
+            heap[0] = last;
+            positions[last] = 0;
+            siftDown(0);
+        }
+        return min;
+    }
+
+    /**
+     * Remove all the elements
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position) {
+        final int element = heap[position];
+        final double key = keys[element];
+        while (position > 0) {
+            int parentPosition = (position - 1) >>> 1;
+            int parent = heap[parentPosition];
+            if (keys[parent] <= key) {
+                break;
+            }
+            heap[position] = parent;
+            positions[parent] = position;
+            position = parentPosition;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+
+    private void siftDown(int position) {
+        final int element = heap[position];
+        final double key = keys[element];
+        final int half = size >>> 1;
+        while (position < half) {
+            int childPosition = 2 * position + 1;
+            int child = heap[childPosition];
+            int rightPosition = childPosition + 1;
+            if (rightPosition < size && keys[heap[rightPosition]] < keys[child]) {
+                childPosition = rightPosition;
+                child = heap[childPosition];
+            }
+            if (key <= keys[child]) {
+                break;
+            }
+            heap[position] = child;
+            positions[child] = position;
+            position = childPosition;
+        }
+        heap[position] = element;
+        positions[element] = position;
+    }
+}
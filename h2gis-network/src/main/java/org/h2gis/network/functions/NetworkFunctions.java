@@ -47,6 +47,9 @@ public class NetworkFunctions {
             new ST_Accessibility(),
             new ST_ConnectedComponents(),
             new ST_GraphAnalysis(),
+            new ST_GraphCache(),
+            new ST_GraphCacheDrop(),
+            new ST_GraphContract(),
             new ST_ShortestPathLength(),
             new ST_ShortestPathTree(),
             new ST_ShortestPath()
@@ -0,0 +1,548 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.utilities.KeyValueOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Brandes betweenness and closeness centrality computed by a pool of worker threads on a {@link CSRGraph}.
+ * The source vertices are partitioned between the workers (worker i takes the sources i, i + workers, ...), each
+ * worker accumulates the dependencies of its sources in its own betweenness arrays and the arrays are summed at the
+ * end. The results do not depend on the scheduling of the threads.
+ *
+ * The computation follows {@link org.javanetworkanalyzer.analyzers.GraphAnalyzer}: shortest paths are counted per
+ * edge, the predecessors of a vertex are counted once for its betweenness, the closeness is zero if a vertex does not
+ * reach all the other vertices, and the betweenness values are normalized to [0, 1].
+ *
+ * In sampling mode only k pivot sources, drawn uniformly without replacement, are searched:
+ * <ul>
+ * <li>the betweenness of a vertex (or an edge) is the sum of the dependencies on the pivots multiplied by n / k
+ * (Brandes and Pich). The dependency of a vertex on one source is in [0, n - 2], so by Hoeffding's inequality the
+ * estimation error of all the n vertices is lower than
+ * {@code epsilon * n * (n - 2)} with probability 1 - delta when {@code k >= ln(2n / delta) / (2 epsilon^2)}.</li>
+ * <li>the average distance from a vertex to the others is estimated by n / (k (n - 1)) times the sum of its distances
+ * to the pivots (Eppstein and Wang). With the same number of pivots the error is lower than
+ * {@code epsilon * diameter}.</li>
+ * </ul>
+ *
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+final class ParallelCentrality {
+
+    public static final String WORKERS_OPTION = "workers";
+    public static final String SAMPLES_OPTION = "samples";
+    public static final String SEED_OPTION = "seed";
+    private static final Logger LOGGER = LoggerFactory.getLogger(ParallelCentrality.class);
+
+    private final int workers;
+    private final int samples;
+    private final long seed;
+
+    /**
+     * @param workers Number of worker threads
+     * @param samples Number of pivot sources, 0 to compute the exact centrality from all the vertices
+     * @param seed    Seed of the pivot selection
+     */
+    ParallelCentrality(int workers, int samples, long seed) {
+        this.workers = workers;
+        this.samples = samples;
+        this.seed = seed;
+    }
+
+    /**
+     * Read the options, space separated key=value pairs ex: {@code 'workers=8 samples=500 seed=1'}
+     *
+     * @param options Options string. The default number of workers is the number of available processors, by
+     *                default all the vertices are sources and the default seed is 0.
+     * @return The centrality computation
+     * @throws SQLException If an option is unknown or invalid
+     */
+    static ParallelCentrality parse(String options) throws SQLException {
+        KeyValueOptions values = KeyValueOptions.parse(options, WORKERS_OPTION, SAMPLES_OPTION, SEED_OPTION);
+        int workers = values.getPositiveInt(WORKERS_OPTION, Runtime.getRuntime().availableProcessors());
+        int samples = values.contains(SAMPLES_OPTION) ? values.getPositiveInt(SAMPLES_OPTION, 0) : 0;
+        return new ParallelCentrality(workers, samples, values.getLong(SEED_OPTION, 0));
+    }
+
+    /**
+     * @return Number of worker threads
+     */
+    int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return Number of pivot sources, 0 if all the vertices are sources
+     */
+    int getSamples() {
+        return samples;
+    }
+
+    /**
+     * Compute the centrality of the vertices and the edges
+     *
+     * @param graph    Graph
+     * @param weighted False to count the edges of the paths instead of summing their weights
+     * @return Centrality
+     */
+    Result compute(CSRGraph graph, boolean weighted) throws SQLException {
+        final int vertexCount = graph.getVertexCount();
+        final Result result = new Result(graph);
+        final int[] sources = selectSources(vertexCount);
+        final boolean sampled = sources.length < vertexCount;
+        final CSRGraph reverse = sampled && !graph.isSymmetric() ? graph.reverse() : graph;
+        final int workerCount = Math.max(1, Math.min(workers, sources.length));
+        final List<Worker> results = new ArrayList<>(workerCount);
+        if (workerCount == 1) {
+            results.add(new Worker(graph, reverse, result, weighted, sampled).run(sources, 0, 1));
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(workerCount);
+            try {
+                final List<ForkJoinTask<Worker>> tasks = new ArrayList<>(workerCount);
+                for (int w = 0; w < workerCount; w++) {
+                    final int first = w;
+                    tasks.add(pool.submit(() -> new Worker(graph, reverse, result, weighted, sampled)
+                            .run(sources, first, workerCount)));
+                }
+                for (ForkJoinTask<Worker> task : tasks) {
+                    results.add(get(task));
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+        // Merge the partial arrays
+        final double[] nodeBetweenness = result.nodeBetweenness;
+        final double[] edgeBetweenness = result.edgeBetweenness;
+        final double[] distanceSums = sampled ? new double[vertexCount] : null;
+        final int[] reachedPivots = sampled ? new int[vertexCount] : null;
+        for (Worker worker : results) {
+            for (int v = 0; v < vertexCount; v++) {
+                nodeBetweenness[v] += worker.nodeBetweenness[v];
+            }
+            for (int e = 0; e < edgeBetweenness.length; e++) {
+                edgeBetweenness[e] += worker.edgeBetweenness[e];
+            }
+            if (sampled) {
+                for (int v = 0; v < vertexCount; v++) {
+                    distanceSums[v] += worker.distanceSums[v];
+                    reachedPivots[v] += worker.reachedPivots[v];
+                }
+            }
+        }
+        if (sampled) {
+            final double scale = (double) vertexCount / sources.length;
+            for (int v = 0; v < vertexCount; v++) {
+                nodeBetweenness[v] *= scale;
+                // A vertex which does not reach all the pivots does not reach all the vertices
+                final double averageLength = scale * distanceSums[v] / (vertexCount - 1);
+                result.closeness[v] = reachedPivots[v] == sources.length && averageLength > 0
+                        ? 1.0 / averageLength : 0.0;
+            }
+            for (int e = 0; e < edgeBetweenness.length; e++) {
+                edgeBetweenness[e] *= scale;
+            }
+        }
+        normalize(nodeBetweenness, "vertex");
+        normalize(edgeBetweenness, "edge");
+        return result;
+    }
+
+    /**
+     * @param vertexCount Number of vertices
+     * @return All the vertices or the pivot sources
+     */
+    private int[] selectSources(int vertexCount) {
+        final int[] vertices = new int[vertexCount];
+        for (int v = 0; v < vertexCount; v++) {
+            vertices[v] = v;
+        }
+        if (samples == 0 || samples >= vertexCount) {
+            return vertices;
+        }
+        // Partial Fisher-Yates shuffle
+        final Random random = new Random(seed);
+        for (int i = 0; i < samples; i++) {
+            final int j = i + random.nextInt(vertexCount - i);
+            final int swap = vertices[i];
+            vertices[i] = vertices[j];
+            vertices[j] = swap;
+        }
+        final int[] pivots = Arrays.copyOf(vertices, samples);
+        Arrays.sort(pivots);
+        return pivots;
+    }
+
+    private static void normalize(double[] betweenness, String type) {
+        if (betweenness.length == 0) {
+            return;
+        }
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : betweenness) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        final double range = max - min;
+        if (range > 0) {
+            for (int i = 0; i < betweenness.length; i++) {
+                betweenness[i] = (betweenness[i] - min) / range;
+            }
+        } else {
+            LOGGER.warn("All the " + type + " betweenness values are equal, they are not normalized");
+        }
+    }
+
+    private static Worker get(ForkJoinTask<Worker> task) throws SQLException {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("The centrality computation has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        }
+    }
+
+    /**
+     * Centrality of the vertices, indexed by vertex index, and of the edges, indexed by position in
+     * {@link #getEdgeIds()}
+     */
+    static final class Result {
+        private final int[] edgeIds;
+        private final int[] arcEdges;
+        private final double[] nodeBetweenness;
+        private final double[] closeness;
+        private final double[] edgeBetweenness;
+
+        private Result(CSRGraph graph) {
+            final int arcCount = graph.getArcCount();
+            // The two arcs of an edge of an undirected graph share the edge id
+            int[] ids = new int[arcCount];
+            for (int arc = 0; arc < arcCount; arc++) {
+                ids[arc] = graph.getEdgeId(arc);
+            }
+            Arrays.sort(ids);
+            int edgeCount = 0;
+            for (int i = 0; i < arcCount; i++) {
+                if (i == 0 || ids[i] != ids[i - 1]) {
+                    ids[edgeCount++] = ids[i];
+                }
+            }
+            edgeIds = Arrays.copyOf(ids, edgeCount);
+            arcEdges = new int[arcCount];
+            for (int arc = 0; arc < arcCount; arc++) {
+                arcEdges[arc] = Arrays.binarySearch(edgeIds, graph.getEdgeId(arc));
+            }
+            nodeBetweenness = new double[graph.getVertexCount()];
+            closeness = new double[graph.getVertexCount()];
+            edgeBetweenness = new double[edgeCount];
+        }
+
+        /**
+         * @return Sorted edge ids
+         */
+        int[] getEdgeIds() {
+            return edgeIds;
+        }
+
+        /**
+         * @return Normalized betweenness of each vertex
+         */
+        double[] getNodeBetweenness() {
+            return nodeBetweenness;
+        }
+
+        /**
+         * @return Closeness of each vertex
+         */
+        double[] getCloseness() {
+            return closeness;
+        }
+
+        /**
+         * @return Normalized betweenness of each edge
+         */
+        double[] getEdgeBetweenness() {
+            return edgeBetweenness;
+        }
+    }
+
+    /**
+     * Search and dependency arrays of one worker thread
+     */
+    private static final class Worker {
+        private final CSRGraph graph;
+        private final Result result;
+        private final boolean weighted;
+        private final CSRDijkstra reverseSearch;
+        private final int vertexCount;
+        private final double[] distances;
+        private final double[] sigma;
+        private final double[] delta;
+        private final double[] edgeDelta;
+        private final int[] reachedSearch;
+        private final int[] marks;
+        private final int[] order;
+        private final int[] predecessorHeads;
+        private final int[] predecessorNext;
+        private final int[] predecessorArcs;
+        private final int[] predecessorVertices;
+        private final IndexedMinHeap heap;
+        private final double[] nodeBetweenness;
+        private final double[] edgeBetweenness;
+        private final double[] distanceSums;
+        private final int[] reachedPivots;
+        private int search = 0;
+
+        Worker(CSRGraph graph, CSRGraph reverse, Result result, boolean weighted, boolean sampled) {
+            this.graph = graph;
+            this.result = result;
+            this.weighted = weighted;
+            vertexCount = graph.getVertexCount();
+            distances = new double[vertexCount];
+            sigma = new double[vertexCount];
+            delta = new double[vertexCount];
+            edgeDelta = new double[vertexCount];
+            reachedSearch = new int[vertexCount];
+            marks = new int[vertexCount];
+            order = new int[vertexCount];
+            predecessorHeads = new int[vertexCount];
+            predecessorNext = new int[graph.getArcCount()];
+            predecessorArcs = new int[graph.getArcCount()];
+            predecessorVertices = new int[graph.getArcCount()];
+            heap = weighted ? new IndexedMinHeap(vertexCount) : null;
+            nodeBetweenness = new double[vertexCount];
+            edgeBetweenness = new double[result.edgeBetweenness.length];
+            distanceSums = sampled ? new double[vertexCount] : null;
+            reachedPivots = sampled ? new int[vertexCount] : null;
+            // The distances to the pivots are the distances of the search from the pivots in the reverse graph
+            reverseSearch = sampled && reverse != graph ? new CSRDijkstra(reverse) : null;
+        }
+
+        /**
+         * @param sources All the sources
+         * @param first   Index of the first source of this worker
+         * @param step    Number of workers
+         * @return This worker
+         */
+        Worker run(int[] sources, int first, int step) {
+            for (int i = first; i < sources.length; i += step) {
+                final int source = sources[i];
+                final int settledCount = weighted ? dijkstra(source) : breadthFirst(source);
+                accumulate(source, settledCount);
+                if (distanceSums == null) {
+                    closeness(source, settledCount);
+                } else {
+                    pivotDistances(source, settledCount);
+                }
+            }
+            return this;
+        }
+
+        private void init(int source) {
+            search++;
+            reachedSearch[source] = search;
+            distances[source] = 0;
+            sigma[source] = 1;
+            predecessorHeads[source] = -1;
+        }
+
+        /**
+         * @return True if the vertex has been reached by the current search
+         */
+        private boolean reach(int vertex) {
+            if (reachedSearch[vertex] == search) {
+                return true;
+            }
+            reachedSearch[vertex] = search;
+            return false;
+        }
+
+        /**
+         * Shortest paths from the source, the settled vertices are stored in order of non decreasing distance
+         *
+         * @return Number of settled vertices
+         */
+        private int dijkstra(int source) {
+            init(source);
+            int predecessorCount = 0;
+            int settledCount = 0;
+            heap.clear();
+            heap.insertOrDecrease(source, 0);
+            while (!heap.isEmpty()) {
+                final int vertex = heap.poll();
+                order[settledCount++] = vertex;
+                final double distance = distances[vertex];
+                final int end = graph.getFirstArc(vertex + 1);
+                for (int arc = graph.getFirstArc(vertex); arc < end; arc++) {
+                    final int neighbour = graph.getTarget(arc);
+                    final double newDistance = distance + graph.getWeight(arc);
+                    if (newDistance == Double.POSITIVE_INFINITY) {
+                        continue;
+                    }
+                    if (!reach(neighbour) || distances[neighbour] > newDistance) {
+                        // Shortest path so far
+                        distances[neighbour] = newDistance;
+                        sigma[neighbour] = sigma[vertex];
+                        predecessorHeads[neighbour] = -1;
+                        predecessorCount = addPredecessor(predecessorCount, vertex, arc, neighbour);
+                        heap.insertOrDecrease(neighbour, newDistance);
+                    } else if (heap.contains(neighbour) &&
+                            Math.abs(distances[neighbour] - newDistance) < CSRDijkstra.TOLERANCE) {
+                        // Multiple shortest paths
+                        sigma[neighbour] += sigma[vertex];
+                        predecessorCount = addPredecessor(predecessorCount, vertex, arc, neighbour);
+                    }
+                }
+            }
+            return settledCount;
+        }
+
+        /**
+         * Breadth first search counting the edges of the paths
+         *
+         * @return Number of reached vertices
+         */
+        private int breadthFirst(int source) {
+            init(source);
+            int predecessorCount = 0;
+            int head = 0;
+            int tail = 0;
+            order[tail++] = source;
+            while (head < tail) {
+                final int vertex = order[head++];
+                final double distance = distances[vertex] + 1;
+                final int end = graph.getFirstArc(vertex + 1);
+                for (int arc = graph.getFirstArc(vertex); arc < end; arc++) {
+                    final int neighbour = graph.getTarget(arc);
+                    if (!reach(neighbour)) {
+                        distances[neighbour] = distance;
+                        sigma[neighbour] = 0;
+                        predecessorHeads[neighbour] = -1;
+                        order[tail++] = neighbour;
+                    }
+                    if (distances[neighbour] == distance) {
+                        sigma[neighbour] += sigma[vertex];
+                        predecessorCount = addPredecessor(predecessorCount, vertex, arc, neighbour);
+                    }
+                }
+            }
+            return tail;
+        }
+
+        /**
+         * Add an arc at the head of the predecessor list of the vertex
+         *
+         * @return Number of stored predecessor arcs
+         */
+        private int addPredecessor(int predecessorCount, int predecessor, int arc, int vertex) {
+            predecessorArcs[predecessorCount] = arc;
+            predecessorVertices[predecessorCount] = predecessor;
+            predecessorNext[predecessorCount] = predecessorHeads[vertex];
+            predecessorHeads[vertex] = predecessorCount;
+            return predecessorCount + 1;
+        }
+
+        /**
+         * Accumulate the dependencies of the source, from the farthest vertices to the source
+         */
+        private void accumulate(int source, int settledCount) {
+            for (int i = 0; i < settledCount; i++) {
+                delta[order[i]] = 0;
+                edgeDelta[order[i]] = 0;
+                marks[order[i]] = -1;
+            }
+            for (int i = settledCount - 1; i >= 0; i--) {
+                final int vertex = order[i];
+                final double vertexDelta = delta[vertex];
+                final double vertexEdgeDelta = edgeDelta[vertex];
+                for (int p = predecessorHeads[vertex]; p >= 0; p = predecessorNext[p]) {
+                    final int arc = predecessorArcs[p];
+                    final int predecessor = predecessorVertices[p];
+                    final double ratio = sigma[predecessor] / sigma[vertex];
+                    final double dependency = ratio * (1 + vertexEdgeDelta);
+                    edgeDelta[predecessor] += dependency;
+                    edgeBetweenness[result.arcEdges[arc]] += dependency;
+                    // Parallel edges give a single predecessor
+                    if (marks[predecessor] != vertex) {
+                        marks[predecessor] = vertex;
+                        delta[predecessor] += ratio * (1 + vertexDelta);
+                    }
+                }
+                if (vertex != source) {
+                    nodeBetweenness[vertex] += vertexDelta;
+                }
+            }
+        }
+
+        /**
+         * Exact closeness of the source
+         */
+        private void closeness(int source, int settledCount) {
+            double totalLength = 0;
+            for (int i = 0; i < settledCount; i++) {
+                totalLength += distances[order[i]];
+            }
+            final int count = settledCount - 1;
+            final double averageLength = count > 0 ? totalLength / count : 0;
+            // Each source is owned by a single worker
+            result.closeness[source] = count == vertexCount - 1 && averageLength > 0 ? 1.0 / averageLength : 0.0;
+        }
+
+        /**
+         * Add the distance from each vertex to the pivot
+         */
+        private void pivotDistances(int pivot, int settledCount) {
+            if (reverseSearch == null) {
+                for (int i = 0; i < settledCount; i++) {
+                    final int vertex = order[i];
+                    distanceSums[vertex] += distances[vertex];
+                    reachedPivots[vertex]++;
+                }
+                return;
+            }
+            reverseSearch.calculate(pivot, Double.POSITIVE_INFINITY);
+            for (int v = 0; v < vertexCount; v++) {
+                final double distance = reverseSearch.getDistance(v);
+                if (distance < Double.POSITIVE_INFINITY) {
+                    distanceSums[v] += distance;
+                    reachedPivots[v]++;
+                }
+            }
+        }
+    }
+}
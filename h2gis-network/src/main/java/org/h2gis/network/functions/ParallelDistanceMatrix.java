@@ -0,0 +1,250 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2.tools.SimpleResultSet;
+import org.h2gis.utilities.KeyValueOptions;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Distance matrix computed by a pool of worker threads, one task per source vertex.
+ * The graph (and the contraction hierarchy) are shared read-only, each worker keeps its own search arrays.
+ * The rows are added to the output by the calling thread in the order of the sources, while the workers go on
+ * with the next sources.
+ *
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+final class ParallelDistanceMatrix {
+
+    public static final String WORKERS_OPTION = "workers";
+    public static final String RADIUS_OPTION = "radius";
+    /**
+     * Use the contraction hierarchy built by {@link ST_GraphContract}, true or false (default)
+     */
+    public static final String HIERARCHY_OPTION = "hierarchy";
+    /**
+     * Number of computed sources waiting to be added to the output, per worker
+     */
+    private static final int PENDING_SOURCES_PER_WORKER = 4;
+
+    private final int workers;
+    private final double radius;
+    private final boolean hierarchy;
+
+    /**
+     * @param workers   Number of worker threads
+     * @param radius    Distance limit, the destinations farther than the radius get an infinite distance
+     * @param hierarchy True to use the contraction hierarchy of the graph
+     */
+    ParallelDistanceMatrix(int workers, double radius, boolean hierarchy) {
+        this.workers = workers;
+        this.radius = radius;
+        this.hierarchy = hierarchy;
+    }
+
+    /**
+     * Read the options, space separated key=value pairs ex: {@code 'workers=8 radius=5000 hierarchy=true'}
+     *
+     * @param options Options string. The default number of workers is the number of available processors, the
+     *                default radius is infinite, the contraction hierarchy is not used by default.
+     * @return The matrix computation
+     * @throws SQLException If an option is unknown or invalid
+     */
+    static ParallelDistanceMatrix parse(String options) throws SQLException {
+        KeyValueOptions values = KeyValueOptions.parse(options, WORKERS_OPTION, RADIUS_OPTION, HIERARCHY_OPTION);
+        int workers = values.getPositiveInt(WORKERS_OPTION, Runtime.getRuntime().availableProcessors());
+        double radius = values.getDouble(RADIUS_OPTION, Double.POSITIVE_INFINITY);
+        if (!(radius >= 0)) {
+            throw new SQLException("The option " + RADIUS_OPTION + " must be positive");
+        }
+        return new ParallelDistanceMatrix(workers, radius, values.getBoolean(HIERARCHY_OPTION, false));
+    }
+
+    /**
+     * @return Number of worker threads
+     */
+    int getWorkers() {
+        return workers;
+    }
+
+    /**
+     * @return Distance limit
+     */
+    double getRadius() {
+        return radius;
+    }
+
+    /**
+     * @return True to use the contraction hierarchy of the graph
+     */
+    boolean isHierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Compute the distances from each source to its destinations and add them to the output
+     *
+     * @param output       Output
+     * @param graph        Graph
+     * @param hierarchy    Contraction hierarchy of the graph, null to use Dijkstra
+     * @param sources      Source vertex indices
+     * @param destinations Destination vertex indices of each source, the arrays may be shared between sources
+     */
+    void compute(SimpleResultSet output, CSRGraph graph, ContractionHierarchy hierarchy, int[] sources,
+                 int[][] destinations) throws SQLException {
+        final SourceTask task = hierarchy == null
+                ? new DijkstraTask(graph, destinations)
+                : new HierarchyTask(hierarchy, destinations);
+        if (workers == 1) {
+            for (int i = 0; i < sources.length; i++) {
+                addRows(output, graph, sources[i], destinations[i], task.compute(i, sources[i]));
+            }
+            return;
+        }
+        final ForkJoinPool pool = new ForkJoinPool(workers);
+        try {
+            final ArrayDeque<ForkJoinTask<double[]>> pending = new ArrayDeque<>();
+            int next = 0;
+            for (int i = 0; i < sources.length; i++) {
+                final int sourceIndex = i;
+                pending.add(pool.submit(() -> task.compute(sourceIndex, sources[sourceIndex])));
+                // Keep a bounded number of rows in memory
+                if (pending.size() >= workers * PENDING_SOURCES_PER_WORKER) {
+                    addRows(output, graph, sources[next], destinations[next], get(pending.poll()));
+                    next++;
+                }
+            }
+            while (!pending.isEmpty()) {
+                addRows(output, graph, sources[next], destinations[next], get(pending.poll()));
+                next++;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private void addRows(SimpleResultSet output, CSRGraph graph, int source, int[] destinations,
+                         double[] distances) {
+        final int sourceId = graph.getVertexId(source);
+        for (int i = 0; i < destinations.length; i++) {
+            output.addRow(sourceId, graph.getVertexId(destinations[i]),
+                    distances[i] <= radius ? distances[i] : Double.POSITIVE_INFINITY);
+        }
+    }
+
+    private static double[] get(ForkJoinTask<double[]> task) throws SQLException {
+        try {
+            return task.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("The distance matrix computation has been interrupted", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new SQLException(ex.getCause());
+        }
+    }
+
+    /**
+     * Distances from one source, called by the worker threads
+     */
+    private interface SourceTask {
+        double[] compute(int sourceIndex, int source);
+    }
+
+    private final class DijkstraTask implements SourceTask {
+        private final int[][] destinations;
+        private final ThreadLocal<CSRDijkstra> dijkstra;
+
+        DijkstraTask(CSRGraph graph, int[][] destinations) {
+            this.destinations = destinations;
+            dijkstra = ThreadLocal.withInitial(() -> new CSRDijkstra(graph));
+        }
+
+        @Override
+        public double[] compute(int sourceIndex, int source) {
+            return dijkstra.get().oneToMany(source, destinations[sourceIndex], radius);
+        }
+    }
+
+    private static final class HierarchyTask implements SourceTask {
+        private final int[][] positions;
+        private final ContractionHierarchy.Buckets buckets;
+        private final ThreadLocal<ContractionHierarchy.Query> query;
+        private final ThreadLocal<double[]> row;
+
+        HierarchyTask(ContractionHierarchy hierarchy, int[][] destinations) {
+            // The backward searches are run once for all the distinct destinations
+            final Map<Integer, Integer> destinationPositions = new HashMap<>();
+            final Map<int[], int[]> sharedPositions = new IdentityHashMap<>();
+            int[] distinctDestinations = new int[16];
+            positions = new int[destinations.length][];
+            for (int i = 0; i < destinations.length; i++) {
+                int[] sourcePositions = sharedPositions.get(destinations[i]);
+                if (sourcePositions == null) {
+                    sourcePositions = new int[destinations[i].length];
+                    for (int j = 0; j < destinations[i].length; j++) {
+                        final int destination = destinations[i][j];
+                        Integer position = destinationPositions.get(destination);
+                        if (position == null) {
+                            position = destinationPositions.size();
+                            destinationPositions.put(destination, position);
+                            if (position == distinctDestinations.length) {
+                                distinctDestinations = Arrays.copyOf(distinctDestinations, position * 2);
+                            }
+                            distinctDestinations[position] = destination;
+                        }
+                        sourcePositions[j] = position;
+                    }
+                    sharedPositions.put(destinations[i], sourcePositions);
+                }
+                positions[i] = sourcePositions;
+            }
+            final int destinationCount = destinationPositions.size();
+            buckets = hierarchy.buckets(Arrays.copyOf(distinctDestinations, destinationCount));
+            query = ThreadLocal.withInitial(hierarchy::newQuery);
+            row = ThreadLocal.withInitial(() -> new double[destinationCount]);
+        }
+
+        @Override
+        public double[] compute(int sourceIndex, int source) {
+            final double[] distances = row.get();
+            query.get().fillDistances(source, buckets, distances);
+            final int[] sourcePositions = positions[sourceIndex];
+            final double[] result = new double[sourcePositions.length];
+            for (int j = 0; j < sourcePositions.length; j++) {
+                result[j] = distances[sourcePositions[j]];
+            }
+            return result;
+        }
+    }
+}
@@ -46,7 +46,9 @@ import static org.h2gis.network.functions.GraphConstants.*;
 
 /**
  * Calculates closeness and betweenness centrality for nodes, as well as
- * betweenness centrality for edges.
+ * betweenness centrality for edges. With options, the computation runs on
+ * several threads and may be estimated from a sample of sources, see
+ * {@link ParallelCentrality}.
  *
  * @author Adam Gouge
  */
@@ -60,6 +62,8 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
             "as well as betweenness centrality for edges. Possible signatures:\n" +
             "* `ST_GraphAnalysis('input_edges', 'o[ - eo]')`\n" +
             "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', 'w')`\n" +
+            "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', 'options')`\n" +
+            "* `ST_GraphAnalysis('input_edges', 'o[ - eo]', 'w', 'options')`\n" +
             "\n" +
             "where\n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
@@ -67,6 +71,11 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
             "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
             "  Required if global orientation is directed or reversed.\n" +
             "* `w` = Name of column containing edge weights as doubles\n" +
+            "* `options` = Space separated key=value pairs. The sources are shared by\n" +
+            "  `workers` threads (default: number of processors). With `samples=k`\n" +
+            "  the centrality is estimated from k random pivot sources (`seed`, default 0),\n" +
+            "  k >= ln(2n/delta)/(2 epsilon^2) pivots bound the betweenness error by\n" +
+            "  epsilon*n*(n-2) with probability 1-delta.\n" +
             "\n" +
             "**WARNING**: If ST_GraphAnalysis is called on a graph with more than one\n" +
             "(strongly) connected component, all closeness centrality scores will be zero.\n" +
@@ -117,13 +126,17 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
                                           String weight)
             throws SQLException, InvocationTargetException, NoSuchMethodException,
             InstantiationException, IllegalAccessException {
+        if (weight != null && isOptionsString(weight)) {
+            return doGraphAnalysis(connection, inputTable, orientation, null, weight);
+        }
         final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
         final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, NODE_CENT_SUFFIX);
         final TableLocation edgesName = TableUtilities.suffixTableLocation(tableName, EDGE_CENT_SUFFIX);
         try {
             createTables(connection, nodesName, edgesName);
-            final KeyedGraph graph =
-                    doAnalysisAndReturnGraph(connection, inputTable, orientation, weight);
+            final KeyedGraph graph = prepareGraph(connection, inputTable, orientation, weight,
+                    (weight == null) ? VUCent.class : VWCent.class, EdgeCent.class);
+            doAnalysis(graph, weight);
             storeNodeCentrality(connection, nodesName, graph);
             storeEdgeCentrality(connection, edgesName, graph);
         } catch (SQLException e) {
@@ -140,20 +153,56 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
         return true;
     }
 
-    private static KeyedGraph doAnalysisAndReturnGraph(Connection connection,
-                                                       String inputTable,
-                                                       String orientation,
-                                                       String weight)
-            throws SQLException, NoSuchMethodException, InstantiationException,
+    /**
+     * Calculate centrality indices on the nodes and edges of a graph
+     * constructed from the input table, the sources are shared by several
+     * threads and the centrality may be estimated from a sample of sources.
+     * See {@link ParallelCentrality}.
+     *
+     * @param connection  Connection
+     * @param inputTable  Input table
+     * @param orientation Global orientation
+     * @param weight      Edge weight column name, null for unweighted graphs
+     * @param options     Options ex: {@code 'workers=8 samples=1000 seed=1'}
+     * @return True if the calculation was successful
+     */
+    public static boolean doGraphAnalysis(Connection connection,
+                                          String inputTable,
+                                          String orientation,
+                                          String weight,
+                                          String options) throws SQLException {
+        final ParallelCentrality centrality = ParallelCentrality.parse(options);
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, NODE_CENT_SUFFIX);
+        final TableLocation edgesName = TableUtilities.suffixTableLocation(tableName, EDGE_CENT_SUFFIX);
+        try {
+            createTables(connection, nodesName, edgesName);
+            final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+            LOGGER.debug("Computing the centrality with " + centrality.getWorkers() + " workers... ");
+            final long start = System.currentTimeMillis();
+            final ParallelCentrality.Result result = centrality.compute(graph, weight != null);
+            logTime(LOGGER, start);
+            storeNodeCentrality(connection, nodesName, graph, result);
+            storeEdgeCentrality(connection, edgesName, result);
+        } catch (SQLException e) {
+            LOGGER.error("Problem creating centrality tables.");
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + nodesName);
+                statement.execute("DROP TABLE IF EXISTS " + edgesName);
+            }
+            return false;
+        }
+        return true;
+    }
+
+    private static void doAnalysis(KeyedGraph graph, String weight)
+            throws NoSuchMethodException, InstantiationException,
             IllegalAccessException, InvocationTargetException {
-        final KeyedGraph graph = prepareGraph(connection, inputTable, orientation, weight,
-                (weight == null) ? VUCent.class : VWCent.class, EdgeCent.class);
         final DefaultProgressMonitor pm = new DefaultProgressMonitor();
         GraphAnalyzer analyzer = (weight == null) ?
                 new UnweightedGraphAnalyzer(graph, pm) :
                 new WeightedGraphAnalyzer((WeightedGraph) graph, pm);
         analyzer.computeAll();
-        return graph;
     }
 
     private static void createTables(Connection connection,
@@ -205,6 +254,56 @@ public class ST_GraphAnalysis extends GraphFunction implements ScalarFunction {
         }
     }
 
+    private static void storeNodeCentrality(Connection connection,
+                                            TableLocation nodesName,
+                                            CSRGraph graph,
+                                            ParallelCentrality.Result result) throws SQLException {
+        final double[] betweenness = result.getNodeBetweenness();
+        final double[] closeness = result.getCloseness();
+        try (PreparedStatement nodeSt =
+                     connection.prepareStatement("INSERT INTO " + nodesName + " VALUES(?,?,?)")) {
+            connection.setAutoCommit(false);
+            for (int v = 0; v < graph.getVertexCount(); v++) {
+                nodeSt.setInt(1, graph.getVertexId(v));
+                nodeSt.setDouble(2, betweenness[v]);
+                nodeSt.setDouble(3, closeness[v]);
+                nodeSt.addBatch();
+                if ((v + 1) % BATCH_SIZE == 0) {
+                    nodeSt.executeBatch();
+                    connection.commit();
+                }
+            }
+            nodeSt.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void storeEdgeCentrality(Connection connection,
+                                            TableLocation edgesName,
+                                            ParallelCentrality.Result result) throws SQLException {
+        final int[] edgeIds = result.getEdgeIds();
+        final double[] betweenness = result.getEdgeBetweenness();
+        try (PreparedStatement edgeSt =
+                     connection.prepareStatement("INSERT INTO " + edgesName + " VALUES(?,?)")) {
+            connection.setAutoCommit(false);
+            for (int e = 0; e < edgeIds.length; e++) {
+                edgeSt.setInt(1, edgeIds[e]);
+                edgeSt.setDouble(2, betweenness[e]);
+                edgeSt.addBatch();
+                if ((e + 1) % BATCH_SIZE == 0) {
+                    edgeSt.executeBatch();
+                    connection.commit();
+                }
+            }
+            edgeSt.executeBatch();
+            connection.commit();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
     private static void storeEdgeCentrality(Connection connection,
                                             TableLocation edgesName,
                                             KeyedGraph graph) throws SQLException {
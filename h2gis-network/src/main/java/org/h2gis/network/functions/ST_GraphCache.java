@@ -0,0 +1,109 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.api.ScalarFunction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Keeps the graph of an edges table in memory between the calls of the
+ * network functions. See {@link GraphCache}.
+ *
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public class ST_GraphCache extends GraphFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "`ST_GraphCache` keeps the graphs built from an edges table in memory, the\n" +
+            "following calls of the network functions on this table reuse them until the\n" +
+            "table is modified. Returns the estimated memory in bytes used by the cached\n" +
+            "graphs of this table. Possible signatures:\n" +
+            "* `ST_GraphCache('input_edges')`\n" +
+            "* `ST_GraphCache('input_edges', 'o[ - eo]')` - Load the shortest path graph now\n" +
+            "* `ST_GraphCache('input_edges', 'o[ - eo]', 'w')` - Load the weighted shortest path graph now\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
+            "* `o` = Global orientation (directed, reversed or undirected)\n" +
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "  Required if global orientation is directed or reversed.\n" +
+            "* `w` = Name of column containing edge weights as doubles\n" +
+            "\n" +
+            "Use `ST_GraphCacheDrop` to release the memory.\n";
+
+    /**
+     * Constructor
+     */
+    public ST_GraphCache() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "cache";
+    }
+
+    /**
+     * Enable the graph cache for the given edges table
+     *
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @return Estimated memory in bytes used by the cached graphs of this table
+     */
+    public static long cache(Connection connection, String inputTable) throws SQLException {
+        GraphCache.register(connection, inputTable);
+        return GraphCache.getMemory(connection, inputTable);
+    }
+
+    /**
+     * Enable the graph cache for the given edges table and load the shortest
+     * path graph
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @return Estimated memory in bytes used by the cached graphs of this table
+     */
+    public static long cache(Connection connection, String inputTable, String orientation) throws SQLException {
+        return cache(connection, inputTable, orientation, null);
+    }
+
+    /**
+     * Enable the graph cache for the given edges table and load the shortest
+     * path graph
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return Estimated memory in bytes used by the cached graphs of this table
+     */
+    public static long cache(Connection connection, String inputTable, String orientation,
+                             String weight) throws SQLException {
+        if (GraphCache.register(connection, inputTable)) {
+            prepareCSRGraph(connection, inputTable, orientation, weight);
+        }
+        return GraphCache.getMemory(connection, inputTable);
+    }
+}
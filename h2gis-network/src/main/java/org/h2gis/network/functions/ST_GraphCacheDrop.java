@@ -0,0 +1,75 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.api.ScalarFunction;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Release the graphs kept in memory by {@link ST_GraphCache}.
+ *
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public class ST_GraphCacheDrop extends GraphFunction implements ScalarFunction {
+
+    public static final String REMARKS =
+            "`ST_GraphCacheDrop` releases the graphs kept in memory by `ST_GraphCache`\n" +
+            "and disables the cache for the table. Returns the estimated released memory\n" +
+            "in bytes. Possible signatures:\n" +
+            "* `ST_GraphCacheDrop()` - All the tables\n" +
+            "* `ST_GraphCacheDrop('input_edges')`\n";
+
+    /**
+     * Constructor
+     */
+    public ST_GraphCacheDrop() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "drop";
+    }
+
+    /**
+     * Release the cached graphs of all the tables
+     *
+     * @param connection Connection
+     * @return Estimated released memory in bytes
+     */
+    public static long drop(Connection connection) throws SQLException {
+        return GraphCache.unregister(connection, null);
+    }
+
+    /**
+     * Release the cached graphs of the given edges table
+     *
+     * @param connection Connection
+     * @param inputTable Edges table produced by ST_Graph
+     * @return Estimated released memory in bytes
+     */
+    public static long drop(Connection connection, String inputTable) throws SQLException {
+        return GraphCache.unregister(connection, inputTable);
+    }
+}
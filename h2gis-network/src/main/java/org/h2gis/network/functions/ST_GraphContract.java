@@ -0,0 +1,266 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.api.ScalarFunction;
+import org.h2gis.utilities.TableLocation;
+import org.h2gis.utilities.TableUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.h2gis.network.functions.GraphConstants.*;
+
+/**
+ * Builds the contraction hierarchy of a graph and stores it in two tables: the
+ * contraction level of each node and the shortcut edges. The shortest path
+ * functions use the hierarchy on request when it matches their orientation,
+ * weight and edges.
+ * See {@link ContractionHierarchy}.
+ *
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public class ST_GraphContract extends GraphFunction implements ScalarFunction {
+
+    public static final String NODES_SUFFIX = "_CH_NODES";
+    public static final String SHORTCUTS_SUFFIX = "_CH_SHORTCUTS";
+    public static final String CH_LEVEL = "CH_LEVEL";
+    public static final String MIDDLE_NODE = "MIDDLE_NODE";
+    private static final int BATCH_SIZE = 1000;
+    private static final Logger LOGGER = LoggerFactory.getLogger(ST_GraphContract.class);
+
+    public static final String REMARKS =
+            "`ST_GraphContract` builds the contraction hierarchy of a graph. It produces\n" +
+            "two tables: `input_edges_CH_NODES` containing the contraction level of each\n" +
+            "node and `input_edges_CH_SHORTCUTS` containing the shortcut edges. Once the\n" +
+            "hierarchy is built, `ST_ShortestPathLength` and `ST_ShortestPath` use it with\n" +
+            "the option `hierarchy=true` for the same orientation and weight, which is much\n" +
+            "faster on large graphs. The hierarchy records a fingerprint of the edges, it\n" +
+            "is rejected once the edges are modified: run it again. Possible signatures:\n" +
+            "* `ST_GraphContract('input_edges', 'o[ - eo]')`\n" +
+            "* `ST_GraphContract('input_edges', 'o[ - eo]', 'w')`\n" +
+            "\n" +
+            "where\n" +
+            "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
+            "* `o` = Global orientation (directed, reversed or undirected)\n" +
+            "* `eo` = Edge orientation (1 = directed, -1 = reversed, 0 = undirected).\n" +
+            "  Required if global orientation is directed or reversed.\n" +
+            "* `w` = Name of column containing edge weights as doubles\n";
+
+    /**
+     * Constructor
+     */
+    public ST_GraphContract() {
+        addProperty(PROP_REMARKS, REMARKS);
+    }
+
+    @Override
+    public String getJavaStaticMethod() {
+        return "contract";
+    }
+
+    /**
+     * Build the contraction hierarchy of an unweighted graph
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @return True if the hierarchy has been stored
+     */
+    public static boolean contract(Connection connection, String inputTable, String orientation) throws SQLException {
+        return contract(connection, inputTable, orientation, null);
+    }
+
+    /**
+     * Build the contraction hierarchy of a graph
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @return True if the hierarchy has been stored
+     */
+    public static boolean contract(Connection connection, String inputTable, String orientation,
+                                   String weight) throws SQLException {
+        final GraphFunctionParser parser = new GraphFunctionParser();
+        parser.parseWeightAndOrientation(orientation, weight);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        LOGGER.debug("Contracting the graph... ");
+        long start = System.currentTimeMillis();
+        final ContractionHierarchy hierarchy = ContractionHierarchy.contract(graph);
+        logTime(LOGGER, start);
+        LOGGER.debug("Storing the contraction hierarchy... ");
+        start = System.currentTimeMillis();
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, NODES_SUFFIX);
+        final TableLocation shortcutsName = TableUtilities.suffixTableLocation(tableName, SHORTCUTS_SUFFIX);
+        final boolean previousAutoCommit = connection.getAutoCommit();
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + nodesName + ", " + shortcutsName);
+            st.execute("CREATE TABLE " + nodesName + "(" + NODE_ID + " INTEGER PRIMARY KEY, " +
+                    CH_LEVEL + " INTEGER)");
+            st.execute("CREATE TABLE " + shortcutsName + "(" + START_NODE + " INTEGER, " + END_NODE + " INTEGER, " +
+                    WEIGHT + " DOUBLE PRECISION, " + MIDDLE_NODE + " INTEGER)");
+            connection.setAutoCommit(false);
+            try (PreparedStatement nodeSt = connection.prepareStatement("INSERT INTO " + nodesName +
+                    " VALUES(?, ?)")) {
+                for (int v = 0; v < graph.getVertexCount(); v++) {
+                    nodeSt.setInt(1, graph.getVertexId(v));
+                    nodeSt.setInt(2, hierarchy.getLevel(v));
+                    nodeSt.addBatch();
+                    if ((v + 1) % BATCH_SIZE == 0) {
+                        nodeSt.executeBatch();
+                    }
+                }
+                nodeSt.executeBatch();
+            }
+            try (PreparedStatement shortcutSt = connection.prepareStatement("INSERT INTO " + shortcutsName +
+                    " VALUES(?, ?, ?, ?)")) {
+                for (int i = 0; i < hierarchy.getShortcutCount(); i++) {
+                    shortcutSt.setInt(1, graph.getVertexId(hierarchy.getShortcutSource(i)));
+                    shortcutSt.setInt(2, graph.getVertexId(hierarchy.getShortcutTarget(i)));
+                    shortcutSt.setDouble(3, hierarchy.getShortcutWeight(i));
+                    shortcutSt.setInt(4, graph.getVertexId(hierarchy.getShortcutMiddle(i)));
+                    shortcutSt.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        shortcutSt.executeBatch();
+                    }
+                }
+                shortcutSt.executeBatch();
+            }
+            st.execute("COMMENT ON TABLE " + nodesName + " IS '" +
+                    describe(parser, graph).replace("'", "''") + "'");
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(previousAutoCommit);
+        }
+        logTime(LOGGER, start);
+        // A previous hierarchy of this table may be cached
+        GraphCache.invalidate(connection, inputTable);
+        return true;
+    }
+
+    /**
+     * Describe the graph a hierarchy has been built from, this description is the comment of the nodes table.
+     * The fingerprint of the graph changes with the content of the edges table.
+     *
+     * @param parser Orientation and weight
+     * @param graph  Graph
+     * @return Description
+     */
+    static String describe(GraphFunctionParser parser, CSRGraph graph) {
+        final String edgeOrientation = parser.getEdgeOrientation();
+        final String weight = parser.getWeightColumn();
+        return "orientation=" + parser.getGlobalOrientation() +
+                ";edge_orientation=" + (edgeOrientation == null ? "" : edgeOrientation.toUpperCase()) +
+                ";weight=" + (weight == null ? "" : weight.toUpperCase()) +
+                ";vertices=" + graph.getVertexCount() +
+                ";arcs=" + graph.getArcCount() +
+                ";fingerprint=" + Long.toHexString(graph.getFingerprint());
+    }
+
+    /**
+     * Read the description of the hierarchy of an edges table
+     *
+     * @param connection Connection
+     * @param inputTable Edges table
+     * @return The description, null if the edges table has no hierarchy
+     */
+    static String readDescription(Connection connection, String inputTable) throws SQLException {
+        final TableLocation nodesName = TableUtilities.suffixTableLocation(
+                TableUtilities.parseInputTable(connection, inputTable), NODES_SUFFIX);
+        try (PreparedStatement st = connection.prepareStatement("SELECT REMARKS FROM INFORMATION_SCHEMA.TABLES " +
+                "WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ?")) {
+            st.setString(1, nodesName.getSchema(connection.getSchema()));
+            st.setString(2, nodesName.getTable());
+            try (ResultSet rs = st.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    /**
+     * Load the hierarchy of an edges table
+     *
+     * @param connection Connection
+     * @param inputTable Edges table
+     * @param graph      Graph of the edges table
+     * @return The hierarchy
+     */
+    static ContractionHierarchy load(Connection connection, String inputTable, CSRGraph graph) throws SQLException {
+        final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
+        final TableLocation nodesName = TableUtilities.suffixTableLocation(tableName, NODES_SUFFIX);
+        final TableLocation shortcutsName = TableUtilities.suffixTableLocation(tableName, SHORTCUTS_SUFFIX);
+        try (Statement st = connection.createStatement()) {
+            final int[] levels = new int[graph.getVertexCount()];
+            int nodeCount = 0;
+            try (ResultSet rs = st.executeQuery("SELECT " + NODE_ID + ", " + CH_LEVEL + " FROM " + nodesName)) {
+                while (rs.next()) {
+                    levels[getHierarchyVertex(graph, rs.getInt(1), nodesName)] = rs.getInt(2);
+                    nodeCount++;
+                }
+            }
+            if (nodeCount != levels.length) {
+                throw new SQLException("The contraction hierarchy " + nodesName + " does not match the graph, " +
+                        "run ST_GraphContract again");
+            }
+            int shortcutCount;
+            try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM " + shortcutsName)) {
+                rs.next();
+                shortcutCount = rs.getInt(1);
+            }
+            final int[] sources = new int[shortcutCount];
+            final int[] targets = new int[shortcutCount];
+            final double[] weights = new double[shortcutCount];
+            final int[] middles = new int[shortcutCount];
+            int i = 0;
+            try (ResultSet rs = st.executeQuery("SELECT " + START_NODE + ", " + END_NODE + ", " + WEIGHT + ", " +
+                    MIDDLE_NODE + " FROM " + shortcutsName)) {
+                while (rs.next() && i < shortcutCount) {
+                    sources[i] = getHierarchyVertex(graph, rs.getInt(1), shortcutsName);
+                    targets[i] = getHierarchyVertex(graph, rs.getInt(2), shortcutsName);
+                    weights[i] = rs.getDouble(3);
+                    middles[i] = getHierarchyVertex(graph, rs.getInt(4), shortcutsName);
+                    i++;
+                }
+            }
+            return new ContractionHierarchy(graph, levels, sources, targets, weights, middles);
+        }
+    }
+
+    private static int getHierarchyVertex(CSRGraph graph, int vertexId, TableLocation table) throws SQLException {
+        final int index = graph.indexOf(vertexId);
+        if (index < 0) {
+            throw new SQLException("The contraction hierarchy " + table + " contains the vertex " + vertexId +
+                    " which is not in the graph, run ST_GraphContract again");
+        }
+        return index;
+    }
+}
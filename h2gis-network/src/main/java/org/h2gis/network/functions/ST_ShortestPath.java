@@ -23,24 +23,19 @@ import org.h2.tools.SimpleResultSet;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.TableUtilities;
-import org.javanetworkanalyzer.alg.Dijkstra;
-import org.javanetworkanalyzer.data.VDijkstra;
-import org.javanetworkanalyzer.model.Edge;
-import org.javanetworkanalyzer.model.KeyedGraph;
 import org.locationtech.jts.geom.Geometry;
 
 import java.sql.*;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 
 import static org.h2gis.network.functions.GraphConstants.*;
 import org.h2gis.utilities.GeometryTableUtilities;
 import static org.h2gis.utilities.TableUtilities.isColumnListConnection;
 
 /**
- * Calculates the shortest path(s) between vertices in a JGraphT graph produced
- * from the input_edges table produced by ST_Graph.
+ * Calculates the shortest path(s) between vertices in a compressed sparse row
+ * graph produced from the input_edges table produced by ST_Graph.
  *
  * @author Adam Gouge
  */
@@ -55,6 +50,7 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
             "Possible signatures:\n" +
             "* `ST_ShortestPath('input_edges', 'o[ - eo]', s, d)`  - One-to-One\n" +
             "* `ST_ShortestPath('input_edges', 'o[ - eo]', 'w', s, d)`  - One-to-One weighted\n" +
+            "* `ST_ShortestPath('input_edges', 'o[ - eo]', 'w', s, d, 'options')`  - One-to-One with options\n" +
             "\n" +
             "where\n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
@@ -63,7 +59,12 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
             "  if global orientation is directed or reversed.\n" +
             "* `w` = Name of column containing edge weights as doubles\n" +
             "* `s` = Source vertex id\n" +
-            "* `d` = Destination vertex id\n";
+            "* `d` = Destination vertex id\n" +
+            "* `options` = Space separated key=value pairs: `hierarchy` (true to use the\n" +
+            "  contraction hierarchy built by `ST_GraphContract` with the same orientation\n" +
+            "  and weight, default false). All the shortest paths of the same length are\n" +
+            "  returned, except with the hierarchy which returns a single shortest path.\n" +
+            "  `w` may be NULL for unweighted graphs.\n";
 
     /**
      * Constructor
@@ -108,7 +109,27 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
                                             String weight,
                                             int source,
                                             int destination) throws SQLException {
-        return oneToOne(connection, inputTable, orientation, weight, source, destination);
+        return oneToOne(connection, inputTable, orientation, weight, source, destination, null);
+    }
+
+    /**
+     * @param connection  connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight, null for unweighted graphs
+     * @param source      Source vertex id
+     * @param destination Destination vertex id
+     * @param options     Space separated key=value pairs: hierarchy
+     * @return Shortest path
+     */
+    public static ResultSet getShortestPath(Connection connection,
+                                            String inputTable,
+                                            String orientation,
+                                            String weight,
+                                            int source,
+                                            int destination,
+                                            String options) throws SQLException {
+        return oneToOne(connection, inputTable, orientation, weight, source, destination, options);
     }
 
     private static ResultSet oneToOne(Connection connection,
@@ -116,7 +137,8 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
                                       String orientation,
                                       String weight,
                                       int source,
-                                      int destination) throws SQLException {
+                                      int destination,
+                                      String options) throws SQLException {
         final TableLocation tableName = TableUtilities.parseInputTable(connection, inputTable);
         String firstGeometryField = null;
         try {
@@ -129,84 +151,100 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
             return output;
         }
         // Do the calculation.
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
-        final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-        final VDijkstra vDestination = graph.getVertex(destination);
-        final double distance = dijkstra.oneToOne(graph.getVertex(source), vDestination);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final int vSource = getVertexIndex(graph, source);
+        final int vDestination = getVertexIndex(graph, destination);
+        if (options != null && ParallelDistanceMatrix.parse(options).isHierarchy()) {
+            // The hierarchy gives a single shortest path
+            final ContractionHierarchy hierarchy =
+                    prepareContractionHierarchy(connection, inputTable, orientation, weight, graph);
+            final int[] path = hierarchy.newQuery().path(vSource, vDestination);
+            if (path != null) {
+                final Map<Integer, Geometry> edgeGeometryMap = containsGeomField
+                        ? getEdgeGeometryMap(connection, tableName, firstGeometryField)
+                        : null;
+                addPathEdges(graph, vSource, path, output, edgeGeometryMap);
+            }
+            return output;
+        }
+        final CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        final double distance = dijkstra.oneToOne(vSource, vDestination);
 
-        if (distance != Double.POSITIVE_INFINITY) {           
+        if (distance != Double.POSITIVE_INFINITY) {
             // Need to create an object for the globalID recursion.
             final ST_ShortestPath f = new ST_ShortestPath();
-            if (containsGeomField) {
-                final Map<Integer, Geometry> edgeGeometryMap =
-                        getEdgeGeometryMap(connection, tableName, firstGeometryField);
-                f.addPredEdges(graph, vDestination, output, edgeGeometryMap, 1);
-            } else {
-                f.addPredEdges(graph, vDestination, output, 1);
-            }
+            final Map<Integer, Geometry> edgeGeometryMap = containsGeomField
+                    ? getEdgeGeometryMap(connection, tableName, firstGeometryField)
+                    : null;
+            f.addPredEdges(dijkstra, graph.reverse(), vDestination, output, edgeGeometryMap, 1);
         }
         return output;
     }
 
-    private void addPredEdges(KeyedGraph<VDijkstra, Edge> graph, VDijkstra dest, SimpleResultSet output,
+    private void addPredEdges(CSRDijkstra dijkstra, CSRGraph reversedGraph, int dest, SimpleResultSet output,
                               Map<Integer, Geometry> edgeGeomMap, int localID) throws SQLException {
         // Rebuild the shortest path(s). (Yes, there could be more than
         // one if they have the same distance!)
-        final Set<Edge> predEdges = dest.getPredecessorEdges();
+        boolean hasPredecessor = false;
+        final int end = reversedGraph.getFirstArc(dest + 1);
+        for (int arc = reversedGraph.getFirstArc(dest); arc < end; arc++) {
+            final int edgeSource = reversedGraph.getTarget(arc);
+            final double arcWeight = reversedGraph.getWeight(arc);
+            if (!dijkstra.isPredecessorArc(edgeSource, dest, arcWeight)) {
+                continue;
+            }
+            hasPredecessor = true;
+            final int id = reversedGraph.getEdgeId(arc);
+            final int sourceID = reversedGraph.getVertexId(edgeSource);
+            final int destinationID = reversedGraph.getVertexId(dest);
+            if (edgeGeomMap != null) {
+                output.addRow(edgeGeomMap.get(Math.abs(id)), id, globalID, localID,
+                        sourceID, destinationID, arcWeight);
+            } else {
+                output.addRow(id, globalID, localID, sourceID, destinationID, arcWeight);
+            }
+            // Recursively add the predecessor edges.
+            addPredEdges(dijkstra, reversedGraph, edgeSource, output, edgeGeomMap, localID + 1);
+        }
         // The only vertex with no predecessors is the source vertex, so we can
         // start renumbering here.
-        if (predEdges.isEmpty()) {
+        if (!hasPredecessor) {
             globalID++;
         }
-        // Recursively add the predecessor edges.
-        for (Edge e : predEdges) {
-            final VDijkstra edgeSource = graph.getEdgeSource(e);
-            final VDijkstra edgeDestination = graph.getEdgeTarget(e);
-            final Geometry geometry = edgeGeomMap.get(Math.abs(e.getID()));
-            // Right order
-            if (edgeDestination.equals(dest)) {
-                output.addRow(geometry, e.getID(), globalID, localID,
-                        edgeSource.getID(), edgeDestination.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeSource, output, edgeGeomMap, localID + 1);
-            } // Wrong order
-            else {
-                output.addRow(geometry, e.getID(), globalID, localID,
-                        edgeDestination.getID(), edgeSource.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeDestination, output, edgeGeomMap, localID + 1);
-            }
-        }
     }
 
-    private void addPredEdges(KeyedGraph<VDijkstra, Edge> graph, VDijkstra dest, SimpleResultSet output,
-                              int localID) throws SQLException {
-        // Rebuild the shortest path(s). (Yes, there could be more than
-        // one if they have the same distance!)
-        final Set<Edge> predEdges = dest.getPredecessorEdges();
-        // The only vertex with no predecessors is the source vertex, so we can
-        // start renumbering here.
-        if (predEdges.isEmpty()) {
-            globalID++;
+    /**
+     * Add the edges of a path to the output, from the destination back to the source as
+     * {@link #addPredEdges} does.
+     *
+     * @param graph       Graph
+     * @param source      Source vertex index
+     * @param path        Arc indices from the source to the destination
+     * @param output      Output
+     * @param edgeGeomMap Edge geometries, null if the input table has no geometry field
+     */
+    private static void addPathEdges(CSRGraph graph, int source, int[] path, SimpleResultSet output,
+                                     Map<Integer, Geometry> edgeGeomMap) throws SQLException {
+        final int[] arcSources = new int[path.length];
+        int vertex = source;
+        for (int i = 0; i < path.length; i++) {
+            arcSources[i] = vertex;
+            vertex = graph.getTarget(path[i]);
         }
-        // Recursively add the predecessor edges.
-        for (Edge e : predEdges) {
-            final VDijkstra edgeSource = graph.getEdgeSource(e);
-            final VDijkstra edgeDestination = graph.getEdgeTarget(e);
-            // Right order
-            if (edgeDestination.equals(dest)) {
-                output.addRow(e.getID(), globalID, localID,
-                        edgeSource.getID(), edgeDestination.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeSource, output, localID + 1);
-            } // Wrong order
-            else {
-                output.addRow(e.getID(), globalID, localID,
-                        edgeDestination.getID(), edgeSource.getID(), graph.getEdgeWeight(e));
-                addPredEdges(graph, edgeDestination, output, localID + 1);
-           }
+        int localID = 1;
+        for (int i = path.length - 1; i >= 0; i--) {
+            final int arc = path[i];
+            final int id = graph.getEdgeId(arc);
+            final int sourceID = graph.getVertexId(arcSources[i]);
+            final int destinationID = graph.getVertexId(graph.getTarget(arc));
+            if (edgeGeomMap != null) {
+                output.addRow(edgeGeomMap.get(Math.abs(id)), id, 1, localID++,
+                        sourceID, destinationID, graph.getWeight(arc));
+            } else {
+                output.addRow(id, 1, localID++, sourceID, destinationID, graph.getWeight(arc));
+            }
         }
     }
-    
 
     /**
      * Return a map of edge ids to edge geometries, or null if the input table
@@ -225,6 +263,21 @@ public class ST_ShortestPath extends GraphFunction implements ScalarFunction {
         if (firstGeometryField == null) {
             return null;
         }
+        return GraphCache.get(connection, tableName.toString(), "geometry:" + firstGeometryField,
+                () -> loadEdgeGeometryMap(connection, tableName, firstGeometryField),
+                edgeGeomMap -> {
+                    long memory = 0;
+                    for (Geometry geometry : edgeGeomMap.values()) {
+                        memory += GraphCache.EDGE_MEMORY + (geometry == null ? 0 : geometry.getNumPoints() * 40L);
+                    }
+                    return memory;
+                });
+    }
+
+    private static Map<Integer, Geometry> loadEdgeGeometryMap(Connection connection,
+                                                              TableLocation tableName,
+                                                              String firstGeometryField)
+            throws SQLException {
         final Statement st = connection.createStatement();
         try {
             final ResultSet resultSet = st.executeQuery(
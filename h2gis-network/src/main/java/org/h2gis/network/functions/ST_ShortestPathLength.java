@@ -26,14 +26,11 @@ import org.h2.value.ValueInteger;
 import org.h2.value.ValueVarchar;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.JDBCUtilities;
-import org.javanetworkanalyzer.alg.Dijkstra;
-import org.javanetworkanalyzer.data.VDijkstra;
-import org.javanetworkanalyzer.model.Edge;
-import org.javanetworkanalyzer.model.KeyedGraph;
 
 import java.sql.*;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -41,8 +38,8 @@ import static org.h2gis.network.functions.GraphConstants.*;
 import static org.h2gis.utilities.TableUtilities.isColumnListConnection;
 
 /**
- * Calculates the length(s) of shortest path(s) between vertices in a JGraphT
- * graph produced from the input_edges table produced by ST_Graph.
+ * Calculates the length(s) of shortest path(s) between vertices in a compressed
+ * sparse row graph produced from the input_edges table produced by ST_Graph.
  *
  * @author Adam Gouge
  */
@@ -63,6 +60,11 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', 'sdt')` - Many-to-Many weighted\n" +
             "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', s, d)` - One-to-One weighted\n" +
             "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', s, 'ds')` - One-to-Several weighted\n" +
+            "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'sdt', 'options')` - Many-to-Many in parallel\n" +
+            "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', 'sdt', 'options')` - Many-to-Many weighted in parallel\n" +
+            "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', 'st', 'dt', 'options')` - Many-to-Many in parallel\n" +
+            "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', s, d, 'options')` - One-to-One with options\n" +
+            "* `ST_ShortestPathLength('input_edges', 'o[ - eo]', 'w', s, 'ds', 'options')` - One-to-Several with options\n" +
             "\n" +
             "where\n" +
             "* `input_edges` = Edges table produced by `ST_Graph` from table `input`\n" +
@@ -74,7 +76,15 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             "* `d` = Destination vertex id\n" +
             "* `sdt` = Source-Destination table name (must contain columns\n" +
             "  " + SOURCE + " and " + DESTINATION + " containing integer vertex ids)\n" +
-            "* `ds` = Comma-separated Destination string ('dest1, dest2, ...')\n";
+            "* `ds` = Comma-separated Destination string ('dest1, dest2, ...')\n" +
+            "* `st`, `dt` = Source table and Destination table names (integer vertex ids in\n" +
+            "  the first column)\n" +
+            "* `options` = Space separated key=value pairs: `workers` (number of threads,\n" +
+            "  default is the number of processors), `radius` (the distance to the\n" +
+            "  destinations farther than the radius is infinity, the searches stop there)\n" +
+            "  and `hierarchy` (true to use the contraction hierarchy built by\n" +
+            "  `ST_GraphContract` with the same orientation and weight, default false).\n" +
+            "  `w` may be NULL in the signatures with options for unweighted graphs.\n";
 
 
     /**
@@ -117,7 +127,7 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             return oneToAll(connection, inputTable, orientation, null, source);
         } else if (arg3 instanceof ValueVarchar) {
             String table = arg3.getString();
-            return manyToMany(connection, inputTable, orientation, null, table);
+            return manyToMany(connection, inputTable, orientation, null, table, null);
         } else {
             throw new IllegalArgumentException(ARG_ERROR + arg3);
         }
@@ -172,14 +182,18 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                     return oneToAll(connection, inputTable, orientation, arg3String, source);
                 } else if (arg4 instanceof ValueVarchar) {
                     String table = arg4.getString();
-                    return manyToMany(connection, inputTable, orientation, arg3String, table);
+                    return manyToMany(connection, inputTable, orientation, arg3String, table, null);
                 } else {
                     throw new IllegalArgumentException(ARG_ERROR + arg4);
                 }
             } else {
                 if (arg4 instanceof ValueVarchar) {
-                    final String destTable = arg4.getString();
-                    return manyToManySeparateTables(connection, inputTable, orientation, null, arg3String, destTable);
+                    final String arg4String = arg4.getString();
+                    if (isOptionsString(arg4String)) {
+                        return manyToMany(connection, inputTable, orientation, null, arg3String, arg4String);
+                    }
+                    return manyToManySeparateTables(connection, inputTable, orientation, null, arg3String,
+                            arg4String, null);
                 } else {
                     throw new IllegalArgumentException(ARG_ERROR + arg4);
                 }
@@ -228,8 +242,12 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
         } else if (arg4 instanceof ValueVarchar) {
             final String sourceTable = arg4.getString();
             if (arg5 instanceof ValueVarchar) {
-                final String destTable = arg5.getString();
-                return manyToManySeparateTables(connection, inputTable, orientation, weight, sourceTable, destTable);
+                final String arg5String = arg5.getString();
+                if (isOptionsString(arg5String)) {
+                    return manyToMany(connection, inputTable, orientation, weight, sourceTable, arg5String);
+                }
+                return manyToManySeparateTables(connection, inputTable, orientation, weight, sourceTable,
+                        arg5String, null);
             } else {
                 throw new IllegalArgumentException(ARG_ERROR + arg4);
             }
@@ -238,19 +256,77 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
         }
     }
 
+    /**
+     * Calculate distances with options for
+     * <ol>
+     * <li> One-to-One weighted: <code>(arg4, arg5, options) = (s, d, options) </code>,</li>
+     * <li> One-to-Several weighted: <code>(arg4, arg5, options) = (s, ds, options)</code>.</li>
+     * <li> Many-to-Many weighted: <code>(arg4, arg5, options) = (st, dt, options)</code>.</li>
+     * </ol>
+     *
+     * @param connection  Connection
+     * @param inputTable  Edges table produced by ST_Graph
+     * @param orientation Orientation string
+     * @param weight      Weight column name, null for unweighted graphs
+     * @param arg4        Source vertex id -OR- Source table
+     * @param arg5        Destination vertex id -OR- Destination string -OR- Destination table
+     * @param options     Space separated key=value pairs: workers, radius and hierarchy
+     * @return Distances table
+     */
+    public static ResultSet getShortestPathLength(Connection connection,
+                                                  String inputTable,
+                                                  String orientation,
+                                                  String weight,
+                                                  Value arg4,
+                                                  Value arg5,
+                                                  String options) throws SQLException {
+        if (isColumnListConnection(connection)) {
+            return prepareResultSet();
+        }
+        if (arg4 instanceof ValueInteger) {
+            final int source = arg4.getInt();
+            if (arg5 instanceof ValueInteger) {
+                return oneToOne(connection, inputTable, orientation, weight, source, arg5.getInt(), options);
+            } else if (arg5 instanceof ValueVarchar) {
+                return oneToSeveral(connection, inputTable, orientation, weight, source, arg5.getString(), options);
+            } else {
+                throw new IllegalArgumentException(ARG_ERROR + arg5);
+            }
+        } else if (arg4 instanceof ValueVarchar && arg5 instanceof ValueVarchar) {
+            return manyToManySeparateTables(connection, inputTable, orientation, weight, arg4.getString(),
+                    arg5.getString(), options);
+        } else {
+            throw new IllegalArgumentException(ARG_ERROR + arg4);
+        }
+    }
+
     private static ResultSet oneToOne(Connection connection,
                                      String inputTable,
                                      String orientation,
                                      String weight,
                                      int source,
                                      int destination) throws SQLException {
+        return oneToOne(connection, inputTable, orientation, weight, source, destination, null);
+    }
+
+    private static ResultSet oneToOne(Connection connection,
+                                     String inputTable,
+                                     String orientation,
+                                     String weight,
+                                     int source,
+                                     int destination,
+                                     String options) throws SQLException {
         final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final ContractionHierarchy hierarchy = options != null && ParallelDistanceMatrix.parse(options).isHierarchy()
+                ? prepareContractionHierarchy(connection, inputTable, orientation, weight, graph)
+                : null;
+        final int vSource = getVertexIndex(graph, source);
+        final int vDestination = getVertexIndex(graph, destination);
         // 7: (o, w, s, d)
-        final double distance = new Dijkstra<VDijkstra, Edge>(graph)
-                .oneToOne(graph.getVertex(source), graph.getVertex(destination));
+        final double distance = hierarchy != null
+                ? hierarchy.newQuery().distance(vSource, vDestination)
+                : new CSRDijkstra(graph).oneToOne(vSource, vDestination);
         output.addRow(source, destination, distance);
         return output;
     }
@@ -261,14 +337,12 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                                       String weight,
                                       int source) throws SQLException {
         final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
         // 5: (o, w, s)
-        final Map<VDijkstra,Double> distances = new Dijkstra<VDijkstra, Edge>(graph)
-                        .oneToMany(graph.getVertex(source), graph.vertexSet());
-        for (Map.Entry<VDijkstra, Double> e : distances.entrySet()) {
-            output.addRow(source, e.getKey().getID(), e.getValue());
+        final CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        dijkstra.calculate(getVertexIndex(graph, source), Double.POSITIVE_INFINITY);
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            output.addRow(source, graph.getVertexId(v), dijkstra.getDistance(v));
         }
         return output;
     }
@@ -277,29 +351,38 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                                         String inputTable,
                                         String orientation,
                                         String weight,
-                                        String sourceDestinationTable) throws SQLException {
+                                        String sourceDestinationTable,
+                                        String options) throws SQLException {
         final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
         final Statement st = connection.createStatement();
         try {
             // Prepare the source-destination map from the source-destination table.
-            Map<VDijkstra, Set<VDijkstra>> sourceDestinationMap =
+            Map<Integer, Set<Integer>> sourceDestinationMap =
                     prepareSourceDestinationMap(st, sourceDestinationTable, graph);
 
+            if (options != null) {
+                final ParallelDistanceMatrix matrix = ParallelDistanceMatrix.parse(options);
+                final ContractionHierarchy hierarchy = matrix.isHierarchy()
+                        ? prepareContractionHierarchy(connection, inputTable, orientation, weight, graph)
+                        : null;
+                final int[] sources = new int[sourceDestinationMap.size()];
+                final int[][] destinations = new int[sources.length][];
+                int i = 0;
+                for (Map.Entry<Integer, Set<Integer>> sourceToDestSetMap : sourceDestinationMap.entrySet()) {
+                    sources[i] = sourceToDestSetMap.getKey();
+                    destinations[i++] = toArray(sourceToDestSetMap.getValue());
+                }
+                matrix.compute(output, graph, hierarchy, sources, destinations);
+                return output;
+            }
+
             // Reusable Dijkstra object.
-            final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
+            final CSRDijkstra dijkstra = new CSRDijkstra(graph);
 
             // 6: (o, w, sdt). Do One-to-Many many times and store the results.
-            for (Map.Entry<VDijkstra, Set<VDijkstra>> sourceToDestSetMap : sourceDestinationMap.entrySet()) {
-                Map<VDijkstra, Double> distances =
-                        dijkstra.oneToMany(sourceToDestSetMap.getKey(),
-                                           sourceToDestSetMap.getValue());
-                for (Map.Entry<VDijkstra, Double> destToDistMap : distances.entrySet()) {
-                    output.addRow(sourceToDestSetMap.getKey().getID(),
-                            destToDistMap.getKey().getID(), destToDistMap.getValue());
-                }
+            for (Map.Entry<Integer, Set<Integer>> sourceToDestSetMap : sourceDestinationMap.entrySet()) {
+                addOneToMany(output, dijkstra, sourceToDestSetMap.getKey(), toArray(sourceToDestSetMap.getValue()));
             }
         } finally {
             st.close();
@@ -313,23 +396,27 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
             String orientation,
             String weight,
             String sourceTable,
-            String destTable) throws SQLException {
+            String destTable,
+            String options) throws SQLException {
         final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
         final Statement st = connection.createStatement();
         try {
-            final Set<VDijkstra> destSet = getSet(st, graph, destTable);
-            final Set<VDijkstra> sourceSet = getSet(st, graph, sourceTable);
-            final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-            for (VDijkstra source : sourceSet) {
-                Map<VDijkstra, Double> distances =
-                        dijkstra.oneToMany(source, destSet);
-                for (Map.Entry<VDijkstra, Double> destToDistMap : distances.entrySet()) {
-                    output.addRow(source.getID(),
-                            destToDistMap.getKey().getID(), destToDistMap.getValue());
-                }
+            final int[] destSet = toArray(getSet(st, graph, destTable));
+            final Set<Integer> sourceSet = getSet(st, graph, sourceTable);
+            if (options != null) {
+                final ParallelDistanceMatrix matrix = ParallelDistanceMatrix.parse(options);
+                final ContractionHierarchy hierarchy = matrix.isHierarchy()
+                        ? prepareContractionHierarchy(connection, inputTable, orientation, weight, graph)
+                        : null;
+                final int[][] destinations = new int[sourceSet.size()][];
+                Arrays.fill(destinations, destSet);
+                matrix.compute(output, graph, hierarchy, toArray(sourceSet), destinations);
+                return output;
+            }
+            final CSRDijkstra dijkstra = new CSRDijkstra(graph);
+            for (int source : sourceSet) {
+                addOneToMany(output, dijkstra, source, destSet);
             }
         } finally {
             st.close();
@@ -337,28 +424,71 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
         return output;
     }
 
+    /**
+     * Compute the distances from the source to the destinations and add them to the output.
+     *
+     * @param output       Output
+     * @param dijkstra     Dijkstra
+     * @param source       Source vertex index
+     * @param destinations Destination vertex indices
+     */
+    private static void addOneToMany(SimpleResultSet output, CSRDijkstra dijkstra, int source, int[] destinations) {
+        final CSRGraph graph = dijkstra.getGraph();
+        final double[] distances = dijkstra.oneToMany(source, destinations);
+        for (int i = 0; i < destinations.length; i++) {
+            output.addRow(graph.getVertexId(source), graph.getVertexId(destinations[i]), distances[i]);
+        }
+    }
+
+    /**
+     * Compute the distances from each source to each destination with the contraction hierarchy and add them to
+     * the output.
+     *
+     * @param output       Output
+     * @param hierarchy    Contraction hierarchy
+     * @param sources      Source vertex indices
+     * @param destinations Destination vertex indices
+     */
+    private static void addManyToMany(SimpleResultSet output, ContractionHierarchy hierarchy, int[] sources,
+                                      int[] destinations) {
+        final CSRGraph graph = hierarchy.getGraph();
+        final ContractionHierarchy.Buckets buckets = hierarchy.buckets(destinations);
+        final ContractionHierarchy.Query query = hierarchy.newQuery();
+        final double[] distances = new double[destinations.length];
+        for (int source : sources) {
+            query.fillDistances(source, buckets, distances);
+            for (int i = 0; i < destinations.length; i++) {
+                output.addRow(graph.getVertexId(source), graph.getVertexId(destinations[i]), distances[i]);
+            }
+        }
+    }
+
+    private static int[] toArray(Set<Integer> set) {
+        final int[] array = new int[set.size()];
+        int i = 0;
+        for (int value : set) {
+            array[i++] = value;
+        }
+        return array;
+    }
+
     /**
      * Puts the integers contained in the first column of the table in a Set of
-     * corresponding VDijkstra.
+     * corresponding vertex indices.
      *
      * @param st        Statement
      * @param graph     Graph
      * @param tableName Table
-     * @return Set of VDijkstra
+     * @return Set of vertex indices
      */
-    private static Set<VDijkstra> getSet(Statement st,
-            KeyedGraph<VDijkstra, Edge> graph, String tableName) throws SQLException {
+    private static Set<Integer> getSet(Statement st,
+            CSRGraph graph, String tableName) throws SQLException {
         final ResultSet intSet =
                 st.executeQuery("SELECT * FROM " + tableName);
         try {
-            final Set<VDijkstra> set = new HashSet<VDijkstra>();
+            final Set<Integer> set = new LinkedHashSet<Integer>();
             while (intSet.next()) {
-                final int vertexID = intSet.getInt(1);
-                final VDijkstra vertex = graph.getVertex(vertexID);
-                if (vertex == null) {
-                    throw new IllegalArgumentException("The graph does not contain vertex " + vertexID);
-                }
-                set.add(vertex);
+                set.add(getVertexIndex(graph, intSet.getInt(1)));
             }
             if (set.isEmpty()) {
                 throw new IllegalArgumentException("Table " + tableName + " was empty.");
@@ -375,25 +505,31 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
                                           String weight,
                                           int source,
                                           String destString) throws SQLException {
-        final SimpleResultSet output = prepareResultSet();
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        return oneToSeveral(connection, inputTable, orientation, weight, source, destString, null);
+    }
 
+    private static ResultSet oneToSeveral(Connection connection,
+                                          String inputTable,
+                                          String orientation,
+                                          String weight,
+                                          int source,
+                                          String destString,
+                                          String options) throws SQLException {
+        final SimpleResultSet output = prepareResultSet();
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
         final int[] destIDs = GraphFunctionParser.parseDestinationsString(destString);
-        Set<VDijkstra> destSet = new HashSet<VDijkstra>();
+        Set<Integer> destSet = new LinkedHashSet<Integer>();
         for (int d : destIDs)  {
-            final VDijkstra dest = graph.getVertex(d);
-            if (dest == null) {
-                throw new IllegalArgumentException("The graph does not contain vertex " + d);
-            }
-            destSet.add(dest);
+            destSet.add(getVertexIndex(graph, d));
         }
+        final ContractionHierarchy hierarchy = options != null && ParallelDistanceMatrix.parse(options).isHierarchy()
+                ? prepareContractionHierarchy(connection, inputTable, orientation, weight, graph)
+                : null;
         // 8: (o, w, s, ds)
-        final Map<VDijkstra, Double> distances = new Dijkstra<VDijkstra, Edge>(graph)
-                .oneToMany(graph.getVertex(source), destSet);
-        for (Map.Entry<VDijkstra, Double> e : distances.entrySet()) {
-            output.addRow(source, e.getKey().getID(), e.getValue());
+        if (hierarchy != null) {
+            addManyToMany(output, hierarchy, new int[]{getVertexIndex(graph, source)}, toArray(destSet));
+        } else {
+            addOneToMany(output, new CSRDijkstra(graph), getVertexIndex(graph, source), toArray(destSet));
         }
         return output;
     }
@@ -404,12 +540,12 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
      *
      * @param sourceDestinationTable Source-Destination table name
      * @param graph                  Graph
-     * @return Source-Destination map
+     * @return Source-Destination map of vertex indices
      */
-    private static Map<VDijkstra, Set<VDijkstra>> prepareSourceDestinationMap(
+    private static Map<Integer, Set<Integer>> prepareSourceDestinationMap(
             Statement st,
             String sourceDestinationTable,
-            KeyedGraph<VDijkstra, Edge> graph) throws SQLException {
+            CSRGraph graph) throws SQLException {
         final ResultSet sourceDestinationRS =
                 st.executeQuery("SELECT " +
                         SOURCE + ", " + DESTINATION +
@@ -417,18 +553,12 @@ public class ST_ShortestPathLength extends GraphFunction implements ScalarFuncti
         try {
             // Make sure the source-destination table has columns named
             // SOURCE and DESTINATION. An SQLException is thrown if not.
-            Map<VDijkstra, Set<VDijkstra>> map = new HashMap<VDijkstra, Set<VDijkstra>>();
+            Map<Integer, Set<Integer>> map = new LinkedHashMap<Integer, Set<Integer>>();
             while (sourceDestinationRS.next()) {
-                final VDijkstra source = graph.getVertex(sourceDestinationRS.getInt(SOURCE_INDEX));
-                final VDijkstra destination = graph.getVertex(sourceDestinationRS.getInt(DESTINATION_INDEX));
-                Set<VDijkstra> targets = map.get(source);
+                final int source = getVertexIndex(graph, sourceDestinationRS.getInt(SOURCE_INDEX));
+                final int destination = getVertexIndex(graph, sourceDestinationRS.getInt(DESTINATION_INDEX));
                 // Lazy initialize if the destinations set is null.
-                if (targets == null) {
-                    targets = new HashSet<VDijkstra>();
-                    map.put(source, targets);
-                }
-                // Add the destination.
-                targets.add(destination);
+                map.computeIfAbsent(source, k -> new LinkedHashSet<Integer>()).add(destination);
             }
             if (map.isEmpty()) {
                 throw new IllegalArgumentException("No sources/destinations requested.");
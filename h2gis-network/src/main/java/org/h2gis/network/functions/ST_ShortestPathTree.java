@@ -24,11 +24,6 @@ import org.h2.value.*;
 import org.h2gis.api.ScalarFunction;
 import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.TableUtilities;
-import org.javanetworkanalyzer.alg.Dijkstra;
-import org.javanetworkanalyzer.data.VDijkstra;
-import org.javanetworkanalyzer.model.Edge;
-import org.javanetworkanalyzer.model.KeyedGraph;
-import org.javanetworkanalyzer.model.TraversalGraph;
 import org.locationtech.jts.geom.Geometry;
 
 import java.sql.Connection;
@@ -42,8 +37,8 @@ import org.h2gis.utilities.GeometryTableUtilities;
 import static org.h2gis.utilities.TableUtilities.isColumnListConnection;
 
 /**
- * Calculates the shortest path(s) between vertices in a JGraphT graph produced
- * from the input_edges table produced by ST_Graph.
+ * Calculates the shortest path tree from a vertex in a compressed sparse row graph
+ * produced from the input_edges table produced by ST_Graph.
  *
  * @author Adam Gouge
  */
@@ -163,42 +158,31 @@ public class ST_ShortestPathTree extends GraphFunction implements ScalarFunction
             return output;
         }
         // Do the calculation.
-        final KeyedGraph<VDijkstra, Edge> graph =
-                prepareGraph(connection, inputTable, orientation, weight,
-                        VDijkstra.class, Edge.class);
+        final CSRGraph graph = prepareCSRGraph(connection, inputTable, orientation, weight);
+        final CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        dijkstra.calculate(getVertexIndex(graph, source), radius);
 
-        final Dijkstra<VDijkstra, Edge> dijkstra = new Dijkstra<VDijkstra, Edge>(graph);
-        final VDijkstra vSource = graph.getVertex(source);
-        final TraversalGraph<VDijkstra, Edge> shortestPathTree;
-
-        if (radius < Double.POSITIVE_INFINITY) {
-            dijkstra.calculate(vSource, radius);
-            shortestPathTree = dijkstra.reconstructTraversalGraph(radius);
-        } else {
-            dijkstra.calculate(vSource);
-            shortestPathTree = dijkstra.reconstructTraversalGraph();
-        }
-
-        if (containsGeomField) {
-            final Map<Integer, Geometry> edgeGeometryMap =
-                    ST_ShortestPath.getEdgeGeometryMap(connection, tableName, firstGeometryField);
-            for (Edge e : shortestPathTree.edgeSet()) {
-                final Edge baseGraphEdge = e.getBaseGraphEdge();
-                final int id = baseGraphEdge.getID();
-                output.addRow(edgeGeometryMap.get(Math.abs(id)),
-                        id,
-                        shortestPathTree.getEdgeSource(e).getID(),
-                        shortestPathTree.getEdgeTarget(e).getID(),
-                        graph.getEdgeWeight(baseGraphEdge));
+        final Map<Integer, Geometry> edgeGeometryMap = containsGeomField
+                ? ST_ShortestPath.getEdgeGeometryMap(connection, tableName, firstGeometryField)
+                : null;
+        // The tree contains all the arcs ending a shortest path, vertices out of the radius are excluded
+        for (int v = 0; v < graph.getVertexCount(); v++) {
+            if (!(dijkstra.getDistance(v) < radius)) {
+                continue;
             }
-        } else {
-            for (Edge e : shortestPathTree.edgeSet()) {
-                final Edge baseGraphEdge = e.getBaseGraphEdge();
-                final int id = baseGraphEdge.getID();
-                output.addRow(id,
-                        shortestPathTree.getEdgeSource(e).getID(),
-                        shortestPathTree.getEdgeTarget(e).getID(),
-                        graph.getEdgeWeight(baseGraphEdge));
+            final int end = graph.getFirstArc(v + 1);
+            for (int arc = graph.getFirstArc(v); arc < end; arc++) {
+                final int target = graph.getTarget(arc);
+                final double arcWeight = graph.getWeight(arc);
+                if (dijkstra.getDistance(target) < radius && dijkstra.isPredecessorArc(v, target, arcWeight)) {
+                    final int id = graph.getEdgeId(arc);
+                    if (containsGeomField) {
+                        output.addRow(edgeGeometryMap.get(Math.abs(id)), id,
+                                graph.getVertexId(v), graph.getVertexId(target), arcWeight);
+                    } else {
+                        output.addRow(id, graph.getVertexId(v), graph.getVertexId(target), arcWeight);
+                    }
+                }
             }
         }
         return output;
@@ -0,0 +1,156 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.javanetworkanalyzer.alg.Dijkstra;
+import org.javanetworkanalyzer.data.VDijkstra;
+import org.javanetworkanalyzer.model.DirectedWeightedPseudoG;
+import org.javanetworkanalyzer.model.Edge;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public class CSRDijkstraTest {
+
+    private static final double TOLERANCE = 1E-9;
+
+    @Test
+    public void testGraphStructure() {
+        CSRGraph.Builder builder = new CSRGraph.Builder(false);
+        builder.addArc(30, 10, 1, 2.0);
+        builder.addArc(10, 20, 2, 1.0);
+        builder.addArc(10, 30, 3, 4.0);
+        CSRGraph graph = builder.build();
+        assertEquals(3, graph.getVertexCount());
+        assertEquals(3, graph.getArcCount());
+        assertEquals(0, graph.indexOf(10));
+        assertEquals(2, graph.indexOf(30));
+        assertEquals(-1, graph.indexOf(15));
+        // The arcs of a vertex keep the insertion order
+        int v10 = graph.indexOf(10);
+        assertEquals(2, graph.getFirstArc(v10 + 1) - graph.getFirstArc(v10));
+        assertEquals(2, graph.getEdgeId(graph.getFirstArc(v10)));
+        assertEquals(3, graph.getEdgeId(graph.getFirstArc(v10) + 1));
+        CSRGraph reversed = graph.reverse();
+        int v30 = reversed.indexOf(30);
+        assertEquals(1, reversed.getFirstArc(v30 + 1) - reversed.getFirstArc(v30));
+        assertEquals(3, reversed.getEdgeId(reversed.getFirstArc(v30)));
+        assertEquals(v10, reversed.getTarget(reversed.getFirstArc(v30)));
+        assertSame(graph, reversed.reverse());
+    }
+
+    @Test
+    public void testHeap() {
+        IndexedMinHeap heap = new IndexedMinHeap(100);
+        Random random = new Random(7);
+        double[] keys = new double[100];
+        for (int i = 0; i < 100; i++) {
+            keys[i] = random.nextDouble() * 100;
+            heap.insertOrDecrease(i, keys[i]);
+        }
+        for (int i = 0; i < 100; i += 3) {
+            keys[i] = keys[i] / 2;
+            heap.insertOrDecrease(i, keys[i]);
+        }
+        // A greater key is ignored
+        heap.insertOrDecrease(1, keys[1] + 50);
+        double previous = Double.NEGATIVE_INFINITY;
+        int count = 0;
+        while (!heap.isEmpty()) {
+            double key = heap.peekKey();
+            int element = heap.poll();
+            assertEquals(keys[element], key, 0);
+            assertTrue(key >= previous);
+            assertFalse(heap.contains(element));
+            previous = key;
+            count++;
+        }
+        assertEquals(100, count);
+    }
+
+    @Test
+    public void testCompareWithJGraphT() {
+        final int vertexCount = 500;
+        Random random = new Random(42);
+        double[] x = new double[vertexCount];
+        double[] y = new double[vertexCount];
+        for (int i = 0; i < vertexCount; i++) {
+            x[i] = random.nextDouble() * 1000;
+            y[i] = random.nextDouble() * 1000;
+        }
+        CSRGraph.Builder builder = new CSRGraph.Builder(false);
+        DirectedWeightedPseudoG<VDijkstra, Edge> jGraph = new DirectedWeightedPseudoG<>(VDijkstra.class, Edge.class);
+        for (int edgeId = 1; edgeId <= vertexCount * 3; edgeId++) {
+            int start = random.nextInt(vertexCount);
+            int end = random.nextInt(vertexCount);
+            // The weight is never lower than the euclidean distance
+            double weight = Math.hypot(x[start] - x[end], y[start] - y[end]) * (1 + random.nextDouble());
+            builder.addArc(start, end, edgeId, weight);
+            jGraph.addEdge(start, end, edgeId).setWeight(weight);
+        }
+        CSRGraph graph = builder.build();
+        CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        Dijkstra<VDijkstra, Edge> jDijkstra = new Dijkstra<>(jGraph);
+        for (int i = 0; i < 50; i++) {
+            int sourceId = graph.getVertexId(random.nextInt(graph.getVertexCount()));
+            int targetId = graph.getVertexId(random.nextInt(graph.getVertexCount()));
+            int source = graph.indexOf(sourceId);
+            int target = graph.indexOf(targetId);
+            double expected = jDijkstra.oneToOne(jGraph.getVertex(sourceId), jGraph.getVertex(targetId));
+            assertEquals(expected, dijkstra.oneToOne(source, target), TOLERANCE);
+            // A* with the euclidean distance to the target
+            double astar = dijkstra.oneToOne(source, target, vertex -> {
+                int id = graph.getVertexId(vertex);
+                return Math.hypot(x[id] - x[targetId], y[id] - y[targetId]);
+            });
+            assertEquals(expected, astar, TOLERANCE);
+            dijkstra.calculate(source, Double.POSITIVE_INFINITY);
+            jDijkstra.calculate(jGraph.getVertex(sourceId));
+            for (int v = 0; v < graph.getVertexCount(); v++) {
+                assertEquals(jGraph.getVertex(graph.getVertexId(v)).getDistance(), dijkstra.getDistance(v), TOLERANCE);
+            }
+        }
+    }
+
+    @Test
+    public void testMultipleSources() {
+        CSRGraph.Builder builder = new CSRGraph.Builder(true);
+        // 1 - 2 - 3 - 4 - 5
+        for (int i = 1; i < 5; i++) {
+            builder.addArc(i, i + 1, i, 1.0);
+            builder.addArc(i + 1, i, i, 1.0);
+        }
+        CSRGraph graph = builder.build();
+        CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        dijkstra.calculate(new int[]{graph.indexOf(1), graph.indexOf(5)}, Double.POSITIVE_INFINITY);
+        assertEquals(1, graph.getVertexId(dijkstra.getOrigin(graph.indexOf(2))));
+        assertEquals(5, graph.getVertexId(dijkstra.getOrigin(graph.indexOf(4))));
+        assertEquals(2.0, dijkstra.getDistance(graph.indexOf(3)), TOLERANCE);
+        double[] distances = dijkstra.oneToMany(graph.indexOf(2), new int[]{graph.indexOf(5), graph.indexOf(1)});
+        assertArrayEquals(new double[]{3.0, 1.0}, distances, TOLERANCE);
+    }
+}
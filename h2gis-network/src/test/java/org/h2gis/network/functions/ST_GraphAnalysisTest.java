@@ -47,6 +47,7 @@ public class ST_GraphAnalysisTest {
     private static Connection connection;
     private Statement st;
     private static final double TOLERANCE = 10E-16;
+    private static final double PARALLEL_TOLERANCE = 1E-12;
     private static final String DO = "'directed - edge_orientation'";
     private static final String RO = "'reversed - edge_orientation'";
     private static final String U = "'undirected'";
@@ -496,6 +497,134 @@ public class ST_GraphAnalysisTest {
         }
     }
 
+    @Test
+    public void testParallel() throws Exception {
+        for (String options : new String[]{"'workers=1'", "'workers=3'"}) {
+            checkParallel(DO, null, options,
+                    new double[]{
+                            4.0 / (0.0 + 1.0 + 1.0 + 2.0 + 1.0),
+                            4.0 / (3.0 + 0.0 + 1.0 + 2.0 + 2.0),
+                            4.0 / (2.0 + 1.0 + 0.0 + 1.0 + 1.0),
+                            4.0 / (2.0 + 1.0 + 2.0 + 0.0 + 1.0),
+                            4.0 / (1.0 + 2.0 + 2.0 + 1.0 + 0.0)},
+                    DO_RO_NODE_BETWEENNESS, DO_RO_EDGE_BETWEENNESS);
+            checkParallel(DO, W, options,
+                    new double[]{
+                            4.0 / (0.0 + 8.0 + 5.0 + 13.0 + 7.0),
+                            4.0 / (11.0 + 0.0 + 2.0 + 10.0 + 4.0),
+                            4.0 / (9.0 + 3.0 + 0.0 + 8.0 + 2.0),
+                            4.0 / (11.0 + 1.0 + 3.0 + 0.0 + 4.0),
+                            4.0 / (7.0 + 7.0 + 9.0 + 6.0 + 0.0)},
+                    WDO_WRO_NODE_BETWEENNESS, WDO_WRO_EDGE_BETWEENNESS);
+            checkParallel(RO, W, options,
+                    new double[]{
+                            4.0 / (0.0 + 11.0 + 9.0 + 11.0 + 7.0),
+                            4.0 / (8.0 + 0.0 + 3.0 + 1.0 + 7.0),
+                            4.0 / (5.0 + 2.0 + 0.0 + 3.0 + 9.0),
+                            4.0 / (13.0 + 10.0 + 8.0 + 0.0 + 6.0),
+                            4.0 / (7.0 + 4.0 + 2.0 + 4.0 + 0.0)},
+                    WDO_WRO_NODE_BETWEENNESS, WDO_WRO_EDGE_BETWEENNESS);
+            // Parallel edges 3 and 4 give a single predecessor, as in the sequential analysis
+            checkParallel(U, null, options,
+                    new double[]{
+                            4.0 / (0.0 + 1.0 + 1.0 + 2.0 + 1.0),
+                            4.0 / (1.0 + 0.0 + 1.0 + 1.0 + 2.0),
+                            4.0 / (1.0 + 1.0 + 0.0 + 1.0 + 1.0),
+                            4.0 / (2.0 + 1.0 + 1.0 + 0.0 + 1.0),
+                            4.0 / (1.0 + 2.0 + 1.0 + 1.0 + 0.0)},
+                    new double[]{0., 1./7, 1., 2./7, 1./2},
+                    new double[]{3./4, 19./20, 0., 0., 11./20, 11./20, 7./10, 1./4, 1./4, 1.0});
+            checkParallel(U, W, options,
+                    new double[]{
+                            4.0 / (0.0 + 7.0 + 5.0 + 8.0 + 7.0),
+                            4.0 / (7.0 + 0.0 + 2.0 + 1.0 + 4.0),
+                            4.0 / (5.0 + 2.0 + 0.0 + 3.0 + 2.0),
+                            4.0 / (8.0 + 1.0 + 3.0 + 0.0 + 4.0),
+                            4.0 / (7.0 + 4.0 + 2.0 + 4.0 + 0.0)},
+                    new double[]{0., 4./7, 1., 0., 0.},
+                    new double[]{0., 3./5, 1., 0., 7./10, 0., 1./2, 1./5, 0., 1./10, 0.});
+        }
+    }
+
+    @Test
+    public void testParallelLineGraph() throws Exception {
+        final int n = 5 * BATCH_SIZE + 1;
+        final String tableName = createLineGraphTable(connection, n);
+        checkBoolean(st.executeQuery("SELECT ST_GraphAnalysis('" + tableName + "', 'undirected', 'workers=4');"));
+        try (ResultSet nodeCent = st.executeQuery("SELECT * FROM " + tableName + "_NODE_CENT")) {
+            final double max = (n - 1.) * (n - 1) / 2;
+            int count = 0;
+            while (nodeCent.next()) {
+                final int k = nodeCent.getInt(GraphConstants.NODE_ID);
+                assertEquals(2. * (n - 1) / (k * (k - 1) + (n - k) * (n - k + 1)),
+                        nodeCent.getDouble(GraphConstants.CLOSENESS), PARALLEL_TOLERANCE);
+                assertEquals(2. * (k - 1) * (n - k) / max,
+                        nodeCent.getDouble(GraphConstants.BETWEENNESS), PARALLEL_TOLERANCE);
+                count++;
+            }
+            assertEquals(n, count);
+        }
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        final int n = 5 * BATCH_SIZE + 1;
+        final String tableName = createLineGraphTable(connection, n);
+        final double[][] estimated = new double[2][];
+        for (int i = 0; i < 2; i++) {
+            st.execute("DROP TABLE IF EXISTS " + tableName + NODE_CENT_SUFFIX + ", " + tableName + EDGE_CENT_SUFFIX);
+            checkBoolean(st.executeQuery("SELECT ST_GraphAnalysis('" + tableName + "', 'undirected', " +
+                    "'workers=" + (i + 1) + " samples=100 seed=7');"));
+            estimated[i] = new double[n];
+            try (ResultSet nodeCent = st.executeQuery("SELECT * FROM " + tableName + "_NODE_CENT")) {
+                final double max = (n - 1.) * (n - 1) / 2;
+                while (nodeCent.next()) {
+                    final int k = nodeCent.getInt(GraphConstants.NODE_ID);
+                    estimated[i][k - 1] = nodeCent.getDouble(GraphConstants.BETWEENNESS);
+                    assertEquals(2. * (k - 1) * (n - k) / max, estimated[i][k - 1], 0.1);
+                    final double closeness = 2. * (n - 1) / (k * (k - 1) + (n - k) * (n - k + 1));
+                    assertEquals(closeness, nodeCent.getDouble(GraphConstants.CLOSENESS), 0.1 * closeness);
+                }
+            }
+        }
+        // The pivots depend on the seed only
+        assertArrayEquals(estimated[0], estimated[1], PARALLEL_TOLERANCE);
+    }
+
+    @Test
+    public void testParallelOptionsFail() {
+        SQLException e = assertThrows(SQLException.class, () ->
+                st.execute("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", 'workers=0')"));
+        assertEquals("The option workers must be greater than 0", e.getMessage());
+        assertThrows(SQLException.class, () ->
+                st.execute("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", 'samples=0')"));
+        assertThrows(SQLException.class, () ->
+                st.execute("SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', " + DO + ", 'workers=2 unknown=1')"));
+    }
+
+    private void checkParallel(String orientation, String weight, String options, double[] closeness,
+                               double[] nodeBetweenness, double[] edgeBetweenness) throws SQLException {
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX);
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX);
+        checkBoolean(compute(orientation, weight == null ? options : weight + ", " + options));
+        try (ResultSet nodeCent = st.executeQuery("SELECT * FROM CORMEN_EDGES_ALL" + NODE_CENT_SUFFIX)) {
+            while (nodeCent.next()) {
+                final int nodeID = nodeCent.getInt(GraphConstants.NODE_ID);
+                assertEquals(closeness[nodeID - 1], nodeCent.getDouble(GraphConstants.CLOSENESS),
+                        PARALLEL_TOLERANCE);
+                assertEquals(nodeBetweenness[nodeID - 1], nodeCent.getDouble(GraphConstants.BETWEENNESS),
+                        PARALLEL_TOLERANCE);
+            }
+        }
+        try (ResultSet edgeCent = st.executeQuery("SELECT * FROM CORMEN_EDGES_ALL" + EDGE_CENT_SUFFIX)) {
+            while (edgeCent.next()) {
+                final int edgeID = edgeCent.getInt(EDGE_ID);
+                assertEquals(edgeBetweenness[(edgeID > 0) ? edgeID - 1 : -edgeID],
+                        edgeCent.getDouble(GraphConstants.BETWEENNESS), PARALLEL_TOLERANCE);
+            }
+        }
+    }
+
     private ResultSet compute(String orientation, String weight) throws SQLException {
         return st.executeQuery(
                 "SELECT ST_GraphAnalysis('CORMEN_EDGES_ALL', "
@@ -0,0 +1,164 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; 
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public class ST_GraphCacheTest {
+
+    private static Connection connection;
+    private Statement st;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase("ST_GraphCacheTest", true);
+        Statement st = connection.createStatement();
+        H2GISFunctions.registerFunction(st, new ST_ShortestPathLength(), "");
+        H2GISFunctions.registerFunction(st, new ST_ShortestPath(), "");
+        H2GISFunctions.registerFunction(st, new ST_GraphCache(), "");
+        H2GISFunctions.registerFunction(st, new ST_GraphCacheDrop(), "");
+        GraphCreatorTest.registerCormenGraph(connection);
+    }
+
+    @BeforeEach
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+    }
+
+    @AfterEach
+    public void tearDownStatement() throws Exception {
+        st.execute("SELECT ST_GraphCacheDrop()");
+        st.close();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    private double distance(String table, int source, int destination) throws SQLException {
+        try (ResultSet rs = st.executeQuery("SELECT DISTANCE FROM ST_ShortestPathLength('" + table +
+                "', 'directed - edge_orientation', 'weight', " + source + ", " + destination + ")")) {
+            assertTrue(rs.next());
+            return rs.getDouble(1);
+        }
+    }
+
+    @Test
+    public void testCacheReuseGraph() throws Exception {
+        GraphCache cache = GraphCache.getInstance(connection);
+        assertNotNull(cache);
+        assertEquals(0, cache.size());
+        // Not registered, the graph is not cached
+        assertEquals(7.0, distance("CORMEN_EDGES_ALL", 1, 5), 0);
+        assertEquals(0, cache.size());
+        try (ResultSet rs = st.executeQuery("SELECT ST_GraphCache('CORMEN_EDGES_ALL', " +
+                "'directed - edge_orientation', 'weight')")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getLong(1) > 0);
+        }
+        assertEquals(1, cache.size());
+        long memory = cache.getMemory();
+        assertEquals(7.0, distance("CORMEN_EDGES_ALL", 1, 5), 0);
+        assertEquals(8.0, distance("CORMEN_EDGES_ALL", 1, 2), 0);
+        assertEquals(1, cache.size());
+        assertEquals(memory, cache.getMemory());
+        // The edge geometries of ST_ShortestPath are cached too
+        try (ResultSet rs = st.executeQuery("SELECT * FROM ST_ShortestPath('CORMEN_EDGES_ALL', " +
+                "'directed - edge_orientation', 'weight', 1, 5)")) {
+            assertTrue(rs.next());
+            assertNotNull(rs.getObject("THE_GEOM"));
+        }
+        assertEquals(2, cache.size());
+        try (ResultSet rs = st.executeQuery("SELECT ST_GraphCacheDrop('CORMEN_EDGES_ALL')")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getLong(1) > memory);
+        }
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemory());
+    }
+
+    @Test
+    public void testCacheInvalidation() throws Exception {
+        st.execute("DROP TABLE IF EXISTS COPY_EDGES; CREATE TABLE COPY_EDGES AS SELECT * FROM CORMEN_EDGES_ALL");
+        st.execute("SELECT ST_GraphCache('COPY_EDGES')");
+        assertEquals(7.0, distance("COPY_EDGES", 1, 5), 0);
+        assertEquals(1, GraphCache.getInstance(connection).size());
+        // Edge 1 -> 3 is now cheaper
+        st.execute("UPDATE COPY_EDGES SET WEIGHT = 1 WHERE EDGE_ID = 5");
+        assertEquals(3.0, distance("COPY_EDGES", 1, 5), 0);
+        // Table replaced by another one with the same name
+        st.execute("DROP TABLE COPY_EDGES; CREATE TABLE COPY_EDGES AS SELECT * FROM CORMEN_EDGES_ALL");
+        assertEquals(7.0, distance("COPY_EDGES", 1, 5), 0);
+        st.execute("DROP TABLE COPY_EDGES");
+    }
+
+    @Test
+    public void testCacheUncommittedChanges() throws Exception {
+        st.execute("DROP TABLE IF EXISTS COPY_EDGES; CREATE TABLE COPY_EDGES AS SELECT * FROM CORMEN_EDGES_ALL");
+        st.execute("SELECT ST_GraphCache('COPY_EDGES')");
+        GraphCache cache = GraphCache.getInstance(connection);
+        connection.setAutoCommit(false);
+        try {
+            // Edge 1 -> 3 is cheaper in the transaction only
+            st.execute("UPDATE COPY_EDGES SET WEIGHT = 1 WHERE EDGE_ID = 5");
+            assertEquals(3.0, distance("COPY_EDGES", 1, 5), 0);
+            assertEquals(0, cache.size());
+            connection.rollback();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        assertEquals(7.0, distance("COPY_EDGES", 1, 5), 0);
+        assertEquals(1, cache.size());
+        st.execute("DROP TABLE COPY_EDGES");
+    }
+
+    @Test
+    public void testCacheMaxMemory() throws Exception {
+        GraphCache cache = GraphCache.getInstance(connection);
+        long maxMemory = cache.getMaxMemory();
+        try {
+            st.execute("SELECT ST_GraphCache('CORMEN_EDGES_ALL', 'directed - edge_orientation', 'weight')");
+            assertEquals(1, cache.size());
+            // The graph is released when the cache is too small
+            cache.setMaxMemory(1);
+            assertEquals(0, cache.size());
+            assertEquals(7.0, distance("CORMEN_EDGES_ALL", 1, 5), 0);
+            assertEquals(0, cache.size());
+        } finally {
+            cache.setMaxMemory(maxMemory);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.network.functions;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.factory.H2GISFunctions;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * @author Nicolas Fortin
+ * @author Erwan Bocher
+ */
+public class ST_GraphContractTest {
+
+    private static final double TOLERANCE = 1E-9;
+    private static final String DW = "'directed - edge_orientation', 'weight'";
+    private static final String U = "'undirected'";
+    private static final String HIERARCHY = "'hierarchy=true'";
+    private static Connection connection;
+    private Statement st;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        // Keep a connection alive to not close the DataBase on each unit test
+        connection = H2GISDBFactory.createSpatialDataBase("ST_GraphContractTest", true);
+        Statement st = connection.createStatement();
+        H2GISFunctions.registerFunction(st, new ST_ShortestPathLength(), "");
+        H2GISFunctions.registerFunction(st, new ST_ShortestPath(), "");
+        H2GISFunctions.registerFunction(st, new ST_GraphContract(), "");
+        GraphCreatorTest.registerCormenGraph(connection);
+    }
+
+    @BeforeEach
+    public void setUpStatement() throws Exception {
+        st = connection.createStatement();
+    }
+
+    @AfterEach
+    public void tearDownStatement() throws Exception {
+        st.execute("DROP TABLE IF EXISTS CORMEN_EDGES_ALL_CH_NODES, CORMEN_EDGES_ALL_CH_SHORTCUTS");
+        st.close();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        connection.close();
+    }
+
+    private double[][] distances(String orientation) throws SQLException {
+        return distances(orientation, "");
+    }
+
+    /**
+     * @param orientation Orientation and weight
+     * @param options     Empty string, or options preceded by a comma. Requires the weight argument.
+     * @return Distance matrix of the Cormen graph
+     */
+    private double[][] distances(String orientation, String options) throws SQLException {
+        double[][] distances = new double[5][5];
+        for (int i = 1; i <= 5; i++) {
+            for (int j = 1; j <= 5; j++) {
+                try (ResultSet rs = st.executeQuery("SELECT DISTANCE FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
+                        orientation + ", " + i + ", " + j + options + ")")) {
+                    assertTrue(rs.next());
+                    distances[i - 1][j - 1] = rs.getDouble(1);
+                }
+            }
+        }
+        return distances;
+    }
+
+    private void checkContraction(String orientation) throws SQLException {
+        final double[][] expected = distances(orientation);
+        try (ResultSet rs = st.executeQuery("SELECT ST_GraphContract('CORMEN_EDGES_ALL', " + orientation + ")")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getBoolean(1));
+        }
+        try (ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM CORMEN_EDGES_ALL_CH_NODES")) {
+            assertTrue(rs.next());
+            assertEquals(5, rs.getInt(1));
+        }
+        final String[] parameters = orientation.replace("'", "").split(", ");
+        final String weight = parameters.length > 1 ? parameters[1] : null;
+        final String orientationAndWeight = weight == null ? orientation + ", NULL" : orientation;
+        final CSRGraph graph = GraphFunction.prepareCSRGraph(connection, "CORMEN_EDGES_ALL", parameters[0], weight);
+        assertNotNull(GraphFunction.prepareContractionHierarchy(connection, "CORMEN_EDGES_ALL", parameters[0],
+                weight, graph));
+        final double[][] contracted = distances(orientationAndWeight, ", " + HIERARCHY);
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(expected[i], contracted[i], TOLERANCE);
+        }
+        // Many-to-Many with a source-destination table
+        st.execute("DROP TABLE IF EXISTS SOURCE_DEST;" +
+                "CREATE TABLE SOURCE_DEST(SOURCE INT, DESTINATION INT);" +
+                "INSERT INTO SOURCE_DEST VALUES (1, 5), (1, 3), (2, 4), (5, 1), (5, 5)");
+        for (String options : new String[]{", " + HIERARCHY, ", 'workers=2 hierarchy=true'"}) {
+            try (ResultSet rs = st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
+                    orientation + ", 'SOURCE_DEST'" + options + ")")) {
+                int count = 0;
+                while (rs.next()) {
+                    assertEquals(expected[rs.getInt(1) - 1][rs.getInt(2) - 1], rs.getDouble(3), TOLERANCE);
+                    count++;
+                }
+                assertEquals(5, count);
+            }
+        }
+        // The path length is the shortest path length
+        for (int i = 1; i <= 5; i++) {
+            for (int j = 1; j <= 5; j++) {
+                if (i == j || Double.isInfinite(expected[i - 1][j - 1])) {
+                    continue;
+                }
+                try (ResultSet rs = st.executeQuery("SELECT SUM(WEIGHT), MAX(PATH_ID) FROM " +
+                        "ST_ShortestPath('CORMEN_EDGES_ALL', " + orientationAndWeight + ", " + i + ", " + j + ", " +
+                        HIERARCHY + ")")) {
+                    assertTrue(rs.next());
+                    if (orientation.equals(DW)) {
+                        assertEquals(expected[i - 1][j - 1], rs.getDouble(1), TOLERANCE);
+                    }
+                    assertEquals(1, rs.getInt(2));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDirectedWeighted() throws Exception {
+        checkContraction(DW);
+    }
+
+    @Test
+    public void testUndirected() throws Exception {
+        checkContraction(U);
+    }
+
+    @Test
+    public void testOrientationMismatch() throws Exception {
+        final double[][] expected = distances(DW);
+        st.execute("SELECT ST_GraphContract('CORMEN_EDGES_ALL', " + U + ")");
+        // The hierarchy of the undirected graph is rejected
+        final CSRGraph graph = GraphFunction.prepareCSRGraph(connection, "CORMEN_EDGES_ALL",
+                "directed - edge_orientation", "weight");
+        assertThrows(SQLException.class, () -> GraphFunction.prepareContractionHierarchy(connection,
+                "CORMEN_EDGES_ALL", "directed - edge_orientation", "weight", graph));
+        assertThrows(SQLException.class, () -> distances(DW, ", " + HIERARCHY));
+        // The hierarchy is not used without the option
+        final double[][] directed = distances(DW);
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(expected[i], directed[i], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testStaleHierarchy() throws Exception {
+        st.execute("SELECT ST_GraphContract('CORMEN_EDGES_ALL', " + DW + ")");
+        assertEquals(8.0, distances(DW, ", " + HIERARCHY)[0][1], TOLERANCE);
+        // Same number of vertices and arcs, different weights
+        st.execute("UPDATE CORMEN_EDGES_ALL SET WEIGHT = WEIGHT + 1 WHERE EDGE_ID = 1");
+        try {
+            assertThrows(SQLException.class, () -> distances(DW, ", " + HIERARCHY));
+            assertThrows(SQLException.class, () -> st.executeQuery("SELECT * FROM " +
+                    "ST_ShortestPath('CORMEN_EDGES_ALL', " + DW + ", 1, 2, " + HIERARCHY + ")"));
+        } finally {
+            st.execute("UPDATE CORMEN_EDGES_ALL SET WEIGHT = WEIGHT - 1 WHERE EDGE_ID = 1");
+        }
+        // The table content is back to the contracted one
+        assertEquals(8.0, distances(DW, ", " + HIERARCHY)[0][1], TOLERANCE);
+    }
+
+    @Test
+    public void testShortestPathsWithoutHierarchy() throws Exception {
+        st.execute("SELECT ST_GraphContract('CORMEN_EDGES_ALL', " + U + ")");
+        // Without the option all the shortest paths are returned, 1 -> 4 has four paths of 2 edges
+        try (ResultSet rs = st.executeQuery("SELECT MAX(PATH_ID) FROM " +
+                "ST_ShortestPath('CORMEN_EDGES_ALL', " + U + ", 1, 4)")) {
+            assertTrue(rs.next());
+            assertEquals(4, rs.getInt(1));
+        }
+        try (ResultSet rs = st.executeQuery("SELECT MAX(PATH_ID) FROM " +
+                "ST_ShortestPath('CORMEN_EDGES_ALL', " + U + ", NULL, 1, 4, " + HIERARCHY + ")")) {
+            assertTrue(rs.next());
+            assertEquals(1, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void testRandomGraph() {
+        final int vertexCount = 400;
+        Random random = new Random(11);
+        CSRGraph.Builder builder = new CSRGraph.Builder(false);
+        for (int edgeId = 1; edgeId <= vertexCount * 3; edgeId++) {
+            int start = random.nextInt(vertexCount);
+            int end = random.nextInt(vertexCount);
+            builder.addArc(start, end, edgeId, 1 + random.nextInt(20));
+        }
+        CSRGraph graph = builder.build();
+        ContractionHierarchy hierarchy = ContractionHierarchy.contract(graph);
+        ContractionHierarchy.Query query = hierarchy.newQuery();
+        CSRDijkstra dijkstra = new CSRDijkstra(graph);
+        int[] sources = new int[20];
+        int[] targets = new int[30];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = random.nextInt(graph.getVertexCount());
+        }
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = random.nextInt(graph.getVertexCount());
+        }
+        double[][] matrix = hierarchy.manyToMany(sources, targets);
+        for (int i = 0; i < sources.length; i++) {
+            double[] expected = dijkstra.oneToMany(sources[i], targets);
+            assertArrayEquals(expected, matrix[i], TOLERANCE);
+            for (int j = 0; j < targets.length; j++) {
+                assertEquals(expected[j], query.distance(sources[i], targets[j]), TOLERANCE);
+                int[] path = query.path(sources[i], targets[j]);
+                if (Double.isInfinite(expected[j])) {
+                    assertNull(path);
+                    continue;
+                }
+                // The unpacked path is a chain of arcs of the graph
+                int vertex = sources[i];
+                double length = 0;
+                for (int arc : path) {
+                    assertTrue(arc >= graph.getFirstArc(vertex) && arc < graph.getFirstArc(vertex + 1));
+                    length += graph.getWeight(arc);
+                    vertex = graph.getTarget(arc);
+                }
+                assertEquals(targets[j], vertex);
+                assertEquals(expected[j], length, TOLERANCE);
+            }
+        }
+    }
+}
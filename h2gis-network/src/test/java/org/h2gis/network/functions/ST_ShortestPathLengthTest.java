@@ -579,6 +579,68 @@ public class ST_ShortestPathLengthTest {
         manyToMany(orientation, null, sourceDestinationTable, distances);
     }
 
+    @Test
+    public void manyToManyParallel() throws Exception {
+        final double[][] distances = {{0.0, 8.0, 5.0, 13.0, 7.0},
+                                      {11.0, 0.0, 2.0, 10.0, 4.0},
+                                      {9.0, 3.0, 0.0, 8.0, 2.0},
+                                      {11.0, 1.0, 3.0, 0.0, 4.0},
+                                      {7.0, 7.0, 9.0, 6.0, 0.0}};
+        manyToMany(DO, W, SOURCE_DEST_TABLE + ", 'workers=4'", distances);
+        manyToMany(DO, W, SOURCE_DEST_TABLE + ", 'workers=1'", distances);
+        // Unweighted
+        final double[][] unweighted = {{0.0,  1.0,  1.0,  2.0,  1.0},
+                                       {1.0,  0.0,  1.0,  1.0,  2.0},
+                                       {1.0,  1.0,  0.0,  1.0,  1.0},
+                                       {2.0,  1.0,  1.0,  0.0,  1.0},
+                                       {1.0,  2.0,  1.0,  1.0,  0.0}};
+        manyToMany(U, SOURCE_DEST_TABLE + ", 'workers=3'", unweighted);
+    }
+
+    @Test
+    public void manyToManyParallelRadius() throws Exception {
+        // The distances greater than the radius are infinite
+        final double[][] distances = {{0.0, 8.0, 5.0, 13.0, 7.0},
+                                      {11.0, 0.0, 2.0, 10.0, 4.0},
+                                      {9.0, 3.0, 0.0, 8.0, 2.0},
+                                      {11.0, 1.0, 3.0, 0.0, 4.0},
+                                      {7.0, 7.0, 9.0, 6.0, 0.0}};
+        for (double[] row : distances) {
+            for (int i = 0; i < row.length; i++) {
+                if (row[i] > 8) {
+                    row[i] = Double.POSITIVE_INFINITY;
+                }
+            }
+        }
+        manyToMany(DO, W, SOURCE_DEST_TABLE + ", 'workers=2 radius=8'", distances);
+    }
+
+    @Test
+    public void manyToManyParallelSTDT() throws Exception {
+        final double[][] distances = {{0.0, 8.0},
+                                      {11.0, 0.0},
+                                      {9.0, 3.0}};
+        manyToManySTDT(DO, W, SOURCE_TABLE, DEST_TABLE + ", 'workers=2'", distances);
+        final double[][] unweighted = {{0.0, 1.0},
+                                       {3.0, 0.0},
+                                       {2.0, 1.0}};
+        manyToManySTDT(DO, "NULL", SOURCE_TABLE, DEST_TABLE + ", 'workers=2'", unweighted);
+    }
+
+    @Test
+    public void manyToManyParallelOptionsFail() {
+        SQLException e = assertThrows(SQLException.class, () ->
+                st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
+                        "'undirected', 'SOURCE_DEST', 'workers=0')"));
+        assertEquals("The option workers must be greater than 0", e.getMessage());
+        assertThrows(SQLException.class, () ->
+                st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
+                        "'undirected', 'SOURCE_DEST', 'workers=2 unknown=1')"));
+        assertThrows(SQLException.class, () ->
+                st.executeQuery("SELECT * FROM ST_ShortestPathLength('CORMEN_EDGES_ALL', " +
+                        "'undirected', 'SOURCE_DEST', 'radius=-1')"));
+    }
+
     // ************* Many-to-Many Source table, Destination table *********************
 
     @Test
@@ -0,0 +1,179 @@
+/**
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software; you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser General
+ * Public License as published by the Free Software Foundation; version 3.0 of
+ * the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR
+ * A PARTICULAR PURPOSE. See the GNU Lesser General Public License for more
+ * details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.utilities;
+
+import org.h2.util.StringUtils;
+
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Options given as space separated key=value pairs, ex: {@code 'encoding=utf-8 workers=4'}.
+ * The keys are case insensitive, an unknown key or a pair without value is rejected.
+ *
+ * @author Erwan Bocher, CNRS
+ */
+public class KeyValueOptions {
+
+    private final Map<String, String> values = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    private KeyValueOptions() {
+    }
+
+    /**
+     * @param options Options string, may be null
+     * @return True if the options are key=value pairs, else the options are a single value (ex: an encoding)
+     */
+    public static boolean isKeyValue(String options) {
+        return options != null && options.indexOf('=') >= 0;
+    }
+
+    /**
+     * Parse the options
+     *
+     * @param options Options string, may be null or empty
+     * @param keys    Accepted keys
+     * @return The options
+     * @throws SQLException If a pair has no '=' or if its key is not accepted
+     */
+    public static KeyValueOptions parse(String options, String... keys) throws SQLException {
+        KeyValueOptions result = new KeyValueOptions();
+        if (options == null || options.trim().isEmpty()) {
+            return result;
+        }
+        for (String pair : StringUtils.arraySplit(options, ' ', false)) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int index = pair.indexOf('=');
+            if (index < 0) {
+                throw new SQLException("The option " + pair + " must be a key=value pair");
+            }
+            String key = StringUtils.trimSubstring(pair, 0, index);
+            boolean accepted = false;
+            for (String acceptedKey : keys) {
+                accepted |= acceptedKey.equalsIgnoreCase(key);
+            }
+            if (!accepted) {
+                throw new SQLException("Unknown option " + key);
+            }
+            result.values.put(key, pair.substring(index + 1).trim());
+        }
+        return result;
+    }
+
+    /**
+     * @param key Option key
+     * @return True if the option is set
+     */
+    public boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    /**
+     * @param key          Option key
+     * @param defaultValue Value if the option is not set
+     * @return The option value
+     */
+    public String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * @param key          Option key
+     * @param defaultValue Value if the option is not set
+     * @return The option value, true if the value is "true" ignoring the case
+     */
+    public boolean getBoolean(String key, boolean defaultValue) {
+        String value = values.get(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+
+    /**
+     * @param key          Option key
+     * @param defaultValue Value if the option is not set
+     * @return The option value
+     * @throws SQLException If the value is not an integer
+     */
+    public int getInt(String key, int defaultValue) throws SQLException {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new SQLException("The option " + key + " must be an integer", ex);
+        }
+    }
+
+    /**
+     * @param key          Option key
+     * @param defaultValue Value if the option is not set
+     * @return The option value
+     * @throws SQLException If the value is not an integer greater than 0
+     */
+    public int getPositiveInt(String key, int defaultValue) throws SQLException {
+        int value = getInt(key, defaultValue);
+        if (value < 1) {
+            throw new SQLException("The option " + key + " must be greater than 0");
+        }
+        return value;
+    }
+
+    /**
+     * @param key          Option key
+     * @param defaultValue Value if the option is not set
+     * @return The option value
+     * @throws SQLException If the value is not an integer
+     */
+    public long getLong(String key, long defaultValue) throws SQLException {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            throw new SQLException("The option " + key + " must be an integer", ex);
+        }
+    }
+
+    /**
+     * @param key          Option key
+     * @param defaultValue Value if the option is not set
+     * @return The option value
+     * @throws SQLException If the value is not a number
+     */
+    public double getDouble(String key, double defaultValue) throws SQLException {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException ex) {
+            throw new SQLException("The option " + key + " must be a number", ex);
+        }
+    }
+}
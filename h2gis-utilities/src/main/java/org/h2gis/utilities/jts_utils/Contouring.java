@@ -465,7 +465,7 @@ public class Contouring {
             // Begin and end range inside the triangle
 
             // First step, make outside inferior triangle
-            Deque<TriMarkers> insideTriangles = new LinkedList<TriMarkers>();
+            Deque<TriMarkers> insideTriangles = new ArrayDeque<TriMarkers>();
             splitInterval(beginIncluded, Double.POSITIVE_INFINITY,
                     currentTriangle, outsideTriangles, insideTriangles);
             // distribute inside and outside superior triangle from the end iso
@@ -494,24 +494,35 @@ public class Contouring {
      * @return processedTriangles Return sub-triangle corresponding to iso levels. iso level are stored in markers (same for m0,m1,m2)
      */
     public static Map<Short, Deque<TriMarkers>> processTriangle(TriMarkers triangleData, List<Double> isoLvls) throws TopologyException {
+        double[] levels = new double[isoLvls.size()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = isoLvls.get(i);
+        }
+        return processTriangle(triangleData, levels);
+    }
+
+    /**
+     *
+     * @param triangleData Triangle Coordinates and Marker values
+     * @param isoLvls Iso level to extract, in ascending order.
+     * @return processedTriangles Return sub-triangle corresponding to iso levels. iso level are stored in markers (same for m0,m1,m2)
+     */
+    public static Map<Short, Deque<TriMarkers>> processTriangle(TriMarkers triangleData, double[] isoLvls) throws TopologyException {
         TriMarkers currentTriangle = triangleData;
         Map<Short, Deque<TriMarkers>> toDriver = new HashMap<Short, Deque<TriMarkers>>();
         // For each iso interval
-        Deque<TriMarkers> triangleToProcess = new LinkedList<TriMarkers>();
+        Deque<TriMarkers> triangleToProcess = new ArrayDeque<TriMarkers>();
         triangleToProcess.add(currentTriangle);
 
         do {
             currentTriangle = triangleToProcess.pop();
-            Double beginInterval = Double.NEGATIVE_INFINITY;
+            double beginInterval = Double.NEGATIVE_INFINITY;
             short isolvl = 0;
-            for (Double endInterval : isoLvls) {
-                Deque<TriMarkers> triangleToDriver;
-
-                if (!toDriver.containsKey(isolvl)) {
-                    triangleToDriver = new LinkedList<TriMarkers>();
+            for (double endInterval : isoLvls) {
+                Deque<TriMarkers> triangleToDriver = toDriver.get(isolvl);
+                if (triangleToDriver == null) {
+                    triangleToDriver = new ArrayDeque<TriMarkers>();
                     toDriver.put(isolvl, triangleToDriver);
-                } else {
-                    triangleToDriver = toDriver.get(isolvl);
                 }
                 if (splitInterval(beginInterval, endInterval,
                         currentTriangle, triangleToProcess,
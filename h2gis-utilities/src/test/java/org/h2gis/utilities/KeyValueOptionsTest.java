@@ -0,0 +1,67 @@
+/*
+ * H2GIS is a library that brings spatial support to the H2 Database Engine
+ * <a href="http://www.h2database.com">http://www.h2database.com</a>. H2GIS is developed by CNRS
+ * <a href="http://www.cnrs.fr/">http://www.cnrs.fr/</a>.
+ *
+ * This code is part of the H2GIS project. H2GIS is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU
+ * Lesser General Public License as published by the Free Software Foundation;
+ * version 3.0 of the License.
+ *
+ * H2GIS is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details <http://www.gnu.org/licenses/>.
+ *
+ *
+ * For more information, please consult: <a href="http://www.h2gis.org/">http://www.h2gis.org/</a>
+ * or contact directly: info_at_h2gis.org
+ */
+
+package org.h2gis.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit test of KeyValueOptions
+ *
+ * @author Erwan Bocher, CNRS
+ */
+public class KeyValueOptionsTest {
+
+    @Test
+    public void testParse() throws SQLException {
+        assertFalse(KeyValueOptions.isKeyValue(null));
+        assertFalse(KeyValueOptions.isKeyValue("UTF-8"));
+        assertTrue(KeyValueOptions.isKeyValue("encoding=UTF-8"));
+        KeyValueOptions options = KeyValueOptions.parse("  Encoding=UTF-8   workers=4 spatialSort=TRUE ",
+                "encoding", "workers", "spatialSort", "sortMemory");
+        assertTrue(options.contains("ENCODING"));
+        assertEquals("UTF-8", options.getString("encoding", null));
+        assertEquals(4, options.getPositiveInt("workers", 1));
+        assertTrue(options.getBoolean("spatialSort", false));
+        assertFalse(options.contains("sortMemory"));
+        assertEquals(42L, options.getLong("sortMemory", 42L));
+        assertEquals(0.5, options.getDouble("sortMemory", 0.5));
+        assertEquals("default", options.getString("charset", "default"));
+        KeyValueOptions empty = KeyValueOptions.parse(null, "encoding");
+        assertEquals(1, empty.getInt("encoding", 1));
+    }
+
+    @Test
+    public void testParseErrors() throws SQLException {
+        assertThrows(SQLException.class, () -> KeyValueOptions.parse("encoding=UTF-8 unknown=1", "encoding"));
+        assertThrows(SQLException.class, () -> KeyValueOptions.parse("encoding=UTF-8 workers", "encoding", "workers"));
+        KeyValueOptions options = KeyValueOptions.parse("workers=0 count=x", "workers", "count");
+        assertThrows(SQLException.class, () -> options.getPositiveInt("workers", 1));
+        assertEquals(0, options.getInt("workers", 1));
+        assertThrows(SQLException.class, () -> options.getInt("count", 1));
+        assertThrows(SQLException.class, () -> options.getLong("count", 1));
+        assertThrows(SQLException.class, () -> options.getDouble("count", 1));
+        assertEquals(0, options.getDouble("workers", 1));
+    }
+}
@@ -357,4 +357,30 @@ public class ContouringTest {
         assertEquals(2, tri3.getMarker(1), EPSILON);
         assertEquals(1.5, tri3.getMarker(2), EPSILON);
     }
+
+    @Test
+    public void testContouringTriangleLevelArray() throws TopologyException {
+        TriMarkers triangleData = new TriMarkers(new Coordinate(7,2),
+                new Coordinate(13,4),
+                new Coordinate(5,7),
+                2885245,2765123,12711064
+        );
+        double[] isoLvls = {31622, 100000, 316227, 1000000, 3162277, 1e+7, 31622776, 1e+20};
+        Map<Short,Deque<TriMarkers>> triangleToDriver = Contouring.processTriangle(triangleData, isoLvls);
+        int subdividedTri = 0;
+        for(Map.Entry<Short,Deque<TriMarkers>> entry : triangleToDriver.entrySet()) {
+            subdividedTri+=entry.getValue().size();
+        }
+        assertEquals(5, subdividedTri);
+        // Same split as with the list of levels
+        List<Double> isoList = new ArrayList<Double>();
+        for (double isoLvl : isoLvls) {
+            isoList.add(isoLvl);
+        }
+        Map<Short,Deque<TriMarkers>> fromList = Contouring.processTriangle(triangleData, isoList);
+        assertEquals(fromList.keySet(), triangleToDriver.keySet());
+        for(Map.Entry<Short,Deque<TriMarkers>> entry : fromList.entrySet()) {
+            assertEquals(entry.getValue().size(), triangleToDriver.get(entry.getKey()).size());
+        }
+    }
 }
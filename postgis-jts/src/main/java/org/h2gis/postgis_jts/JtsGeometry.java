@@ -22,13 +22,21 @@ package org.h2gis.postgis_jts;
 import org.locationtech.jts.geom.*;
 import org.locationtech.jts.geom.impl.PackedCoordinateSequenceFactory;
 import org.locationtech.jts.io.WKTReader;
+import org.postgresql.util.PGBinaryObject;
 import org.postgresql.util.PGobject;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 
-public class JtsGeometry extends PGobject {
+/**
+ * PostGIS geometry value. The geometry is exchanged as hex-encoded EWKB text, or as raw EWKB
+ * bytes when the driver uses the binary transfer for the geometry type (server prepared statements).
+ */
+public class JtsGeometry extends PGobject implements PGBinaryObject {
     private static final long serialVersionUID = 256L;
     private Geometry geom;
+    /** EWKB of the geometry, kept between {@link #lengthInBytes()} and {@link #toBytes(byte[], int)} */
+    private transient byte[] ewkb;
     private static final JtsBinaryParser bp = new JtsBinaryParser();
     private static final JtsBinaryWriter bw = new JtsBinaryWriter();
     private static final PrecisionModel prec = new PrecisionModel();
@@ -52,6 +60,31 @@ public class JtsGeometry extends PGobject {
 
     public void setValue(String value) throws SQLException {
         this.geom = geomFromString(value);
+        this.ewkb = null;
+    }
+
+    @Override
+    public void setByteValue(byte[] value, int offset) throws SQLException {
+        try {
+            this.geom = bp.parse(offset == 0 ? value : Arrays.copyOfRange(value, offset, value.length));
+            this.ewkb = null;
+        } catch (Exception ex) {
+            throw new SQLException("Error parsing binary SQL data", ex);
+        }
+    }
+
+    @Override
+    public int lengthInBytes() {
+        if (ewkb == null) {
+            ewkb = bw.writeBinary(geom);
+        }
+        return ewkb.length;
+    }
+
+    @Override
+    public void toBytes(byte[] bytes, int offset) {
+        lengthInBytes();
+        System.arraycopy(ewkb, 0, bytes, offset, ewkb.length);
     }
 
     public static Geometry geomFromString(String value) throws SQLException {